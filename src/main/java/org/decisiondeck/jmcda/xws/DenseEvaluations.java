@@ -0,0 +1,238 @@
+package org.decisiondeck.jmcda.xws;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.decision_deck.jmcda.structure.Alternative;
+import org.decision_deck.jmcda.structure.Criterion;
+import org.decision_deck.jmcda.structure.matrix.Evaluations;
+import org.decision_deck.jmcda.structure.matrix.EvaluationsUtils;
+import org.decision_deck.utils.matrix.SparseMatrixDRead;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * <p>
+ * Evaluations of alternatives on criteria stored as a single array of primitive values, row by row, with the
+ * alternatives and criteria encoded as indexes, for workers that process large performance tables in tight loops. The
+ * value of the alternative of index <code>i</code> on the criterion of index <code>j</code> is at position
+ * <code>i * getCriterionCount() + j</code> of {@link #getValues()}. A missing evaluation is represented by
+ * {@link Double#NaN}, which thus can't be an evaluation.
+ * </p>
+ * <p>
+ * A worker field of this type annotated with {@link XWSInput} is read from a performance table by
+ * {@link SourceToDenseEvaluations}, unless another transformer is given. A worker field of this type annotated with
+ * {@link XWSOutput} is written as a performance table. The alternatives and criteria are fixed at creation, but the
+ * values may be modified. Objects of this class are not safe for concurrent modification.
+ * </p>
+ *
+ * @author Olivier Cailloux
+ *
+ */
+public final class DenseEvaluations {
+	/**
+	 * @param evaluations
+	 *            not <code>null</code>, without {@link Double#NaN} values.
+	 * @return new dense evaluations, whose alternatives and criteria are the rows and columns of the given ones, in
+	 *         the same order, and containing the same values.
+	 */
+	public static DenseEvaluations copyOf(SparseMatrixDRead<Alternative, Criterion> evaluations) {
+		final DenseEvaluations dense = new DenseEvaluations(ImmutableList.copyOf(evaluations.getRows()),
+				ImmutableList.copyOf(evaluations.getColumns()));
+		for (int i = 0; i < dense.m_alternatives.size(); ++i) {
+			for (int j = 0; j < dense.m_criteria.size(); ++j) {
+				final Double entry = evaluations.getEntry(dense.m_alternatives.get(i), dense.m_criteria.get(j));
+				if (entry != null) {
+					Preconditions.checkArgument(!entry.isNaN());
+					dense.m_values[i * dense.m_criteria.size() + j] = entry.doubleValue();
+				}
+			}
+		}
+		return dense;
+	}
+
+	private static <T> ImmutableMap<T, Integer> index(List<T> elements) {
+		final ImmutableMap.Builder<T, Integer> builder = ImmutableMap.builder();
+		for (int i = 0; i < elements.size(); ++i) {
+			builder.put(elements.get(i), Integer.valueOf(i));
+		}
+		return builder.build();
+	}
+
+	private final ImmutableMap<Alternative, Integer> m_alternativeIndexes;
+
+	private final ImmutableList<Alternative> m_alternatives;
+
+	private final ImmutableList<Criterion> m_criteria;
+
+	private final ImmutableMap<Criterion, Integer> m_criterionIndexes;
+
+	private final double[] m_values;
+
+	/**
+	 * Creates evaluations of the given alternatives on the given criteria, all missing.
+	 *
+	 * @param alternatives
+	 *            not <code>null</code>, without duplicates, indexed in this order.
+	 * @param criteria
+	 *            not <code>null</code>, without duplicates, indexed in this order.
+	 */
+	public DenseEvaluations(List<Alternative> alternatives, List<Criterion> criteria) {
+		m_alternatives = ImmutableList.copyOf(alternatives);
+		m_criteria = ImmutableList.copyOf(criteria);
+		m_alternativeIndexes = index(m_alternatives);
+		m_criterionIndexes = index(m_criteria);
+		Preconditions.checkArgument((long) m_alternatives.size() * m_criteria.size() <= Integer.MAX_VALUE,
+				"Too many evaluations.");
+		m_values = new double[m_alternatives.size() * m_criteria.size()];
+		Arrays.fill(m_values, Double.NaN);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof DenseEvaluations)) {
+			return false;
+		}
+		final DenseEvaluations evaluations = (DenseEvaluations) obj;
+		return m_alternatives.equals(evaluations.m_alternatives) && m_criteria.equals(evaluations.m_criteria)
+				&& Arrays.equals(m_values, evaluations.m_values);
+	}
+
+	public int getAlternativeCount() {
+		return m_alternatives.size();
+	}
+
+	/**
+	 * @param alternative
+	 *            not <code>null</code>.
+	 * @return the index of the given alternative, or <code>-1</code> if it is not one of these evaluations.
+	 */
+	public int getAlternativeIndex(Alternative alternative) {
+		final Integer index = m_alternativeIndexes.get(alternative);
+		return index == null ? -1 : index.intValue();
+	}
+
+	/**
+	 * @return the alternatives, in the order of their indexes.
+	 */
+	public ImmutableList<Alternative> getAlternatives() {
+		return m_alternatives;
+	}
+
+	/**
+	 * @return the criteria, in the order of their indexes.
+	 */
+	public ImmutableList<Criterion> getCriteria() {
+		return m_criteria;
+	}
+
+	public int getCriterionCount() {
+		return m_criteria.size();
+	}
+
+	/**
+	 * @param criterion
+	 *            not <code>null</code>.
+	 * @return the index of the given criterion, or <code>-1</code> if it is not one of these evaluations.
+	 */
+	public int getCriterionIndex(Criterion criterion) {
+		final Integer index = m_criterionIndexes.get(criterion);
+		return index == null ? -1 : index.intValue();
+	}
+
+	/**
+	 * @param alternative
+	 *            not <code>null</code>.
+	 * @param criterion
+	 *            not <code>null</code>.
+	 * @return the evaluation of the given alternative on the given criterion, <code>null</code> if it is missing or
+	 *         if the alternative or the criterion is not one of these evaluations.
+	 */
+	public Double getEntry(Alternative alternative, Criterion criterion) {
+		final int i = getAlternativeIndex(alternative);
+		final int j = getCriterionIndex(criterion);
+		if (i == -1 || j == -1) {
+			return null;
+		}
+		final double value = m_values[i * m_criteria.size() + j];
+		return Double.isNaN(value) ? null : Double.valueOf(value);
+	}
+
+	/**
+	 * @param alternative
+	 *            the index of an alternative.
+	 * @param criterion
+	 *            the index of a criterion.
+	 * @return the evaluation, {@link Double#NaN} if it is missing.
+	 */
+	public double getValue(int alternative, int criterion) {
+		Preconditions.checkElementIndex(alternative, m_alternatives.size());
+		Preconditions.checkElementIndex(criterion, m_criteria.size());
+		return m_values[alternative * m_criteria.size() + criterion];
+	}
+
+	/**
+	 * @return the number of evaluations that are not missing.
+	 */
+	public int getValueCount() {
+		int count = 0;
+		for (double value : m_values) {
+			if (!Double.isNaN(value)) {
+				++count;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Returns the array backing these evaluations, not a copy: modifying it modifies these evaluations.
+	 *
+	 * @return the values, row by row, {@link Double#NaN} for missing ones; not <code>null</code>.
+	 */
+	public double[] getValues() {
+		return m_values;
+	}
+
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(m_values);
+	}
+
+	/**
+	 * @param alternative
+	 *            the index of an alternative.
+	 * @param criterion
+	 *            the index of a criterion.
+	 * @param value
+	 *            {@link Double#NaN} to remove the evaluation.
+	 */
+	public void setValue(int alternative, int criterion, double value) {
+		Preconditions.checkElementIndex(alternative, m_alternatives.size());
+		Preconditions.checkElementIndex(criterion, m_criteria.size());
+		m_values[alternative * m_criteria.size() + criterion] = value;
+	}
+
+	/**
+	 * @return new evaluations containing the evaluations that are not missing.
+	 */
+	public Evaluations toEvaluations() {
+		final Evaluations evaluations = EvaluationsUtils.newEvaluationMatrix();
+		for (int i = 0; i < m_alternatives.size(); ++i) {
+			for (int j = 0; j < m_criteria.size(); ++j) {
+				final double value = m_values[i * m_criteria.size() + j];
+				if (!Double.isNaN(value)) {
+					evaluations.put(m_alternatives.get(i), m_criteria.get(j), value);
+				}
+			}
+		}
+		return evaluations;
+	}
+
+	@Override
+	public String toString() {
+		return "Dense evaluations of " + m_alternatives.size() + " alternatives on " + m_criteria.size()
+				+ " criteria";
+	}
+}
@@ -0,0 +1,188 @@
+package org.decisiondeck.jmcda.xws;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+
+import org.decisiondeck.jmcda.exc.InvalidInvocationException;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Provides the {@link IFieldAccessorFactory} implementations available to the {@link XWSExecutor}.
+ *
+ * @author Olivier Cailloux
+ *
+ */
+public class FieldAccessors {
+	private static class MethodHandleAccessor implements IFieldAccessor {
+		private final String m_fieldName;
+
+		/**
+		 * Has type (Object)Object. Held in an instance field, thus not constant-folded by the JIT compiler, contrary to
+		 * a handle held in a static final field: accesses through it are not necessarily faster than reflection.
+		 */
+		private final MethodHandle m_getter;
+
+		/**
+		 * Has type (Object, Object)void, <code>null</code> iff the field is final.
+		 */
+		private final MethodHandle m_setter;
+
+		public MethodHandleAccessor(String fieldName, MethodHandle getter, MethodHandle setter) {
+			m_fieldName = Preconditions.checkNotNull(fieldName);
+			m_getter = Preconditions.checkNotNull(getter);
+			m_setter = setter;
+		}
+
+		@Override
+		public Object get(IXWS worker) throws InvalidInvocationException {
+			Preconditions.checkNotNull(worker);
+			try {
+				return m_getter.invokeExact((Object) worker);
+			} catch (ClassCastException exc) {
+				throw new InvalidInvocationException("Can't get the field " + m_fieldName + ".", exc);
+			} catch (RuntimeException exc) {
+				throw exc;
+			} catch (Error exc) {
+				throw exc;
+			} catch (Throwable exc) {
+				throw new InvalidInvocationException("Can't get the field " + m_fieldName + ".", exc);
+			}
+		}
+
+		@Override
+		public void set(IXWS worker, Object value) throws InvalidInvocationException {
+			Preconditions.checkNotNull(worker);
+			if (m_setter == null) {
+				throw new InvalidInvocationException("Can't set the final field " + m_fieldName + ".");
+			}
+			try {
+				m_setter.invokeExact((Object) worker, value);
+			} catch (ClassCastException exc) {
+				throw new InvalidInvocationException("Can't set the field " + m_fieldName + ".", exc);
+			} catch (NullPointerException exc) {
+				throw new InvalidInvocationException("Can't set the field " + m_fieldName + ".", exc);
+			} catch (RuntimeException exc) {
+				throw exc;
+			} catch (Error exc) {
+				throw exc;
+			} catch (Throwable exc) {
+				throw new InvalidInvocationException("Can't set the field " + m_fieldName + ".", exc);
+			}
+		}
+
+		@Override
+		public String toString() {
+			return "Method handle accessor to " + m_fieldName;
+		}
+	}
+
+	private static class ReflectiveAccessor implements IFieldAccessor {
+		private final Field m_field;
+
+		public ReflectiveAccessor(Field field) {
+			m_field = Preconditions.checkNotNull(field);
+		}
+
+		@Override
+		public Object get(IXWS worker) throws InvalidInvocationException {
+			Preconditions.checkNotNull(worker);
+			try {
+				return m_field.get(worker);
+			} catch (IllegalArgumentException exc) {
+				throw new InvalidInvocationException(exc);
+			} catch (IllegalAccessException exc) {
+				throw new InvalidInvocationException(exc);
+			}
+		}
+
+		@Override
+		public void set(IXWS worker, Object value) throws InvalidInvocationException {
+			Preconditions.checkNotNull(worker);
+			try {
+				m_field.set(worker, value);
+			} catch (IllegalArgumentException exc) {
+				throw new InvalidInvocationException("Can't set the field " + m_field.getName() + ".", exc);
+			} catch (IllegalAccessException exc) {
+				throw new InvalidInvocationException("Can't set the field " + m_field.getName() + ".", exc);
+			}
+		}
+
+		@Override
+		public String toString() {
+			return "Reflective accessor to " + m_field.getName();
+		}
+	}
+
+	private static final IFieldAccessorFactory METHOD_HANDLES = new IFieldAccessorFactory() {
+		@Override
+		public IFieldAccessor getAccessor(Field field) throws InvalidInvocationException {
+			Preconditions.checkNotNull(field);
+			/**
+			 * Looking up from this package gives the same access rights than
+			 * the reflective calls the executor used to do, in particular, to
+			 * public fields of non public worker classes of this package.
+			 */
+			final MethodHandles.Lookup lookup = MethodHandles.lookup();
+			final MethodHandle getter;
+			final MethodHandle setter;
+			try {
+				getter = lookup.unreflectGetter(field).asType(MethodType.methodType(Object.class, Object.class));
+				if (Modifier.isFinal(field.getModifiers())) {
+					setter = null;
+				} else {
+					setter = lookup.unreflectSetter(field)
+							.asType(MethodType.methodType(void.class, Object.class, Object.class));
+				}
+			} catch (IllegalAccessException exc) {
+				throw new InvalidInvocationException("Can't access the field " + field.getName() + ".", exc);
+			}
+			return new MethodHandleAccessor(field.getName(), getter, setter);
+		}
+
+		@Override
+		public String toString() {
+			return "Method handles accessor factory";
+		}
+	};
+
+	private static final IFieldAccessorFactory REFLECTIVE = new IFieldAccessorFactory() {
+		@Override
+		public IFieldAccessor getAccessor(Field field) {
+			return new ReflectiveAccessor(field);
+		}
+
+		@Override
+		public String toString() {
+			return "Reflective accessor factory";
+		}
+	};
+
+	/**
+	 * Retrieves the default factory, which binds every field to a pair of method handles, resolved once per field. As
+	 * the handles are held in instance fields, whether they access the fields faster than reflection depends on the
+	 * JVM; {@code FieldAccessorsBenchmark}, in the tests, compares both factories.
+	 *
+	 * @return not <code>null</code>.
+	 */
+	static public IFieldAccessorFactory methodHandles() {
+		return METHOD_HANDLES;
+	}
+
+	/**
+	 * Retrieves a factory which accesses the fields using {@link Field#get(Object)} and
+	 * {@link Field#set(Object, Object)}, as the executor historically did.
+	 *
+	 * @return not <code>null</code>.
+	 */
+	static public IFieldAccessorFactory reflective() {
+		return REFLECTIVE;
+	}
+
+	private FieldAccessors() {
+		/** Non instantiable. */
+	}
+}
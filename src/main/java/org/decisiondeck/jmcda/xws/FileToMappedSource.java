@@ -0,0 +1,180 @@
+package org.decisiondeck.jmcda.xws;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+import org.decisiondeck.jmcda.exc.FunctionWithInputCheck;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Preconditions;
+import com.google.common.io.ByteSource;
+import com.google.common.io.Files;
+
+/**
+ * <p>
+ * A file to source function, to be given to the input transformer (see
+ * {@link org.decisiondeck.jmcda.xws.transformer.InputTransformer#setFileToSource(FunctionWithInputCheck)}), that maps
+ * large files in memory instead of copying them through buffered streams. The streams it opens copy from the mapped
+ * region straight into the arrays the parser reads into, without the system calls and the intermediate buffer of a
+ * buffered file stream. Files smaller than a threshold, for which mapping costs more than it saves, and files too large
+ * to be mapped at once (two gigabytes or more) are read as with {@link Files#asByteSource(File)}.
+ * </p>
+ * <p>
+ * The file is only accessed when a stream is opened, thus a missing file is reported then, as a
+ * {@link java.io.FileNotFoundException}. Objects of this class are immutable, and the sources they return may be read
+ * concurrently. Closing a stream drops its reference to the mapping, but the mapping itself is released only when
+ * the garbage collector reclaims it, as unmapping explicitly would crash the JVM on a late access.
+ * </p>
+ *
+ * @author Olivier Cailloux
+ *
+ */
+public final class FileToMappedSource implements FunctionWithInputCheck<File, ByteSource> {
+	private static final class BufferInputStream extends InputStream {
+		/**
+		 * <code>null</code> iff closed.
+		 */
+		private ByteBuffer m_buffer;
+
+		public BufferInputStream(ByteBuffer buffer) {
+			m_buffer = Preconditions.checkNotNull(buffer);
+		}
+
+		@Override
+		public int available() throws IOException {
+			return getBuffer().remaining();
+		}
+
+		@Override
+		public void close() {
+			m_buffer = null;
+		}
+
+		@Override
+		public int read() throws IOException {
+			final ByteBuffer buffer = getBuffer();
+			if (!buffer.hasRemaining()) {
+				return -1;
+			}
+			return buffer.get() & 0xFF;
+		}
+
+		@Override
+		public int read(byte[] bytes, int offset, int length) throws IOException {
+			Preconditions.checkPositionIndexes(offset, offset + length, bytes.length);
+			final ByteBuffer buffer = getBuffer();
+			if (length == 0) {
+				return 0;
+			}
+			if (!buffer.hasRemaining()) {
+				return -1;
+			}
+			final int read = Math.min(length, buffer.remaining());
+			buffer.get(bytes, offset, read);
+			return read;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			final ByteBuffer buffer = getBuffer();
+			if (n <= 0) {
+				return 0;
+			}
+			final int skipped = (int) Math.min(n, buffer.remaining());
+			buffer.position(buffer.position() + skipped);
+			return skipped;
+		}
+
+		private ByteBuffer getBuffer() throws IOException {
+			final ByteBuffer buffer = m_buffer;
+			if (buffer == null) {
+				throw new IOException("Stream closed.");
+			}
+			return buffer;
+		}
+	}
+
+	private final class MappedSource extends ByteSource {
+		private final File m_file;
+
+		public MappedSource(File file) {
+			m_file = Preconditions.checkNotNull(file);
+		}
+
+		@Override
+		public InputStream openStream() throws IOException {
+			final long size = m_file.length();
+			if (size < m_minMappedSize) {
+				return Files.asByteSource(m_file).openBufferedStream();
+			}
+			if (size > Integer.MAX_VALUE) {
+				return Files.asByteSource(m_file).openStream();
+			}
+			try (RandomAccessFile file = new RandomAccessFile(m_file, "r");
+					FileChannel channel = file.getChannel()) {
+				/** The mapping stays valid once the channel is closed, until it is garbage collected. */
+				return new BufferInputStream(channel.map(MapMode.READ_ONLY, 0, channel.size()));
+			}
+		}
+
+		@Override
+		public long size() throws IOException {
+			return Files.asByteSource(m_file).size();
+		}
+
+		@Override
+		public Optional<Long> sizeIfKnown() {
+			return Files.asByteSource(m_file).sizeIfKnown();
+		}
+
+		@Override
+		public String toString() {
+			return "FileToMappedSource.source(" + m_file + ")";
+		}
+	}
+
+	/**
+	 * The default threshold, in bytes, under which files are read instead of mapped.
+	 */
+	public static final long DEFAULT_MIN_MAPPED_SIZE = 1 << 20;
+
+	private final long m_minMappedSize;
+
+	/**
+	 * Creates a function that maps the files of at least {@link #DEFAULT_MIN_MAPPED_SIZE} bytes.
+	 */
+	public FileToMappedSource() {
+		this(DEFAULT_MIN_MAPPED_SIZE);
+	}
+
+	/**
+	 * @param minMappedSize
+	 *            the size, in bytes, from which files are mapped instead of read; at least zero.
+	 */
+	public FileToMappedSource(long minMappedSize) {
+		Preconditions.checkArgument(minMappedSize >= 0);
+		m_minMappedSize = minMappedSize;
+	}
+
+	@Override
+	public ByteSource apply(File input) {
+		return new MappedSource(input);
+	}
+
+	/**
+	 * @return the size, in bytes, from which files are mapped instead of read.
+	 */
+	public long getMinMappedSize() {
+		return m_minMappedSize;
+	}
+
+	@Override
+	public String toString() {
+		return "FileToMappedSource(" + m_minMappedSize + ")";
+	}
+}
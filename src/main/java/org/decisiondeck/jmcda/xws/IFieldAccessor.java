@@ -0,0 +1,35 @@
+package org.decisiondeck.jmcda.xws;
+
+import org.decisiondeck.jmcda.exc.InvalidInvocationException;
+
+/**
+ * Reads and writes one given field of worker instances. Obtained from an {@link IFieldAccessorFactory}, once per field
+ * of a worker class, and then used for every instance of that worker. Implementations must be immutable.
+ *
+ * @author Olivier Cailloux
+ *
+ */
+public interface IFieldAccessor {
+	/**
+	 * Retrieves the value of the field in the given worker.
+	 *
+	 * @param worker
+	 *            not <code>null</code>, an instance of the class declaring the field.
+	 * @return the value of the field, possibly <code>null</code>.
+	 * @throws InvalidInvocationException
+	 *             if the field can't be read.
+	 */
+	public Object get(IXWS worker) throws InvalidInvocationException;
+
+	/**
+	 * Sets the field in the given worker to the given value.
+	 *
+	 * @param worker
+	 *            not <code>null</code>, an instance of the class declaring the field.
+	 * @param value
+	 *            may be <code>null</code> iff the field type is not primitive.
+	 * @throws InvalidInvocationException
+	 *             if the field can't be set, e.g. because it is final or the value has the wrong type.
+	 */
+	public void set(IXWS worker, Object value) throws InvalidInvocationException;
+}
@@ -0,0 +1,24 @@
+package org.decisiondeck.jmcda.xws;
+
+import java.lang.reflect.Field;
+
+import org.decisiondeck.jmcda.exc.InvalidInvocationException;
+
+/**
+ * Binds fields of worker classes to {@link IFieldAccessor}s. The binding is done once per field, when computing the
+ * {@link XWSInjectionPlan} of a worker class. Implementations must be thread-safe.
+ *
+ * @author Olivier Cailloux
+ * @see FieldAccessors
+ *
+ */
+public interface IFieldAccessorFactory {
+	/**
+	 * @param field
+	 *            not <code>null</code>, a public field.
+	 * @return not <code>null</code>.
+	 * @throws InvalidInvocationException
+	 *             if the field can't be bound.
+	 */
+	public IFieldAccessor getAccessor(Field field) throws InvalidInvocationException;
+}
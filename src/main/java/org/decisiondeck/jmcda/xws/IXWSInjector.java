@@ -0,0 +1,43 @@
+package org.decisiondeck.jmcda.xws;
+
+import org.decisiondeck.jmcda.exc.InvalidInvocationException;
+
+/**
+ * <p>
+ * Instantiates a given worker class and describes how to inject its fields, without using reflection. Implementations
+ * are generated at compile time, one per worker, by the {@link org.decisiondeck.jmcda.xws.processor.XWSInjectorProcessor
+ * annotation processor}, and named after their worker, so that the {@link XWSExecutor} can find them through
+ * {@link XWSInjectors}.
+ * </p>
+ * <p>
+ * Implementations must be public, have a public no-argument constructor, and be immutable.
+ * </p>
+ *
+ * @author Olivier Cailloux
+ *
+ */
+public interface IXWSInjector {
+	/**
+	 * @return the worker class, not <code>null</code>.
+	 */
+	public Class<? extends IXWS> getWorkerClass();
+
+	/**
+	 * @return the binary name of the worker class, as given by {@link Class#getName()}; not <code>null</code>.
+	 */
+	public String getWorkerClassName();
+
+	/**
+	 * Builds the injection plan of the worker class, with accessors that read and write the fields directly.
+	 *
+	 * @return not <code>null</code>.
+	 * @throws InvalidInvocationException
+	 *             if an output transformer can't be introspected.
+	 */
+	public XWSInjectionPlan newPlan() throws InvalidInvocationException;
+
+	/**
+	 * @return a new instance of the worker class, not <code>null</code>.
+	 */
+	public IXWS newWorker();
+}
@@ -0,0 +1,33 @@
+package org.decisiondeck.jmcda.xws;
+
+/**
+ * <p>
+ * An optional interface for workers, alongside {@link IXWS}, for workers which build expensive internal state, and
+ * which can therefore be reused from one job to the next through an {@link XWSWorkerPool}. Workers that do not
+ * implement this interface are never pooled.
+ * </p>
+ * <p>
+ * Before a worker is given back to the pool, the executor clears its annotated fields, then calls {@link #reset()}.
+ * When the pool discards the worker, it calls {@link #close()}.
+ * </p>
+ *
+ * @author Olivier Cailloux
+ *
+ */
+public interface IXWSLifecycle {
+	/**
+	 * Releases the resources held by this worker. The worker is not used any more after this call. Implementations
+	 * should not throw exceptions.
+	 */
+	public void close();
+
+	/**
+	 * Forgets any state that depends on the job that has just been executed, while keeping the state that can be
+	 * reused for the next job (e.g. solver handles, lookup tables, buffers). The annotated fields have already been
+	 * cleared when this is called.
+	 *
+	 * @return <code>false</code> if this worker can't be reused, in which case it is {@link #close() closed} instead of
+	 *         being pooled.
+	 */
+	public boolean reset();
+}
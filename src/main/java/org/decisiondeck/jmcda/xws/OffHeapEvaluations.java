@@ -0,0 +1,260 @@
+package org.decisiondeck.jmcda.xws;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+
+import org.decision_deck.jmcda.structure.Alternative;
+import org.decision_deck.jmcda.structure.Criterion;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * <p>
+ * Evaluations of alternatives on criteria stored outside of the Java heap, in a temporary file mapped in memory, for
+ * performance tables too large to be held comfortably on the heap. The values are laid out as in
+ * {@link DenseEvaluations}, row by row, with {@link Double#NaN} for missing evaluations, but are split into segments
+ * of at most {@value #SEGMENT_SIZE} values, so that their number is not limited by the size of a buffer. Only the
+ * alternatives, the criteria and their indexes are held on the heap. The operating system pages the values in and
+ * out as needed, thus they are not bounded by the maximal direct memory of the JVM either.
+ * </p>
+ * <p>
+ * The file is deleted by {@link #close()}, whereas the memory is released when the garbage collector reclaims the
+ * mapping: unmapping it explicitly would crash the JVM if a thread still used it. A worker field of this type
+ * annotated with {@link XWSInput} is read from a performance table by {@link SourceToOffHeapEvaluations}, unless
+ * another transformer is given, and closed by the executor when the job ends, after its outputs are written: the
+ * worker must thus not keep references to it, and must copy whatever it outputs. Such inputs are never cached.
+ * Reading and setting values from several threads is safe as long as no two threads set the same value; a use
+ * concurrent with closing either succeeds or fails with an {@link IllegalStateException}.
+ * </p>
+ *
+ * @author Olivier Cailloux
+ *
+ */
+public final class OffHeapEvaluations implements Closeable {
+	/**
+	 * The maximal number of values in a segment, the power of two corresponding to one gibibyte.
+	 */
+	public static final int SEGMENT_SIZE = 1 << 27;
+
+	private static final int SEGMENT_SHIFT = 27;
+
+	private static final Logger s_logger = LoggerFactory.getLogger(OffHeapEvaluations.class);
+
+	private static <T> ImmutableMap<T, Integer> index(List<T> elements) {
+		final ImmutableMap.Builder<T, Integer> builder = ImmutableMap.builder();
+		for (int i = 0; i < elements.size(); ++i) {
+			builder.put(elements.get(i), Integer.valueOf(i));
+		}
+		return builder.build();
+	}
+
+	private final ImmutableMap<Alternative, Integer> m_alternativeIndexes;
+
+	private final ImmutableList<Alternative> m_alternatives;
+
+	private final ImmutableList<Criterion> m_criteria;
+
+	private final ImmutableMap<Criterion, Integer> m_criterionIndexes;
+
+	private final File m_file;
+
+	/**
+	 * Views of the mapped buffers, which they keep reachable, <code>null</code> iff closed.
+	 */
+	private DoubleBuffer[] m_segments;
+
+	/**
+	 * Creates evaluations of the given alternatives on the given criteria, all missing, in a new temporary file of the
+	 * given directory.
+	 *
+	 * @param alternatives
+	 *            not <code>null</code>, without duplicates, indexed in this order.
+	 * @param criteria
+	 *            not <code>null</code>, without duplicates, indexed in this order.
+	 * @param directory
+	 *            <code>null</code> for the default temporary directory.
+	 * @throws IOException
+	 *             if the file can't be created or mapped.
+	 */
+	public OffHeapEvaluations(List<Alternative> alternatives, List<Criterion> criteria, File directory)
+			throws IOException {
+		m_alternatives = ImmutableList.copyOf(alternatives);
+		m_criteria = ImmutableList.copyOf(criteria);
+		m_alternativeIndexes = index(m_alternatives);
+		m_criterionIndexes = index(m_criteria);
+		final long size = (long) m_alternatives.size() * m_criteria.size();
+		final int segments = (int) ((size + SEGMENT_SIZE - 1) >>> SEGMENT_SHIFT);
+		m_file = File.createTempFile("evaluations", ".bin", directory);
+		m_segments = new DoubleBuffer[segments];
+		boolean mapped = false;
+		try (RandomAccessFile file = new RandomAccessFile(m_file, "rw"); FileChannel channel = file.getChannel()) {
+			for (int s = 0; s < segments; ++s) {
+				final long offset = (long) s << SEGMENT_SHIFT;
+				final int values = (int) Math.min(SEGMENT_SIZE, size - offset);
+				final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, offset * 8, values * 8L);
+				m_segments[s] = buffer.order(ByteOrder.nativeOrder()).asDoubleBuffer();
+				for (int v = 0; v < values; ++v) {
+					m_segments[s].put(v, Double.NaN);
+				}
+			}
+			mapped = true;
+		} finally {
+			if (!mapped) {
+				close();
+			}
+		}
+	}
+
+	/**
+	 * Deletes the file holding the values, or has it deleted when the JVM exits if the platform does not permit
+	 * deleting a mapped file. The mapping itself is released when the garbage collector reclaims the buffers. Has no
+	 * effect if these evaluations are already closed. Any other use of these evaluations afterwards fails.
+	 */
+	@Override
+	public void close() {
+		if (m_segments == null) {
+			return;
+		}
+		m_segments = null;
+		if (!m_file.delete()) {
+			s_logger.debug("Could not delete {} while mapped, deleting on exit.", m_file);
+			m_file.deleteOnExit();
+		}
+	}
+
+	public int getAlternativeCount() {
+		return m_alternatives.size();
+	}
+
+	/**
+	 * @param alternative
+	 *            not <code>null</code>.
+	 * @return the index of the given alternative, or <code>-1</code> if it is not one of these evaluations.
+	 */
+	public int getAlternativeIndex(Alternative alternative) {
+		final Integer index = m_alternativeIndexes.get(alternative);
+		return index == null ? -1 : index.intValue();
+	}
+
+	/**
+	 * @return the alternatives, in the order of their indexes.
+	 */
+	public ImmutableList<Alternative> getAlternatives() {
+		return m_alternatives;
+	}
+
+	/**
+	 * @return the criteria, in the order of their indexes.
+	 */
+	public ImmutableList<Criterion> getCriteria() {
+		return m_criteria;
+	}
+
+	public int getCriterionCount() {
+		return m_criteria.size();
+	}
+
+	/**
+	 * @param criterion
+	 *            not <code>null</code>.
+	 * @return the index of the given criterion, or <code>-1</code> if it is not one of these evaluations.
+	 */
+	public int getCriterionIndex(Criterion criterion) {
+		final Integer index = m_criterionIndexes.get(criterion);
+		return index == null ? -1 : index.intValue();
+	}
+
+	/**
+	 * @param alternative
+	 *            not <code>null</code>.
+	 * @param criterion
+	 *            not <code>null</code>.
+	 * @return the evaluation of the given alternative on the given criterion, <code>null</code> if it is missing or
+	 *         if the alternative or the criterion is not one of these evaluations.
+	 */
+	public Double getEntry(Alternative alternative, Criterion criterion) {
+		final int i = getAlternativeIndex(alternative);
+		final int j = getCriterionIndex(criterion);
+		if (i == -1 || j == -1) {
+			return null;
+		}
+		final double value = getValue(i, j);
+		return Double.isNaN(value) ? null : Double.valueOf(value);
+	}
+
+	/**
+	 * @param alternative
+	 *            the index of an alternative.
+	 * @param criterion
+	 *            the index of a criterion.
+	 * @return the evaluation, {@link Double#NaN} if it is missing.
+	 */
+	public double getValue(int alternative, int criterion) {
+		final long position = getPosition(alternative, criterion);
+		return getSegments()[(int) (position >>> SEGMENT_SHIFT)].get((int) (position & (SEGMENT_SIZE - 1)));
+	}
+
+	/**
+	 * @return the number of evaluations that are not missing.
+	 */
+	public long getValueCount() {
+		long count = 0;
+		for (DoubleBuffer segment : getSegments()) {
+			for (int v = 0; v < segment.limit(); ++v) {
+				if (!Double.isNaN(segment.get(v))) {
+					++count;
+				}
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * @return <code>true</code> iff these evaluations have been closed.
+	 */
+	public boolean isClosed() {
+		return m_segments == null;
+	}
+
+	/**
+	 * @param alternative
+	 *            the index of an alternative.
+	 * @param criterion
+	 *            the index of a criterion.
+	 * @param value
+	 *            {@link Double#NaN} to remove the evaluation.
+	 */
+	public void setValue(int alternative, int criterion, double value) {
+		final long position = getPosition(alternative, criterion);
+		getSegments()[(int) (position >>> SEGMENT_SHIFT)].put((int) (position & (SEGMENT_SIZE - 1)), value);
+	}
+
+	@Override
+	public String toString() {
+		return "Off heap evaluations of " + m_alternatives.size() + " alternatives on " + m_criteria.size()
+				+ " criteria" + (isClosed() ? " (closed)" : " in " + m_file);
+	}
+
+	private long getPosition(int alternative, int criterion) {
+		Preconditions.checkElementIndex(alternative, m_alternatives.size());
+		Preconditions.checkElementIndex(criterion, m_criteria.size());
+		return (long) alternative * m_criteria.size() + criterion;
+	}
+
+	private DoubleBuffer[] getSegments() {
+		final DoubleBuffer[] segments = m_segments;
+		Preconditions.checkState(segments != null, "Closed.");
+		return segments;
+	}
+}
@@ -0,0 +1,106 @@
+package org.decisiondeck.jmcda.xws;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.decision_deck.jmcda.structure.Alternative;
+import org.decision_deck.jmcda.structure.Criterion;
+import org.decisiondeck.jmcda.exc.FunctionWithInputCheck;
+import org.decisiondeck.jmcda.exc.InvalidInputException;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.ByteSource;
+
+/**
+ * <p>
+ * Reads the performance tables of an XMCDA document into {@link DenseEvaluations}, streaming the document as
+ * {@link SourceToEvaluations} does, but without boxing the values nor creating an object per evaluation. This is the
+ * default transformer of input fields whose type is {@link DenseEvaluations}.
+ * </p>
+ * <p>
+ * The alternatives and criteria are indexed in the order they first appear in the document. When a document
+ * evaluates an alternative more than once on the same criterion, the last value is kept. Values must not be
+ * <code>NaN</code>.
+ * </p>
+ *
+ * @author Olivier Cailloux
+ *
+ */
+public class SourceToDenseEvaluations implements FunctionWithInputCheck<ByteSource, DenseEvaluations> {
+	/**
+	 * Collects the performances read as parallel arrays of alternative indexes, criterion indexes and values.
+	 */
+	private static final class Collector implements XMCDAStreamReader.PerformanceHandler {
+		private final Map<String, Integer> m_alternatives = Maps.newLinkedHashMap();
+
+		private int[] m_alternativeIndexes = new int[16];
+
+		private int m_count = 0;
+
+		private final Map<String, Integer> m_criteria = Maps.newLinkedHashMap();
+
+		private int[] m_criterionIndexes = new int[16];
+
+		private double[] m_values = new double[16];
+
+		public Collector() {
+			/** Nothing to initialize. */
+		}
+
+		@Override
+		public void add(String alternative, String criterion, double value) throws InvalidInputException {
+			if (Double.isNaN(value)) {
+				throw new InvalidInputException("Invalid value NaN for " + alternative + " on " + criterion + ".");
+			}
+			if (m_count == m_values.length) {
+				m_alternativeIndexes = Arrays.copyOf(m_alternativeIndexes, m_count * 2);
+				m_criterionIndexes = Arrays.copyOf(m_criterionIndexes, m_count * 2);
+				m_values = Arrays.copyOf(m_values, m_count * 2);
+			}
+			m_alternativeIndexes[m_count] = getIndex(m_alternatives, alternative);
+			m_criterionIndexes[m_count] = getIndex(m_criteria, criterion);
+			m_values[m_count] = value;
+			++m_count;
+		}
+
+		public DenseEvaluations build() {
+			final List<Alternative> alternatives = Lists.newArrayListWithCapacity(m_alternatives.size());
+			for (String alternative : m_alternatives.keySet()) {
+				alternatives.add(new Alternative(alternative));
+			}
+			final List<Criterion> criteria = Lists.newArrayListWithCapacity(m_criteria.size());
+			for (String criterion : m_criteria.keySet()) {
+				criteria.add(new Criterion(criterion));
+			}
+			final DenseEvaluations evaluations = new DenseEvaluations(alternatives, criteria);
+			final double[] values = evaluations.getValues();
+			for (int e = 0; e < m_count; ++e) {
+				values[m_alternativeIndexes[e] * criteria.size() + m_criterionIndexes[e]] = m_values[e];
+			}
+			return evaluations;
+		}
+
+		private int getIndex(Map<String, Integer> dictionary, String id) {
+			final Integer index = dictionary.get(id);
+			if (index != null) {
+				return index.intValue();
+			}
+			final int added = dictionary.size();
+			dictionary.put(id, Integer.valueOf(added));
+			return added;
+		}
+	}
+
+	public SourceToDenseEvaluations() {
+		/** Public default constructor (necessary). */
+	}
+
+	@Override
+	public DenseEvaluations apply(ByteSource input) throws InvalidInputException {
+		final Collector collector = new Collector();
+		XMCDAStreamReader.readPerformances(input, collector);
+		return collector.build();
+	}
+}
@@ -0,0 +1,45 @@
+package org.decisiondeck.jmcda.xws;
+
+import org.decision_deck.jmcda.structure.Alternative;
+import org.decision_deck.jmcda.structure.Criterion;
+import org.decision_deck.jmcda.structure.matrix.Evaluations;
+import org.decision_deck.jmcda.structure.matrix.EvaluationsUtils;
+import org.decisiondeck.jmcda.exc.FunctionWithInputCheck;
+import org.decisiondeck.jmcda.exc.InvalidInputException;
+
+import com.google.common.io.ByteSource;
+
+/**
+ * <p>
+ * Reads the performance tables of an XMCDA document into evaluations, streaming the document with StAX instead of
+ * building its XMLBeans tree, so that the memory used is about the size of the evaluations rather than several times
+ * the size of the file. To be used as the transformer of an input field whose type is {@link Evaluations} (or a super
+ * type), for example <code>@XWSInput(name = "performanceTable.xml", transformer = SourceToEvaluations.class)</code>.
+ * </p>
+ * <p>
+ * Every <code>alternativePerformances</code> element of every <code>performanceTable</code> of the document is read,
+ * and every <code>performance</code> in it gives the evaluation of the alternative on the criterion it references.
+ * Values must be <code>real</code> or <code>integer</code>. The document is not validated against the XMCDA schema;
+ * other elements are ignored.
+ * </p>
+ *
+ * @author Olivier Cailloux
+ *
+ */
+public class SourceToEvaluations implements FunctionWithInputCheck<ByteSource, Evaluations> {
+	public SourceToEvaluations() {
+		/** Public default constructor (necessary). */
+	}
+
+	@Override
+	public Evaluations apply(ByteSource input) throws InvalidInputException {
+		final Evaluations evaluations = EvaluationsUtils.newEvaluationMatrix();
+		XMCDAStreamReader.readPerformances(input, new XMCDAStreamReader.PerformanceHandler() {
+			@Override
+			public void add(String alternative, String criterion, double value) {
+				evaluations.put(new Alternative(alternative), new Criterion(criterion), value);
+			}
+		});
+		return evaluations;
+	}
+}
@@ -0,0 +1,91 @@
+package org.decisiondeck.jmcda.xws;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import org.decision_deck.jmcda.structure.Alternative;
+import org.decision_deck.jmcda.structure.Criterion;
+import org.decisiondeck.jmcda.exc.FunctionWithInputCheck;
+import org.decisiondeck.jmcda.exc.InvalidInputException;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.ByteSource;
+
+/**
+ * <p>
+ * Reads the performance tables of an XMCDA document into {@link OffHeapEvaluations}, streaming the document twice:
+ * once to index the alternatives and criteria, in the order they first appear, then once to store each value at its
+ * place, so that only the indexes are held on the heap. This is the default transformer of input fields whose type is
+ * {@link OffHeapEvaluations}.
+ * </p>
+ * <p>
+ * When a document evaluates an alternative more than once on the same criterion, the last value is kept. Values must
+ * not be <code>NaN</code>. The evaluations returned must be closed by the caller; the executor does it when the job
+ * ends.
+ * </p>
+ *
+ * @author Olivier Cailloux
+ *
+ */
+public class SourceToOffHeapEvaluations implements FunctionWithInputCheck<ByteSource, OffHeapEvaluations> {
+	public SourceToOffHeapEvaluations() {
+		/** Public default constructor (necessary). */
+	}
+
+	@Override
+	public OffHeapEvaluations apply(ByteSource input) throws InvalidInputException {
+		final Map<String, Integer> alternatives = Maps.newLinkedHashMap();
+		final Map<String, Integer> criteria = Maps.newLinkedHashMap();
+		XMCDAStreamReader.readPerformances(input, new XMCDAStreamReader.PerformanceHandler() {
+			@Override
+			public void add(String alternative, String criterion, double value) throws InvalidInputException {
+				if (Double.isNaN(value)) {
+					throw new InvalidInputException("Invalid value NaN for " + alternative + " on " + criterion + ".");
+				}
+				if (!alternatives.containsKey(alternative)) {
+					alternatives.put(alternative, Integer.valueOf(alternatives.size()));
+				}
+				if (!criteria.containsKey(criterion)) {
+					criteria.put(criterion, Integer.valueOf(criteria.size()));
+				}
+			}
+		});
+
+		final List<Alternative> alternativesList = Lists.newArrayListWithCapacity(alternatives.size());
+		for (String alternative : alternatives.keySet()) {
+			alternativesList.add(new Alternative(alternative));
+		}
+		final List<Criterion> criteriaList = Lists.newArrayListWithCapacity(criteria.size());
+		for (String criterion : criteria.keySet()) {
+			criteriaList.add(new Criterion(criterion));
+		}
+		final OffHeapEvaluations evaluations;
+		try {
+			evaluations = new OffHeapEvaluations(alternativesList, criteriaList, null);
+		} catch (IOException exc) {
+			throw new IllegalStateException("Could not allocate the evaluations read from " + input + ".", exc);
+		}
+		boolean read = false;
+		try {
+			XMCDAStreamReader.readPerformances(input, new XMCDAStreamReader.PerformanceHandler() {
+				@Override
+				public void add(String alternative, String criterion, double value) throws InvalidInputException {
+					final Integer i = alternatives.get(alternative);
+					final Integer j = criteria.get(criterion);
+					if (i == null || j == null) {
+						throw new InvalidInputException("The content of " + input + " changed while being read.");
+					}
+					evaluations.setValue(i.intValue(), j.intValue(), value);
+				}
+			});
+			read = true;
+		} finally {
+			if (!read) {
+				evaluations.close();
+			}
+		}
+		return evaluations;
+	}
+}
@@ -0,0 +1,179 @@
+package org.decisiondeck.jmcda.xws;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import com.google.common.base.Preconditions;
+import com.google.common.io.ByteSink;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+
+/**
+ * <p>
+ * A sink writing to a file only if the content written differs from the content the file already has, so that
+ * rewriting an identical output leaves the file, and its modification time, untouched. The streams it opens compare
+ * the bytes written with those of the existing file as they come, without writing anything, until they differ. From
+ * then on, the bytes are written to a temporary file in the same directory, starting with the common prefix, which
+ * replaces the existing file when the stream is closed. When the file does not exist, the streams write to it
+ * directly.
+ * </p>
+ * <p>
+ * Unchanged content is thus detected without holding the output in memory nor storing digests beside the files.
+ * Objects of this class are immutable, but the file must not be written concurrently by several streams.
+ * </p>
+ *
+ * @author Olivier Cailloux
+ *
+ */
+final class UnchangedFileSink extends ByteSink {
+	private final class ComparingOutputStream extends OutputStream {
+		private final byte[] m_buffer = new byte[8192];
+
+		private boolean m_closed;
+
+		private final InputStream m_existing;
+
+		/**
+		 * The number of bytes written so far, while they are equal to those of the existing file.
+		 */
+		private long m_matched;
+
+		/**
+		 * <code>null</code> while the bytes written are equal to those of the existing file.
+		 */
+		private OutputStream m_output;
+
+		/**
+		 * <code>null</code> while the bytes written are equal to those of the existing file.
+		 */
+		private File m_temporary;
+
+		public ComparingOutputStream(InputStream existing) {
+			m_existing = Preconditions.checkNotNull(existing);
+			m_closed = false;
+			m_matched = 0;
+			m_output = null;
+			m_temporary = null;
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (m_closed) {
+				return;
+			}
+			m_closed = true;
+			try {
+				if (m_output == null) {
+					if (m_existing.read() == -1) {
+						m_onSkipped.run();
+						return;
+					}
+					/** The existing file is longer. */
+					diverge();
+				}
+				m_output.close();
+				Files.move(m_temporary, m_file);
+			} finally {
+				m_existing.close();
+				if (m_output != null) {
+					m_output.close();
+				}
+				if (m_temporary != null) {
+					m_temporary.delete();
+				}
+			}
+		}
+
+		@Override
+		public void flush() throws IOException {
+			if (m_output != null) {
+				m_output.flush();
+			}
+		}
+
+		@Override
+		public void write(byte[] bytes, int offset, int length) throws IOException {
+			Preconditions.checkPositionIndexes(offset, offset + length, bytes.length);
+			Preconditions.checkState(!m_closed, "Closed.");
+			if (m_output == null) {
+				if (matches(bytes, offset, length)) {
+					m_matched += length;
+					return;
+				}
+				diverge();
+			}
+			m_output.write(bytes, offset, length);
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			write(new byte[] { (byte) b }, 0, 1);
+		}
+
+		/**
+		 * Starts writing to a temporary file, beginning with the bytes matched so far.
+		 */
+		private void diverge() throws IOException {
+			m_temporary = File.createTempFile(m_file.getName(), ".tmp", m_file.getAbsoluteFile().getParentFile());
+			m_output = new BufferedOutputStream(new FileOutputStream(m_temporary));
+			Files.asByteSource(m_file).slice(0, m_matched).copyTo(m_output);
+		}
+
+		/**
+		 * Reads the given number of bytes from the existing file.
+		 *
+		 * @return <code>true</code> iff they are equal to the given ones.
+		 */
+		private boolean matches(byte[] bytes, int offset, int length) throws IOException {
+			int compared = 0;
+			while (compared < length) {
+				final int toRead = Math.min(m_buffer.length, length - compared);
+				if (ByteStreams.read(m_existing, m_buffer, 0, toRead) < toRead) {
+					return false;
+				}
+				for (int i = 0; i < toRead; ++i) {
+					if (m_buffer[i] != bytes[offset + compared + i]) {
+						return false;
+					}
+				}
+				compared += toRead;
+			}
+			return true;
+		}
+	}
+
+	private final File m_file;
+
+	private final Runnable m_onSkipped;
+
+	/**
+	 * @param file
+	 *            not <code>null</code>.
+	 * @param onSkipped
+	 *            run each time a stream is closed without having modified the file because its content is unchanged;
+	 *            not <code>null</code>.
+	 */
+	public UnchangedFileSink(File file, Runnable onSkipped) {
+		m_file = Preconditions.checkNotNull(file);
+		m_onSkipped = Preconditions.checkNotNull(onSkipped);
+	}
+
+	@Override
+	public OutputStream openStream() throws IOException {
+		if (!m_file.isFile()) {
+			return Files.asByteSink(m_file).openStream();
+		}
+		return new ComparingOutputStream(new BufferedInputStream(new FileInputStream(m_file)));
+	}
+
+	@Override
+	public String toString() {
+		return "Sink to " + m_file + " skipping unchanged content";
+	}
+}
@@ -0,0 +1,120 @@
+package org.decisiondeck.jmcda.xws;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.decisiondeck.jmcda.exc.InvalidInputException;
+
+import com.google.common.base.Preconditions;
+import com.google.common.io.ByteSource;
+
+/**
+ * Reads the performance tables of XMCDA documents by streaming them with StAX, without building their XMLBeans tree,
+ * and gives each performance to a handler, which builds the value the transformer returns. The documents are not
+ * validated against the XMCDA schema; elements other than performance tables are ignored.
+ *
+ * @author Olivier Cailloux
+ *
+ */
+final class XMCDAStreamReader {
+	/**
+	 * Receives the performances read, in document order.
+	 */
+	static interface PerformanceHandler {
+		public void add(String alternative, String criterion, double value) throws InvalidInputException;
+	}
+
+	/**
+	 * Gives every <code>performance</code> in every <code>alternativePerformances</code> element of every
+	 * <code>performanceTable</code> of the given document to the given handler. Values must be <code>real</code> or
+	 * <code>integer</code>.
+	 *
+	 * @param input
+	 *            not <code>null</code>.
+	 * @param handler
+	 *            not <code>null</code>.
+	 * @throws InvalidInputException
+	 *             if the document can't be read or parsed, if a performance is incomplete or has an invalid value, or
+	 *             if the handler throws it.
+	 */
+	static void readPerformances(ByteSource input, PerformanceHandler handler) throws InvalidInputException {
+		Preconditions.checkNotNull(input);
+		Preconditions.checkNotNull(handler);
+		final XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+		factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+		try (InputStream stream = input.openBufferedStream()) {
+			final XMLStreamReader reader = factory.createXMLStreamReader(stream);
+			try {
+				readPerformances(reader, handler);
+			} finally {
+				reader.close();
+			}
+		} catch (IOException exc) {
+			throw new InvalidInputException("Could not read " + input + ".", exc);
+		} catch (XMLStreamException exc) {
+			throw new InvalidInputException("Could not parse " + input + ".", exc);
+		}
+	}
+
+	private static void readPerformances(XMLStreamReader reader, PerformanceHandler handler)
+			throws XMLStreamException, InvalidInputException {
+		boolean inTable = false;
+		boolean inPerformance = false;
+		String alternative = null;
+		String criterion = null;
+		Double value = null;
+		while (reader.hasNext()) {
+			final int event = reader.next();
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				final String name = reader.getLocalName();
+				if (name.equals("performanceTable")) {
+					inTable = true;
+				} else if (!inTable) {
+					continue;
+				} else if (name.equals("alternativePerformances")) {
+					alternative = null;
+				} else if (name.equals("alternativeID") && !inPerformance) {
+					alternative = reader.getElementText().trim();
+				} else if (name.equals("performance")) {
+					inPerformance = true;
+					criterion = null;
+					value = null;
+				} else if (name.equals("criterionID") && inPerformance) {
+					criterion = reader.getElementText().trim();
+				} else if ((name.equals("real") || name.equals("integer")) && inPerformance) {
+					final String text = reader.getElementText().trim();
+					try {
+						value = Double.valueOf(text);
+					} catch (NumberFormatException exc) {
+						throw new InvalidInputException("Invalid value " + text + " at line "
+								+ reader.getLocation().getLineNumber() + ".", exc);
+					}
+				}
+			} else if (event == XMLStreamConstants.END_ELEMENT) {
+				final String name = reader.getLocalName();
+				if (name.equals("performanceTable")) {
+					inTable = false;
+				} else if (name.equals("performance") && inTable) {
+					inPerformance = false;
+					if (alternative == null || criterion == null || value == null) {
+						throw new InvalidInputException("Incomplete performance at line "
+								+ reader.getLocation().getLineNumber() + ": alternative " + alternative
+								+ ", criterion " + criterion + ", value " + value + ".");
+					}
+					handler.add(alternative, criterion, value.doubleValue());
+				}
+			}
+		}
+	}
+
+	private XMCDAStreamReader() {
+		/** Static methods only. */
+	}
+}
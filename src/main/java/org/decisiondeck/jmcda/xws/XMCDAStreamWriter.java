@@ -0,0 +1,243 @@
+package org.decisiondeck.jmcda.xws;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Type;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.decision_deck.jmcda.structure.Alternative;
+import org.decision_deck.jmcda.structure.Criterion;
+import org.decision_deck.utils.matrix.SparseMatrixDRead;
+
+import com.google.common.base.Preconditions;
+import com.google.common.io.ByteSink;
+import com.google.common.reflect.TypeToken;
+
+/**
+ * <p>
+ * Writes some large output values as XMCDA 2 documents directly to their destination, element by element, instead of
+ * building an {@link org.decisiondeck.jmcda.persist.xmcda2.generated.XMCDADoc} first, so that the memory used while
+ * writing does not depend on the size of the output. The supported values are the sparse matrices of alternatives by
+ * criteria, such as evaluations, and the {@link DenseEvaluations}, written as a <code>performanceTable</code>, and the
+ * sparse matrices of alternatives by alternatives, such as concordance or outranking matrices, written as
+ * <code>alternativesComparisons</code>.
+ * </p>
+ * <p>
+ * The documents follow the structure of the XMCDA 2 schema, but are not validated while written. Objects of this class
+ * are immutable.
+ * </p>
+ *
+ * @author Olivier Cailloux
+ *
+ */
+public final class XMCDAStreamWriter {
+	private static enum Kind {
+		ALTERNATIVES_COMPARISONS, DENSE_PERFORMANCE_TABLE, PERFORMANCE_TABLE
+	}
+
+	/**
+	 * The namespace of the root element of the documents written.
+	 */
+	public static final String NAMESPACE = "http://www.decision-deck.org/2009/XMCDA-2.1.0";
+
+	private static Kind getKind(Type type) {
+		final TypeToken<?> token = TypeToken.of(type);
+		if (token.getRawType().equals(DenseEvaluations.class)) {
+			return Kind.DENSE_PERFORMANCE_TABLE;
+		}
+		if (!SparseMatrixDRead.class.isAssignableFrom(token.getRawType())) {
+			return null;
+		}
+		final Type[] parameters = SparseMatrixDRead.class.getTypeParameters();
+		final Type rows = token.resolveType(parameters[0]).getType();
+		final Type columns = token.resolveType(parameters[1]).getType();
+		if (!rows.equals(Alternative.class)) {
+			return null;
+		}
+		if (columns.equals(Criterion.class)) {
+			return Kind.PERFORMANCE_TABLE;
+		}
+		if (columns.equals(Alternative.class)) {
+			return Kind.ALTERNATIVES_COMPARISONS;
+		}
+		return null;
+	}
+
+	/**
+	 * @param type
+	 *            not <code>null</code>.
+	 * @return <code>true</code> iff values of the given type can be written by this object.
+	 */
+	public static boolean supports(Type type) {
+		return getKind(type) != null;
+	}
+
+	private static String toXsFloat(double value) {
+		if (value == Double.POSITIVE_INFINITY) {
+			return "INF";
+		}
+		if (value == Double.NEGATIVE_INFINITY) {
+			return "-INF";
+		}
+		return Double.toString(value);
+	}
+
+	/**
+	 * Writes the given value as an XMCDA document to the given sink.
+	 *
+	 * @param value
+	 *            not <code>null</code>, an instance of the given type.
+	 * @param type
+	 *            a {@link #supports(Type) supported} type.
+	 * @param sink
+	 *            not <code>null</code>.
+	 * @throws IOException
+	 *             if an exception happens while writing to the destination.
+	 */
+	public void write(Object value, Type type, ByteSink sink) throws IOException {
+		Preconditions.checkNotNull(value);
+		final Kind kind = getKind(type);
+		Preconditions.checkArgument(kind != null, "Unsupported type: %s.", type);
+		Preconditions.checkArgument(TypeToken.of(type).getRawType().isInstance(value));
+
+		try (OutputStream stream = sink.openBufferedStream()) {
+			final XMLStreamWriter writer = XMLOutputFactory.newInstance().createXMLStreamWriter(stream, "UTF-8");
+			try {
+				writer.writeStartDocument("UTF-8", "1.0");
+				writer.writeCharacters("\n");
+				writer.writeStartElement("xmcda", "XMCDA", NAMESPACE);
+				writer.writeNamespace("xmcda", NAMESPACE);
+				writer.writeCharacters("\n");
+				switch (kind) {
+				case PERFORMANCE_TABLE:
+					@SuppressWarnings("unchecked")
+					final SparseMatrixDRead<Alternative, Criterion> evaluations = (SparseMatrixDRead<Alternative, Criterion>) value;
+					writePerformanceTable(writer, evaluations);
+					break;
+				case DENSE_PERFORMANCE_TABLE:
+					writePerformanceTable(writer, (DenseEvaluations) value);
+					break;
+				case ALTERNATIVES_COMPARISONS:
+					@SuppressWarnings("unchecked")
+					final SparseMatrixDRead<Alternative, Alternative> matrix = (SparseMatrixDRead<Alternative, Alternative>) value;
+					writeAlternativesComparisons(writer, matrix);
+					break;
+				default:
+					throw new AssertionError();
+				}
+				writer.writeEndElement();
+				writer.writeCharacters("\n");
+				writer.writeEndDocument();
+				writer.flush();
+			} finally {
+				writer.close();
+			}
+		} catch (XMLStreamException exc) {
+			throw new IOException(exc);
+		}
+	}
+
+	private void writeAlternativesComparisons(XMLStreamWriter writer, SparseMatrixDRead<Alternative, Alternative> matrix)
+			throws XMLStreamException {
+		writer.writeStartElement("alternativesComparisons");
+		writer.writeStartElement("pairs");
+		writer.writeCharacters("\n");
+		for (Alternative initial : matrix.getRows()) {
+			for (Alternative terminal : matrix.getColumns()) {
+				final Double entry = matrix.getEntry(initial, terminal);
+				if (entry == null) {
+					continue;
+				}
+				writer.writeStartElement("pair");
+				writer.writeStartElement("initial");
+				writeElement(writer, "alternativeID", initial.getId());
+				writer.writeEndElement();
+				writer.writeStartElement("terminal");
+				writeElement(writer, "alternativeID", terminal.getId());
+				writer.writeEndElement();
+				writeValue(writer, entry.doubleValue());
+				writer.writeEndElement();
+				writer.writeCharacters("\n");
+			}
+		}
+		writer.writeEndElement();
+		writer.writeEndElement();
+		writer.writeCharacters("\n");
+	}
+
+	private void writeElement(XMLStreamWriter writer, String name, String text) throws XMLStreamException {
+		writer.writeStartElement(name);
+		writer.writeCharacters(text);
+		writer.writeEndElement();
+	}
+
+	private void writePerformanceTable(XMLStreamWriter writer, DenseEvaluations evaluations) throws XMLStreamException {
+		final double[] values = evaluations.getValues();
+		final int width = evaluations.getCriterionCount();
+		writer.writeStartElement("performanceTable");
+		writer.writeCharacters("\n");
+		for (int i = 0; i < evaluations.getAlternativeCount(); ++i) {
+			boolean started = false;
+			for (int j = 0; j < width; ++j) {
+				final double value = values[i * width + j];
+				if (Double.isNaN(value)) {
+					continue;
+				}
+				if (!started) {
+					writer.writeStartElement("alternativePerformances");
+					writeElement(writer, "alternativeID", evaluations.getAlternatives().get(i).getId());
+					started = true;
+				}
+				writer.writeStartElement("performance");
+				writeElement(writer, "criterionID", evaluations.getCriteria().get(j).getId());
+				writeValue(writer, value);
+				writer.writeEndElement();
+			}
+			if (started) {
+				writer.writeEndElement();
+				writer.writeCharacters("\n");
+			}
+		}
+		writer.writeEndElement();
+		writer.writeCharacters("\n");
+	}
+
+	private void writePerformanceTable(XMLStreamWriter writer, SparseMatrixDRead<Alternative, Criterion> evaluations)
+			throws XMLStreamException {
+		writer.writeStartElement("performanceTable");
+		writer.writeCharacters("\n");
+		for (Alternative alternative : evaluations.getRows()) {
+			boolean started = false;
+			for (Criterion criterion : evaluations.getColumns()) {
+				final Double entry = evaluations.getEntry(alternative, criterion);
+				if (entry == null) {
+					continue;
+				}
+				if (!started) {
+					writer.writeStartElement("alternativePerformances");
+					writeElement(writer, "alternativeID", alternative.getId());
+					started = true;
+				}
+				writer.writeStartElement("performance");
+				writeElement(writer, "criterionID", criterion.getId());
+				writeValue(writer, entry.doubleValue());
+				writer.writeEndElement();
+			}
+			if (started) {
+				writer.writeEndElement();
+				writer.writeCharacters("\n");
+			}
+		}
+		writer.writeEndElement();
+		writer.writeCharacters("\n");
+	}
+
+	private void writeValue(XMLStreamWriter writer, double value) throws XMLStreamException {
+		writer.writeStartElement("value");
+		writeElement(writer, "real", toXsFloat(value));
+		writer.writeEndElement();
+	}
+}
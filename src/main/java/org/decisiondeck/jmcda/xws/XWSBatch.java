@@ -0,0 +1,322 @@
+package org.decisiondeck.jmcda.xws;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.GnuParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.OptionBuilder;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.decisiondeck.jmcda.exc.InvalidInputException;
+import org.decisiondeck.jmcda.exc.InvalidInvocationException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.io.CharSink;
+import com.google.common.io.Files;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+/**
+ * <p>
+ * Runs one worker over many pairs of input and output directories, in a single JVM, using a work stealing pool of
+ * threads, and summarizes the results.
+ * </p>
+ * <p>
+ * The jobs are given either by a parent directory, each sub-directory of which is the input directory of a job, whose
+ * output directory is the sub-directory of the same name in the output directory; or by a manifest file, each line of
+ * which contains an input directory and an output directory separated by a tab. Empty lines and lines starting with
+ * <code>#</code> are ignored in a manifest, and relative paths are resolved against the directory containing the
+ * manifest.
+ * </p>
+ * <p>
+ * The summary has one tab separated line per job, in the order of the jobs, giving the status, the duration in
+ * milliseconds, the input and output directories, and the messages, if any, separated by <code>" | "</code>.
+ * </p>
+ *
+ * @author Olivier Cailloux
+ *
+ */
+public class XWSBatch {
+	public static final String BATCH_OPTION = "batch";
+
+	public static final String SUMMARY_FILE_NAME = "batch-summary.tsv";
+
+	private static final Logger s_logger = LoggerFactory.getLogger(XWSBatch.class);
+
+	/**
+	 * Runs the batch specified by the given arguments, and writes its summary.
+	 *
+	 * @param args
+	 *            not <code>null</code>.
+	 * @throws IOException
+	 *             if the jobs can't be listed or the summary can't be written.
+	 */
+	public static void main(String[] args) throws IOException {
+		final Options options = getCommandLineOptions();
+		final List<XWSJob> jobs;
+		final int parallelism;
+		final File summaryFile;
+		try {
+			final CommandLine line;
+			try {
+				line = new GnuParser().parse(options, args);
+				parallelism = line.hasOption("parallelism") ? Integer.parseInt(line.getOptionValue("parallelism"))
+						: Runtime.getRuntime().availableProcessors();
+			} catch (ParseException exc) {
+				throw new InvalidInvocationException(exc);
+			} catch (NumberFormatException exc) {
+				throw new InvalidInvocationException(exc);
+			}
+			final File batch = new File(line.getOptionValue(BATCH_OPTION));
+			final File outputParent = new File(line.getOptionValue("o"));
+			jobs = getJobs(batch, outputParent, line.getOptionValue("w"));
+			summaryFile = line.hasOption("summary") ? new File(line.getOptionValue("summary"))
+					: new File(outputParent, SUMMARY_FILE_NAME);
+		} catch (InvalidInvocationException exc) {
+			s_logger.error("Fatal error, terminating.", exc);
+			System.err.println(exc.getLocalizedMessage());
+			System.out.println(getSyntaxHelp(options));
+			return;
+		}
+
+		final XWSBatch batch = new XWSBatch(parallelism);
+		s_logger.info("Running {} jobs.", Integer.valueOf(jobs.size()));
+		final List<XWSJobResult> results = batch.run(jobs);
+		Files.createParentDirs(summaryFile);
+		writeSummary(results, Files.asCharSink(summaryFile, Charsets.UTF_8));
+	}
+
+	/**
+	 * Lists the jobs running the given worker on each sub-directory of the given directory, or on each line of the
+	 * given manifest file.
+	 *
+	 * @param batch
+	 *            a directory or a manifest file, not <code>null</code>.
+	 * @param outputParent
+	 *            the directory where the output directories of the jobs are created, when the batch is a directory; not
+	 *            <code>null</code>.
+	 * @param worker
+	 *            not <code>null</code>.
+	 * @return not <code>null</code>.
+	 * @throws InvalidInvocationException
+	 *             if the batch does not exist, or the manifest has an invalid line.
+	 * @throws IOException
+	 *             if the manifest can't be read.
+	 */
+	public static List<XWSJob> getJobs(File batch, File outputParent, String worker)
+			throws InvalidInvocationException, IOException {
+		Preconditions.checkNotNull(outputParent);
+		Preconditions.checkNotNull(worker);
+		final List<XWSJob> jobs = Lists.newArrayList();
+		if (batch.isDirectory()) {
+			final File[] inputs = batch.listFiles();
+			if (inputs == null) {
+				throw new IOException("Could not list " + batch + ".");
+			}
+			Arrays.sort(inputs);
+			for (File input : inputs) {
+				if (input.isDirectory()) {
+					jobs.add(new XWSJob(input, new File(outputParent, input.getName()), worker));
+				}
+			}
+		} else if (batch.isFile()) {
+			final File base = batch.getAbsoluteFile().getParentFile();
+			for (String line : Files.readLines(batch, Charsets.UTF_8)) {
+				if (line.trim().isEmpty() || line.startsWith("#")) {
+					continue;
+				}
+				final String[] dirs = line.split("\t");
+				if (dirs.length != 2) {
+					throw new InvalidInvocationException("Invalid manifest line: " + line + ".");
+				}
+				jobs.add(new XWSJob(resolve(base, dirs[0]), resolve(base, dirs[1]), worker));
+			}
+		} else {
+			throw new InvalidInvocationException("Batch " + batch + " does not exist.");
+		}
+		return jobs;
+	}
+
+	/**
+	 * Writes one line per result to the given sink.
+	 *
+	 * @param results
+	 *            not <code>null</code>.
+	 * @param sink
+	 *            not <code>null</code>.
+	 * @throws IOException
+	 *             if an exception happens while writing to the sink.
+	 */
+	public static void writeSummary(List<XWSJobResult> results, CharSink sink) throws IOException {
+		try (Writer writer = sink.openBufferedStream()) {
+			writer.write("#status\tmillis\tinput\toutput\tmessages\n");
+			for (XWSJobResult result : results) {
+				final List<String> messages = Lists.newArrayList();
+				for (InvalidInputException exc : result.getExceptions()) {
+					messages.add(toField(exc.getMessage()));
+				}
+				if (result.getFailure() != null) {
+					messages.add(toField(result.getFailure().getMessage()));
+				}
+				writer.write(result.getStatus().name());
+				writer.write('\t');
+				writer.write(String.valueOf(TimeUnit.NANOSECONDS.toMillis(result.getDurationNanos())));
+				writer.write('\t');
+				writer.write(result.getJob().getInputDirectory().getPath());
+				writer.write('\t');
+				writer.write(result.getJob().getOutputDirectory().getPath());
+				writer.write('\t');
+				writer.write(Joiner.on(" | ").join(messages));
+				writer.write('\n');
+			}
+		}
+	}
+
+	static Options getCommandLineOptions() {
+		final Option optBatch = OptionBuilder.create("b");
+		optBatch.setArgs(1);
+		optBatch.setRequired(true);
+		optBatch.setDescription("A directory whose sub-directories are the input directories, or a manifest file "
+				+ "listing, on each line, an input and an output directory separated by a tab.");
+		optBatch.setArgName("batch");
+		optBatch.setLongOpt(BATCH_OPTION);
+		optBatch.setType("File");
+
+		final Option optOut = OptionBuilder.create("o");
+		optOut.setArgs(1);
+		optOut.setRequired(true);
+		optOut.setDescription("The directory where the output directories and the summary will be written.");
+		optOut.setArgName("outputDir");
+		optOut.setLongOpt("outputDir");
+		optOut.setType("File");
+
+		final Option optWorker = OptionBuilder.create("w");
+		optWorker.setArgs(1);
+		optWorker.setRequired(true);
+		optWorker.setDescription("The worker class which will execute the service.");
+		optWorker.setArgName("worker");
+		optWorker.setLongOpt("worker");
+		optWorker.setType("Class");
+
+		final Option optParallelism = OptionBuilder.create("p");
+		optParallelism.setArgs(1);
+		optParallelism.setRequired(false);
+		optParallelism.setDescription("The number of jobs run concurrently; defaults to the number of processors.");
+		optParallelism.setArgName("parallelism");
+		optParallelism.setLongOpt("parallelism");
+		optParallelism.setType("Number");
+
+		final Option optSummary = OptionBuilder.create("S");
+		optSummary.setArgs(1);
+		optSummary.setRequired(false);
+		optSummary.setDescription("The file where the summary is written; defaults to " + SUMMARY_FILE_NAME
+				+ " in the output directory.");
+		optSummary.setArgName("summary");
+		optSummary.setLongOpt("summary");
+		optSummary.setType("File");
+
+		final Options options = new Options();
+		options.addOption(optBatch);
+		options.addOption(optOut);
+		options.addOption(optWorker);
+		options.addOption(optParallelism);
+		options.addOption(optSummary);
+		return options;
+	}
+
+	private static String getSyntaxHelp(Options options) {
+		final HelpFormatter hlp = new HelpFormatter();
+		final StringWriter wr = new StringWriter();
+		final PrintWriter pwr = new PrintWriter(wr);
+		hlp.printHelp(pwr, hlp.getWidth(), "prg", null, options, hlp.getLeftPadding(), hlp.getDescPadding(), null,
+				true);
+		return wr.toString();
+	}
+
+	private static File resolve(File base, String path) {
+		final File file = new File(path);
+		return file.isAbsolute() ? file : new File(base, path);
+	}
+
+	private static String toField(String message) {
+		return message == null ? "" : message.replace('\t', ' ').replace('\r', ' ').replace('\n', ' ');
+	}
+
+	private final int m_parallelism;
+
+	/**
+	 * @param parallelism
+	 *            the maximal number of jobs run concurrently, at least one.
+	 */
+	public XWSBatch(int parallelism) {
+		Preconditions.checkArgument(parallelism >= 1);
+		m_parallelism = parallelism;
+	}
+
+	/**
+	 * @return the maximal number of jobs run concurrently.
+	 */
+	public int getParallelism() {
+		return m_parallelism;
+	}
+
+	/**
+	 * Runs the given jobs, at most {@link #getParallelism()} at a time, and waits for all of them to finish. Workers
+	 * implementing {@link IXWSLifecycle} are reused from one job to the next.
+	 *
+	 * @param jobs
+	 *            not <code>null</code>.
+	 * @return the results, in the order of the given jobs, not <code>null</code>.
+	 */
+	public List<XWSJobResult> run(List<XWSJob> jobs) {
+		final ExecutorService pool = Executors.newWorkStealingPool(m_parallelism);
+		final XWSWorkerPool workerPool = new XWSWorkerPool(m_parallelism);
+		final XWSConfiguration configuration = new XWSConfiguration.Builder().setWorkerPool(workerPool).build();
+		try {
+			final List<Future<XWSJobResult>> futures = Lists.newArrayList();
+			for (final XWSJob job : jobs) {
+				futures.add(pool.submit(new Callable<XWSJobResult>() {
+					@Override
+					public XWSJobResult call() {
+						return job.run(configuration);
+					}
+				}));
+			}
+			final ImmutableList.Builder<XWSJobResult> results = ImmutableList.builder();
+			for (int i = 0; i < futures.size(); ++i) {
+				results.add(getResult(jobs.get(i), futures.get(i)));
+			}
+			return results.build();
+		} finally {
+			pool.shutdown();
+			workerPool.close();
+		}
+	}
+
+	private XWSJobResult getResult(XWSJob job, Future<XWSJobResult> future) {
+		try {
+			return Uninterruptibles.getUninterruptibly(future);
+		} catch (ExecutionException exc) {
+			throw new IllegalStateException("Job " + job + " failed unexpectedly.", exc.getCause());
+		}
+	}
+}
@@ -30,7 +30,7 @@ public class XWSCommandLineParser {
 	    final Option optIn = OptionBuilder.create("i");
 	    optIn.setArgs(1);
 	    optIn.setRequired(true);
-	    optIn.setDescription("The directory where input files can be found.");
+	    optIn.setDescription("The directory, or zip archive, where input files can be found.");
 	    optIn.setArgName("inputDir");
 	    optIn.setLongOpt("inputDir");
 	    optIn.setType("File");
@@ -38,7 +38,7 @@ public class XWSCommandLineParser {
 	    final Option optOut = OptionBuilder.create("o");
 	    optOut.setArgs(1);
 	    optOut.setRequired(true);
-	    optOut.setDescription("The directory where output files will be written.");
+	    optOut.setDescription("The directory, or zip archive, where output files will be written.");
 	    optOut.setArgName("outputDir");
 	    optOut.setLongOpt("outputDir");
 	    optOut.setType("File");
@@ -4,9 +4,11 @@ import java.io.File;
 import java.util.Collection;
 
 import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.GnuParser;
 import org.apache.commons.cli.Option;
 import org.apache.commons.cli.OptionBuilder;
 import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
 import org.decisiondeck.jmcda.exc.InvalidInvocationException;
 
 public class XWSCommandLineParserExt {
@@ -43,6 +45,37 @@ public class XWSCommandLineParserExt {
 	return m_options;
     }
 
+    /**
+     * Parses the given arguments to determine the mode they ask for: a batch run, with the option <code>-b</code>
+     * (<code>--batch</code>), serving jobs, with the option <code>-s</code> (<code>--serve</code>), or otherwise a
+     * single execution. The arguments may contain the options of any of these modes, none of which is required here;
+     * the mode then parses them again with its own options.
+     * 
+     * @param args
+     *            not <code>null</code>.
+     * @return the parsed command line, not <code>null</code>.
+     * @throws InvalidInvocationException
+     *             if unexpected arguments are found.
+     */
+    public CommandLine parseMode(String[] args) throws InvalidInvocationException {
+	final Options options = new Options();
+	for (Options modeOptions : new Options[] { getCommandLineOptions(), XWSBatch.getCommandLineOptions(),
+		XWSServer.getCommandLineOptions() }) {
+	    @SuppressWarnings("unchecked")
+	    final Collection<Option> modeCollection = modeOptions.getOptions();
+	    for (Option option : modeCollection) {
+		final Option optional = (Option) option.clone();
+		optional.setRequired(false);
+		options.addOption(optional);
+	    }
+	}
+	try {
+	    return new GnuParser().parse(options, args);
+	} catch (ParseException exc) {
+	    throw new InvalidInvocationException(exc);
+	}
+    }
+
     public String getSyntaxHelp() {
 	final Options commandLineOptions = getCommandLineOptions();
 	return m_parser.getSyntaxHelp(commandLineOptions);
@@ -0,0 +1,588 @@
+package org.decisiondeck.jmcda.xws;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+import org.decisiondeck.jmcda.exc.InvalidInvocationException;
+import org.decisiondeck.jmcda.xws.transformer.InputTransformer;
+import org.decisiondeck.jmcda.xws.transformer.OutputTransformer;
+
+import com.google.common.base.Function;
+import com.google.common.base.Preconditions;
+import com.google.common.io.ByteSink;
+import com.google.common.io.ByteSource;
+
+/**
+ * <p>
+ * The configuration of the execution of XMCDA web services, independent of any particular job: the transformers, the
+ * way worker fields are accessed, whether outputs are written, the optional executors used to read inputs and write
+ * outputs concurrently, the optional cache of transformed inputs, the optional snapshots of inputs, the optional
+ * worker pool and the optional metrics. Jobs are run by obtaining a {@link XWSExecution} from this object, which holds
+ * the state of that run only.
+ * </p>
+ * <p>
+ * Objects of this class are effectively immutable once built; the transformers must not be modified. One
+ * configuration may thus be shared by any number of threads running executions concurrently, with no locking. The
+ * transformers it holds are shared by all these executions, thus they must support concurrent use if executions are
+ * run concurrently.
+ * </p>
+ *
+ * @author Olivier Cailloux
+ *
+ */
+public final class XWSConfiguration {
+	/**
+	 * Builds {@link XWSConfiguration} objects. Every property has a default value, see the corresponding setter.
+	 *
+	 * @author Olivier Cailloux
+	 *
+	 */
+	public static class Builder {
+		private IFieldAccessorFactory m_accessorFactory;
+
+		private boolean m_injectorsEnabled;
+
+		private XWSInputCache m_inputCache;
+
+		private Executor m_inputsExecutor;
+
+		private InputTransformer m_inputTransformer;
+
+		private XWSMetrics m_metrics;
+
+		private Executor m_outputsExecutor;
+
+		private OutputTransformer m_outputTransformer;
+
+		private boolean m_skipUnchangedOutputs;
+
+		private XWSSnapshots m_snapshots;
+
+		private boolean m_streamingOutputs;
+
+		private XWSValidationPolicy m_validationPolicy;
+
+		private XWSWorkerPool m_workerPool;
+
+		private boolean m_write;
+
+		public Builder() {
+			m_accessorFactory = FieldAccessors.methodHandles();
+			m_injectorsEnabled = true;
+			m_inputCache = null;
+			m_inputsExecutor = null;
+			m_inputTransformer = null;
+			m_metrics = null;
+			m_outputsExecutor = null;
+			m_outputTransformer = null;
+			m_skipUnchangedOutputs = false;
+			m_snapshots = null;
+			m_streamingOutputs = false;
+			m_validationPolicy = null;
+			m_workerPool = null;
+			m_write = true;
+		}
+
+		/**
+		 * @return a new configuration, not <code>null</code>.
+		 */
+		public XWSConfiguration build() {
+			return new XWSConfiguration(this);
+		}
+
+		/**
+		 * @param accessorFactory
+		 *            the factory used to bind the annotated fields of workers that have no generated injector; not
+		 *            <code>null</code>. Defaults to {@link FieldAccessors#methodHandles()}.
+		 * @return this object.
+		 */
+		public Builder setFieldAccessorFactory(IFieldAccessorFactory accessorFactory) {
+			m_accessorFactory = Preconditions.checkNotNull(accessorFactory);
+			return this;
+		}
+
+		/**
+		 * @param injectorsEnabled
+		 *            <code>false</code> to never use generated {@link IXWSInjector}s. Defaults to <code>true</code>.
+		 * @return this object.
+		 */
+		public Builder setGeneratedInjectorsEnabled(boolean injectorsEnabled) {
+			m_injectorsEnabled = injectorsEnabled;
+			return this;
+		}
+
+		/**
+		 * @param inputCache
+		 *            the cache of transformed inputs, which may be shared with other configurations,
+		 *            <code>null</code> (the default) to transform every input of every run. See
+		 *            {@link XWSInputCache} for the restrictions that apply when a cache is used.
+		 * @return this object.
+		 */
+		public Builder setInputCache(XWSInputCache inputCache) {
+			m_inputCache = inputCache;
+			return this;
+		}
+
+		/**
+		 * @param inputsExecutor
+		 *            the executor used to read the inputs concurrently, <code>null</code> (the default) to read them
+		 *            sequentially.
+		 * @return this object.
+		 */
+		public Builder setInputsExecutor(Executor inputsExecutor) {
+			m_inputsExecutor = inputsExecutor;
+			return this;
+		}
+
+		/**
+		 * @param inputTransformer
+		 *            <code>null</code> (the default) for a new default transformer. Used for the inputs read from an
+		 *            input directory, not for those given as sources, see
+		 *            {@link XWSConfiguration#newExecution(Class, Map, Function)}.
+		 * @return this object.
+		 */
+		public Builder setInputTransformer(InputTransformer inputTransformer) {
+			m_inputTransformer = inputTransformer;
+			return this;
+		}
+
+		/**
+		 * @param metrics
+		 *            records the metrics of the executions, and may be shared with other configurations;
+		 *            <code>null</code> (the default) to record none.
+		 * @return this object.
+		 */
+		public Builder setMetrics(XWSMetrics metrics) {
+			m_metrics = metrics;
+			return this;
+		}
+
+		/**
+		 * @param outputsExecutor
+		 *            the executor used to write the outputs concurrently, <code>null</code> (the default) to write them
+		 *            sequentially.
+		 * @return this object.
+		 */
+		public Builder setOutputsExecutor(Executor outputsExecutor) {
+			m_outputsExecutor = outputsExecutor;
+			return this;
+		}
+
+		/**
+		 * @param outputTransformer
+		 *            <code>null</code> (the default) for a new default transformer.
+		 * @return this object.
+		 */
+		public Builder setOutputTransformer(OutputTransformer outputTransformer) {
+			m_outputTransformer = outputTransformer;
+			return this;
+		}
+
+		/**
+		 * @param skipUnchangedOutputs
+		 *            <code>true</code> to leave untouched the output files of the output directory whose content is
+		 *            the same as the output to be written, see {@link XWSExecution#getSkippedOutputCount()}. Defaults
+		 *            to <code>false</code>.
+		 * @return this object.
+		 */
+		public Builder setSkipUnchangedOutputsEnabled(boolean skipUnchangedOutputs) {
+			m_skipUnchangedOutputs = skipUnchangedOutputs;
+			return this;
+		}
+
+		/**
+		 * @param snapshots
+		 *            the snapshots the supported inputs are loaded from and saved to, which may be shared with other
+		 *            configurations, <code>null</code> (the default) to parse every input file. See
+		 *            {@link XWSSnapshots} for the inputs that are snapshotted.
+		 * @return this object.
+		 */
+		public Builder setSnapshots(XWSSnapshots snapshots) {
+			m_snapshots = snapshots;
+			return this;
+		}
+
+		/**
+		 * @param streamingOutputs
+		 *            <code>true</code> to write the outputs that {@link XMCDAStreamWriter} supports directly to their
+		 *            files, without building their document first nor validating them. The outputs that are to be
+		 *            validated, according to the validation policy or, if none, to the output transformer, and all
+		 *            outputs under an asynchronous policy, are written through their document as usual, thus
+		 *            validated. Defaults to <code>false</code>.
+		 * @return this object.
+		 */
+		public Builder setStreamingOutputsEnabled(boolean streamingOutputs) {
+			m_streamingOutputs = streamingOutputs;
+			return this;
+		}
+
+		/**
+		 * @param validationPolicy
+		 *            the policy deciding which output documents are validated, <code>null</code> (the default) to
+		 *            validate them all or none, depending on {@link OutputTransformer#validates()}. The policy also
+		 *            decides which outputs are streamed, see {@link #setStreamingOutputsEnabled(boolean)}.
+		 * @return this object.
+		 */
+		public Builder setValidationPolicy(XWSValidationPolicy validationPolicy) {
+			m_validationPolicy = validationPolicy;
+			return this;
+		}
+
+		/**
+		 * @param workerPool
+		 *            the pool the workers are taken from and given back to, <code>null</code> (the default) for no
+		 *            pooling.
+		 * @return this object.
+		 */
+		public Builder setWorkerPool(XWSWorkerPool workerPool) {
+			m_workerPool = workerPool;
+			return this;
+		}
+
+		/**
+		 * @param writeEnabled
+		 *            <code>false</code> to compute the outputs without writing them. Defaults to <code>true</code>.
+		 * @return this object.
+		 */
+		public Builder setWriteEnabled(boolean writeEnabled) {
+			m_write = writeEnabled;
+			return this;
+		}
+	}
+
+	private final IFieldAccessorFactory m_accessorFactory;
+
+	private final boolean m_injectorsEnabled;
+
+	private final XWSInputCache m_inputCache;
+
+	private final Executor m_inputsExecutor;
+
+	private final InputTransformer m_inputTransformer;
+
+	private final XWSMetrics m_metrics;
+
+	private final Executor m_outputsExecutor;
+
+	private final OutputTransformer m_outputTransformer;
+
+	private final boolean m_skipUnchangedOutputs;
+
+	private final XWSSnapshots m_snapshots;
+
+	private final boolean m_streamingOutputs;
+
+	private final XWSValidationPolicy m_validationPolicy;
+
+	private final XWSWorkerPool m_workerPool;
+
+	private final boolean m_write;
+
+	private XWSConfiguration(Builder builder) {
+		m_accessorFactory = builder.m_accessorFactory;
+		m_injectorsEnabled = builder.m_injectorsEnabled;
+		m_inputCache = builder.m_inputCache;
+		m_inputsExecutor = builder.m_inputsExecutor;
+		m_inputTransformer = builder.m_inputTransformer == null ? new InputTransformer() : builder.m_inputTransformer;
+		m_metrics = builder.m_metrics;
+		m_outputsExecutor = builder.m_outputsExecutor;
+		m_outputTransformer = builder.m_outputTransformer == null ? new OutputTransformer()
+				: builder.m_outputTransformer;
+		m_skipUnchangedOutputs = builder.m_skipUnchangedOutputs;
+		m_snapshots = builder.m_snapshots;
+		m_streamingOutputs = builder.m_streamingOutputs;
+		m_validationPolicy = builder.m_validationPolicy;
+		m_workerPool = builder.m_workerPool;
+		m_write = builder.m_write;
+	}
+
+	/**
+	 * @return not <code>null</code>.
+	 */
+	public IFieldAccessorFactory getFieldAccessorFactory() {
+		return m_accessorFactory;
+	}
+
+	/**
+	 * @return <code>null</code> if inputs are not cached.
+	 */
+	public XWSInputCache getInputCache() {
+		return m_inputCache;
+	}
+
+	/**
+	 * @return <code>null</code> if the inputs are read sequentially.
+	 */
+	public Executor getInputsExecutor() {
+		return m_inputsExecutor;
+	}
+
+	/**
+	 * @return not <code>null</code>.
+	 */
+	public InputTransformer getInputTransformer() {
+		return m_inputTransformer;
+	}
+
+	/**
+	 * @return <code>null</code> if the outputs are written sequentially.
+	 */
+	public Executor getOutputsExecutor() {
+		return m_outputsExecutor;
+	}
+
+	/**
+	 * @return the metrics of the executions, <code>null</code> if none are recorded.
+	 */
+	public XWSMetrics getMetrics() {
+		return m_metrics;
+	}
+
+	/**
+	 * @return not <code>null</code>.
+	 */
+	public OutputTransformer getOutputTransformer() {
+		return m_outputTransformer;
+	}
+
+	/**
+	 * Retrieves the injection plan of the given worker class, from its generated injector if injectors are enabled and
+	 * one exists, otherwise by introspection using the field accessor factory. Plans are cached in both cases.
+	 *
+	 * @param workerClass
+	 *            not <code>null</code>.
+	 * @return not <code>null</code>.
+	 * @throws InvalidInvocationException
+	 *             if the worker class does not pass the checks described in {@link XWSInjectionPlan#getPlan(Class)}.
+	 */
+	public XWSInjectionPlan getPlan(Class<? extends IXWS> workerClass) throws InvalidInvocationException {
+		final IXWSInjector injector = getInjector(workerClass);
+		if (injector != null) {
+			return XWSInjectors.getPlan(injector);
+		}
+		return XWSInjectionPlan.getPlan(workerClass, m_accessorFactory);
+	}
+
+	/**
+	 * @return the snapshots of the inputs, <code>null</code> if every input file is parsed.
+	 */
+	public XWSSnapshots getSnapshots() {
+		return m_snapshots;
+	}
+
+	/**
+	 * @return <code>null</code> if the output transformer decides whether all documents are validated.
+	 */
+	public XWSValidationPolicy getValidationPolicy() {
+		return m_validationPolicy;
+	}
+
+	/**
+	 * Finds the worker class corresponding to the given name, through its generated injector if injectors are enabled
+	 * and one exists, otherwise by loading the class.
+	 *
+	 * @param workerString
+	 *            the binary name of the worker class, not <code>null</code>.
+	 * @return not <code>null</code>.
+	 * @throws InvalidInvocationException
+	 *             if the worker string does not correspond to a class or does not implement the {@link IXWS}
+	 *             interface.
+	 */
+	public Class<? extends IXWS> getWorkerClass(String workerString) throws InvalidInvocationException {
+		Preconditions.checkNotNull(workerString);
+		final IXWSInjector injector = getInjector(workerString);
+		final Class<?> workerClass;
+		if (injector != null) {
+			workerClass = injector.getWorkerClass();
+		} else {
+			try {
+				workerClass = Class.forName(workerString);
+			} catch (ClassNotFoundException exc) {
+				throw new InvalidInvocationException(exc);
+			}
+		}
+		final List<Class<?>> interfaces = Arrays.asList(workerClass.getInterfaces());
+		if (!interfaces.contains(IXWS.class)) {
+			throw new InvalidInvocationException("The given worker class, " + workerString + ", does not implement "
+					+ IXWS.class.getCanonicalName() + ".");
+		}
+
+		@SuppressWarnings("unchecked")
+		final Class<? extends IXWS> w = (Class<? extends IXWS>) workerClass;
+		return w;
+	}
+
+	/**
+	 * @return <code>null</code> if workers are not pooled.
+	 */
+	public XWSWorkerPool getWorkerPool() {
+		return m_workerPool;
+	}
+
+	/**
+	 * @return <code>true</code> iff generated injectors are used when available.
+	 */
+	public boolean isGeneratedInjectorsEnabled() {
+		return m_injectorsEnabled;
+	}
+
+	/**
+	 * @return <code>true</code> iff the output files whose content is unchanged are not rewritten.
+	 */
+	public boolean isSkipUnchangedOutputsEnabled() {
+		return m_skipUnchangedOutputs;
+	}
+
+	/**
+	 * @return <code>true</code> iff the outputs supported by {@link XMCDAStreamWriter} are streamed to their files.
+	 */
+	public boolean isStreamingOutputsEnabled() {
+		return m_streamingOutputs;
+	}
+
+	/**
+	 * @return <code>true</code> iff outputs are written.
+	 */
+	public boolean isWriteEnabled() {
+		return m_write;
+	}
+
+	/**
+	 * Prepares a run of a new instance of the given worker class (or an instance taken from the worker pool).
+	 *
+	 * @param workerClass
+	 *            not <code>null</code>.
+	 * @param inputDirectory
+	 *            <code>null</code> for not set.
+	 * @param outputDirectory
+	 *            <code>null</code> for not set.
+	 * @return not <code>null</code>.
+	 * @throws InvalidInvocationException
+	 *             if the worker class has no valid injection plan, or can't be instantiated.
+	 */
+	public XWSExecution newExecution(Class<? extends IXWS> workerClass, File inputDirectory, File outputDirectory)
+			throws InvalidInvocationException {
+		final XWSInjectionPlan plan = getPlan(workerClass);
+		return new XWSExecution(this, plan, newWorker(plan), true, inputDirectory, outputDirectory);
+	}
+
+	/**
+	 * Prepares a run of a new instance of the given worker class (or an instance taken from the worker pool) that
+	 * reads its inputs from the given sources and writes its outputs to the given sinks, without accessing the file
+	 * system. The worker class must have no input or output directory field, and its input transformers must not
+	 * depend on the file system. The input transformer of this configuration is not used: each input is transformed
+	 * by a new default input transformer, given the source of the input rather than a file.
+	 *
+	 * @param workerClass
+	 *            not <code>null</code>.
+	 * @param inputs
+	 *            the sources of the inputs, by file name; not <code>null</code>. Must not be modified during the run.
+	 *            An input whose name is not in the map is absent.
+	 * @param outputs
+	 *            gives a sink for each output, by file name; not <code>null</code>, e.g. a {@link XWSMemoryOutputs}.
+	 * @return not <code>null</code>.
+	 * @throws InvalidInvocationException
+	 *             if the worker class has no valid injection plan, or can't be instantiated.
+	 */
+	public XWSExecution newExecution(Class<? extends IXWS> workerClass, Map<String, ByteSource> inputs,
+			Function<String, ByteSink> outputs) throws InvalidInvocationException {
+		final XWSInjectionPlan plan = getPlan(workerClass);
+		return new XWSExecution(this, plan, newWorker(plan), true, inputs, outputs);
+	}
+
+	/**
+	 * Prepares a run of the given worker instance. The instance is never given to the worker pool.
+	 *
+	 * @param worker
+	 *            not <code>null</code>.
+	 * @param inputDirectory
+	 *            <code>null</code> for not set.
+	 * @param outputDirectory
+	 *            <code>null</code> for not set.
+	 * @return not <code>null</code>.
+	 * @throws InvalidInvocationException
+	 *             if the worker class has no valid injection plan.
+	 */
+	public XWSExecution newExecution(IXWS worker, File inputDirectory, File outputDirectory)
+			throws InvalidInvocationException {
+		return new XWSExecution(this, getPlan(worker.getClass()), worker, false, inputDirectory, outputDirectory);
+	}
+
+	/**
+	 * Prepares a run of a new instance of the worker class of the given name (or an instance taken from the worker
+	 * pool).
+	 *
+	 * @param workerString
+	 *            the binary name of the worker class, not <code>null</code>.
+	 * @param inputDirectory
+	 *            <code>null</code> for not set.
+	 * @param outputDirectory
+	 *            <code>null</code> for not set.
+	 * @return not <code>null</code>.
+	 * @throws InvalidInvocationException
+	 *             if the worker string does not correspond to a valid worker class, or the worker can't be
+	 *             instantiated.
+	 */
+	public XWSExecution newExecution(String workerString, File inputDirectory, File outputDirectory)
+			throws InvalidInvocationException {
+		return newExecution(getWorkerClass(workerString), inputDirectory, outputDirectory);
+	}
+
+	@Override
+	public String toString() {
+		return "Configuration with accessors " + m_accessorFactory + ", injectors "
+				+ (m_injectorsEnabled ? "enabled" : "disabled") + ", write " + (m_write ? "enabled" : "disabled");
+	}
+
+	/**
+	 * Takes a worker of the plan class from the worker pool, or instantiates a new one.
+	 *
+	 * @param plan
+	 *            not <code>null</code>.
+	 * @return not <code>null</code>.
+	 * @throws InvalidInvocationException
+	 *             if the worker can't be instantiated.
+	 */
+	IXWS newWorker(XWSInjectionPlan plan) throws InvalidInvocationException {
+		final long start = System.nanoTime();
+		try {
+			return obtainWorker(plan);
+		} finally {
+			if (m_metrics != null) {
+				m_metrics.record(plan.getWorkerClass(), XWSMetrics.Phase.SET_WORKER, null, System.nanoTime() - start);
+			}
+		}
+	}
+
+	private IXWSInjector getInjector(Class<? extends IXWS> workerClass) {
+		return m_injectorsEnabled ? XWSInjectors.getInjector(workerClass) : null;
+	}
+
+	private IXWSInjector getInjector(String workerString) {
+		return m_injectorsEnabled ? XWSInjectors.getInjector(workerString) : null;
+	}
+
+	private IXWS obtainWorker(XWSInjectionPlan plan) throws InvalidInvocationException {
+		final Class<? extends IXWS> workerClass = plan.getWorkerClass();
+		if (m_workerPool != null) {
+			final IXWS pooled = m_workerPool.poll(workerClass);
+			if (pooled != null) {
+				return pooled;
+			}
+		}
+		final IXWSInjector injector = getInjector(workerClass);
+		if (injector != null) {
+			return injector.newWorker();
+		}
+		try {
+			return workerClass.newInstance();
+		} catch (InstantiationException exc) {
+			throw new InvalidInvocationException("Can't instantiate the associated worker.", exc);
+		} catch (IllegalAccessException exc) {
+			throw new InvalidInvocationException("Can't instantiate the associated worker.", exc);
+		}
+	}
+}
@@ -0,0 +1,1043 @@
+package org.decisiondeck.jmcda.xws;
+
+import java.io.File;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.xmlbeans.XmlObject;
+import org.decision_deck.jmcda.structure.matrix.EvaluationsRead;
+import org.decisiondeck.jmcda.exc.FunctionWithInputCheck;
+import org.decisiondeck.jmcda.exc.InvalidInputException;
+import org.decisiondeck.jmcda.exc.InvalidInvocationException;
+import org.decisiondeck.jmcda.persist.xmcda2.generated.XMCDADoc;
+import org.decisiondeck.jmcda.persist.xmcda2.utils.XMCDAWriteUtils;
+import org.decisiondeck.jmcda.xws.XWSInjectionPlan.InjectedField;
+import org.decisiondeck.jmcda.xws.XWSInjectionPlan.InputField;
+import org.decisiondeck.jmcda.xws.XWSInjectionPlan.OutputField;
+import org.decisiondeck.jmcda.xws.XWSMetrics.Phase;
+import org.decisiondeck.jmcda.xws.transformer.InputTransformer;
+import org.decisiondeck.jmcda.xws.transformer.OutputTransformer;
+
+import com.google.common.base.Function;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.io.ByteSink;
+import com.google.common.io.ByteSource;
+import com.google.common.io.Files;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+/**
+ * <p>
+ * One run of a worker: the worker instance, its directories, and the exceptions collected while running it. Obtained
+ * from a {@link XWSConfiguration}, which provides everything that does not depend on the run.
+ * </p>
+ * <p>
+ * An execution may also run entirely in memory, reading its inputs from a map of sources and writing its outputs to
+ * sinks, without touching the file system, see {@link XWSConfiguration#newExecution(Class, Map, Function)}. Workers
+ * having a field annotated with {@link XWSInputDirectory} or {@link XWSOutputDirectory} can't be run that way, and the
+ * input cache is not used. The inputs are then transformed by default input transformers reading the sources
+ * directly, rather than by the one of the configuration, which maps names to files.
+ * </p>
+ * <p>
+ * An object of this class is meant to be used by a single thread, for a single run. Concurrent runs use each their
+ * own execution, possibly from a shared configuration.
+ * </p>
+ *
+ * @author Olivier Cailloux
+ *
+ */
+public final class XWSExecution {
+	/**
+	 * The directory given to the input transformers of inputs read from memory, which map every name to no file.
+	 */
+	private static final File MEMORY_DIRECTORY = new File("");
+
+	/**
+	 * Checks and prepares the given directories, see {@link #prepareDirectories()}.
+	 *
+	 * @param inputDirectory
+	 *            <code>null</code> for not set.
+	 * @param outputDirectory
+	 *            <code>null</code> for not set.
+	 * @param write
+	 *            whether outputs are to be written.
+	 * @throws InvalidInvocationException
+	 *             if one of the checks fail, or the output directory creation fails.
+	 */
+	static void prepareDirectories(File inputDirectory, File outputDirectory, boolean write)
+			throws InvalidInvocationException {
+		if (write && outputDirectory != null) {
+			if (!outputDirectory.exists()) {
+				if (!outputDirectory.mkdirs()) {
+					throw new InvalidInvocationException("Could not create directory " + outputDirectory + ".");
+				}
+			}
+			if (!outputDirectory.isDirectory()) {
+				throw new InvalidInvocationException("Output directory " + outputDirectory + " is not a directory.");
+			}
+		}
+
+		if (inputDirectory != null) {
+			if (!inputDirectory.exists()) {
+				throw new InvalidInvocationException("Input directory " + inputDirectory + " does not exist.");
+			}
+			if (!inputDirectory.isDirectory()) {
+				throw new InvalidInvocationException("Input directory " + inputDirectory + " is not a directory.");
+			}
+		}
+	}
+
+	private final XWSConfiguration m_configuration;
+
+	private final List<InvalidInputException> m_exceptions = Lists.newArrayList();
+
+	private final File m_inputDirectory;
+
+	/**
+	 * <code>null</code> iff the inputs are read from the input directory.
+	 */
+	private final Map<String, ByteSource> m_inputs;
+
+	/**
+	 * The inputs read so far that are stored off heap, to be closed when the job ends. Inputs may be read
+	 * concurrently.
+	 */
+	private final List<OffHeapEvaluations> m_offHeapInputs = Collections
+			.synchronizedList(Lists.<OffHeapEvaluations> newArrayList());
+
+	private final File m_outputDirectory;
+
+	/**
+	 * <code>null</code> iff the outputs are written to the output directory.
+	 */
+	private final Function<String, ByteSink> m_outputs;
+
+	private final XWSInjectionPlan m_plan;
+
+	/**
+	 * Outputs may be written concurrently.
+	 */
+	private final AtomicInteger m_skippedOutputs = new AtomicInteger();
+
+	/**
+	 * <code>null</code> iff released.
+	 */
+	private IXWS m_worker;
+
+	private final boolean m_workerCreated;
+
+	/**
+	 * @param configuration
+	 *            not <code>null</code>.
+	 * @param plan
+	 *            not <code>null</code>.
+	 * @param worker
+	 *            not <code>null</code>, an instance of the plan class.
+	 * @param workerCreated
+	 *            <code>true</code> iff the worker has been obtained from the configuration, thus may be given back to
+	 *            its pool.
+	 * @param inputDirectory
+	 *            <code>null</code> for not set.
+	 * @param outputDirectory
+	 *            <code>null</code> for not set.
+	 */
+	XWSExecution(XWSConfiguration configuration, XWSInjectionPlan plan, IXWS worker, boolean workerCreated,
+			File inputDirectory, File outputDirectory) {
+		this(configuration, plan, worker, workerCreated, inputDirectory, outputDirectory, null, null);
+	}
+
+	/**
+	 * @param configuration
+	 *            not <code>null</code>.
+	 * @param plan
+	 *            not <code>null</code>.
+	 * @param worker
+	 *            not <code>null</code>, an instance of the plan class.
+	 * @param workerCreated
+	 *            <code>true</code> iff the worker has been obtained from the configuration, thus may be given back to
+	 *            its pool.
+	 * @param inputs
+	 *            the sources of the inputs, by name; not <code>null</code>.
+	 * @param outputs
+	 *            gives the destination of each output, by name; not <code>null</code>.
+	 */
+	XWSExecution(XWSConfiguration configuration, XWSInjectionPlan plan, IXWS worker, boolean workerCreated,
+			Map<String, ByteSource> inputs, Function<String, ByteSink> outputs) {
+		this(configuration, plan, worker, workerCreated, null, null, Preconditions.checkNotNull(inputs),
+				Preconditions.checkNotNull(outputs));
+	}
+
+	private XWSExecution(XWSConfiguration configuration, XWSInjectionPlan plan, IXWS worker, boolean workerCreated,
+			File inputDirectory, File outputDirectory, Map<String, ByteSource> inputs,
+			Function<String, ByteSink> outputs) {
+		m_configuration = Preconditions.checkNotNull(configuration);
+		m_plan = Preconditions.checkNotNull(plan);
+		m_worker = Preconditions.checkNotNull(worker);
+		Preconditions.checkArgument(plan.getWorkerClass().isInstance(worker));
+		m_workerCreated = workerCreated;
+		m_inputDirectory = inputDirectory;
+		m_outputDirectory = outputDirectory;
+		m_inputs = inputs;
+		m_outputs = outputs;
+	}
+
+	/**
+	 * Runs every phase: prepares the directories, sets the directory and input fields, sets the exceptions field,
+	 * executes the worker if no exception has been collected, and writes the outputs.
+	 *
+	 * @throws InvalidInvocationException
+	 *             if a phase fails for a reason other than invalid inputs.
+	 * @throws IOException
+	 *             if an exception happens while writing an output.
+	 */
+	public void execute() throws InvalidInvocationException, IOException {
+		execute(null);
+	}
+
+	/**
+	 * Runs every phase, as {@link #execute()}, except that the worker itself is only executed once a permit has been
+	 * acquired from the given semaphore, if any, so that the reading and writing phases of many runs may proceed
+	 * while the number of concurrent worker executions stays bounded.
+	 *
+	 * @param executions
+	 *            <code>null</code> for no bound.
+	 * @throws InvalidInvocationException
+	 *             if a phase fails for a reason other than invalid inputs.
+	 * @throws IOException
+	 *             if an exception happens while writing an output.
+	 */
+	void execute(Semaphore executions) throws InvalidInvocationException, IOException {
+		final XWSMetrics metrics = m_configuration.getMetrics();
+		if (metrics != null) {
+			metrics.jobStarted(m_plan.getWorkerClass());
+		}
+		boolean failed = true;
+		try {
+			run(executions);
+			failed = !m_exceptions.isEmpty();
+		} finally {
+			if (metrics != null) {
+				metrics.jobEnded(m_plan.getWorkerClass(), failed);
+			}
+		}
+	}
+
+	/**
+	 * Runs every phase, see {@link #execute(Semaphore)}.
+	 *
+	 * @param executions
+	 *            <code>null</code> for no bound.
+	 * @throws InvalidInvocationException
+	 *             if a phase fails for a reason other than invalid inputs.
+	 * @throws IOException
+	 *             if an exception happens while writing an output.
+	 */
+	private void run(Semaphore executions) throws InvalidInvocationException, IOException {
+		/**
+		 * TODO currently, no guarantee that all inputs are non null, even if
+		 * not optional. The executor should probably guarantee this, or web
+		 * services should check for this condition. It probably suffices to
+		 * modify InputTransformer#getDocToTag (add optional parameter
+		 * similarily to getDocToTags).
+		 */
+		checkNotReleased();
+		m_exceptions.clear();
+		m_skippedOutputs.set(0);
+
+		try {
+			prepareDirectories();
+			setFieldsDirectories();
+			setFieldsInputs();
+
+			/**
+			 * Note that the field must be set even when no exceptions
+			 * occurred. Might be set e.g. to an empty list or an empty
+			 * document.
+			 */
+			setFieldExceptions();
+
+			if (m_exceptions.isEmpty()) {
+				if (executions != null) {
+					executions.acquireUninterruptibly();
+				}
+				final long start = System.nanoTime();
+				try {
+					m_worker.execute();
+				} catch (InvalidInputException exc) {
+					m_exceptions.add(exc);
+					setFieldExceptions();
+				} finally {
+					record(Phase.EXECUTE, null, start);
+					if (executions != null) {
+						executions.release();
+					}
+				}
+			}
+
+			writeOutputs();
+		} finally {
+			closeOffHeapInputs();
+		}
+	}
+
+	/**
+	 * @return not <code>null</code>.
+	 */
+	public XWSConfiguration getConfiguration() {
+		return m_configuration;
+	}
+
+	/**
+	 * Retrieves the exceptions collected so far, thus, while transforming the inputs or executing the worker.
+	 *
+	 * @return not <code>null</code>.
+	 */
+	public List<InvalidInputException> getExceptions() {
+		return ImmutableList.copyOf(m_exceptions);
+	}
+
+	/**
+	 * @return not <code>null</code>.
+	 */
+	public XWSInjectionPlan getInjectionPlan() {
+		return m_plan;
+	}
+
+	/**
+	 * @return <code>null</code> for not set.
+	 */
+	public File getInputDirectory() {
+		return m_inputDirectory;
+	}
+
+	/**
+	 * @return <code>null</code> for not set.
+	 */
+	public File getOutputDirectory() {
+		return m_outputDirectory;
+	}
+
+	/**
+	 * @return the number of outputs written so far that have been found unchanged, thus whose file has been left
+	 *         untouched, if {@link XWSConfiguration#isSkipUnchangedOutputsEnabled() enabled}.
+	 */
+	public int getSkippedOutputCount() {
+		return m_skippedOutputs.get();
+	}
+
+	/**
+	 * @return the worker instance, or <code>null</code> iff it has been {@link #releaseWorker() released}.
+	 */
+	public IXWS getWorker() {
+		return m_worker;
+	}
+
+	/**
+	 * @return <code>true</code> iff the worker has been obtained from the configuration rather than given.
+	 */
+	public boolean isWorkerCreated() {
+		return m_workerCreated;
+	}
+
+	/**
+	 * Checks and prepares the input and output directories. If the input directory is non <code>null</code>, checks
+	 * that it exists and it is a directory. If the output directory is non <code>null</code>, if it does not exist,
+	 * create it, if it exists, checks that it is a directory. If write is disabled, the output directory is not created
+	 * and not checked for existence.
+	 *
+	 * @throws InvalidInvocationException
+	 *             if one of the checks fail, or the output directory creation fails.
+	 */
+	public void prepareDirectories() throws InvalidInvocationException {
+		prepareDirectories(m_inputDirectory, m_outputDirectory, m_configuration.isWriteEnabled());
+	}
+
+	/**
+	 * Ends this run. The inputs stored off heap not closed yet, such as those read lazily after the job ended, are
+	 * closed. If the worker has been obtained from the configuration and the configuration has a worker pool, the
+	 * annotated fields of the worker are cleared and the worker is given back to the pool, thus must not be used any
+	 * more by the caller. This object can't be used any more after this call. Has no effect if already released.
+	 *
+	 * @throws InvalidInvocationException
+	 *             if a field of the worker can't be cleared, in which case the worker is not given back to the pool.
+	 */
+	public void releaseWorker() throws InvalidInvocationException {
+		if (m_worker == null) {
+			return;
+		}
+		closeOffHeapInputs();
+		final IXWS worker = m_worker;
+		m_worker = null;
+		final XWSWorkerPool workerPool = m_configuration.getWorkerPool();
+		if (m_workerCreated && workerPool != null) {
+			m_plan.clearFields(worker);
+			workerPool.release(worker);
+		}
+	}
+
+	/**
+	 * Sets the fields annotated with {@link XWSExceptions} to the exceptions collected so far.
+	 *
+	 * @throws InvalidInvocationException
+	 *             if a field can't be set.
+	 */
+	public void setFieldExceptions() throws InvalidInvocationException {
+		checkNotReleased();
+		final List<InvalidInputException> exceptions = Lists.newLinkedList(m_exceptions);
+		for (InjectedField exceptionField : m_plan.getExceptionFields()) {
+			final Object exceptionsTransformed = new OutputTransformer().getAs(exceptions, exceptionField.getType());
+			exceptionField.set(m_worker, exceptionsTransformed);
+		}
+	}
+
+	/**
+	 * Sets the worker fields input and output directories, if corresponding annotations exist in the worker.
+	 *
+	 * @throws InvalidInvocationException
+	 *             if a field can't be set, or if the input or output directory value is missing and a corresponding
+	 *             annotation exists on a field of the worker.
+	 */
+	public void setFieldsDirectories() throws InvalidInvocationException {
+		checkNotReleased();
+		final InjectedField inputDirectoryField = m_plan.getInputDirectoryField();
+		if (inputDirectoryField != null) {
+			if (m_inputDirectory == null) {
+				throw new InvalidInvocationException("Input directory required but not set.");
+			}
+			inputDirectoryField.set(m_worker, m_inputDirectory);
+		}
+
+		final InjectedField outputDirectoryField = m_plan.getOutputDirectoryField();
+		if (outputDirectoryField != null) {
+			if (m_outputDirectory == null) {
+				throw new InvalidInvocationException("Output directory required but not set.");
+			}
+			outputDirectoryField.set(m_worker, m_outputDirectory);
+		}
+	}
+
+	/**
+	 * Reads and transforms the inputs of the worker, and sets the fields annotated with {@link XWSInput} accordingly,
+	 * possibly concurrently, see {@link XWSExecutor#setFieldsInputs()}.
+	 *
+	 * @throws InvalidInvocationException
+	 *             if a field can't be set.
+	 */
+	public void setFieldsInputs() throws InvalidInvocationException {
+		checkNotReleased();
+		final long start = System.nanoTime();
+		try {
+			if (m_configuration.getInputsExecutor() == null) {
+				setFieldsInputsSequentially();
+			} else {
+				setFieldsInputsConcurrently();
+			}
+		} finally {
+			record(Phase.SET_FIELDS_INPUTS, null, start);
+		}
+	}
+
+	@Override
+	public String toString() {
+		if (m_inputs != null) {
+			return "Execution of " + m_plan.getWorkerClass().getName() + " (in memory)";
+		}
+		return "Execution of " + m_plan.getWorkerClass().getName() + " (" + m_inputDirectory + " -> "
+				+ m_outputDirectory + ")";
+	}
+
+	/**
+	 * Writes the data set in the fields annotated with {@link XWSOutput} annotation to their respective file, if
+	 * writing is enabled, possibly concurrently, see {@link XWSExecutor#writeOutputs()}.
+	 *
+	 * @throws InvalidInvocationException
+	 *             if a field can't be accessed, or the transformer be instantiated.
+	 * @throws IOException
+	 *             if an exception happens while writing to the destination.
+	 */
+	public void writeOutputs() throws InvalidInvocationException, IOException {
+		checkNotReleased();
+		final long start = System.nanoTime();
+		try {
+			if (m_configuration.getOutputsExecutor() != null) {
+				writeOutputsConcurrently();
+				return;
+			}
+
+			for (final OutputField field : m_plan.getOutputFields()) {
+				final Object value = field.get(m_worker);
+				if (value == null) {
+					continue;
+				}
+				writeOutput(field, value);
+			}
+		} finally {
+			record(Phase.WRITE_OUTPUTS, null, start);
+		}
+	}
+
+	/**
+	 * Returns a copy of this execution, with the same worker, directories and collected exceptions, bound to the given
+	 * configuration. This object must not be used any more afterwards.
+	 *
+	 * @param configuration
+	 *            not <code>null</code>.
+	 * @return not <code>null</code>.
+	 */
+	XWSExecution withConfiguration(XWSConfiguration configuration) {
+		checkNotReleased();
+		final XWSExecution execution = new XWSExecution(configuration, m_plan, m_worker, m_workerCreated,
+				m_inputDirectory, m_outputDirectory, m_inputs, m_outputs);
+		execution.m_exceptions.addAll(m_exceptions);
+		execution.m_skippedOutputs.set(m_skippedOutputs.get());
+		return execution;
+	}
+
+	private void checkNotReleased() {
+		Preconditions.checkState(m_worker != null, "Worker released.");
+	}
+
+	/**
+	 * @param name
+	 *            not <code>null</code>.
+	 * @return the destination of the output of the given name: the file of that name in the output directory, or the
+	 *         sink given by the outputs function.
+	 */
+	private ByteSink getSink(String name) {
+		final ByteSink sink;
+		if (m_outputs != null) {
+			sink = m_outputs.apply(name);
+			Preconditions.checkState(sink != null, "No destination for output %s.", name);
+		} else if (m_configuration.isSkipUnchangedOutputsEnabled()) {
+			Preconditions.checkNotNull(m_outputDirectory);
+			sink = new UnchangedFileSink(new File(m_outputDirectory, name), new Runnable() {
+				@Override
+				public void run() {
+					m_skippedOutputs.incrementAndGet();
+					final XWSMetrics metrics = m_configuration.getMetrics();
+					if (metrics != null) {
+						metrics.addOutputSkipped();
+					}
+				}
+			});
+		} else {
+			Preconditions.checkNotNull(m_outputDirectory);
+			sink = Files.asByteSink(new File(m_outputDirectory, name));
+		}
+		final XWSMetrics metrics = m_configuration.getMetrics();
+		if (metrics == null) {
+			return sink;
+		}
+		return new ByteSink() {
+			@Override
+			public OutputStream openStream() throws IOException {
+				return new FilterOutputStream(sink.openStream()) {
+					@Override
+					public void write(byte[] b, int off, int len) throws IOException {
+						out.write(b, off, len);
+						metrics.addBytesWritten(len);
+					}
+
+					@Override
+					public void write(int b) throws IOException {
+						out.write(b);
+						metrics.addBytesWritten(1);
+					}
+				};
+			}
+		};
+	}
+
+	/**
+	 * @param field
+	 *            not <code>null</code>, lazy.
+	 * @return an object that reads the given input field when first asked for.
+	 */
+	private XWSLazyInput<Object> newLazyInput(final InputField field) {
+		return new XWSLazyInput<Object>(field.getFileName(), new XWSLazyInput.Loader() {
+			@Override
+			public Object load() throws InvalidInputException, InvalidInvocationException {
+				return readInput(field);
+			}
+		});
+	}
+
+	/**
+	 * @param field
+	 *            not <code>null</code>.
+	 * @return a loader transforming the file of the given input field from the input directory, through its snapshot
+	 *         if snapshots are enabled and support the field.
+	 */
+	private XWSLazyInput.Loader newLoader(final InputField field) {
+		final InputTransformer transformer = m_configuration.getInputTransformer();
+		final File inputDirectory = m_inputDirectory;
+		final XWSLazyInput.Loader transforming = new XWSLazyInput.Loader() {
+			@Override
+			public Object load() throws InvalidInputException, InvalidInvocationException {
+				return transformer.get(field.getValueType(), field.getTransformer(), field.getFileName(),
+						inputDirectory, field.isOptional());
+			}
+		};
+		final XWSSnapshots snapshots = m_configuration.getSnapshots();
+		if (snapshots == null || inputDirectory == null || !XWSSnapshots.supports(field.getValueType())) {
+			return transforming;
+		}
+		return new XWSLazyInput.Loader() {
+			@Override
+			public Object load() throws InvalidInputException, InvalidInvocationException {
+				return snapshots.get(field, new File(inputDirectory, field.getFileName()), transforming);
+			}
+		};
+	}
+
+	/**
+	 * Closes the inputs stored off heap read so far, see {@link OffHeapEvaluations}.
+	 */
+	private void closeOffHeapInputs() {
+		final List<OffHeapEvaluations> inputs;
+		synchronized (m_offHeapInputs) {
+			inputs = ImmutableList.copyOf(m_offHeapInputs);
+			m_offHeapInputs.clear();
+		}
+		for (OffHeapEvaluations input : inputs) {
+			input.close();
+		}
+	}
+
+	/**
+	 * Registers the given value to be closed when the job ends if it is stored off heap.
+	 *
+	 * @param value
+	 *            possibly <code>null</code>.
+	 * @return the given value.
+	 */
+	private Object own(Object value) {
+		if (value instanceof OffHeapEvaluations) {
+			m_offHeapInputs.add((OffHeapEvaluations) value);
+		}
+		return value;
+	}
+
+	/**
+	 * Reads and transforms the value of the given input field, see {@link #transformInput(InputField)}, and records
+	 * its duration and size in the metrics, if any. Values stored off heap are closed when the job ends.
+	 *
+	 * @param field
+	 *            not <code>null</code>.
+	 * @return possibly <code>null</code>.
+	 * @throws InvalidInputException
+	 *             if the input is invalid.
+	 * @throws InvalidInvocationException
+	 *             if the input can't be read for a reason other than invalid input.
+	 */
+	private Object readInput(InputField field) throws InvalidInputException, InvalidInvocationException {
+		final XWSMetrics metrics = m_configuration.getMetrics();
+		if (metrics == null) {
+			return own(transformInput(field));
+		}
+		final long start = System.nanoTime();
+		try {
+			return own(transformInput(field));
+		} finally {
+			record(Phase.READ_INPUT, field.getFileName(), start);
+			if (m_inputs != null) {
+				final ByteSource source = m_inputs.get(field.getFileName());
+				if (source != null) {
+					metrics.addBytesRead(source.sizeIfKnown().or(Long.valueOf(0)).longValue());
+				}
+			} else if (m_inputDirectory != null) {
+				metrics.addBytesRead(new File(m_inputDirectory, field.getFileName()).length());
+			}
+		}
+	}
+
+	/**
+	 * @param phase
+	 *            not <code>null</code>.
+	 * @param name
+	 *            the name of the input or output, for the phases concerning one of them, otherwise <code>null</code>.
+	 * @param start
+	 *            the value of {@link System#nanoTime()} when the phase started.
+	 */
+	private void record(Phase phase, String name, long start) {
+		final XWSMetrics metrics = m_configuration.getMetrics();
+		if (metrics != null) {
+			metrics.record(m_plan.getWorkerClass(), phase, name, System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * Reads and transforms the value of the given input field, through the input cache and the snapshots if there are
+	 * some.
+	 *
+	 * @param field
+	 *            not <code>null</code>.
+	 * @return possibly <code>null</code>.
+	 * @throws InvalidInputException
+	 *             if the input is invalid.
+	 * @throws InvalidInvocationException
+	 *             if the input can't be read for a reason other than invalid input.
+	 */
+	private Object transformInput(InputField field) throws InvalidInputException, InvalidInvocationException {
+		if (m_inputs != null) {
+			if (!m_inputs.containsKey(field.getFileName())) {
+				if (field.isOptional()) {
+					return null;
+				}
+				throw new InvalidInputException("Missing input " + field.getFileName() + ".");
+			}
+			final ByteSource source = m_inputs.get(field.getFileName());
+			if (source instanceof XWSZipInputs.DuplicateEntrySource) {
+				throw ((XWSZipInputs.DuplicateEntrySource) source).newException();
+			}
+			return transformSource(field, source);
+		}
+		final XWSLazyInput.Loader loader = newLoader(field);
+		final XWSInputCache cache = m_configuration.getInputCache();
+		if (cache != null) {
+			return cache.get(field, m_inputDirectory, loader);
+		}
+		return loader.load();
+	}
+
+	/**
+	 * Transforms the given source of the given input field using a new default input transformer, which is given no
+	 * file: the name of the field is mapped to <code>null</code>, and that file to the source.
+	 *
+	 * @param field
+	 *            not <code>null</code>.
+	 * @param source
+	 *            not <code>null</code>.
+	 * @return possibly <code>null</code>.
+	 * @throws InvalidInputException
+	 *             if the input is invalid.
+	 * @throws InvalidInvocationException
+	 *             if the input can't be read for a reason other than invalid input.
+	 */
+	private Object transformSource(InputField field, final ByteSource source)
+			throws InvalidInputException, InvalidInvocationException {
+		Preconditions.checkNotNull(source);
+		final InputTransformer transformer = new InputTransformer();
+		transformer.setNameToFile(new FunctionWithInputCheck<String, File>() {
+			@Override
+			public File apply(String input) {
+				return null;
+			}
+		});
+		transformer.setFileToSource(new FunctionWithInputCheck<File, ByteSource>() {
+			@Override
+			public ByteSource apply(File input) {
+				return source;
+			}
+		});
+		return transformer.get(field.getValueType(), field.getTransformer(), field.getFileName(), MEMORY_DIRECTORY,
+				false);
+	}
+
+	/**
+	 * Sets the given lazy input field. If the input is required and absent, this is reported now, as for an input read
+	 * before execution, so that the worker is not executed. An input read from the input directory is considered
+	 * absent when no file named after it exists in that directory, as the default input transformer maps the names.
+	 *
+	 * @param field
+	 *            not <code>null</code>, lazy.
+	 * @throws InvalidInvocationException
+	 *             if the field can't be set.
+	 */
+	private void setLazyInput(InputField field) throws InvalidInvocationException {
+		final String name = field.getFileName();
+		if (!field.isOptional()) {
+			final boolean absent;
+			if (m_inputs != null) {
+				absent = !m_inputs.containsKey(name);
+			} else {
+				absent = m_inputDirectory != null && !new File(m_inputDirectory, name).exists();
+			}
+			if (absent) {
+				m_exceptions.add(new InvalidInputException("Missing input " + name + "."));
+			}
+		}
+		field.set(m_worker, newLazyInput(field));
+	}
+
+	private void setFieldsInputsConcurrently() throws InvalidInvocationException {
+		final List<InputField> fields = Lists.newArrayList();
+		for (InputField field : m_plan.getInputFields()) {
+			if (field.isLazy()) {
+				setLazyInput(field);
+			} else {
+				fields.add(field);
+			}
+		}
+		final List<FutureTask<Object>> tasks = Lists.newArrayList();
+		Throwable failure = null;
+		try {
+			for (final InputField field : fields) {
+				final FutureTask<Object> task = new FutureTask<Object>(new Callable<Object>() {
+					@Override
+					public Object call() throws Exception {
+						return readInput(field);
+					}
+				});
+				m_configuration.getInputsExecutor().execute(task);
+				tasks.add(task);
+			}
+		} catch (RuntimeException exc) {
+			failure = exc;
+		}
+
+		/**
+		 * Every submitted read is waited for, even after a failure, so that none is still running, thus possibly
+		 * holding a resource, once the execution is over.
+		 */
+		for (int i = 0; i < tasks.size(); ++i) {
+			final Object targetValue;
+			try {
+				targetValue = Uninterruptibles.getUninterruptibly(tasks.get(i));
+			} catch (ExecutionException exc) {
+				final Throwable cause = exc.getCause();
+				if (cause instanceof InvalidInputException) {
+					m_exceptions.add((InvalidInputException) cause);
+				} else if (failure == null) {
+					failure = cause;
+				}
+				continue;
+			}
+			if (failure == null) {
+				try {
+					fields.get(i).set(m_worker, targetValue);
+				} catch (InvalidInvocationException exc) {
+					failure = exc;
+				}
+			}
+		}
+		if (failure != null) {
+			Throwables.propagateIfPossible(failure, InvalidInvocationException.class);
+			throw new InvalidInvocationException(failure);
+		}
+	}
+
+	private void setFieldsInputsSequentially() throws InvalidInvocationException {
+		for (final InputField field : m_plan.getInputFields()) {
+			if (field.isLazy()) {
+				setLazyInput(field);
+				continue;
+			}
+			Object targetValue = null;
+			boolean setValue;
+			try {
+				targetValue = readInput(field);
+				setValue = true;
+			} catch (InvalidInputException exc) {
+				m_exceptions.add(exc);
+				setValue = false;
+			}
+			/**
+			 * Can't set the field to null when setvalue is false, as the field
+			 * type could be e.g. double, which does not accept a
+			 * <code>null</code> value.
+			 */
+			if (setValue) {
+				field.set(m_worker, targetValue);
+			}
+		}
+	}
+
+	/**
+	 * Writes the given document to the file corresponding to the given name, in the output directory, if writing is
+	 * enabled.
+	 *
+	 * @param name
+	 *            not <code>null</code>.
+	 * @param doc
+	 *            not <code>null</code>.
+	 * @param validate
+	 *            <code>true</code> to validate the document before or while writing it.
+	 * @throws IOException
+	 *             if an exception happens while writing to the destination.
+	 */
+	private void write(String name, XMCDADoc doc, boolean validate) throws IOException {
+		if (m_configuration.isWriteEnabled()) {
+			Preconditions.checkNotNull(name);
+			Preconditions.checkNotNull(doc);
+
+			final ByteSink supplier = getSink(name);
+			final XWSValidationPolicy policy = m_configuration.getValidationPolicy();
+			final XWSMetrics metrics = m_configuration.getMetrics();
+			final XMCDAWriteUtils utils = new XMCDAWriteUtils();
+			if (validate && metrics != null) {
+				/**
+				 * Validated here to be timed. An invalid document is validated again while writing, so that the
+				 * failure is reported as usual.
+				 */
+				final long start = System.nanoTime();
+				final boolean valid = doc.validate();
+				metrics.getValidationTimer().record(System.nanoTime() - start);
+				utils.setValidate(!valid);
+			} else {
+				utils.setValidate(validate);
+			}
+			utils.write(doc, supplier);
+			if (policy != null && policy.isAsynchronous()) {
+				policy.validateLater(doc, m_outputs == null ? new File(m_outputDirectory, name).getPath() : name,
+						metrics);
+			}
+		}
+	}
+
+	/**
+	 * Decides whether the next output is to be validated before or while being written, according to the validation
+	 * policy, or, if none, to the output transformer. To be called once per output written.
+	 *
+	 * @return <code>false</code> if writing is disabled.
+	 */
+	private boolean validatesBeforeWrite() {
+		if (!m_configuration.isWriteEnabled()) {
+			return false;
+		}
+		final XWSValidationPolicy policy = m_configuration.getValidationPolicy();
+		if (policy == null) {
+			return m_configuration.getOutputTransformer().validates();
+		}
+		return policy.validatesBeforeWrite(m_plan.getWorkerClass());
+	}
+
+	/**
+	 * Transforms and writes the given value of the given field, if writing is enabled, see
+	 * {@link #transformAndWrite(OutputField, Object)}, and records its duration in the metrics, if any.
+	 *
+	 * @param field
+	 *            not <code>null</code>.
+	 * @param value
+	 *            not <code>null</code>.
+	 * @throws InvalidInvocationException
+	 *             if the transformer can't be instantiated, or the value be transformed.
+	 * @throws IOException
+	 *             if an exception happens while writing to the destination.
+	 */
+	private void writeOutput(OutputField field, Object value) throws InvalidInvocationException, IOException {
+		final long start = System.nanoTime();
+		try {
+			transformAndWrite(field, value);
+		} finally {
+			record(Phase.WRITE_OUTPUT, field.getFileName(), start);
+		}
+	}
+
+	/**
+	 * Transforms the given value of the given field, and writes the resulting document, if writing is enabled.
+	 *
+	 * @param field
+	 *            not <code>null</code>.
+	 * @param value
+	 *            not <code>null</code>.
+	 * @throws InvalidInvocationException
+	 *             if the transformer can't be instantiated, or the value be transformed.
+	 * @throws IOException
+	 *             if an exception happens while writing to the destination.
+	 */
+	private void transformAndWrite(OutputField field, Object value) throws InvalidInvocationException, IOException {
+		final Object transformed;
+		{
+			final Class<? extends Function<Object, ? extends XmlObject>> intermediateTransform = field
+					.getTransformer();
+			Function<Object, ? extends XmlObject> transformer;
+			try {
+				if (intermediateTransform == null) {
+					transformer = null;
+				} else {
+					transformer = intermediateTransform.newInstance();
+				}
+			} catch (InstantiationException exc) {
+				throw new InvalidInvocationException(exc);
+			} catch (IllegalAccessException exc) {
+				throw new InvalidInvocationException(exc);
+			}
+			if (transformer == null) {
+				transformed = value;
+			} else {
+				transformed = transformer.apply(value);
+			}
+		}
+
+		final boolean validate = validatesBeforeWrite();
+		final XWSValidationPolicy policy = m_configuration.getValidationPolicy();
+		/**
+		 * Streamed outputs have no document to validate, thus are written through their document when they are to be
+		 * validated, before or after being written.
+		 */
+		if (m_configuration.isStreamingOutputsEnabled() && XMCDAStreamWriter.supports(field.getTransformedType())
+				&& !validate && (policy == null || !policy.isAsynchronous())) {
+			if (m_configuration.isWriteEnabled()) {
+				new XMCDAStreamWriter().write(transformed, field.getTransformedType(), getSink(field.getFileName()));
+			}
+			return;
+		}
+
+		final XMCDADoc doc;
+		if (transformed instanceof DenseEvaluations) {
+			/** The output transformer does not know dense evaluations, which are written as usual evaluations. */
+			doc = m_configuration.getOutputTransformer().getAsDoc(((DenseEvaluations) transformed).toEvaluations(),
+					EvaluationsRead.class);
+		} else {
+			doc = m_configuration.getOutputTransformer().getAsDoc(transformed, field.getTransformedType());
+		}
+
+		write(field.getFileName(), doc, validate);
+	}
+
+	private void writeOutputsConcurrently() throws InvalidInvocationException, IOException {
+		final List<FutureTask<Void>> tasks = Lists.newArrayList();
+		Throwable failure = null;
+		try {
+			for (final OutputField field : m_plan.getOutputFields()) {
+				final Object value = field.get(m_worker);
+				if (value == null) {
+					continue;
+				}
+				final FutureTask<Void> task = new FutureTask<Void>(new Callable<Void>() {
+					@Override
+					public Void call() throws Exception {
+						writeOutput(field, value);
+						return null;
+					}
+				});
+				m_configuration.getOutputsExecutor().execute(task);
+				tasks.add(task);
+			}
+		} catch (InvalidInvocationException exc) {
+			failure = exc;
+		} catch (RuntimeException exc) {
+			failure = exc;
+		}
+
+		/**
+		 * Every submitted write is waited for, even after a failure, so that none is interrupted, leaving a partial
+		 * file, nor still running once the execution is over.
+		 */
+		for (FutureTask<Void> task : tasks) {
+			try {
+				Uninterruptibles.getUninterruptibly(task);
+			} catch (ExecutionException exc) {
+				if (failure == null) {
+					failure = exc.getCause();
+				}
+			}
+		}
+		if (failure != null) {
+			Throwables.propagateIfPossible(failure, InvalidInvocationException.class, IOException.class);
+			throw new InvalidInvocationException(failure);
+		}
+	}
+}
@@ -2,43 +2,126 @@ package org.decisiondeck.jmcda.xws;
 
 import java.io.File;
 import java.io.IOException;
-import java.lang.annotation.Annotation;
-import java.lang.reflect.Field;
-import java.lang.reflect.Type;
-import java.util.Arrays;
 import java.util.List;
-import java.util.Set;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executor;
 
-import org.apache.xmlbeans.XmlObject;
-import org.decisiondeck.jmcda.exc.FunctionWithInputCheck;
+import org.apache.commons.cli.CommandLine;
 import org.decisiondeck.jmcda.exc.InvalidInputException;
 import org.decisiondeck.jmcda.exc.InvalidInvocationException;
-import org.decisiondeck.jmcda.persist.xmcda2.generated.XMCDADoc;
-import org.decisiondeck.jmcda.persist.xmcda2.utils.XMCDAWriteUtils;
 import org.decisiondeck.jmcda.xws.transformer.InputTransformer;
 import org.decisiondeck.jmcda.xws.transformer.OutputTransformer;
-import org.decisiondeck.jmcda.xws.transformer.Transformers;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Function;
 import com.google.common.base.Preconditions;
-import com.google.common.collect.Iterables;
-import com.google.common.collect.Lists;
-import com.google.common.collect.Sets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.io.ByteSink;
+import com.google.common.io.ByteSource;
 import com.google.common.io.Files;
 
 /**
+ * <p>
  * A class to execute XMCDA Web Services.
+ * </p>
+ * <p>
+ * An object of this class holds both the settings of the execution and the
+ * state of the current run, which makes it convenient for running one worker
+ * from a main method or a test, but not shareable among threads. It delegates
+ * the run itself to an {@link XWSExecution} obtained from the
+ * {@link #getConfiguration() configuration} corresponding to its settings. To
+ * run many jobs concurrently, build one {@link XWSConfiguration} and obtain
+ * one {@link XWSExecution} per job from it instead.
+ * </p>
+ * <p>
+ * The input location may be a zip archive instead of a directory, and the
+ * output location may be a zip archive to be written, in which case the
+ * location name must end with {@value #ARCHIVE_SUFFIX}. The input entries are
+ * read from the archive when needed, without being unpacked, and the outputs
+ * are written into the archive as they are produced. Workers having a field
+ * annotated with {@link XWSInputDirectory} or {@link XWSOutputDirectory} can't
+ * be run that way.
+ * </p>
  *
  * @author Olivier Cailloux
  *
  */
 public class XWSExecutor {
+	/**
+	 * The suffix of the name of an input or output location that designates
+	 * a zip archive instead of a directory, compared ignoring case.
+	 */
+	public static final String ARCHIVE_SUFFIX = ".zip";
+
 	private static final Logger s_logger = LoggerFactory.getLogger(XWSExecutor.class);
 
+	/**
+	 * @param location
+	 *            <code>null</code> for not set.
+	 * @return <code>true</code> iff the given location is set and designates
+	 *         a zip archive.
+	 */
+	public static boolean isArchive(File location) {
+		return location != null && location.getName().toLowerCase(Locale.ROOT).endsWith(ARCHIVE_SUFFIX);
+	}
+
+	/**
+	 * @param inputDirectory
+	 *            <code>null</code> for not set.
+	 * @return the sources of the files in the given directory, by name, not
+	 *         <code>null</code>, empty if the directory is not set.
+	 */
+	private static Map<String, ByteSource> getDirectoryInputs(File inputDirectory) {
+		final ImmutableMap.Builder<String, ByteSource> inputs = ImmutableMap.builder();
+		final File[] files = inputDirectory == null ? null : inputDirectory.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				if (file.isFile()) {
+					inputs.put(file.getName(), Files.asByteSource(file));
+				}
+			}
+		}
+		return inputs.build();
+	}
+
+	/**
+	 * @param outputDirectory
+	 *            <code>null</code> for not set.
+	 * @return a function giving the sink of the file of the given name in the
+	 *         given directory, or <code>null</code> if the directory is not
+	 *         set.
+	 */
+	private static Function<String, ByteSink> getDirectoryOutputs(final File outputDirectory) {
+		return new Function<String, ByteSink>() {
+			@Override
+			public ByteSink apply(String name) {
+				return outputDirectory == null ? null : Files.asByteSink(new File(outputDirectory, name));
+			}
+		};
+	}
+
 	public static void main(String[] args) throws IOException {
+		final XWSCommandLineParserExt parser = new XWSCommandLineParserExt();
+		final CommandLine line;
+		try {
+			line = parser.parseMode(args);
+		} catch (InvalidInvocationException exc) {
+			s_logger.error("Fatal error, terminating.", exc);
+			System.err.println(exc.getLocalizedMessage());
+			System.out.println(parser.getSyntaxHelp());
+			return;
+		}
+		if (line.hasOption(XWSServer.SERVE_OPTION)) {
+			XWSServer.main(args);
+			return;
+		}
+		if (line.hasOption(XWSBatch.BATCH_OPTION)) {
+			XWSBatch.main(args);
+			return;
+		}
 		final XWSExecutor exec = new XWSExecutor();
 		s_logger.info("Starting executor with arguments {}.", args);
 		exec.setArguments(args);
@@ -52,24 +135,72 @@ public class XWSExecutor {
 		}
 	}
 
+	private IFieldAccessorFactory m_accessorFactory;
+
 	private boolean m_allSet;
 
 	private String[] m_args;
 
-	private final List<InvalidInputException> m_exceptions = Lists.newLinkedList();
+	/**
+	 * <code>null</code> when it must be rebuilt from the settings of this
+	 * object.
+	 */
+	private XWSConfiguration m_configuration;
+
+	/**
+	 * The current run. Non <code>null</code> iff all set and the worker
+	 * instance has not been released.
+	 */
+	private XWSExecution m_execution;
+
+	private boolean m_injectorsEnabled;
+
+	/**
+	 * Non <code>null</code> iff the current run reads its inputs from an
+	 * archive.
+	 */
+	private XWSZipInputs m_inputArchive;
+
+	private XWSInputCache m_inputCache;
 
 	private File m_inputDirectory;
 
+	private Executor m_inputsExecutor;
+
 	private final InputTransformer m_inputTransformer = new InputTransformer();
 
+	private XWSMetrics m_metrics;
+
+	/**
+	 * Non <code>null</code> iff the current run writes its outputs into an
+	 * archive.
+	 */
+	private XWSZipOutputs m_outputArchive;
+
 	private File m_outputDirectory;
 
+	private Executor m_outputsExecutor;
+
 	private final OutputTransformer m_outputTransformer;
 
+	private XWSInjectionPlan m_plan;
+
+	private boolean m_skipUnchangedOutputs;
+
+	private XWSSnapshots m_snapshots;
+
+	private boolean m_streamingOutputs;
+
+	private XWSValidationPolicy m_validationPolicy;
+
 	private Class<? extends IXWS> m_workerClass;
 
+	private boolean m_workerCreated;
+
 	private IXWS m_workerInstance;
 
+	private XWSWorkerPool m_workerPool;
+
 	private String m_workerString;
 
 	private boolean m_write;
@@ -80,43 +211,100 @@ public class XWSExecutor {
 		m_workerString = null;
 		m_workerClass = null;
 		m_workerInstance = null;
+		m_workerCreated = false;
+		m_workerPool = null;
+		m_plan = null;
+		m_accessorFactory = FieldAccessors.methodHandles();
+		m_injectorsEnabled = true;
+		m_configuration = null;
+		m_execution = null;
+		m_inputCache = null;
+		m_inputArchive = null;
+		m_outputArchive = null;
+		m_inputsExecutor = null;
+		m_metrics = null;
+		m_outputsExecutor = null;
 		m_args = null;
 		m_allSet = false;
 		m_write = true;
+		m_streamingOutputs = false;
+		m_skipUnchangedOutputs = false;
+		m_snapshots = null;
+		m_validationPolicy = null;
 		m_outputTransformer = new OutputTransformer();
 	}
 
+	/**
+	 * Closes the input archive and completes the output archive of the
+	 * current run, if any. This is done at the end of {@link #execute()} and
+	 * of {@link #writeOutputs()}, thus need only be called when the steps of
+	 * the run are called separately and the outputs are not written.
+	 *
+	 * @throws IOException
+	 *             if an exception happens while closing an archive.
+	 */
+	public void closeArchives() throws IOException {
+		try {
+			if (m_outputArchive != null && m_write) {
+				m_outputArchive.close();
+			}
+		} finally {
+			if (m_inputArchive != null) {
+				m_inputArchive.close();
+			}
+		}
+	}
+
 	public void execute() throws InvalidInvocationException, IOException {
-		/**
-		 * TODO currently, no guarantee that all inputs are non null, even if
-		 * not optional. The executor should probably guarantee this, or web
-		 * services should check for this condition. It probably suffices to
-		 * modify InputTransformer#getDocToTag (add optional parameter
-		 * similarily to getDocToTags).
-		 */
-		m_exceptions.clear();
+		try {
+			getExecution().execute();
+		} finally {
+			closeArchives();
+		}
+	}
 
-		setWorker();
-		prepareDirectories();
-		setFieldsDirectories();
-		setFieldsInputs();
-
-		/**
-		 * Note that the field must be set even when no exceptions occurred.
-		 * Might be set e.g. to an empty list or an empty document.
-		 */
-		setFieldExceptions();
-
-		if (m_exceptions.isEmpty()) {
-			try {
-				m_workerInstance.execute();
-			} catch (InvalidInputException exc) {
-				m_exceptions.add(exc);
-				setFieldExceptions();
-			}
+	/**
+	 * Retrieves the configuration corresponding to the current settings of
+	 * this object: transformers, field accessors, injectors, executors, worker
+	 * pool, metrics and write flag. The configuration is built again when one
+	 * of these settings changes.
+	 *
+	 * @return not <code>null</code>.
+	 */
+	public XWSConfiguration getConfiguration() {
+		if (m_configuration == null) {
+			m_configuration = new XWSConfiguration.Builder().setFieldAccessorFactory(m_accessorFactory)
+					.setGeneratedInjectorsEnabled(m_injectorsEnabled).setInputTransformer(m_inputTransformer)
+					.setInputCache(m_inputCache).setInputsExecutor(m_inputsExecutor).setOutputTransformer(m_outputTransformer)
+					.setOutputsExecutor(m_outputsExecutor).setWorkerPool(m_workerPool).setWriteEnabled(m_write)
+					.setStreamingOutputsEnabled(m_streamingOutputs).setValidationPolicy(m_validationPolicy)
+					.setMetrics(m_metrics).setSnapshots(m_snapshots)
+					.setSkipUnchangedOutputsEnabled(m_skipUnchangedOutputs).build();
 		}
+		return m_configuration;
+	}
 
-		writeOutputs();
+	/**
+	 * Retrieves the exceptions collected during the last execution, thus,
+	 * while transforming the inputs or executing the worker.
+	 *
+	 * @return not <code>null</code>, empty if no execution occurred or no
+	 *         exception has been raised.
+	 */
+	public List<InvalidInputException> getExceptions() {
+		if (m_execution == null) {
+			return ImmutableList.of();
+		}
+		return m_execution.getExceptions();
+	}
+
+	/**
+	 * @return the factory used to bind the worker fields to accessors, not
+	 *         <code>null</code>.
+	 * @see #setFieldAccessorFactory(IFieldAccessorFactory)
+	 */
+	public IFieldAccessorFactory getFieldAccessorFactory() {
+		return m_accessorFactory;
 	}
 
 	/**
@@ -126,6 +314,24 @@ public class XWSExecutor {
 		return m_inputDirectory;
 	}
 
+	/**
+	 * @return the cache of transformed inputs, or <code>null</code> if inputs
+	 *         are not cached.
+	 * @see #setInputCache(XWSInputCache)
+	 */
+	public XWSInputCache getInputCache() {
+		return m_inputCache;
+	}
+
+	/**
+	 * @return the injection plan of the worker class, or <code>null</code> if
+	 *         the worker class has not been set yet.
+	 * @see #setWorkerClass()
+	 */
+	public XWSInjectionPlan getInjectionPlan() {
+		return m_plan;
+	}
+
 	/**
 	 * Retrieves the input transformer this object uses. This can be used to
 	 * inject other transformers and therefore change the behavior of this
@@ -137,6 +343,24 @@ public class XWSExecutor {
 		return m_inputTransformer;
 	}
 
+	/**
+	 * @return the executor used to read the inputs concurrently, or
+	 *         <code>null</code> if they are read sequentially.
+	 * @see #setInputsExecutor(Executor)
+	 */
+	public Executor getInputsExecutor() {
+		return m_inputsExecutor;
+	}
+
+	/**
+	 * @return the metrics recorded by this object, or <code>null</code> if
+	 *         none are recorded.
+	 * @see #setMetrics(XWSMetrics)
+	 */
+	public XWSMetrics getMetrics() {
+		return m_metrics;
+	}
+
 	/**
 	 * @return the output directory, or <code>null</code> if not set.
 	 */
@@ -144,14 +368,56 @@ public class XWSExecutor {
 		return m_outputDirectory;
 	}
 
+	/**
+	 * @return the executor used to write the outputs concurrently, or
+	 *         <code>null</code> if they are written sequentially.
+	 * @see #setOutputsExecutor(Executor)
+	 */
+	public Executor getOutputsExecutor() {
+		return m_outputsExecutor;
+	}
+
 	public OutputTransformer getOutputTransformer() {
 		return m_outputTransformer;
 	}
 
+	/**
+	 * Retrieves the number of outputs of the last execution that have been
+	 * found unchanged, thus whose file has been left untouched.
+	 *
+	 * @return zero if no execution occurred or skipping unchanged outputs is
+	 *         not enabled.
+	 * @see #setSkipUnchangedOutputsEnabled(boolean)
+	 */
+	public int getSkippedOutputCount() {
+		if (m_execution == null) {
+			return 0;
+		}
+		return m_execution.getSkippedOutputCount();
+	}
+
+	/**
+	 * @return the snapshots of the inputs, or <code>null</code> if every input
+	 *         file is parsed.
+	 * @see #setSnapshots(XWSSnapshots)
+	 */
+	public XWSSnapshots getSnapshots() {
+		return m_snapshots;
+	}
+
 	public String getSyntaxHelp() {
 		return new XWSCommandLineParserExt().getSyntaxHelp();
 	}
 
+	/**
+	 * @return the policy deciding which output documents are validated, or
+	 *         <code>null</code> for the default.
+	 * @see #setValidationPolicy(XWSValidationPolicy)
+	 */
+	public XWSValidationPolicy getValidationPolicy() {
+		return m_validationPolicy;
+	}
+
 	/**
 	 * @return the instance worker, or <code>null</code> if not set.
 	 */
@@ -166,6 +432,15 @@ public class XWSExecutor {
 		return m_workerClass;
 	}
 
+	/**
+	 * @return the pool of worker instances this object uses, or
+	 *         <code>null</code> if workers are not pooled.
+	 * @see #setWorkerPool(XWSWorkerPool)
+	 */
+	public XWSWorkerPool getWorkerPool() {
+		return m_workerPool;
+	}
+
 	/**
 	 * @return the worker as a string, or <code>null</code> if not set.
 	 */
@@ -173,6 +448,33 @@ public class XWSExecutor {
 		return m_workerString;
 	}
 
+	/**
+	 * @return <code>true</code> iff this object uses generated injectors when
+	 *         available.
+	 * @see #setGeneratedInjectorsEnabled(boolean)
+	 */
+	public boolean isGeneratedInjectorsEnabled() {
+		return m_injectorsEnabled;
+	}
+
+	/**
+	 * @return <code>true</code> iff the output files whose content is
+	 *         unchanged are not rewritten.
+	 * @see #setSkipUnchangedOutputsEnabled(boolean)
+	 */
+	public boolean isSkipUnchangedOutputsEnabled() {
+		return m_skipUnchangedOutputs;
+	}
+
+	/**
+	 * @return <code>true</code> iff the outputs supported by
+	 *         {@link XMCDAStreamWriter} are streamed to their files.
+	 * @see #setStreamingOutputsEnabled(boolean)
+	 */
+	public boolean isStreamingOutputsEnabled() {
+		return m_streamingOutputs;
+	}
+
 	/**
 	 * <p>
 	 * Parses the arguments associated to this object in order to set the input
@@ -205,6 +507,8 @@ public class XWSExecutor {
 		m_workerString = parser.getWorker();
 		m_workerInstance = null;
 		m_workerClass = null;
+		m_plan = null;
+		m_execution = null;
 	}
 
 	/**
@@ -213,7 +517,9 @@ public class XWSExecutor {
 	 * directory. If the output directory is non <code>null</code>, if it does
 	 * not exist, create it, if it exists, checks that it is a directory. If
 	 * this object has write disabled, the output directory is not created and
-	 * not checked for existence.
+	 * not checked for existence. An input archive is checked to be an
+	 * existing file, and the directory of an output archive is prepared as an
+	 * output directory.
 	 * 
 	 * @throws InvalidInvocationException
 	 *             if one of the checks fail, or the output directory creation
@@ -221,24 +527,44 @@ public class XWSExecutor {
 	 * @see #setWriteEnabled(boolean)
 	 */
 	public void prepareDirectories() throws InvalidInvocationException {
-		if (m_write && m_outputDirectory != null) {
-			if (!m_outputDirectory.exists()) {
-				if (!m_outputDirectory.mkdirs()) {
-					throw new InvalidInvocationException("Could not create directory " + m_outputDirectory + ".");
-				}
-			}
-			if (!m_outputDirectory.isDirectory()) {
-				throw new InvalidInvocationException("Output directory " + m_outputDirectory + " is not a directory.");
-			}
+		if (isArchive(m_inputDirectory) && !m_inputDirectory.isFile()) {
+			throw new InvalidInvocationException("Input archive " + m_inputDirectory + " does not exist.");
 		}
+		final File inputDirectory = isArchive(m_inputDirectory) ? null : m_inputDirectory;
+		final File outputDirectory = isArchive(m_outputDirectory) ? m_outputDirectory.getAbsoluteFile()
+				.getParentFile() : m_outputDirectory;
+		XWSExecution.prepareDirectories(inputDirectory, outputDirectory, m_write);
+	}
 
-		if (m_inputDirectory != null) {
-			if (!m_inputDirectory.exists()) {
-				throw new InvalidInvocationException("Input directory " + m_inputDirectory + " does not exist.");
-			}
-			if (!m_inputDirectory.isDirectory()) {
-				throw new InvalidInvocationException("Input directory " + m_inputDirectory + " is not a directory.");
-			}
+	/**
+	 * <p>
+	 * Ends the use, by this object, of the current worker instance, if it has
+	 * been instantiated by this object. If a worker pool is set, the annotated
+	 * fields of the worker are cleared and the worker is given back to the
+	 * pool, which may reuse it for an other job; thus, the worker must not be
+	 * used any more by the caller. In any case, this object forgets the
+	 * instance, and a new one is obtained the next time it is needed.
+	 * </p>
+	 * <p>
+	 * A worker instance {@link #setWorker(IXWS) given} to this object is never
+	 * released: this method has no effect then.
+	 * </p>
+	 *
+	 * @throws InvalidInvocationException
+	 *             if a field of the worker can't be cleared, in which case the
+	 *             worker is not given back to the pool.
+	 * @see #setWorkerPool(XWSWorkerPool)
+	 */
+	public void releaseWorker() throws InvalidInvocationException {
+		if (m_workerInstance == null || !m_workerCreated) {
+			return;
+		}
+		final XWSExecution execution = m_execution;
+		m_workerInstance = null;
+		m_workerCreated = false;
+		m_execution = null;
+		if (execution != null) {
+			withCurrentConfiguration(execution).releaseWorker();
 		}
 	}
 
@@ -254,14 +580,46 @@ public class XWSExecutor {
 	}
 
 	public void setFieldExceptions() throws InvalidInvocationException {
-		setWorker();
+		getExecution().setFieldExceptions();
+	}
 
-		final List<InvalidInputException> exceptions = Lists.newLinkedList(m_exceptions);
-		final Set<Field> exceptionFields = getAnnotatedFields(XWSExceptions.class);
-		for (Field exceptionField : exceptionFields) {
-			final Object exceptionsTransformed = new OutputTransformer().getAs(exceptions, exceptionField.getType());
-			setField(exceptionField, exceptionsTransformed);
-		}
+	/**
+	 * Sets the factory used to bind the annotated fields of the worker to
+	 * accessors, when no generated injector is used for that worker. The
+	 * default is {@link FieldAccessors#methodHandles()}. The binding happens
+	 * when the worker class is set, thus the given factory is used from the
+	 * next time the worker class is set.
+	 *
+	 * @param accessorFactory
+	 *            not <code>null</code>.
+	 */
+	public void setFieldAccessorFactory(IFieldAccessorFactory accessorFactory) {
+		m_accessorFactory = Preconditions.checkNotNull(accessorFactory);
+		m_configuration = null;
+	}
+
+	/**
+	 * <p>
+	 * Enables or disables the use of generated injectors. When enabled (the
+	 * default), and an {@link IXWSInjector} has been generated for the worker
+	 * class and is on the class path, this object uses it to find the worker
+	 * class, instantiate it and access its fields, instead of using
+	 * reflection. Otherwise, the worker is loaded and instantiated reflectively
+	 * and its fields are bound using the
+	 * {@link #setFieldAccessorFactory(IFieldAccessorFactory) accessor factory}.
+	 * </p>
+	 * <p>
+	 * As for the accessor factory, this takes effect from the next time the
+	 * worker class is set.
+	 * </p>
+	 *
+	 * @param injectorsEnabled
+	 *            <code>false</code> to always use reflection.
+	 * @see org.decisiondeck.jmcda.xws.processor.XWSInjectorProcessor
+	 */
+	public void setGeneratedInjectorsEnabled(boolean injectorsEnabled) {
+		m_injectorsEnabled = injectorsEnabled;
+		m_configuration = null;
 	}
 
 	/**
@@ -286,74 +644,35 @@ public class XWSExecutor {
 	 *             the associated worker.
 	 */
 	public void setFieldsDirectories() throws InvalidInvocationException {
-		setWorker();
-
-		Field inputDirectoryfield = getAnnotatedFieldNoThrow(XWSInputDirectory.class);
-		if (inputDirectoryfield != null) {
-			if (m_inputDirectory == null) {
-				throw new InvalidInvocationException("Input directory required but not set.");
-			}
-			setField(inputDirectoryfield, m_inputDirectory);
-		}
-
-		final Field outputDirectoryField = getAnnotatedFieldNoThrow(XWSOutputDirectory.class);
-		if (outputDirectoryField != null) {
-			if (m_outputDirectory == null) {
-				throw new InvalidInvocationException("Output directory required but not set.");
-			}
-			setField(outputDirectoryField, m_outputDirectory);
-		}
+		getExecution().setFieldsDirectories();
 	}
 
+	/**
+	 * <p>
+	 * Reads and transforms the inputs of the worker, and sets the fields
+	 * annotated with {@link XWSInput} accordingly. Invalid inputs are added to
+	 * the exceptions of this object, in the order of the fields, and the
+	 * corresponding fields are left untouched.
+	 * </p>
+	 * <p>
+	 * If an inputs executor is set, the inputs are read and transformed
+	 * concurrently on that executor, the fields being set afterwards, on the
+	 * calling thread, in the same order and with the same outcome as the
+	 * sequential way.
+	 * </p>
+	 *
+	 * @throws InvalidInvocationException
+	 *             if a problem occurs while initialising the worker, or setting
+	 *             a field.
+	 * @see #setInputsExecutor(Executor)
+	 */
 	public void setFieldsInputs() throws InvalidInvocationException {
-		setWorker();
-
-		final Field[] fields = m_workerClass.getFields();
-		for (final Field field : fields) {
-			final XWSInput inputAnn = field.getAnnotation(XWSInput.class);
-			if (inputAnn != null) {
-				final String name;
-				if (inputAnn.name().length() == 0) {
-					name = field.getName() + ".xml";
-				} else {
-					name = inputAnn.name();
-				}
-				final boolean optional = inputAnn.optional();
-				final Type targetType = field.getGenericType();
-				@SuppressWarnings("unchecked")
-				final Class<? extends FunctionWithInputCheck<Object, Object>> intermediateClass = (Class<? extends FunctionWithInputCheck<Object, Object>>) inputAnn
-						.transformer();
-				final Class<? extends FunctionWithInputCheck<Object, Object>> intermediateTransform = intermediateClass
-						.equals(XWSInput.None.class) ? null : intermediateClass;
-				Object targetValue = null;
-				boolean setValue;
-				try {
-					targetValue = m_inputTransformer.get(targetType, intermediateTransform, name, m_inputDirectory,
-							optional);
-					setValue = true;
-				} catch (InvalidInputException exc) {
-					m_exceptions.add(exc);
-					setValue = false;
-				}
-				/**
-				 * Can't set the field to null when setvalue is false, as the
-				 * field type could be e.g. double, which does not accept a
-				 * <code>null</code> value.
-				 */
-				if (setValue) {
-					try {
-						field.set(m_workerInstance, targetValue);
-					} catch (IllegalAccessException exc) {
-						throw new InvalidInvocationException("Can't instantiate the field " + field.getName() + ".",
-								exc);
-					}
-				}
-			}
-		}
+		getExecution().setFieldsInputs();
 	}
 
 	/**
-	 * Sets the input directory associated to this object.
+	 * Sets the input directory associated to this object, or the zip archive
+	 * the inputs are read from, see {@link #isArchive(File)}.
 	 * 
 	 * @param inputDirectory
 	 *            <code>null</code> for not set.
@@ -364,7 +683,58 @@ public class XWSExecutor {
 	}
 
 	/**
-	 * Sets the output directory associated to this object.
+	 * Sets the cache of transformed inputs, which may be shared with other
+	 * executors. The default is <code>null</code>, meaning that every input is
+	 * transformed at every execution. See {@link XWSInputCache} for the
+	 * restrictions that apply when a cache is used.
+	 *
+	 * @param inputCache
+	 *            <code>null</code> to not cache inputs.
+	 */
+	public void setInputCache(XWSInputCache inputCache) {
+		m_inputCache = inputCache;
+		m_configuration = null;
+	}
+
+	/**
+	 * <p>
+	 * Sets the executor used to read and transform the inputs concurrently.
+	 * The default is <code>null</code>, meaning that the inputs are read one
+	 * after the other on the calling thread.
+	 * </p>
+	 * <p>
+	 * When an executor is set, the {@link #getInputTransformer() input
+	 * transformer} and the transformers declared in the {@link XWSInput}
+	 * annotations are used from several threads at the same time, thus must
+	 * not depend on mutable shared state.
+	 * </p>
+	 *
+	 * @param inputsExecutor
+	 *            <code>null</code> to read the inputs sequentially.
+	 */
+	public void setInputsExecutor(Executor inputsExecutor) {
+		m_inputsExecutor = inputsExecutor;
+		m_configuration = null;
+	}
+
+	/**
+	 * Sets the object recording the metrics of the executions of this object:
+	 * jobs, durations of the phases, bytes read and written, and validation
+	 * time. It may be shared with other executors, and exposed through JMX,
+	 * see {@link XWSMetrics}. The default is <code>null</code>, meaning that
+	 * no metrics are recorded.
+	 *
+	 * @param metrics
+	 *            <code>null</code> to record no metrics.
+	 */
+	public void setMetrics(XWSMetrics metrics) {
+		m_metrics = metrics;
+		m_configuration = null;
+	}
+
+	/**
+	 * Sets the output directory associated to this object, or the zip archive
+	 * the outputs are written into, see {@link #isArchive(File)}.
 	 * 
 	 * @param outputDirectory
 	 *            <code>null</code> for not set.
@@ -374,6 +744,93 @@ public class XWSExecutor {
 		m_allSet = false;
 	}
 
+	/**
+	 * <p>
+	 * Sets the executor used to transform and write the outputs concurrently.
+	 * The default is <code>null</code>, meaning that the outputs are written
+	 * one after the other on the calling thread.
+	 * </p>
+	 * <p>
+	 * When an executor is set, the {@link #getOutputTransformer() output
+	 * transformer} and the transformers declared in the {@link XWSOutput}
+	 * annotations are used from several threads at the same time, thus must
+	 * not depend on mutable shared state.
+	 * </p>
+	 *
+	 * @param outputsExecutor
+	 *            <code>null</code> to write the outputs sequentially.
+	 */
+	public void setOutputsExecutor(Executor outputsExecutor) {
+		m_outputsExecutor = outputsExecutor;
+		m_configuration = null;
+	}
+
+	/**
+	 * Sets whether an output file of the output directory whose content is
+	 * the same as the output to be written is left untouched, thus keeps its
+	 * modification time, instead of being rewritten. The output is compared
+	 * with the existing file as it is written; a changed output replaces the
+	 * file once complete. Outputs are always written when the inputs are read
+	 * from an archive or the outputs written to one. The default is
+	 * <code>false</code>.
+	 *
+	 * @param skipUnchangedOutputs
+	 *            <code>true</code> to skip rewriting unchanged outputs.
+	 * @see #getSkippedOutputCount()
+	 */
+	public void setSkipUnchangedOutputsEnabled(boolean skipUnchangedOutputs) {
+		m_skipUnchangedOutputs = skipUnchangedOutputs;
+		m_configuration = null;
+	}
+
+	/**
+	 * Sets the snapshots of the inputs, which may be shared with other
+	 * executors: the inputs they support, read from an input directory, are
+	 * then loaded from their binary snapshot when it matches the input file,
+	 * instead of being parsed. The default is <code>null</code>, meaning that
+	 * every input file is parsed. See {@link XWSSnapshots} for the details.
+	 *
+	 * @param snapshots
+	 *            <code>null</code> for no snapshots.
+	 */
+	public void setSnapshots(XWSSnapshots snapshots) {
+		m_snapshots = snapshots;
+		m_configuration = null;
+	}
+
+	/**
+	 * Sets whether the outputs whose type is supported by
+	 * {@link XMCDAStreamWriter}, such as evaluations or alternatives matrices,
+	 * are written directly to their files, element by element, instead of
+	 * being transformed to a complete document first. Streamed outputs are not
+	 * validated: the outputs that are to be validated, according to the
+	 * {@link #setValidationPolicy(XWSValidationPolicy) validation policy} or,
+	 * if none, to the output transformer, and all outputs under an asynchronous
+	 * policy, are written through their document as usual. The default is
+	 * <code>false</code>.
+	 *
+	 * @param streamingOutputs
+	 *            <code>true</code> to stream the supported outputs.
+	 */
+	public void setStreamingOutputsEnabled(boolean streamingOutputs) {
+		m_streamingOutputs = streamingOutputs;
+		m_configuration = null;
+	}
+
+	/**
+	 * Sets the policy deciding which output documents are validated against
+	 * the XMCDA schema. The default is <code>null</code>, meaning that all
+	 * documents are validated or none, depending on the
+	 * {@link OutputTransformer#validates() output transformer}.
+	 *
+	 * @param validationPolicy
+	 *            <code>null</code> for the default.
+	 */
+	public void setValidationPolicy(XWSValidationPolicy validationPolicy) {
+		m_validationPolicy = validationPolicy;
+		m_configuration = null;
+	}
+
 	/**
 	 * <p>
 	 * Sets the worker instance and class.
@@ -389,6 +846,10 @@ public class XWSExecutor {
 	 * If the worker instance is already set, this method does nothing more.
 	 * </p>
 	 * <p>
+	 * If the worker instance has been {@link #releaseWorker() released}, a new
+	 * one is obtained, from the pool if possible.
+	 * </p>
+	 * <p>
 	 * If the arguments are set, they are parsed and the input and output
 	 * directories and worker string are set. The worker instance and worker
 	 * class are set, possibly by deduction from the arguments, or by deduction
@@ -411,6 +872,9 @@ public class XWSExecutor {
 	 */
 	public void setWorker() throws InvalidInvocationException {
 		if (m_allSet) {
+			if (m_execution == null) {
+				setExecution();
+			}
 			return;
 		}
 		final boolean useArgs = m_args != null && m_inputDirectory == null && m_outputDirectory == null
@@ -425,7 +889,7 @@ public class XWSExecutor {
 
 		setWorkerClass();
 
-		setWorkerInstanceInternal();
+		setExecution();
 
 		m_allSet = true;
 	}
@@ -441,6 +905,8 @@ public class XWSExecutor {
 		m_workerClass = workerClass;
 		m_workerString = null;
 		m_workerInstance = null;
+		m_plan = null;
+		m_execution = null;
 		m_allSet = false;
 	}
 
@@ -455,6 +921,9 @@ public class XWSExecutor {
 		m_workerClass = null;
 		m_workerString = null;
 		m_workerInstance = workerInstance;
+		m_workerCreated = false;
+		m_plan = null;
+		m_execution = null;
 		m_allSet = false;
 	}
 
@@ -469,9 +938,32 @@ public class XWSExecutor {
 		m_workerString = workerString;
 		m_workerClass = null;
 		m_workerInstance = null;
+		m_plan = null;
+		m_execution = null;
 		m_allSet = false;
 	}
 
+	/**
+	 * <p>
+	 * Sets the pool of worker instances this object uses. The default is
+	 * <code>null</code>, meaning that a new worker instance is created for
+	 * every execution (unless an instance is given).
+	 * </p>
+	 * <p>
+	 * When a pool is set, and the worker class implements
+	 * {@link IXWSLifecycle}, the worker instance is taken from the pool if one
+	 * is idle, and should be given back to it by calling
+	 * {@link #releaseWorker()} once the results have been read.
+	 * </p>
+	 *
+	 * @param workerPool
+	 *            <code>null</code> for no pooling.
+	 */
+	public void setWorkerPool(XWSWorkerPool workerPool) {
+		m_workerPool = workerPool;
+		m_configuration = null;
+	}
+
 	/**
 	 * <p>
 	 * Sets the worker class that this object should use by deducing it from the
@@ -484,11 +976,13 @@ public class XWSExecutor {
 	 * The method checks that the resulting worker has at least one field
 	 * annotated for receiving exceptions. The method also checks that no more
 	 * than one field is annotated with input directory and no more than one is
-	 * annotated with output directory.
+	 * annotated with output directory. These checks are done once per worker
+	 * class, when computing its {@link XWSInjectionPlan}.
 	 * </p>
 	 * <p>
 	 * If the worker class is already set, this method has no effect other than
-	 * the sanity checks exposed here above.
+	 * the sanity checks exposed here above and setting the associated
+	 * injection plan.
 	 * </p>
 	 * 
 	 * @throws InvalidInvocationException
@@ -503,33 +997,15 @@ public class XWSExecutor {
 				m_workerClass = m_workerInstance.getClass();
 			} else {
 				Preconditions.checkState(m_workerString != null);
-
-				final Class<?> workerClass;
-				try {
-					workerClass = Class.forName(m_workerString);
-				} catch (ClassNotFoundException exc) {
-					throw new InvalidInvocationException(exc);
-				}
-				final List<Class<?>> interfaces = Arrays.asList(workerClass.getInterfaces());
-				if (!interfaces.contains(IXWS.class)) {
-					throw new InvalidInvocationException("The given worker class, " + m_workerString
-							+ ", does not implement " + IXWS.class.getCanonicalName() + ".");
-				}
-
-				@SuppressWarnings("unchecked")
-				final Class<? extends IXWS> w = (Class<? extends IXWS>) workerClass;
-				m_workerClass = w;
+				m_workerClass = getConfiguration().getWorkerClass(m_workerString);
 			}
 		}
-		if (getAnnotatedFields(XWSExceptions.class).isEmpty()) {
-			throw new InvalidInvocationException("Exception field not found.");
-		}
-		getAnnotatedField(XWSInputDirectory.class);
-		getAnnotatedField(XWSOutputDirectory.class);
+		m_plan = getConfiguration().getPlan(m_workerClass);
 	}
 
 	public void setWriteEnabled(boolean writeEnabled) {
 		m_write = writeEnabled;
+		m_configuration = null;
 	}
 
 	/**
@@ -549,6 +1025,14 @@ public class XWSExecutor {
 	 * If writing is enabled, the output directory must be non <code>null</code>
 	 * when calling this method.
 	 * </p>
+	 * <p>
+	 * If an outputs executor is set, the values are read from the worker on
+	 * the calling thread, then transformed, validated and written concurrently
+	 * on that executor, one task per output. The files written are the same as
+	 * in the sequential way. If several outputs fail, the exception reported is
+	 * the one of the first failing output, in the order of the fields, as in
+	 * the sequential way; however, the other outputs may have been written.
+	 * </p>
 	 * 
 	 * @throws InvalidInvocationException
 	 *             if a field can't be accessed, or the transformer be
@@ -556,177 +1040,78 @@ public class XWSExecutor {
 	 * @throws IOException
 	 *             if an exception happens while writing to the destination.
 	 * @see #setWriteEnabled(boolean)
+	 * @see #setOutputsExecutor(Executor)
 	 */
 	public void writeOutputs() throws InvalidInvocationException, IOException {
 		Preconditions.checkState(m_allSet);
-
-		for (final Field field : getAnnotatedFields(XWSOutput.class)) {
-			final XWSOutput outputAnn = field.getAnnotation(XWSOutput.class);
-			final String name;
-			if (outputAnn.name().length() == 0) {
-				name = field.getName() + ".xml";
-			} else {
-				name = outputAnn.name();
-			}
-			final Object value;
-			try {
-				value = field.get(m_workerInstance);
-			} catch (IllegalArgumentException exc) {
-				throw new InvalidInvocationException(exc);
-			} catch (IllegalAccessException exc) {
-				throw new InvalidInvocationException(exc);
-			}
-			if (value == null) {
-				continue;
-			}
-			final Type type = field.getGenericType();
-
-			final Object transformed;
-			final Type transformedType;
-			{
-				@SuppressWarnings("unchecked")
-				final Class<? extends Function<Object, ? extends XmlObject>> intermediateClass = (Class<? extends Function<Object, ? extends XmlObject>>) outputAnn
-						.transformer();
-				final Class<? extends Function<Object, ? extends XmlObject>> intermediateTransform = intermediateClass
-						.equals(XWSOutput.None.class) ? null : intermediateClass;
-				// intermediateTransform.getg
-				Function<Object, ? extends XmlObject> transformer;
-				// transformer.
-				try {
-					if (intermediateTransform == null) {
-						transformer = null;
-						transformedType = type;
-					} else {
-						transformedType = Transformers.getApplyMethodGeneric(intermediateTransform)
-								.getGenericReturnType();
-						transformer = intermediateTransform.newInstance();
-					}
-				} catch (InstantiationException exc) {
-					throw new InvalidInvocationException(exc);
-				} catch (IllegalAccessException exc) {
-					throw new InvalidInvocationException(exc);
-				}
-				if (transformer == null) {
-					transformed = value;
-				} else {
-					transformed = transformer.apply(value);
-				}
-			}
-
-			final XMCDADoc doc = m_outputTransformer.getAsDoc(transformed, transformedType);
-
-			write(m_outputDirectory, name, doc);
-		}
-	}
-
-	/**
-	 * The worker class must be set.
-	 * 
-	 * @param annotationClass
-	 *            not <code>null</code>.
-	 * @return <code>null</code> if not found.
-	 * @throws InvalidInvocationException
-	 *             if more than one corresponding field found.
-	 */
-	private Field getAnnotatedField(Class<? extends Annotation> annotationClass) throws InvalidInvocationException {
-		Preconditions.checkState(m_workerClass != null);
-		final Set<Field> fields = getAnnotatedFields(annotationClass);
-		if (fields.size() >= 2) {
-			throw new InvalidInvocationException(
-					"Found more than one field annotated with " + annotationClass + " in " + m_workerClass + ".");
-		}
-		return Iterables.getOnlyElement(fields, null);
-	}
-
-	private Field getAnnotatedFieldNoThrow(Class<? extends Annotation> annotationClass) {
-		try {
-			return getAnnotatedField(annotationClass);
-		} catch (InvalidInvocationException exc) {
-			throw new IllegalStateException(exc);
+		getExecution().writeOutputs();
+		if (m_outputArchive != null && m_write) {
+			m_outputArchive.close();
 		}
 	}
 
 	/**
-	 * The worker class must be set.
-	 * 
-	 * @param annotationClass
-	 *            not <code>null</code>.
+	 * Retrieves the current run, after having executed as if
+	 * {@link #setWorker()} had been called, and bound the run to the current
+	 * configuration.
+	 *
 	 * @return not <code>null</code>.
+	 * @throws InvalidInvocationException
+	 *             if {@link #setWorker()} fails.
 	 */
-	private Set<Field> getAnnotatedFields(Class<? extends Annotation> annotationClass) {
-		final Set<Field> fields = Sets.newLinkedHashSet();
-		for (final Field field : m_workerClass.getFields()) {
-			if (field.getAnnotation(annotationClass) != null) {
-				fields.add(field);
-			}
-		}
-		return fields;
-	}
-
-	private void setField(Field field, Object value) throws InvalidInvocationException {
-		Preconditions.checkState(m_workerInstance != null);
-
-		try {
-			field.set(m_workerInstance, value);
-		} catch (IllegalAccessException exc) {
-			throw new InvalidInvocationException("Can't set the field " + field.getName() + ".", exc);
-		}
+	private XWSExecution getExecution() throws InvalidInvocationException {
+		setWorker();
+		m_execution = withCurrentConfiguration(m_execution);
+		return m_execution;
 	}
 
 	/**
-	 * Sets the worker instance that this object should use by instantiating the
-	 * worker class, possibly deducing the worker class itself from the worker
-	 * string. The worker string or worker class or worker instance must be set.
-	 * If the worker instance is already set, this method has no effect.
+	 * Starts a new run, with the worker instance that this object should use,
+	 * instantiating the worker class (or taking a worker from the pool) if the
+	 * instance is not set. The worker class must be set.
 	 * 
 	 * @throws InvalidInvocationException
-	 *             if the worker string does not correspond to a class or does
-	 *             not implement the {@link IXWS} interface, or if the worker
-	 *             can't be instantiated.
+	 *             if the worker can't be instantiated.
 	 */
-	private void setWorkerInstanceInternal() throws InvalidInvocationException {
-		if (m_workerInstance != null) {
+	private void setExecution() throws InvalidInvocationException {
+		final XWSConfiguration configuration = getConfiguration();
+		if (m_workerInstance == null) {
+			m_workerInstance = configuration.newWorker(m_plan);
+			m_workerCreated = true;
+		}
+		if (!isArchive(m_inputDirectory) && !isArchive(m_outputDirectory)) {
+			m_inputArchive = null;
+			m_outputArchive = null;
+			m_execution = new XWSExecution(configuration, m_plan, m_workerInstance, m_workerCreated,
+					m_inputDirectory, m_outputDirectory);
 			return;
 		}
 
-		setWorkerClass();
-
-		try {
-			m_workerInstance = m_workerClass.newInstance();
-		} catch (InstantiationException exc) {
-			throw new InvalidInvocationException("Can't instantiate the associated worker.", exc);
-		} catch (IllegalAccessException exc) {
-			throw new InvalidInvocationException("Can't instantiate the associated worker.", exc);
+		prepareDirectories();
+		final Map<String, ByteSource> inputs;
+		if (isArchive(m_inputDirectory)) {
+			m_inputArchive = new XWSZipInputs(m_inputDirectory);
+			inputs = m_inputArchive;
+		} else {
+			m_inputArchive = null;
+			inputs = getDirectoryInputs(m_inputDirectory);
+		}
+		final Function<String, ByteSink> outputs;
+		if (isArchive(m_outputDirectory)) {
+			m_outputArchive = new XWSZipOutputs(m_outputDirectory);
+			outputs = m_outputArchive;
+		} else {
+			m_outputArchive = null;
+			outputs = getDirectoryOutputs(m_outputDirectory);
 		}
+		m_execution = new XWSExecution(configuration, m_plan, m_workerInstance, m_workerCreated, inputs, outputs);
 	}
 
-	/**
-	 * Writes the given document to the file corresponding to the given name, in
-	 * the given output directory, if writing is enabled in this object. If
-	 * write is not enabled, the parameters may be <code>null</code>.
-	 * 
-	 * @param outputDirectory
-	 *            not <code>null</code>.
-	 * @param name
-	 *            not <code>null</code>.
-	 * @param doc
-	 *            not <code>null</code>.
-	 * @throws IOException
-	 *             if an exception happens while writing to the destination.
-	 * @see #setWriteEnabled(boolean)
-	 */
-	private void write(File outputDirectory, String name, XMCDADoc doc) throws IOException {
-		if (m_write) {
-			Preconditions.checkNotNull(outputDirectory);
-			Preconditions.checkNotNull(name);
-			Preconditions.checkNotNull(doc);
-
-			final File out = new File(outputDirectory, name);
-			final ByteSink supplier = Files.asByteSink(out);
-			final XMCDAWriteUtils utils = new XMCDAWriteUtils();
-			utils.setValidate(m_outputTransformer.validates());
-			utils.write(doc, supplier);
+	private XWSExecution withCurrentConfiguration(XWSExecution execution) {
+		final XWSConfiguration configuration = getConfiguration();
+		if (execution.getConfiguration() == configuration) {
+			return execution;
 		}
+		return execution.withConfiguration(configuration);
 	}
-
 }
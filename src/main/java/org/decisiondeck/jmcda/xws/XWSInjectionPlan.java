@@ -0,0 +1,565 @@
+package org.decisiondeck.jmcda.xws;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Field;
+import java.lang.reflect.Type;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.xmlbeans.XmlObject;
+import org.decisiondeck.jmcda.exc.FunctionWithInputCheck;
+import org.decisiondeck.jmcda.exc.InvalidInvocationException;
+import org.decisiondeck.jmcda.xws.transformer.Transformers;
+
+import com.google.common.base.Defaults;
+import com.google.common.base.Function;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.reflect.TypeToken;
+
+/**
+ * <p>
+ * The injection plan of a worker class: the fields of that class that the {@link XWSExecutor} reads or writes, together
+ * with everything that can be deduced once and for all from their annotations (file names, optional flags, target
+ * types, transformer classes).
+ * </p>
+ * <p>
+ * Plans are computed once per worker class and kept in a global cache, see {@link #getPlan(Class)}. They are either
+ * deduced by reflection from the worker class, or built by a generated {@link IXWSInjector}, see
+ * {@link #newPlan(Class, List, InjectedField, InjectedField, List, List)}. Objects of this class are immutable, thus
+ * may be shared among threads and executors.
+ * </p>
+ *
+ * @author Olivier Cailloux
+ *
+ */
+public final class XWSInjectionPlan {
+	/**
+	 * A field of a worker class that the executor reads or writes.
+	 */
+	public static class InjectedField {
+		private final IFieldAccessor m_accessor;
+
+		private final Type m_genericType;
+
+		private final String m_name;
+
+		private final Class<?> m_type;
+
+		/**
+		 * @param name
+		 *            the name of the field, not <code>null</code>.
+		 * @param type
+		 *            the declared type of the field, not <code>null</code>.
+		 * @param genericType
+		 *            the generic type of the field, not <code>null</code>.
+		 * @param accessor
+		 *            not <code>null</code>.
+		 */
+		public InjectedField(String name, Class<?> type, Type genericType, IFieldAccessor accessor) {
+			m_name = Preconditions.checkNotNull(name);
+			m_type = Preconditions.checkNotNull(type);
+			m_genericType = Preconditions.checkNotNull(genericType);
+			m_accessor = Preconditions.checkNotNull(accessor);
+		}
+
+		/**
+		 * Retrieves the value of this field in the given worker.
+		 *
+		 * @param worker
+		 *            not <code>null</code>, an instance of the worker class this field belongs to.
+		 * @return the value of the field, possibly <code>null</code>.
+		 * @throws InvalidInvocationException
+		 *             if the field can't be accessed.
+		 */
+		public Object get(IXWS worker) throws InvalidInvocationException {
+			return m_accessor.get(worker);
+		}
+
+		/**
+		 * @return the accessor bound to this field, not <code>null</code>.
+		 */
+		public IFieldAccessor getAccessor() {
+			return m_accessor;
+		}
+
+		/**
+		 * @return the generic type of the field, not <code>null</code>.
+		 */
+		public Type getGenericType() {
+			return m_genericType;
+		}
+
+		/**
+		 * @return the name of the field, not <code>null</code>.
+		 */
+		public String getName() {
+			return m_name;
+		}
+
+		/**
+		 * @return the declared type of the field, not <code>null</code>.
+		 */
+		public Class<?> getType() {
+			return m_type;
+		}
+
+		/**
+		 * Sets this field in the given worker to the given value.
+		 *
+		 * @param worker
+		 *            not <code>null</code>, an instance of the worker class this field belongs to.
+		 * @param value
+		 *            may be <code>null</code> iff the field type is not primitive.
+		 * @throws InvalidInvocationException
+		 *             if the field can't be set.
+		 */
+		public void set(IXWS worker, Object value) throws InvalidInvocationException {
+			m_accessor.set(worker, value);
+		}
+
+		@Override
+		public String toString() {
+			return m_genericType.getTypeName() + " " + m_name;
+		}
+	}
+
+	/**
+	 * A field annotated with {@link XWSInput}.
+	 */
+	public static final class InputField extends InjectedField {
+		private final String m_fileName;
+
+		private final boolean m_optional;
+
+		private final Class<? extends FunctionWithInputCheck<Object, Object>> m_transformer;
+
+		private final Type m_valueType;
+
+		/**
+		 * @param name
+		 *            the name of the field, not <code>null</code>.
+		 * @param type
+		 *            the declared type of the field, not <code>null</code>.
+		 * @param genericType
+		 *            the generic type of the field, not <code>null</code>.
+		 * @param accessor
+		 *            not <code>null</code>.
+		 * @param fileName
+		 *            the name of the file to read, not <code>null</code>.
+		 * @param optional
+		 *            as in {@link XWSInput#optional()}.
+		 * @param transformer
+		 *            <code>null</code> for the default transformer, which is {@link SourceToDenseEvaluations} for
+		 *            values of type {@link DenseEvaluations} and {@link SourceToOffHeapEvaluations} for values of type
+		 *            {@link OffHeapEvaluations}.
+		 */
+		public InputField(String name, Class<?> type, Type genericType, IFieldAccessor accessor, String fileName,
+				boolean optional, Class<? extends FunctionWithInputCheck<?, ?>> transformer) {
+			super(name, type, genericType, accessor);
+			m_fileName = Preconditions.checkNotNull(fileName);
+			m_optional = optional;
+			if (type == XWSLazyInput.class) {
+				m_valueType = TypeToken.of(genericType).resolveType(XWSLazyInput.class.getTypeParameters()[0])
+						.getType();
+			} else {
+				m_valueType = genericType;
+			}
+			final Class<? extends FunctionWithInputCheck<?, ?>> effective;
+			if (transformer == null && m_valueType.equals(DenseEvaluations.class)) {
+				effective = SourceToDenseEvaluations.class;
+			} else if (transformer == null && m_valueType.equals(OffHeapEvaluations.class)) {
+				effective = SourceToOffHeapEvaluations.class;
+			} else {
+				effective = transformer;
+			}
+			@SuppressWarnings("unchecked")
+			final Class<? extends FunctionWithInputCheck<Object, Object>> transformerObject = (Class<? extends FunctionWithInputCheck<Object, Object>>) effective;
+			m_transformer = transformerObject;
+		}
+
+		/**
+		 * @return the name of the file to read, as given in the annotation or deduced from the field name; not
+		 *         <code>null</code>.
+		 */
+		public String getFileName() {
+			return m_fileName;
+		}
+
+		/**
+		 * @return the transformer class given in the annotation (or {@link SourceToDenseEvaluations} for dense
+		 *         evaluations, {@link SourceToOffHeapEvaluations} for off heap ones), or <code>null</code> if the
+		 *         default transformer is to be used.
+		 */
+		public Class<? extends FunctionWithInputCheck<Object, Object>> getTransformer() {
+			return m_transformer;
+		}
+
+		/**
+		 * @return the type of the value to be read, thus, the generic type of the field, or, if the field is
+		 *         {@link #isLazy() lazy}, its type argument. Not <code>null</code>.
+		 */
+		public Type getValueType() {
+			return m_valueType;
+		}
+
+		/**
+		 * @return <code>true</code> iff the field has type {@link XWSLazyInput}, thus is set to an object that reads
+		 *         the input when asked for.
+		 */
+		public boolean isLazy() {
+			return getType() == XWSLazyInput.class;
+		}
+
+		public boolean isOptional() {
+			return m_optional;
+		}
+	}
+
+	/**
+	 * A field annotated with {@link XWSOutput}.
+	 */
+	public static final class OutputField extends InjectedField {
+		private final String m_fileName;
+
+		private final Type m_transformedType;
+
+		private final Class<? extends Function<Object, ? extends XmlObject>> m_transformer;
+
+		/**
+		 * @param name
+		 *            the name of the field, not <code>null</code>.
+		 * @param type
+		 *            the declared type of the field, not <code>null</code>.
+		 * @param genericType
+		 *            the generic type of the field, not <code>null</code>.
+		 * @param accessor
+		 *            not <code>null</code>.
+		 * @param fileName
+		 *            the name of the file to write, not <code>null</code>.
+		 * @param transformer
+		 *            <code>null</code> for the default transformer.
+		 * @throws InvalidInvocationException
+		 *             if the transformer can't be introspected.
+		 */
+		public OutputField(String name, Class<?> type, Type genericType, IFieldAccessor accessor, String fileName,
+				Class<? extends Function<?, ? extends XmlObject>> transformer) throws InvalidInvocationException {
+			super(name, type, genericType, accessor);
+			m_fileName = Preconditions.checkNotNull(fileName);
+			@SuppressWarnings("unchecked")
+			final Class<? extends Function<Object, ? extends XmlObject>> transformerObject = (Class<? extends Function<Object, ? extends XmlObject>>) transformer;
+			m_transformer = transformerObject;
+			if (transformer == null) {
+				m_transformedType = genericType;
+			} else {
+				m_transformedType = Transformers.getApplyMethodGeneric(transformerObject).getGenericReturnType();
+			}
+		}
+
+		/**
+		 * @return the name of the file to write, as given in the annotation or deduced from the field name; not
+		 *         <code>null</code>.
+		 */
+		public String getFileName() {
+			return m_fileName;
+		}
+
+		/**
+		 * @return the type of the value to be written, thus, the return type of the transformer if there is one,
+		 *         otherwise the generic type of the field. Not <code>null</code>.
+		 */
+		public Type getTransformedType() {
+			return m_transformedType;
+		}
+
+		/**
+		 * @return the transformer class given in the annotation, or <code>null</code> if the default transformer is to
+		 *         be used.
+		 */
+		public Class<? extends Function<Object, ? extends XmlObject>> getTransformer() {
+			return m_transformer;
+		}
+	}
+
+	/**
+	 * The plans per accessor factory. The plans are attached to their worker class, as the injectors are in
+	 * {@link XWSInjectors}, so that they do not prevent the worker class and its class loader from being unloaded. A
+	 * holder is empty as long as no valid plan has been computed for its worker class.
+	 */
+	private static final ConcurrentMap<IFieldAccessorFactory, ClassValue<AtomicReference<XWSInjectionPlan>>> s_plans = Maps
+			.newConcurrentMap();
+
+	/**
+	 * <p>
+	 * Retrieves the injection plan of the given worker class, with fields bound using the
+	 * {@link FieldAccessors#methodHandles() default} accessor factory, computing it if it is not yet in the global
+	 * cache.
+	 * </p>
+	 * <p>
+	 * The computation checks that the worker has at least one field annotated for receiving exceptions, and that no
+	 * more than one field is annotated with input directory and no more than one is annotated with output directory.
+	 * Only valid plans are cached, thus asking again for an invalid worker class fails again.
+	 * </p>
+	 *
+	 * @param workerClass
+	 *            not <code>null</code>.
+	 * @return not <code>null</code>.
+	 * @throws InvalidInvocationException
+	 *             if the worker class does not pass the checks, or if an output transformer can't be introspected.
+	 */
+	public static XWSInjectionPlan getPlan(Class<? extends IXWS> workerClass) throws InvalidInvocationException {
+		return getPlan(workerClass, FieldAccessors.methodHandles());
+	}
+
+	/**
+	 * Retrieves the injection plan of the given worker class, with fields bound using the given accessor factory,
+	 * computing it if it is not yet in the global cache. Plans are cached per accessor factory, which should therefore
+	 * be long lived objects.
+	 *
+	 * @param workerClass
+	 *            not <code>null</code>.
+	 * @param accessorFactory
+	 *            not <code>null</code>.
+	 * @return not <code>null</code>.
+	 * @throws InvalidInvocationException
+	 *             if the worker class does not pass the checks described in {@link #getPlan(Class)}, or if a field
+	 *             can't be bound, or if an output transformer can't be introspected.
+	 */
+	public static XWSInjectionPlan getPlan(Class<? extends IXWS> workerClass, IFieldAccessorFactory accessorFactory)
+			throws InvalidInvocationException {
+		Preconditions.checkNotNull(workerClass);
+		Preconditions.checkNotNull(accessorFactory);
+		ClassValue<AtomicReference<XWSInjectionPlan>> plans = s_plans.get(accessorFactory);
+		if (plans == null) {
+			final ClassValue<AtomicReference<XWSInjectionPlan>> newPlans = new ClassValue<AtomicReference<XWSInjectionPlan>>() {
+				@Override
+				protected AtomicReference<XWSInjectionPlan> computeValue(Class<?> type) {
+					return new AtomicReference<XWSInjectionPlan>();
+				}
+			};
+			plans = s_plans.putIfAbsent(accessorFactory, newPlans);
+			if (plans == null) {
+				plans = newPlans;
+			}
+		}
+		final AtomicReference<XWSInjectionPlan> holder = plans.get(workerClass);
+		final XWSInjectionPlan cached = holder.get();
+		if (cached != null) {
+			return cached;
+		}
+		final XWSInjectionPlan plan = introspect(workerClass, accessorFactory);
+		return holder.compareAndSet(null, plan) ? plan : holder.get();
+	}
+
+	/**
+	 * Builds a plan from the given fields, without introspecting the worker class. This is meant to be called by
+	 * generated {@link IXWSInjector}s, which are responsible for giving the fields in the order that
+	 * {@link Class#getFields()} would give. The returned plan is not cached.
+	 *
+	 * @param workerClass
+	 *            not <code>null</code>.
+	 * @param exceptionFields
+	 *            not <code>null</code>.
+	 * @param inputDirectoryField
+	 *            <code>null</code> iff the worker has no field annotated with {@link XWSInputDirectory}.
+	 * @param outputDirectoryField
+	 *            <code>null</code> iff the worker has no field annotated with {@link XWSOutputDirectory}.
+	 * @param inputFields
+	 *            not <code>null</code>.
+	 * @param outputFields
+	 *            not <code>null</code>.
+	 * @return not <code>null</code>.
+	 * @throws InvalidInvocationException
+	 *             if no exception field is given.
+	 */
+	public static XWSInjectionPlan newPlan(Class<? extends IXWS> workerClass, List<InjectedField> exceptionFields,
+			InjectedField inputDirectoryField, InjectedField outputDirectoryField, List<InputField> inputFields,
+			List<OutputField> outputFields) throws InvalidInvocationException {
+		return new XWSInjectionPlan(workerClass, ImmutableList.copyOf(exceptionFields), inputDirectoryField,
+				outputDirectoryField, ImmutableList.copyOf(inputFields), ImmutableList.copyOf(outputFields));
+	}
+
+	private static String getFileName(String annotatedName, Field field) {
+		return annotatedName.length() == 0 ? field.getName() + ".xml" : annotatedName;
+	}
+
+	private static InjectedField getInjectedField(Field field, IFieldAccessorFactory accessorFactory)
+			throws InvalidInvocationException {
+		return new InjectedField(field.getName(), field.getType(), field.getGenericType(),
+				accessorFactory.getAccessor(field));
+	}
+
+	private static Field getOnlyField(List<Field> fields, Class<? extends Annotation> annotationClass,
+			Class<? extends IXWS> workerClass) throws InvalidInvocationException {
+		if (fields.size() >= 2) {
+			throw new InvalidInvocationException(
+					"Found more than one field annotated with " + annotationClass + " in " + workerClass + ".");
+		}
+		return Iterables.getOnlyElement(fields, null);
+	}
+
+	/**
+	 * Computes the injection plan of the given worker class, with fields bound using the given accessor factory,
+	 * without using nor filling the global cache. This is the introspection that {@link #getPlan(Class)} does the
+	 * first time a worker class is asked for, visible in this package to measure its cost.
+	 *
+	 * @param workerClass
+	 *            not <code>null</code>.
+	 * @param accessorFactory
+	 *            not <code>null</code>.
+	 * @return not <code>null</code>.
+	 * @throws InvalidInvocationException
+	 *             if the worker class does not pass the checks described in {@link #getPlan(Class)}, or if a field
+	 *             can't be bound, or if an output transformer can't be introspected.
+	 */
+	static XWSInjectionPlan introspect(Class<? extends IXWS> workerClass,
+			IFieldAccessorFactory accessorFactory) throws InvalidInvocationException {
+		final ImmutableList.Builder<InjectedField> exceptionFields = ImmutableList.builder();
+		final ImmutableList.Builder<Field> inputDirectoryFields = ImmutableList.builder();
+		final ImmutableList.Builder<Field> outputDirectoryFields = ImmutableList.builder();
+		final ImmutableList.Builder<InputField> inputFields = ImmutableList.builder();
+		final ImmutableList.Builder<OutputField> outputFields = ImmutableList.builder();
+		for (final Field field : workerClass.getFields()) {
+			if (field.getAnnotation(XWSExceptions.class) != null) {
+				exceptionFields.add(getInjectedField(field, accessorFactory));
+			}
+			if (field.getAnnotation(XWSInputDirectory.class) != null) {
+				inputDirectoryFields.add(field);
+			}
+			if (field.getAnnotation(XWSOutputDirectory.class) != null) {
+				outputDirectoryFields.add(field);
+			}
+			if (field.getAnnotation(XWSInput.class) != null) {
+				final XWSInput inputAnn = field.getAnnotation(XWSInput.class);
+				final Class<? extends FunctionWithInputCheck<?, ?>> transformer = inputAnn.transformer();
+				inputFields.add(new InputField(field.getName(), field.getType(), field.getGenericType(),
+						accessorFactory.getAccessor(field), getFileName(inputAnn.name(), field), inputAnn.optional(),
+						transformer.equals(XWSInput.None.class) ? null : transformer));
+			}
+			if (field.getAnnotation(XWSOutput.class) != null) {
+				final XWSOutput outputAnn = field.getAnnotation(XWSOutput.class);
+				final Class<? extends Function<?, ? extends XmlObject>> transformer = outputAnn.transformer();
+				outputFields.add(new OutputField(field.getName(), field.getType(), field.getGenericType(),
+						accessorFactory.getAccessor(field), getFileName(outputAnn.name(), field),
+						transformer.equals(XWSOutput.None.class) ? null : transformer));
+			}
+		}
+
+		final Field inputDirectoryField = getOnlyField(inputDirectoryFields.build(), XWSInputDirectory.class,
+				workerClass);
+		final Field outputDirectoryField = getOnlyField(outputDirectoryFields.build(), XWSOutputDirectory.class,
+				workerClass);
+		return new XWSInjectionPlan(workerClass, exceptionFields.build(),
+				inputDirectoryField == null ? null : getInjectedField(inputDirectoryField, accessorFactory),
+				outputDirectoryField == null ? null : getInjectedField(outputDirectoryField, accessorFactory),
+				inputFields.build(), outputFields.build());
+	}
+
+	private final ImmutableList<InjectedField> m_exceptionFields;
+
+	private final InjectedField m_inputDirectoryField;
+
+	private final ImmutableList<InputField> m_inputFields;
+
+	private final InjectedField m_outputDirectoryField;
+
+	private final ImmutableList<OutputField> m_outputFields;
+
+	private final Class<? extends IXWS> m_workerClass;
+
+	private XWSInjectionPlan(Class<? extends IXWS> workerClass, ImmutableList<InjectedField> exceptionFields,
+			InjectedField inputDirectoryField, InjectedField outputDirectoryField,
+			ImmutableList<InputField> inputFields, ImmutableList<OutputField> outputFields)
+			throws InvalidInvocationException {
+		m_workerClass = Preconditions.checkNotNull(workerClass);
+		m_exceptionFields = Preconditions.checkNotNull(exceptionFields);
+		if (m_exceptionFields.isEmpty()) {
+			throw new InvalidInvocationException("Exception field not found.");
+		}
+		m_inputDirectoryField = inputDirectoryField;
+		m_outputDirectoryField = outputDirectoryField;
+		m_inputFields = Preconditions.checkNotNull(inputFields);
+		m_outputFields = Preconditions.checkNotNull(outputFields);
+	}
+
+	/**
+	 * Sets every field of this plan, in the given worker, to its default value: <code>null</code>, or zero or
+	 * <code>false</code> for primitive fields. This forgets the values injected or produced during a job, so that the
+	 * worker may be reused for an other one.
+	 *
+	 * @param worker
+	 *            not <code>null</code>, an instance of the worker class.
+	 * @throws InvalidInvocationException
+	 *             if a field can't be set.
+	 */
+	public void clearFields(IXWS worker) throws InvalidInvocationException {
+		Preconditions.checkArgument(m_workerClass.isInstance(worker));
+		final List<InjectedField> fields = Lists.newArrayList();
+		fields.addAll(m_exceptionFields);
+		if (m_inputDirectoryField != null) {
+			fields.add(m_inputDirectoryField);
+		}
+		if (m_outputDirectoryField != null) {
+			fields.add(m_outputDirectoryField);
+		}
+		fields.addAll(m_inputFields);
+		fields.addAll(m_outputFields);
+		for (InjectedField field : fields) {
+			field.set(worker, Defaults.defaultValue(field.getType()));
+		}
+	}
+
+	/**
+	 * @return the fields annotated with {@link XWSExceptions}, in the order given by {@link Class#getFields()}; not
+	 *         <code>null</code>, not empty.
+	 */
+	public List<InjectedField> getExceptionFields() {
+		return m_exceptionFields;
+	}
+
+	/**
+	 * @return the field annotated with {@link XWSInputDirectory}, or <code>null</code> if there is none.
+	 */
+	public InjectedField getInputDirectoryField() {
+		return m_inputDirectoryField;
+	}
+
+	/**
+	 * @return the fields annotated with {@link XWSInput}, in the order given by {@link Class#getFields()}; not
+	 *         <code>null</code>.
+	 */
+	public List<InputField> getInputFields() {
+		return m_inputFields;
+	}
+
+	/**
+	 * @return the field annotated with {@link XWSOutputDirectory}, or <code>null</code> if there is none.
+	 */
+	public InjectedField getOutputDirectoryField() {
+		return m_outputDirectoryField;
+	}
+
+	/**
+	 * @return the fields annotated with {@link XWSOutput}, in the order given by {@link Class#getFields()}; not
+	 *         <code>null</code>.
+	 */
+	public List<OutputField> getOutputFields() {
+		return m_outputFields;
+	}
+
+	/**
+	 * @return not <code>null</code>.
+	 */
+	public Class<? extends IXWS> getWorkerClass() {
+		return m_workerClass;
+	}
+
+	@Override
+	public String toString() {
+		return "Injection plan of " + m_workerClass.getName();
+	}
+}
@@ -0,0 +1,178 @@
+package org.decisiondeck.jmcda.xws;
+
+import java.util.concurrent.ConcurrentMap;
+
+import org.decisiondeck.jmcda.exc.InvalidInvocationException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Maps;
+
+/**
+ * <p>
+ * Gives access to the generated {@link IXWSInjector}s found on the class path. The injector of a worker class is
+ * looked up by its name, derived from the name of the worker class as the annotation processor does, the first time it
+ * is asked for, and only that injector is loaded and instantiated. The result of the lookup, including the absence of
+ * an injector, is cached.
+ * </p>
+ * <p>
+ * The injectors are also registered as services of the {@link IXWSInjector} interface, which lets tools list them, but
+ * this class does not search the class path for services.
+ * </p>
+ *
+ * @author Olivier Cailloux
+ *
+ */
+public class XWSInjectors {
+	/**
+	 * Cached in place of an injector that does not exist or can't be loaded.
+	 */
+	private static final Object NONE = new Object();
+
+	/**
+	 * The suffix the annotation processor appends to the flattened name of the worker class.
+	 */
+	private static final String SUFFIX = "_Injector";
+
+	/**
+	 * The injectors, or {@link #NONE}, of the worker classes looked up as classes.
+	 */
+	private static final ClassValue<Object> s_classInjectors = new ClassValue<Object>() {
+		@Override
+		protected Object computeValue(Class<?> workerClass) {
+			final String name = workerClass.getName();
+			final Object cached = s_injectors.get(name);
+			if (cached instanceof IXWSInjector && ((IXWSInjector) cached).getWorkerClass() == workerClass) {
+				return cached;
+			}
+			final ClassLoader loader = workerClass.getClassLoader();
+			final IXWSInjector injector = load(name, loader == null ? ClassLoader.getSystemClassLoader() : loader);
+			if (injector == null || injector.getWorkerClass() != workerClass) {
+				return NONE;
+			}
+			/** Shares the instance, thus the cached plan, with the lookups by name. */
+			final Object previous = s_injectors.putIfAbsent(name, injector);
+			return previous instanceof IXWSInjector && ((IXWSInjector) previous).getWorkerClass() == workerClass
+					? previous : injector;
+		}
+	};
+
+	/**
+	 * The injectors, or {@link #NONE}, of the worker classes looked up by name, indexed by binary name of the worker class.
+	 */
+	private static final ConcurrentMap<String, Object> s_injectors = Maps.newConcurrentMap();
+
+	private static final ConcurrentMap<IXWSInjector, XWSInjectionPlan> s_plans = Maps.newConcurrentMap();
+
+	private static final Logger s_logger = LoggerFactory.getLogger(XWSInjectors.class);
+
+	/**
+	 * Retrieves the generated injector of the given worker class, loaded by the class loader of that class.
+	 *
+	 * @param workerClass
+	 *            not <code>null</code>.
+	 * @return <code>null</code> if no injector has been generated for that class or if it is not on the class path.
+	 */
+	public static IXWSInjector getInjector(Class<? extends IXWS> workerClass) {
+		Preconditions.checkNotNull(workerClass);
+		final Object injector = s_classInjectors.get(workerClass);
+		return injector == NONE ? null : (IXWSInjector) injector;
+	}
+
+	/**
+	 * Retrieves the generated injector of the given worker class, loaded by the context class loader of the current
+	 * thread.
+	 *
+	 * @param workerClassName
+	 *            the binary name of the worker class, as given by {@link Class#getName()}; not <code>null</code>.
+	 * @return <code>null</code> if no injector has been generated for that class or if it is not on the class path.
+	 */
+	public static IXWSInjector getInjector(String workerClassName) {
+		Preconditions.checkNotNull(workerClassName);
+		final Object cached = s_injectors.get(workerClassName);
+		if (cached != null) {
+			return cached == NONE ? null : (IXWSInjector) cached;
+		}
+		final ClassLoader contextLoader = Thread.currentThread().getContextClassLoader();
+		final IXWSInjector injector = load(workerClassName,
+				contextLoader == null ? XWSInjectors.class.getClassLoader() : contextLoader);
+		final Object previous = s_injectors.putIfAbsent(workerClassName, injector == null ? NONE : injector);
+		if (previous != null) {
+			return previous == NONE ? null : (IXWSInjector) previous;
+		}
+		return injector;
+	}
+
+	/**
+	 * Retrieves the injection plan built by the given injector, building it if it is not yet in the cache.
+	 *
+	 * @param injector
+	 *            not <code>null</code>.
+	 * @return not <code>null</code>.
+	 * @throws InvalidInvocationException
+	 *             if the plan can't be built.
+	 */
+	public static XWSInjectionPlan getPlan(IXWSInjector injector) throws InvalidInvocationException {
+		Preconditions.checkNotNull(injector);
+		final XWSInjectionPlan cached = s_plans.get(injector);
+		if (cached != null) {
+			return cached;
+		}
+		final XWSInjectionPlan plan = injector.newPlan();
+		Preconditions.checkState(plan.getWorkerClass().getName().equals(injector.getWorkerClassName()));
+		final XWSInjectionPlan previous = s_plans.putIfAbsent(injector, plan);
+		return previous == null ? plan : previous;
+	}
+
+	/**
+	 * @return the binary name of the injector the annotation processor generates for the given worker class: the
+	 *         worker class name without its package, with nested class separators replaced by underscores, suffixed with
+	 *         {@link #SUFFIX}, in the package of the worker class.
+	 */
+	static String getInjectorName(String workerClassName) {
+		final int lastDot = workerClassName.lastIndexOf('.');
+		final String packagePrefix = workerClassName.substring(0, lastDot + 1);
+		final String flatName = workerClassName.substring(lastDot + 1).replace('$', '_');
+		return packagePrefix + flatName + SUFFIX;
+	}
+
+	/**
+	 * @return <code>null</code> if no injector for that worker class can be loaded.
+	 */
+	private static IXWSInjector load(String workerClassName, ClassLoader loader) {
+		final String injectorName = getInjectorName(workerClassName);
+		final Class<?> injectorClass;
+		try {
+			injectorClass = Class.forName(injectorName, true, loader);
+		} catch (ClassNotFoundException exc) {
+			return null;
+		} catch (LinkageError exc) {
+			s_logger.warn("Ignoring the injector " + injectorName + " which can't be loaded.", exc);
+			return null;
+		}
+		if (!IXWSInjector.class.isAssignableFrom(injectorClass)) {
+			return null;
+		}
+		final IXWSInjector injector;
+		try {
+			injector = (IXWSInjector) injectorClass.newInstance();
+		} catch (InstantiationException exc) {
+			s_logger.warn("Ignoring the injector " + injectorName + " which can't be instantiated.", exc);
+			return null;
+		} catch (IllegalAccessException exc) {
+			s_logger.warn("Ignoring the injector " + injectorName + " which can't be instantiated.", exc);
+			return null;
+		}
+		if (!injector.getWorkerClassName().equals(workerClassName)) {
+			/** Another class happens to have the name of an injector, e.g. a worker whose name contains a $. */
+			return null;
+		}
+		s_logger.debug("Found the generated injector {}.", injectorName);
+		return injector;
+	}
+
+	private XWSInjectors() {
+		/** Non instantiable. */
+	}
+}
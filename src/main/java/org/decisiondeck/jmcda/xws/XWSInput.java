@@ -9,7 +9,9 @@ import org.decisiondeck.jmcda.exc.FunctionWithInputCheck;
 import org.decisiondeck.jmcda.exc.InvalidInputException;
 
 /**
- * Describes a field as being an input source of an XMCDA service.
+ * Describes a field as being an input source of an XMCDA service. A field of type {@link XWSLazyInput} is set to an
+ * object that reads the input only when the service asks for it, the type argument of the field then determining the
+ * type of the value read.
  * 
  * @author Olivier Cailloux
  * 
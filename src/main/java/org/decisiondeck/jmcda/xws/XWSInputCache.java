@@ -0,0 +1,265 @@
+package org.decisiondeck.jmcda.xws;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+import org.decisiondeck.jmcda.exc.InvalidInputException;
+import org.decisiondeck.jmcda.exc.InvalidInvocationException;
+import org.decisiondeck.jmcda.xws.XWSInjectionPlan.InputField;
+import org.decisiondeck.jmcda.xws.transformer.InputTransformer;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Optional;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.Weigher;
+import com.google.common.hash.Funnels;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+import com.google.common.primitives.Ints;
+
+/**
+ * <p>
+ * A cache of transformed inputs, shared by any number of executions, possibly running concurrently, so that an input
+ * file whose content does not change is read by the input transformer once instead of once per job. Values are keyed by
+ * a hash of the content of the file, the target type and the transformer, thus a modified file is transformed again. As
+ * the transformer reads the file anew, the file is hashed again once transformed, and the value is not cached if the
+ * content changed meanwhile. The cache is bounded by the total size of the files whose values it holds, and evicts the
+ * least recently used values first.
+ * </p>
+ * <p>
+ * The file of an input is taken to be the file of that name in the input directory, as with the default input
+ * transformer; a cache must not be used with a transformer that maps names to files or files to sources differently.
+ * Values in the cache are given as is to every worker reading the same content, thus workers must not modify their
+ * inputs when a cache is used. Failures are not cached, and neither are {@link OffHeapEvaluations}, which are closed
+ * when the job that read them ends.
+ * </p>
+ *
+ * @author Olivier Cailloux
+ *
+ */
+public final class XWSInputCache {
+	/**
+	 * Thrown by a loading of this cache when the file changed while being transformed, so that the value, which may
+	 * not correspond to the hashed content, is returned without being cached.
+	 */
+	private static final class ChangedException extends Exception {
+		private static final long serialVersionUID = 1L;
+
+		private final Object m_value;
+
+		public ChangedException(Object value) {
+			m_value = value;
+		}
+	}
+
+	private static final class Key {
+		private final HashCode m_hash;
+
+		private final Class<?> m_transformer;
+
+		private final Type m_type;
+
+		public Key(HashCode hash, Type type, Class<?> transformer) {
+			m_hash = Preconditions.checkNotNull(hash);
+			m_type = Preconditions.checkNotNull(type);
+			m_transformer = transformer;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			final Key key = (Key) obj;
+			return m_hash.equals(key.m_hash) && m_type.equals(key.m_type)
+					&& Objects.equal(m_transformer, key.m_transformer);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hashCode(m_hash, m_type, m_transformer);
+		}
+	}
+
+	private static final class Value {
+		private final int m_size;
+
+		private final Optional<Object> m_value;
+
+		public Value(Object value, int size) {
+			m_value = Optional.fromNullable(value);
+			m_size = size;
+		}
+	}
+
+	private final Cache<Key, Value> m_cache;
+
+	private final long m_maxSize;
+
+	/**
+	 * @param maxSize
+	 *            the maximal total size, in bytes, of the files whose transformed values are kept, at least zero.
+	 */
+	public XWSInputCache(long maxSize) {
+		Preconditions.checkArgument(maxSize >= 0);
+		m_maxSize = maxSize;
+		m_cache = CacheBuilder.newBuilder().maximumWeight(maxSize).weigher(new Weigher<Key, Value>() {
+			@Override
+			public int weigh(Key key, Value value) {
+				return value.m_size;
+			}
+		}).recordStats().build();
+	}
+
+	/**
+	 * Retrieves the value of the given input field, from this cache if the content of its file has already been
+	 * transformed to the type of the field, otherwise from the given transformer. If the file does not exist, the
+	 * transformer is used directly, and nothing is cached.
+	 *
+	 * @param transformer
+	 *            not <code>null</code>.
+	 * @param field
+	 *            not <code>null</code>.
+	 * @param inputDirectory
+	 *            <code>null</code> for not set.
+	 * @return the value, possibly <code>null</code> if the transformer returns <code>null</code>.
+	 * @throws InvalidInputException
+	 *             if the transformer throws it.
+	 * @throws InvalidInvocationException
+	 *             if the transformer throws it, or the file can't be read.
+	 */
+	public Object get(final InputTransformer transformer, final InputField field, final File inputDirectory)
+			throws InvalidInputException, InvalidInvocationException {
+		Preconditions.checkNotNull(transformer);
+		Preconditions.checkNotNull(field);
+		return get(field, inputDirectory, new XWSLazyInput.Loader() {
+			@Override
+			public Object load() throws InvalidInputException, InvalidInvocationException {
+				return transformer.get(field.getValueType(), field.getTransformer(), field.getFileName(),
+						inputDirectory, field.isOptional());
+			}
+		});
+	}
+
+	/**
+	 * @return the number of values evicted from this cache since its creation.
+	 */
+	public long getEvictionCount() {
+		return m_cache.stats().evictionCount();
+	}
+
+	/**
+	 * @return the number of values found in this cache since its creation.
+	 */
+	public long getHitCount() {
+		return m_cache.stats().hitCount();
+	}
+
+	/**
+	 * @return the maximal total size, in bytes, of the files whose transformed values are kept.
+	 */
+	public long getMaxSize() {
+		return m_maxSize;
+	}
+
+	/**
+	 * @return the number of values not found in this cache since its creation, thus obtained from the transformer or
+	 *         attempted to.
+	 */
+	public long getMissCount() {
+		return m_cache.stats().missCount();
+	}
+
+	/**
+	 * @return the approximate number of values currently in this cache.
+	 */
+	public long getSize() {
+		return m_cache.size();
+	}
+
+	/**
+	 * Discards every value in this cache. The counters are not reset.
+	 */
+	public void invalidateAll() {
+		m_cache.invalidateAll();
+	}
+
+	@Override
+	public String toString() {
+		final CacheStats stats = m_cache.stats();
+		return "Input cache of " + m_cache.size() + " values (max size " + m_maxSize + " bytes), "
+				+ stats.hitCount() + " hits, " + stats.missCount() + " misses, " + stats.evictionCount()
+				+ " evictions";
+	}
+
+	/**
+	 * Retrieves the value of the given input field, from this cache if the content of its file has already been
+	 * transformed to the type of the field, otherwise from the given loader. If the file does not exist or the field
+	 * is of type {@link OffHeapEvaluations}, the loader is used directly, and nothing is cached.
+	 *
+	 * @param field
+	 *            not <code>null</code>.
+	 * @param inputDirectory
+	 *            <code>null</code> for not set.
+	 * @param loader
+	 *            transforms the file of the field into its value, not <code>null</code>.
+	 * @return the value, possibly <code>null</code> if the loader returns <code>null</code>.
+	 * @throws InvalidInputException
+	 *             if the loader throws it.
+	 * @throws InvalidInvocationException
+	 *             if the loader throws it, or the file can't be read.
+	 */
+	Object get(final InputField field, File inputDirectory, final XWSLazyInput.Loader loader)
+			throws InvalidInputException, InvalidInvocationException {
+		Preconditions.checkNotNull(field);
+		Preconditions.checkNotNull(loader);
+		final File file = inputDirectory == null ? null : new File(inputDirectory, field.getFileName());
+		if (file == null || !file.isFile() || field.getValueType().equals(OffHeapEvaluations.class)) {
+			return loader.load();
+		}
+
+		final Hasher hasher = Hashing.sha256().newHasher();
+		final long size;
+		try {
+			size = Files.asByteSource(file).copyTo(Funnels.asOutputStream(hasher));
+		} catch (IOException exc) {
+			throw new InvalidInvocationException("Could not read " + file + ".", exc);
+		}
+		final HashCode hash = hasher.hash();
+		final Key key = new Key(hash, field.getValueType(), field.getTransformer());
+		try {
+			return m_cache.get(key, new Callable<Value>() {
+				@Override
+				public Value call() throws InvalidInputException, InvalidInvocationException, ChangedException {
+					final Object value = loader.load();
+					final HashCode loadedHash;
+					try {
+						loadedHash = Files.asByteSource(file).hash(Hashing.sha256());
+					} catch (IOException exc) {
+						throw new InvalidInvocationException("Could not read " + file + ".", exc);
+					}
+					if (!loadedHash.equals(hash)) {
+						throw new ChangedException(value);
+					}
+					return new Value(value, Ints.saturatedCast(size));
+				}
+			}).m_value.orNull();
+		} catch (ExecutionException exc) {
+			final Throwable cause = exc.getCause();
+			if (cause instanceof ChangedException) {
+				return ((ChangedException) cause).m_value;
+			}
+			Throwables.propagateIfPossible(cause, InvalidInputException.class, InvalidInvocationException.class);
+			throw new InvalidInvocationException(cause);
+		}
+	}
+}
@@ -0,0 +1,200 @@
+package org.decisiondeck.jmcda.xws;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+
+import org.decisiondeck.jmcda.exc.InvalidInvocationException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Function;
+import com.google.common.base.Preconditions;
+import com.google.common.io.ByteSink;
+import com.google.common.io.ByteSource;
+
+/**
+ * A job for the {@link XWSExecutor}: a worker, given as a string or as a class, to run on an input directory, writing
+ * to an output directory, or, when given as a class, to run on inputs read from memory, writing to sinks (see
+ * {@link XWSConfiguration#newExecution(Class, Map, Function)}). Immutable, provided the inputs are not modified.
+ *
+ * @author Olivier Cailloux
+ *
+ */
+public class XWSJob {
+	private static final Logger s_logger = LoggerFactory.getLogger(XWSJob.class);
+
+	private final File m_inputDirectory;
+
+	private final Map<String, ByteSource> m_inputs;
+
+	private final File m_outputDirectory;
+
+	private final Function<String, ByteSink> m_outputs;
+
+	private final String m_worker;
+
+	/**
+	 * <code>null</code> if the worker is given as a string.
+	 */
+	private final Class<? extends IXWS> m_workerClass;
+
+	/**
+	 * @param inputDirectory
+	 *            not <code>null</code>.
+	 * @param outputDirectory
+	 *            not <code>null</code>.
+	 * @param worker
+	 *            the worker class name, not <code>null</code>.
+	 */
+	public XWSJob(File inputDirectory, File outputDirectory, String worker) {
+		m_inputDirectory = Preconditions.checkNotNull(inputDirectory);
+		m_outputDirectory = Preconditions.checkNotNull(outputDirectory);
+		m_worker = Preconditions.checkNotNull(worker);
+		m_workerClass = null;
+		m_inputs = null;
+		m_outputs = null;
+	}
+
+	/**
+	 * Creates a job running the given worker class, which is used as is, thus need not be visible from the class
+	 * loader of this library.
+	 *
+	 * @param inputDirectory
+	 *            not <code>null</code>.
+	 * @param outputDirectory
+	 *            not <code>null</code>.
+	 * @param worker
+	 *            the worker class, not <code>null</code>.
+	 */
+	public XWSJob(File inputDirectory, File outputDirectory, Class<? extends IXWS> worker) {
+		m_inputDirectory = Preconditions.checkNotNull(inputDirectory);
+		m_outputDirectory = Preconditions.checkNotNull(outputDirectory);
+		m_workerClass = Preconditions.checkNotNull(worker);
+		m_worker = worker.getName();
+		m_inputs = null;
+		m_outputs = null;
+	}
+
+	/**
+	 * Creates a job running the given worker class on inputs read from memory, writing its outputs to the given sinks.
+	 *
+	 * @param inputs
+	 *            the sources of the inputs, by file name; not <code>null</code>. Must not be modified afterwards.
+	 * @param outputs
+	 *            gives a sink for each output, by file name; not <code>null</code>.
+	 * @param worker
+	 *            the worker class, not <code>null</code>.
+	 */
+	public XWSJob(Map<String, ByteSource> inputs, Function<String, ByteSink> outputs, Class<? extends IXWS> worker) {
+		m_inputs = Preconditions.checkNotNull(inputs);
+		m_outputs = Preconditions.checkNotNull(outputs);
+		m_workerClass = Preconditions.checkNotNull(worker);
+		m_worker = worker.getName();
+		m_inputDirectory = null;
+		m_outputDirectory = null;
+	}
+
+	/**
+	 * @return <code>null</code> iff this job reads its inputs from memory.
+	 */
+	public File getInputDirectory() {
+		return m_inputDirectory;
+	}
+
+	/**
+	 * @return <code>null</code> iff this job reads its inputs from memory.
+	 */
+	public File getOutputDirectory() {
+		return m_outputDirectory;
+	}
+
+	/**
+	 * @return the worker class name, not <code>null</code>.
+	 */
+	public String getWorker() {
+		return m_worker;
+	}
+
+	/**
+	 * @return the worker class, <code>null</code> if this job has been given the worker class name only.
+	 */
+	public Class<? extends IXWS> getWorkerClass() {
+		return m_workerClass;
+	}
+
+	/**
+	 * Runs this job with a default configuration. Never throws: exceptions that prevent the execution are reported in
+	 * the result.
+	 *
+	 * @return not <code>null</code>.
+	 */
+	public XWSJobResult run() {
+		return run(new XWSConfiguration.Builder().build());
+	}
+
+	/**
+	 * Runs this job with the given configuration, which may be shared with jobs running concurrently. If the
+	 * configuration has a worker pool, the worker is taken from it if possible, and given back to it if the job
+	 * executes normally. Never throws: exceptions that prevent the execution are reported in the result.
+	 *
+	 * @param configuration
+	 *            not <code>null</code>.
+	 * @return not <code>null</code>.
+	 */
+	public XWSJobResult run(XWSConfiguration configuration) {
+		return run(configuration, null);
+	}
+
+	/**
+	 * Runs this job as {@link #run(XWSConfiguration)}, executing the worker only once a permit has been acquired from
+	 * the given semaphore, if any.
+	 *
+	 * @param configuration
+	 *            not <code>null</code>.
+	 * @param executions
+	 *            <code>null</code> for no bound on concurrent worker executions.
+	 * @return not <code>null</code>.
+	 */
+	XWSJobResult run(XWSConfiguration configuration, Semaphore executions) {
+		Preconditions.checkNotNull(configuration);
+		final long start = System.nanoTime();
+		final XWSExecution execution;
+		try {
+			if (m_inputs != null) {
+				execution = configuration.newExecution(m_workerClass, m_inputs, m_outputs);
+			} else if (m_workerClass != null) {
+				execution = configuration.newExecution(m_workerClass, m_inputDirectory, m_outputDirectory);
+			} else {
+				execution = configuration.newExecution(m_worker, m_inputDirectory, m_outputDirectory);
+			}
+			execution.execute(executions);
+		} catch (InvalidInvocationException exc) {
+			s_logger.info("Job {} failed.", this, exc);
+			return XWSJobResult.newFailed(this, exc, System.nanoTime() - start);
+		} catch (IOException exc) {
+			s_logger.info("Job {} failed.", this, exc);
+			return XWSJobResult.newFailed(this, exc, System.nanoTime() - start);
+		} catch (RuntimeException exc) {
+			s_logger.warn("Job {} failed unexpectedly.", this, exc);
+			return XWSJobResult.newFailed(this, exc, System.nanoTime() - start);
+		}
+		final XWSJobResult result = XWSJobResult.newExecuted(this, execution.getExceptions(),
+				System.nanoTime() - start);
+		try {
+			execution.releaseWorker();
+		} catch (InvalidInvocationException exc) {
+			s_logger.warn("Could not release the worker of job {}.", this, exc);
+		}
+		return result;
+	}
+
+	@Override
+	public String toString() {
+		if (m_inputs != null) {
+			return m_worker + " (memory)";
+		}
+		return m_worker + " (" + m_inputDirectory + " -> " + m_outputDirectory + ")";
+	}
+}
@@ -0,0 +1,122 @@
+package org.decisiondeck.jmcda.xws;
+
+import java.util.List;
+
+import org.decisiondeck.jmcda.exc.InvalidInputException;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * The outcome of running an {@link XWSJob}. Immutable.
+ *
+ * @author Olivier Cailloux
+ *
+ */
+public class XWSJobResult {
+	public static enum Status {
+		/**
+		 * The job could not be executed, e.g. because the worker could not be found or the directories are invalid, or
+		 * an output could not be written.
+		 */
+		FAILED,
+		/**
+		 * The job has been executed but some inputs were invalid or the worker reported invalid inputs. The outputs
+		 * have been written, including the exceptions, as usual.
+		 */
+		INVALID_INPUT,
+		/**
+		 * The job has been executed with no exception.
+		 */
+		SUCCESS
+	}
+
+	/**
+	 * @param job
+	 *            not <code>null</code>.
+	 * @param exceptions
+	 *            not <code>null</code>.
+	 * @param durationNanos
+	 *            the time taken by the job, in nanoseconds.
+	 * @return not <code>null</code>.
+	 */
+	public static XWSJobResult newExecuted(XWSJob job, List<InvalidInputException> exceptions, long durationNanos) {
+		return new XWSJobResult(job, exceptions.isEmpty() ? Status.SUCCESS : Status.INVALID_INPUT,
+				ImmutableList.copyOf(exceptions), null, durationNanos);
+	}
+
+	/**
+	 * @param job
+	 *            not <code>null</code>.
+	 * @param failure
+	 *            not <code>null</code>.
+	 * @param durationNanos
+	 *            the time taken by the job, in nanoseconds.
+	 * @return not <code>null</code>.
+	 */
+	public static XWSJobResult newFailed(XWSJob job, Exception failure, long durationNanos) {
+		return new XWSJobResult(job, Status.FAILED, ImmutableList.<InvalidInputException> of(),
+				Preconditions.checkNotNull(failure), durationNanos);
+	}
+
+	private final long m_durationNanos;
+
+	private final ImmutableList<InvalidInputException> m_exceptions;
+
+	private final Exception m_failure;
+
+	private final XWSJob m_job;
+
+	private final Status m_status;
+
+	private XWSJobResult(XWSJob job, Status status, ImmutableList<InvalidInputException> exceptions,
+			Exception failure, long durationNanos) {
+		m_job = Preconditions.checkNotNull(job);
+		m_status = Preconditions.checkNotNull(status);
+		m_exceptions = Preconditions.checkNotNull(exceptions);
+		m_failure = failure;
+		m_durationNanos = durationNanos;
+	}
+
+	/**
+	 * @return the time taken by the job, in nanoseconds.
+	 */
+	public long getDurationNanos() {
+		return m_durationNanos;
+	}
+
+	/**
+	 * @return the exceptions collected while executing the job, not <code>null</code>, empty unless the status is
+	 *         {@link Status#INVALID_INPUT}.
+	 */
+	public List<InvalidInputException> getExceptions() {
+		return m_exceptions;
+	}
+
+	/**
+	 * @return the exception which prevented the job execution, <code>null</code> unless the status is
+	 *         {@link Status#FAILED}.
+	 */
+	public Exception getFailure() {
+		return m_failure;
+	}
+
+	/**
+	 * @return not <code>null</code>.
+	 */
+	public XWSJob getJob() {
+		return m_job;
+	}
+
+	/**
+	 * @return not <code>null</code>.
+	 */
+	public Status getStatus() {
+		return m_status;
+	}
+
+	@Override
+	public String toString() {
+		return m_job + ": " + m_status;
+	}
+}
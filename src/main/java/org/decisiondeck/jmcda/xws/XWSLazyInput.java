@@ -0,0 +1,104 @@
+package org.decisiondeck.jmcda.xws;
+
+import org.decisiondeck.jmcda.exc.InvalidInputException;
+import org.decisiondeck.jmcda.exc.InvalidInvocationException;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * <p>
+ * An input that is read and transformed only when first asked for. A worker field of type
+ * <code>XWSLazyInput&lt;T&gt;</code> annotated with {@link XWSInput} is set, before execution, to an object of this
+ * class, instead of the value of type <code>T</code> itself, which the worker obtains by calling {@link #get()}. An
+ * input the worker does not ask for is thus never read.
+ * </p>
+ * <p>
+ * The value, or the exception indicating that the input is invalid, is computed once, then returned (or thrown) at each
+ * call. If the input is optional and its file does not exist, the value is <code>null</code>. If the input is required
+ * and its file does not exist, this is reported before execution, as for the other inputs, and the worker is not
+ * executed. Objects of this class are safe for use by multiple threads.
+ * </p>
+ *
+ * @param <T>
+ *            the type of the value.
+ * @author Olivier Cailloux
+ *
+ */
+public final class XWSLazyInput<T> {
+	/**
+	 * Reads and transforms an input.
+	 */
+	static interface Loader {
+		public Object load() throws InvalidInputException, InvalidInvocationException;
+	}
+
+	private InvalidInputException m_exception;
+
+	private Loader m_loader;
+
+	private final String m_name;
+
+	private T m_value;
+
+	/**
+	 * @param name
+	 *            the name of the file to read, not <code>null</code>.
+	 * @param loader
+	 *            not <code>null</code>, must return a value of type <code>T</code>.
+	 */
+	XWSLazyInput(String name, Loader loader) {
+		m_name = Preconditions.checkNotNull(name);
+		m_loader = Preconditions.checkNotNull(loader);
+		m_exception = null;
+		m_value = null;
+	}
+
+	/**
+	 * Retrieves the value of this input, reading and transforming it if this is the first call.
+	 *
+	 * @return the value, <code>null</code> iff the input is optional and absent.
+	 * @throws InvalidInputException
+	 *             if the input is invalid or, when it is not optional, absent.
+	 * @throws IllegalStateException
+	 *             if the input can't be read for a reason other than invalid input, e.g. its transformer can't be
+	 *             instantiated; this wraps the {@link InvalidInvocationException} that would be thrown when reading the
+	 *             input before execution, which this method can't throw. The next call tries to read the input again.
+	 */
+	public synchronized T get() throws InvalidInputException {
+		if (m_loader != null) {
+			try {
+				@SuppressWarnings("unchecked")
+				final T value = (T) m_loader.load();
+				m_value = value;
+			} catch (InvalidInputException exc) {
+				m_exception = exc;
+			} catch (InvalidInvocationException exc) {
+				throw new IllegalStateException("Could not read input " + m_name + ".", exc);
+			}
+			m_loader = null;
+		}
+		if (m_exception != null) {
+			throw m_exception;
+		}
+		return m_value;
+	}
+
+	/**
+	 * @return the name of the file this input is read from, not <code>null</code>.
+	 */
+	public String getName() {
+		return m_name;
+	}
+
+	/**
+	 * @return <code>true</code> iff the value (or the exception) has been computed.
+	 */
+	public synchronized boolean isLoaded() {
+		return m_loader == null;
+	}
+
+	@Override
+	public String toString() {
+		return "Lazy input " + m_name;
+	}
+}
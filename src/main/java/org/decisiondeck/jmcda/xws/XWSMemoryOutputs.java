@@ -0,0 +1,90 @@
+package org.decisiondeck.jmcda.xws;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+
+import com.google.common.base.Function;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.Maps;
+import com.google.common.io.ByteSink;
+import com.google.common.io.ByteSource;
+
+/**
+ * <p>
+ * Collects in memory the outputs of executions running without file system, see
+ * {@link XWSConfiguration#newExecution(Class, Map, Function)}. The sink given for a name stores, when its stream is
+ * closed, the bytes written to it as the content of the output of that name, replacing any previous content.
+ * </p>
+ * <p>
+ * Objects of this class are safe for use by multiple threads. An object may be shared by several executions, as long as
+ * they write outputs of different names.
+ * </p>
+ *
+ * @author Olivier Cailloux
+ *
+ */
+public final class XWSMemoryOutputs implements Function<String, ByteSink> {
+	private final ConcurrentMap<String, byte[]> m_outputs = Maps.newConcurrentMap();
+
+	/**
+	 * @param name
+	 *            the file name of an output, not <code>null</code>.
+	 * @return a sink storing its content in this object under the given name, not <code>null</code>.
+	 */
+	@Override
+	public ByteSink apply(final String name) {
+		Preconditions.checkNotNull(name);
+		return new ByteSink() {
+			@Override
+			public OutputStream openStream() {
+				return new ByteArrayOutputStream() {
+					@Override
+					public void close() {
+						m_outputs.put(name, toByteArray());
+					}
+				};
+			}
+
+			@Override
+			public String toString() {
+				return "Memory output " + name;
+			}
+		};
+	}
+
+	/**
+	 * @return a snapshot of the outputs written so far, by file name, not <code>null</code>.
+	 */
+	public ImmutableSortedMap<String, ByteSource> asMap() {
+		final ImmutableSortedMap.Builder<String, ByteSource> builder = ImmutableSortedMap.naturalOrder();
+		for (Map.Entry<String, byte[]> output : m_outputs.entrySet()) {
+			builder.put(output.getKey(), ByteSource.wrap(output.getValue()));
+		}
+		return builder.build();
+	}
+
+	/**
+	 * Discards every output written so far.
+	 */
+	public void clear() {
+		m_outputs.clear();
+	}
+
+	/**
+	 * @param name
+	 *            not <code>null</code>.
+	 * @return the content of the output of the given name, or <code>null</code> if no such output has been written.
+	 */
+	public ByteSource get(String name) {
+		final byte[] content = m_outputs.get(Preconditions.checkNotNull(name));
+		return content == null ? null : ByteSource.wrap(content);
+	}
+
+	@Override
+	public String toString() {
+		return "Memory outputs " + m_outputs.keySet();
+	}
+}
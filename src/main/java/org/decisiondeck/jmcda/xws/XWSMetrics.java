@@ -0,0 +1,354 @@
+package org.decisiondeck.jmcda.xws;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.Maps;
+
+/**
+ * <p>
+ * The metrics of the executions run with a configuration: jobs started, completed and failed, per worker class; the
+ * durations of each phase of the executions, per worker class and, for reading inputs and writing outputs, per input
+ * or output; the bytes read and written; and the time spent validating output documents. A metrics object may be
+ * shared by several configurations, and is given to a configuration with
+ * {@link XWSConfiguration.Builder#setMetrics(XWSMetrics)}.
+ * </p>
+ * <p>
+ * The metrics are exposed through JMX once {@link #register(MBeanServer, String) registered}, and may be sent
+ * periodically to a {@link XWSMetricsReporter}. Recording is done without locking, using striped counters, thus is
+ * safe and cheap from any number of threads.
+ * </p>
+ *
+ * @author Olivier Cailloux
+ *
+ */
+public final class XWSMetrics implements XWSMetricsMXBean {
+	/**
+	 * The timed phases of an execution.
+	 */
+	public static enum Phase {
+		/**
+		 * Running the worker.
+		 */
+		EXECUTE,
+		/**
+		 * Reading and transforming one input.
+		 */
+		READ_INPUT,
+		/**
+		 * Reading and transforming all inputs and setting the input fields.
+		 */
+		SET_FIELDS_INPUTS,
+		/**
+		 * Obtaining a worker instance.
+		 */
+		SET_WORKER,
+		/**
+		 * Transforming and writing one output.
+		 */
+		WRITE_OUTPUT,
+		/**
+		 * Transforming and writing all outputs.
+		 */
+		WRITE_OUTPUTS
+	}
+
+	private static final class Key {
+		private final String m_name;
+
+		private final Phase m_phase;
+
+		private final Class<? extends IXWS> m_workerClass;
+
+		public Key(Class<? extends IXWS> workerClass, Phase phase, String name) {
+			m_workerClass = Preconditions.checkNotNull(workerClass);
+			m_phase = Preconditions.checkNotNull(phase);
+			m_name = name;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			final Key key = (Key) obj;
+			return m_workerClass.equals(key.m_workerClass) && m_phase == key.m_phase
+					&& Objects.equal(m_name, key.m_name);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hashCode(m_workerClass, m_phase, m_name);
+		}
+
+		@Override
+		public String toString() {
+			return m_workerClass.getName() + "/" + m_phase + (m_name == null ? "" : "/" + m_name);
+		}
+	}
+
+	private static final class WorkerCounts {
+		private final LongAdder m_completed = new LongAdder();
+
+		private final LongAdder m_failed = new LongAdder();
+
+		private final LongAdder m_started = new LongAdder();
+	}
+
+	/**
+	 * The domain of the names of the metrics objects registered to JMX.
+	 */
+	public static final String JMX_DOMAIN = "org.decisiondeck.jmcda.xws";
+
+	private static final Logger s_logger = LoggerFactory.getLogger(XWSMetrics.class);
+
+	private static <V> ImmutableMap<String, V> build(ImmutableSortedMap.Builder<String, V> builder) {
+		/** JMX can't convert sorted maps having a comparator; the copy keeps the order. */
+		return ImmutableMap.copyOf(builder.build());
+	}
+
+	private final LongAdder m_bytesRead = new LongAdder();
+
+	private final LongAdder m_bytesWritten = new LongAdder();
+
+	private final LongAdder m_outputsSkipped = new LongAdder();
+
+	private final ConcurrentMap<Key, XWSTimer> m_timers = Maps.newConcurrentMap();
+
+	private final XWSTimer m_validation = new XWSTimer();
+
+	private final ConcurrentMap<Class<? extends IXWS>, WorkerCounts> m_workers = Maps.newConcurrentMap();
+
+	@Override
+	public long getBytesRead() {
+		return m_bytesRead.sum();
+	}
+
+	@Override
+	public long getBytesWritten() {
+		return m_bytesWritten.sum();
+	}
+
+	@Override
+	public ImmutableMap<String, Long> getJobsCompleted() {
+		final ImmutableSortedMap.Builder<String, Long> builder = ImmutableSortedMap.naturalOrder();
+		for (Map.Entry<Class<? extends IXWS>, WorkerCounts> worker : m_workers.entrySet()) {
+			builder.put(worker.getKey().getName(), Long.valueOf(worker.getValue().m_completed.sum()));
+		}
+		return build(builder);
+	}
+
+	/**
+	 * @return the number of jobs that ended with invalid inputs or with an exception, by worker class name.
+	 */
+	@Override
+	public ImmutableMap<String, Long> getJobsFailed() {
+		final ImmutableSortedMap.Builder<String, Long> builder = ImmutableSortedMap.naturalOrder();
+		for (Map.Entry<Class<? extends IXWS>, WorkerCounts> worker : m_workers.entrySet()) {
+			builder.put(worker.getKey().getName(), Long.valueOf(worker.getValue().m_failed.sum()));
+		}
+		return build(builder);
+	}
+
+	@Override
+	public ImmutableMap<String, Long> getJobsStarted() {
+		final ImmutableSortedMap.Builder<String, Long> builder = ImmutableSortedMap.naturalOrder();
+		for (Map.Entry<Class<? extends IXWS>, WorkerCounts> worker : m_workers.entrySet()) {
+			builder.put(worker.getKey().getName(), Long.valueOf(worker.getValue().m_started.sum()));
+		}
+		return build(builder);
+	}
+
+	/**
+	 * @return the durations recorded so far, keyed by the worker class name, the phase and, for the phases concerning
+	 *         one input or output, its name, separated by slashes, e.g.
+	 *         <code>org.example.Worker/READ_INPUT/alternatives.xml</code>.
+	 */
+	@Override
+	public ImmutableMap<String, XWSTimer.Snapshot> getLatencies() {
+		final ImmutableSortedMap.Builder<String, XWSTimer.Snapshot> builder = ImmutableSortedMap.naturalOrder();
+		for (Map.Entry<Key, XWSTimer> timer : m_timers.entrySet()) {
+			builder.put(timer.getKey().toString(), timer.getValue().getSnapshot());
+		}
+		return build(builder);
+	}
+
+	/**
+	 * @return the number of output files left untouched because their content was unchanged, see
+	 *         {@link XWSConfiguration.Builder#setSkipUnchangedOutputsEnabled(boolean)}. Their bytes are counted as
+	 *         written nevertheless.
+	 */
+	@Override
+	public long getOutputsSkipped() {
+		return m_outputsSkipped.sum();
+	}
+
+	/**
+	 * @param workerClass
+	 *            not <code>null</code>.
+	 * @param phase
+	 *            not <code>null</code>.
+	 * @param name
+	 *            the name of the input or output, for the phases concerning one of them, otherwise <code>null</code>.
+	 * @return the durations recorded so far for the given phase, or <code>null</code> if none.
+	 */
+	public XWSTimer getTimer(Class<? extends IXWS> workerClass, Phase phase, String name) {
+		return m_timers.get(new Key(workerClass, phase, name));
+	}
+
+	@Override
+	public XWSTimer.Snapshot getValidationLatency() {
+		return m_validation.getSnapshot();
+	}
+
+	/**
+	 * @return the durations of the validations of output documents, before writing them or asynchronously, not
+	 *         <code>null</code>.
+	 */
+	public XWSTimer getValidationTimer() {
+		return m_validation;
+	}
+
+	/**
+	 * Registers this object to the given server, under the name {@value #JMX_DOMAIN}
+	 * <code>:type=XWSMetrics,name=</code> followed by the given name, quoted.
+	 *
+	 * @param server
+	 *            not <code>null</code>, e.g. {@link ManagementFactory#getPlatformMBeanServer()}.
+	 * @param name
+	 *            distinguishes this object from the other metrics objects registered, not <code>null</code>.
+	 * @return the name this object has been registered under, to be used for unregistering it.
+	 * @throws JMException
+	 *             if the registration fails, e.g. because the name is already used.
+	 */
+	public ObjectName register(MBeanServer server, String name) throws JMException {
+		Preconditions.checkNotNull(server);
+		final ObjectName objectName = new ObjectName(JMX_DOMAIN + ":type=XWSMetrics,name=" + ObjectName.quote(name));
+		return server.registerMBean(this, objectName).getObjectName();
+	}
+
+	/**
+	 * Calls the given reporter with this object periodically, using the given executor, until the returned future is
+	 * cancelled.
+	 *
+	 * @param reporter
+	 *            not <code>null</code>.
+	 * @param executor
+	 *            not <code>null</code>.
+	 * @param period
+	 *            positive.
+	 * @param unit
+	 *            not <code>null</code>.
+	 * @return not <code>null</code>.
+	 */
+	public ScheduledFuture<?> schedule(final XWSMetricsReporter reporter, ScheduledExecutorService executor,
+			long period, TimeUnit unit) {
+		Preconditions.checkNotNull(reporter);
+		Preconditions.checkArgument(period > 0);
+		return executor.scheduleAtFixedRate(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					reporter.report(XWSMetrics.this);
+				} catch (RuntimeException exc) {
+					s_logger.warn("Reporter " + reporter + " failed.", exc);
+				}
+			}
+		}, period, period, unit);
+	}
+
+	@Override
+	public String toString() {
+		return "Metrics of " + m_workers.size() + " worker classes, " + getBytesRead() + " bytes read, "
+				+ getBytesWritten() + " bytes written";
+	}
+
+	/**
+	 * @param bytes
+	 *            at least zero.
+	 */
+	void addBytesRead(long bytes) {
+		m_bytesRead.add(bytes);
+	}
+
+	/**
+	 * @param bytes
+	 *            at least zero.
+	 */
+	void addBytesWritten(long bytes) {
+		m_bytesWritten.add(bytes);
+	}
+
+	void addOutputSkipped() {
+		m_outputsSkipped.increment();
+	}
+
+	/**
+	 * @param workerClass
+	 *            not <code>null</code>.
+	 * @param failed
+	 *            <code>true</code> iff the job ended with invalid inputs or with an exception.
+	 */
+	void jobEnded(Class<? extends IXWS> workerClass, boolean failed) {
+		final WorkerCounts counts = getCounts(workerClass);
+		if (failed) {
+			counts.m_failed.increment();
+		} else {
+			counts.m_completed.increment();
+		}
+	}
+
+	/**
+	 * @param workerClass
+	 *            not <code>null</code>.
+	 */
+	void jobStarted(Class<? extends IXWS> workerClass) {
+		getCounts(workerClass).m_started.increment();
+	}
+
+	/**
+	 * @param workerClass
+	 *            not <code>null</code>.
+	 * @param phase
+	 *            not <code>null</code>.
+	 * @param name
+	 *            the name of the input or output, for the phases concerning one of them, otherwise <code>null</code>.
+	 * @param nanos
+	 *            the duration of the phase.
+	 */
+	void record(Class<? extends IXWS> workerClass, Phase phase, String name, long nanos) {
+		final Key key = new Key(workerClass, phase, name);
+		XWSTimer timer = m_timers.get(key);
+		if (timer == null) {
+			m_timers.putIfAbsent(key, new XWSTimer());
+			timer = m_timers.get(key);
+		}
+		timer.record(nanos);
+	}
+
+	private WorkerCounts getCounts(Class<? extends IXWS> workerClass) {
+		Preconditions.checkNotNull(workerClass);
+		WorkerCounts counts = m_workers.get(workerClass);
+		if (counts == null) {
+			m_workers.putIfAbsent(workerClass, new WorkerCounts());
+			counts = m_workers.get(workerClass);
+		}
+		return counts;
+	}
+}
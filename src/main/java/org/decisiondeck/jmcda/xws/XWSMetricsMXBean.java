@@ -0,0 +1,29 @@
+package org.decisiondeck.jmcda.xws;
+
+import java.util.Map;
+
+/**
+ * The management interface of {@link XWSMetrics}, as exposed through JMX. Maps are sorted by key, and keyed by worker
+ * class name, or, for latencies, by a string built from the worker class name, the phase and, if relevant, the input
+ * or output name, see {@link XWSMetrics#getLatencies()}.
+ *
+ * @author Olivier Cailloux
+ *
+ */
+public interface XWSMetricsMXBean {
+	public long getBytesRead();
+
+	public long getBytesWritten();
+
+	public Map<String, Long> getJobsCompleted();
+
+	public Map<String, Long> getJobsFailed();
+
+	public Map<String, Long> getJobsStarted();
+
+	public Map<String, XWSTimer.Snapshot> getLatencies();
+
+	public long getOutputsSkipped();
+
+	public XWSTimer.Snapshot getValidationLatency();
+}
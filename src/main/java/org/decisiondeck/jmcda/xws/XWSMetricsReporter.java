@@ -0,0 +1,20 @@
+package org.decisiondeck.jmcda.xws;
+
+/**
+ * Receives, periodically, the metrics of executions, e.g. to log them or forward them to a monitoring system. See
+ * {@link XWSMetrics#schedule(XWSMetricsReporter, java.util.concurrent.ScheduledExecutorService, long, java.util.concurrent.TimeUnit)}
+ * .
+ *
+ * @author Olivier Cailloux
+ *
+ */
+public interface XWSMetricsReporter {
+	/**
+	 * Reports the current values of the given metrics. Runtime exceptions thrown by this method are logged, and do
+	 * not stop the reporting.
+	 *
+	 * @param metrics
+	 *            not <code>null</code>, still being updated while this method runs.
+	 */
+	public void report(XWSMetrics metrics);
+}
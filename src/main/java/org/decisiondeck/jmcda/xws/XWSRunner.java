@@ -0,0 +1,153 @@
+package org.decisiondeck.jmcda.xws;
+
+import java.io.Closeable;
+import java.io.File;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+import com.google.common.base.Function;
+import com.google.common.base.Preconditions;
+import com.google.common.io.ByteSink;
+import com.google.common.io.ByteSource;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListenableFutureTask;
+
+/**
+ * <p>
+ * Runs jobs submitted by an embedding application, each on its own thread taken from a given executor, and returns
+ * futures of their results. All jobs share one {@link XWSConfiguration}.
+ * </p>
+ * <p>
+ * Reading the inputs and writing the outputs of a job mostly block on files, thus the executor may have many more
+ * threads than there are processors, whereas the number of worker executions running at the same time, which are
+ * typically bound by the processors, is capped separately. A job whose inputs are read waits, before executing its
+ * worker, until fewer than the cap are executing.
+ * </p>
+ *
+ * @author Olivier Cailloux
+ *
+ */
+public class XWSRunner implements Closeable {
+	private final XWSConfiguration m_configuration;
+
+	private final ExecutorService m_executor;
+
+	private final Semaphore m_executions;
+
+	private final int m_maxExecutions;
+
+	/**
+	 * Creates a runner that runs each job on a thread of a cached pool, thus never queues jobs before their worker
+	 * execution.
+	 *
+	 * @param configuration
+	 *            not <code>null</code>.
+	 * @param maxExecutions
+	 *            the maximal number of worker executions running at the same time, at least one.
+	 */
+	public XWSRunner(XWSConfiguration configuration, int maxExecutions) {
+		this(configuration, Executors.newCachedThreadPool(), maxExecutions);
+	}
+
+	/**
+	 * @param configuration
+	 *            not <code>null</code>.
+	 * @param executor
+	 *            not <code>null</code>, runs the jobs, and is shut down when this runner is closed.
+	 * @param maxExecutions
+	 *            the maximal number of worker executions running at the same time, at least one.
+	 */
+	public XWSRunner(XWSConfiguration configuration, ExecutorService executor, int maxExecutions) {
+		Preconditions.checkArgument(maxExecutions >= 1);
+		m_configuration = Preconditions.checkNotNull(configuration);
+		m_executor = Preconditions.checkNotNull(executor);
+		m_maxExecutions = maxExecutions;
+		m_executions = new Semaphore(maxExecutions);
+	}
+
+	/**
+	 * Shuts down the executor, letting the jobs already submitted complete. The worker pool of the configuration, if
+	 * any, is left open.
+	 */
+	@Override
+	public void close() {
+		m_executor.shutdown();
+	}
+
+	/**
+	 * @return the number of worker executions that may start now without waiting, for monitoring.
+	 */
+	public int getAvailableExecutions() {
+		return m_executions.availablePermits();
+	}
+
+	/**
+	 * @return not <code>null</code>.
+	 */
+	public XWSConfiguration getConfiguration() {
+		return m_configuration;
+	}
+
+	/**
+	 * @return at least one.
+	 */
+	public int getMaxExecutions() {
+		return m_maxExecutions;
+	}
+
+	/**
+	 * Submits a job running the given worker. See {@link #submit(XWSJob)}.
+	 *
+	 * @param worker
+	 *            not <code>null</code>.
+	 * @param inputDirectory
+	 *            not <code>null</code>.
+	 * @param outputDirectory
+	 *            not <code>null</code>.
+	 * @return not <code>null</code>.
+	 */
+	public ListenableFuture<XWSJobResult> submit(Class<? extends IXWS> worker, File inputDirectory,
+			File outputDirectory) {
+		return submit(new XWSJob(inputDirectory, outputDirectory, worker));
+	}
+
+	/**
+	 * Submits a job running the given worker on inputs read from memory, writing its outputs to the given sinks. See
+	 * {@link #submit(XWSJob)} and {@link XWSConfiguration#newExecution(Class, Map, Function)}.
+	 *
+	 * @param worker
+	 *            not <code>null</code>.
+	 * @param inputs
+	 *            the sources of the inputs, by file name; not <code>null</code>. Must not be modified afterwards.
+	 * @param outputs
+	 *            gives a sink for each output, by file name; not <code>null</code>, e.g. a {@link XWSMemoryOutputs}.
+	 * @return not <code>null</code>.
+	 */
+	public ListenableFuture<XWSJobResult> submit(Class<? extends IXWS> worker, Map<String, ByteSource> inputs,
+			Function<String, ByteSink> outputs) {
+		return submit(new XWSJob(inputs, outputs, worker));
+	}
+
+	/**
+	 * Submits the given job. The returned future never fails because of the job: exceptions that prevent the execution
+	 * are reported in the result.
+	 *
+	 * @param job
+	 *            not <code>null</code>.
+	 * @return not <code>null</code>.
+	 */
+	public ListenableFuture<XWSJobResult> submit(final XWSJob job) {
+		Preconditions.checkNotNull(job);
+		final ListenableFutureTask<XWSJobResult> task = ListenableFutureTask.create(new Callable<XWSJobResult>() {
+			@Override
+			public XWSJobResult call() {
+				return job.run(m_configuration, m_executions);
+			}
+		});
+		m_executor.execute(task);
+		return task;
+	}
+}
@@ -0,0 +1,542 @@
+package org.decisiondeck.jmcda.xws;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.GnuParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.OptionBuilder;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.decisiondeck.jmcda.exc.InvalidInputException;
+import org.decisiondeck.jmcda.exc.InvalidInvocationException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.BaseEncoding;
+import com.google.common.io.Files;
+
+/**
+ * <p>
+ * A long running executor, which accepts jobs on a local TCP port and runs them on a bounded pool of threads, so that
+ * the JVM, the loaded worker classes and their injection plans, and the XMCDA parsing machinery are kept warm from one
+ * job to the next.
+ * </p>
+ * <p>
+ * The server only listens on the loopback interface. A client connects, sends the token of the server on the first
+ * line, then sends jobs, one after the other, on the same connection if it wishes. A job is sent as three lines: the
+ * input directory, the output directory, and the worker class name, with the same meaning as the <code>-i</code>,
+ * <code>-o</code> and <code>-w</code> options of the {@link XWSExecutor} command line, except that relative
+ * directories are resolved against the root directory of the server. The server replies, once the job is finished,
+ * with a status line, which is one of
+ * the {@link XWSJobResult.Status} names, followed by one line per message (the messages of the exceptions collected in
+ * case of {@link XWSJobResult.Status#INVALID_INPUT}, or the message of the failure in case of
+ * {@link XWSJobResult.Status#FAILED}), then an empty line. Line breaks in messages are replaced by spaces. Lines are
+ * encoded in UTF-8. When the job queue is full, the job is not run and the reply is {@link XWSJobResult.Status#FAILED}
+ * with a message saying so. A connection sending a wrong token gets the same reply, saying so, then is closed.
+ * </p>
+ * <p>
+ * As each connection holds one of the limited connection threads, a connection is closed if it does not send its
+ * token within the {@link #setTokenTimeout(int) token timeout}, if it stays idle between two jobs, or within a job
+ * request, longer than the {@link #setIdleTimeout(int) idle timeout}, or if it sends a line longer than
+ * {@value #MAX_LINE_LENGTH} characters.
+ * </p>
+ * <p>
+ * Security: jobs run with the privileges of the server, reading and writing the directories they name, and any local
+ * user can connect to the loopback interface. The token is what prevents other users from running jobs: it must be
+ * kept secret, e.g. in a file readable only by the users allowed to submit jobs, see the <code>--token-file</code>
+ * option. Directories that are not within the root directory of the server, once their symbolic links are resolved,
+ * are refused, thus the root directory must contain nothing that jobs may not read or overwrite. The workers may
+ * further be restricted to a given set of classes; otherwise, any worker class available to the server may be run.
+ * </p>
+ *
+ * @author Olivier Cailloux
+ *
+ */
+public class XWSServer implements Closeable {
+	public static final int DEFAULT_IDLE_TIMEOUT = 60000;
+
+	public static final int DEFAULT_QUEUE_SIZE = 100;
+
+	public static final int DEFAULT_TOKEN_TIMEOUT = 10000;
+
+	/**
+	 * The maximal number of characters of a line sent by a client, line break excluded.
+	 */
+	public static final int MAX_LINE_LENGTH = 4096;
+
+	/**
+	 * The length in bytes of the tokens generated by {@link #main(String[])}.
+	 */
+	public static final int TOKEN_BYTES = 32;
+
+	public static final String SERVE_OPTION = "serve";
+
+	private static final Logger s_logger = LoggerFactory.getLogger(XWSServer.class);
+
+	/**
+	 * Starts a server as specified by the given arguments, and serves until the JVM is terminated. The token is read
+	 * from the token file if it exists; otherwise, a random token is generated and written to a new token file,
+	 * readable only by its owner where the file system permits it.
+	 *
+	 * @param args
+	 *            not <code>null</code>.
+	 * @throws IOException
+	 *             if the server socket can't be opened, or the token file can't be read or written.
+	 */
+	public static void main(String[] args) throws IOException {
+		final Options options = getCommandLineOptions();
+		final CommandLine line;
+		final int port;
+		final int nbThreads;
+		final int queueSize;
+		try {
+			line = new GnuParser().parse(options, args);
+			port = Integer.parseInt(line.getOptionValue(SERVE_OPTION));
+			nbThreads = line.hasOption("threads") ? Integer.parseInt(line.getOptionValue("threads"))
+					: Runtime.getRuntime().availableProcessors();
+			queueSize = line.hasOption("queue") ? Integer.parseInt(line.getOptionValue("queue")) : DEFAULT_QUEUE_SIZE;
+		} catch (ParseException exc) {
+			System.err.println(exc.getLocalizedMessage());
+			System.out.println(getSyntaxHelp(options));
+			return;
+		} catch (NumberFormatException exc) {
+			System.err.println(exc.getLocalizedMessage());
+			System.out.println(getSyntaxHelp(options));
+			return;
+		}
+
+		final String token = readOrCreateToken(new File(line.getOptionValue("token-file")));
+		final File root = new File(line.hasOption("root") ? line.getOptionValue("root") : ".");
+		final Set<String> workers;
+		if (line.hasOption("allow")) {
+			workers = ImmutableSet
+					.copyOf(Splitter.on(',').trimResults().omitEmptyStrings().split(line.getOptionValue("allow")));
+		} else {
+			workers = null;
+		}
+		final XWSServer server = new XWSServer(port, nbThreads, queueSize, token, root, workers);
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			@Override
+			public void run() {
+				server.close();
+			}
+		});
+		s_logger.info("Serving on port {}.", Integer.valueOf(server.getPort()));
+		server.serve();
+	}
+
+	static Options getCommandLineOptions() {
+		final Option optServe = OptionBuilder.create("s");
+		optServe.setArgs(1);
+		optServe.setRequired(true);
+		optServe.setDescription("Serve jobs on the given local port (0 for any free port).");
+		optServe.setArgName("port");
+		optServe.setLongOpt(SERVE_OPTION);
+		optServe.setType("Number");
+
+		final Option optThreads = OptionBuilder.create("t");
+		optThreads.setArgs(1);
+		optThreads.setRequired(false);
+		optThreads.setDescription("The number of jobs run concurrently; defaults to the number of processors.");
+		optThreads.setArgName("threads");
+		optThreads.setLongOpt("threads");
+		optThreads.setType("Number");
+
+		final Option optQueue = OptionBuilder.create("q");
+		optQueue.setArgs(1);
+		optQueue.setRequired(false);
+		optQueue.setDescription("The number of jobs waiting to be run beyond which new jobs are refused; defaults to "
+				+ DEFAULT_QUEUE_SIZE + ".");
+		optQueue.setArgName("queue");
+		optQueue.setLongOpt("queue");
+		optQueue.setType("Number");
+
+		final Option optToken = OptionBuilder.create("k");
+		optToken.setArgs(1);
+		optToken.setRequired(true);
+		optToken.setDescription("The file holding the token clients must send; created with a random token, "
+				+ "readable only by its owner, if it does not exist.");
+		optToken.setArgName("file");
+		optToken.setLongOpt("token-file");
+
+		final Option optRoot = OptionBuilder.create("r");
+		optRoot.setArgs(1);
+		optRoot.setRequired(false);
+		optRoot.setDescription("The directory containing every input and output directory of the jobs; defaults to "
+				+ "the current directory.");
+		optRoot.setArgName("directory");
+		optRoot.setLongOpt("root");
+
+		final Option optAllow = OptionBuilder.create("a");
+		optAllow.setArgs(1);
+		optAllow.setRequired(false);
+		optAllow.setDescription("The worker classes jobs may run, separated by commas; defaults to any.");
+		optAllow.setArgName("classes");
+		optAllow.setLongOpt("allow");
+
+		final Options options = new Options();
+		options.addOption(optServe);
+		options.addOption(optThreads);
+		options.addOption(optQueue);
+		options.addOption(optToken);
+		options.addOption(optRoot);
+		options.addOption(optAllow);
+		return options;
+	}
+
+	private static String getSyntaxHelp(Options options) {
+		final HelpFormatter hlp = new HelpFormatter();
+		final StringWriter wr = new StringWriter();
+		final PrintWriter pwr = new PrintWriter(wr);
+		hlp.printHelp(pwr, hlp.getWidth(), "prg", null, options, hlp.getLeftPadding(), hlp.getDescPadding(), null,
+				true);
+		return wr.toString();
+	}
+
+	/**
+	 * @param file
+	 *            not <code>null</code>.
+	 * @return the token in the given file, which is created with a new random token if it does not exist.
+	 */
+	private static String readOrCreateToken(File file) throws IOException {
+		if (file.exists()) {
+			return Files.asCharSource(file, Charsets.UTF_8).read().trim();
+		}
+		final byte[] bytes = new byte[TOKEN_BYTES];
+		new SecureRandom().nextBytes(bytes);
+		final String token = BaseEncoding.base16().lowerCase().encode(bytes);
+		Preconditions.checkState(file.createNewFile(), "Token file %s created concurrently.", file);
+		try {
+			java.nio.file.Files.setPosixFilePermissions(file.toPath(), PosixFilePermissions.fromString("rw-------"));
+		} catch (UnsupportedOperationException exc) {
+			file.setReadable(false, false);
+			file.setReadable(true, true);
+		}
+		Files.asCharSink(file, Charsets.UTF_8).write(token);
+		s_logger.info("Token written to {}.", file);
+		return token;
+	}
+
+	/**
+	 * Reads a line ended by a line feed, possibly preceded by a carriage return, or by the end of the stream. Contrary
+	 * to {@link BufferedReader#readLine()}, this fails instead of reading an arbitrarily long line.
+	 *
+	 * @return <code>null</code> iff the end of the stream is reached before any character.
+	 * @throws IOException
+	 *             if the line is longer than {@value #MAX_LINE_LENGTH} characters, or if an error occurs while reading.
+	 */
+	private static String readLine(Reader reader) throws IOException {
+		final StringBuilder line = new StringBuilder();
+		while (true) {
+			final int c = reader.read();
+			if (c == -1) {
+				return line.length() == 0 ? null : line.toString();
+			}
+			if (c == '\n') {
+				final int length = line.length();
+				if (length >= 1 && line.charAt(length - 1) == '\r') {
+					line.setLength(length - 1);
+				}
+				if (line.length() > MAX_LINE_LENGTH) {
+					throw new IOException("Line too long.");
+				}
+				return line.toString();
+			}
+			/** One more character is accepted, which may be a carriage return. */
+			if (line.length() > MAX_LINE_LENGTH) {
+				throw new IOException("Line too long.");
+			}
+			line.append((char) c);
+		}
+	}
+
+	private static String toLine(String message) {
+		return message == null ? "" : message.replace('\r', ' ').replace('\n', ' ');
+	}
+
+	private final XWSConfiguration m_configuration;
+
+	/**
+	 * Each connection waits for its job, thus no more connections are handled than jobs may be running or waiting.
+	 */
+	private final ThreadPoolExecutor m_connections;
+
+	/**
+	 * In milliseconds.
+	 */
+	private int m_idleTimeout;
+
+	private final ThreadPoolExecutor m_jobs;
+
+	/**
+	 * Canonical.
+	 */
+	private final File m_root;
+
+	private final ServerSocket m_serverSocket;
+
+	private final byte[] m_token;
+
+	/**
+	 * In milliseconds.
+	 */
+	private int m_tokenTimeout;
+
+	/**
+	 * <code>null</code> for any.
+	 */
+	private final ImmutableSet<String> m_workers;
+
+	/**
+	 * Opens the server socket. Jobs are only accepted once {@link #serve()} is called.
+	 *
+	 * @param port
+	 *            the local port to listen to, or 0 for any free port.
+	 * @param nbThreads
+	 *            the maximal number of jobs run concurrently, at least one.
+	 * @param queueSize
+	 *            the maximal number of jobs waiting to be run, at least one.
+	 * @param token
+	 *            the secret clients must send, not <code>null</code>, not empty.
+	 * @param root
+	 *            the directory that contains the input and output directories of every job, not <code>null</code>.
+	 * @param workers
+	 *            the names of the worker classes jobs may run, <code>null</code> for any.
+	 * @throws IOException
+	 *             if the socket can't be opened, or the root directory can't be resolved.
+	 */
+	public XWSServer(int port, int nbThreads, int queueSize, String token, File root, Set<String> workers)
+			throws IOException {
+		Preconditions.checkArgument(nbThreads >= 1);
+		Preconditions.checkArgument(queueSize >= 1);
+		Preconditions.checkArgument(!token.isEmpty());
+		Preconditions.checkArgument(root.isDirectory(), "Not a directory: %s.", root);
+		m_token = token.getBytes(Charsets.UTF_8);
+		m_root = root.getCanonicalFile();
+		m_workers = workers == null ? null : ImmutableSet.copyOf(workers);
+		m_serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+		m_jobs = new ThreadPoolExecutor(nbThreads, nbThreads, 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(queueSize));
+		m_connections = new ThreadPoolExecutor(0, nbThreads + queueSize, 60, TimeUnit.SECONDS,
+				new SynchronousQueue<Runnable>());
+		m_configuration = new XWSConfiguration.Builder().setWorkerPool(new XWSWorkerPool(nbThreads)).build();
+		m_tokenTimeout = DEFAULT_TOKEN_TIMEOUT;
+		m_idleTimeout = DEFAULT_IDLE_TIMEOUT;
+	}
+
+	/**
+	 * Stops accepting connections and jobs, and closes the pooled workers. Jobs already submitted are finished.
+	 */
+	@Override
+	public void close() {
+		try {
+			m_serverSocket.close();
+		} catch (IOException exc) {
+			s_logger.warn("Could not close the server socket.", exc);
+		}
+		m_connections.shutdownNow();
+		m_jobs.shutdown();
+		m_configuration.getWorkerPool().close();
+	}
+
+	/**
+	 * @return the local port this server listens to.
+	 */
+	public int getPort() {
+		return m_serverSocket.getLocalPort();
+	}
+
+	/**
+	 * Sets the time a connection may wait, once authenticated, for the next job or for the next line of a job, before
+	 * being closed. This must be called before {@link #serve()}.
+	 *
+	 * @param idleTimeout
+	 *            in milliseconds, at least one. Defaults to {@value #DEFAULT_IDLE_TIMEOUT}.
+	 */
+	public void setIdleTimeout(int idleTimeout) {
+		Preconditions.checkArgument(idleTimeout >= 1);
+		m_idleTimeout = idleTimeout;
+	}
+
+	/**
+	 * Sets the time a new connection may take to send the token before being closed. This must be called before
+	 * {@link #serve()}.
+	 *
+	 * @param tokenTimeout
+	 *            in milliseconds, at least one. Defaults to {@value #DEFAULT_TOKEN_TIMEOUT}.
+	 */
+	public void setTokenTimeout(int tokenTimeout) {
+		Preconditions.checkArgument(tokenTimeout >= 1);
+		m_tokenTimeout = tokenTimeout;
+	}
+
+	/**
+	 * Accepts connections until this server is closed. Each connection is handled in its own thread, the jobs it
+	 * sends are run on the job pool. Connections beyond the number of jobs that may be running or waiting are closed
+	 * at once.
+	 *
+	 * @throws IOException
+	 *             if an error occurs while waiting for a connection, other than the socket being closed.
+	 */
+	public void serve() throws IOException {
+		while (!m_serverSocket.isClosed()) {
+			final Socket socket;
+			try {
+				socket = m_serverSocket.accept();
+			} catch (SocketException exc) {
+				if (m_serverSocket.isClosed()) {
+					break;
+				}
+				throw exc;
+			}
+			try {
+				m_connections.submit(new Callable<Void>() {
+					@Override
+					public Void call() throws IOException {
+						handle(socket);
+						return null;
+					}
+				});
+			} catch (RejectedExecutionException exc) {
+				socket.close();
+			}
+		}
+	}
+
+	private void handle(Socket socket) throws IOException {
+		try (Socket closing = socket;
+				BufferedReader reader = new BufferedReader(
+						new InputStreamReader(closing.getInputStream(), Charsets.UTF_8));
+				Writer writer = new OutputStreamWriter(closing.getOutputStream(), Charsets.UTF_8)) {
+			closing.setSoTimeout(m_tokenTimeout);
+			final String token = readLine(reader);
+			if (token == null) {
+				return;
+			}
+			if (!MessageDigest.isEqual(m_token, token.getBytes(Charsets.UTF_8))) {
+				s_logger.warn("Connection sent a wrong token.");
+				writer.write(XWSJobResult.Status.FAILED.name() + "\nWrong token.\n\n");
+				writer.flush();
+				return;
+			}
+			closing.setSoTimeout(m_idleTimeout);
+			while (true) {
+				final String inputDir = readLine(reader);
+				if (inputDir == null) {
+					break;
+				}
+				final String outputDir = readLine(reader);
+				final String worker = readLine(reader);
+				if (outputDir == null || worker == null) {
+					break;
+				}
+				final XWSJob job = new XWSJob(resolve(inputDir), resolve(outputDir), worker);
+				reply(writer, check(job));
+			}
+		} catch (SocketTimeoutException exc) {
+			s_logger.info("Connection timed out.");
+		} catch (IOException exc) {
+			s_logger.info("Connection closed.", exc);
+			throw exc;
+		}
+	}
+
+	private void reply(Writer writer, XWSJobResult result) throws IOException {
+		writer.write(result.getStatus().name());
+		writer.write('\n');
+		for (InvalidInputException exc : result.getExceptions()) {
+			writer.write(toLine(exc.getMessage()));
+			writer.write('\n');
+		}
+		if (result.getFailure() != null) {
+			writer.write(toLine(result.getFailure().getMessage()));
+			writer.write('\n');
+		}
+		writer.write('\n');
+		writer.flush();
+	}
+
+	/**
+	 * @return the result of the given job, or a failure if it may not be run.
+	 */
+	private XWSJobResult check(XWSJob job) throws IOException {
+		if (m_workers != null && !m_workers.contains(job.getWorker())) {
+			return XWSJobResult.newFailed(job, new InvalidInvocationException("Worker not allowed."), 0);
+		}
+		if (!isWithinRoot(job.getInputDirectory()) || !isWithinRoot(job.getOutputDirectory())) {
+			return XWSJobResult.newFailed(job,
+					new InvalidInvocationException("Directories must be within " + m_root + "."), 0);
+		}
+		return submit(job);
+	}
+
+	private boolean isWithinRoot(File file) throws IOException {
+		File parent = file.getCanonicalFile();
+		while (parent != null) {
+			if (parent.equals(m_root)) {
+				return true;
+			}
+			parent = parent.getParentFile();
+		}
+		return false;
+	}
+
+	private File resolve(String path) {
+		final File file = new File(path);
+		return file.isAbsolute() ? file : new File(m_root, path);
+	}
+
+	private XWSJobResult submit(final XWSJob job) {
+		final Future<XWSJobResult> future;
+		try {
+			future = m_jobs.submit(new Callable<XWSJobResult>() {
+				@Override
+				public XWSJobResult call() {
+					return job.run(m_configuration);
+				}
+			});
+		} catch (RejectedExecutionException exc) {
+			return XWSJobResult.newFailed(job, new InvalidInvocationException("Server busy, job refused.", exc), 0);
+		}
+		try {
+			return future.get();
+		} catch (InterruptedException exc) {
+			Thread.currentThread().interrupt();
+			return XWSJobResult.newFailed(job, new InvalidInvocationException("Interrupted.", exc), 0);
+		} catch (ExecutionException exc) {
+			throw new IllegalStateException(exc.getCause());
+		}
+	}
+}
@@ -0,0 +1,495 @@
+package org.decisiondeck.jmcda.xws;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.decision_deck.jmcda.structure.Alternative;
+import org.decision_deck.jmcda.structure.Criterion;
+import org.decision_deck.jmcda.structure.matrix.Evaluations;
+import org.decision_deck.jmcda.structure.matrix.EvaluationsRead;
+import org.decision_deck.jmcda.structure.matrix.EvaluationsUtils;
+import org.decision_deck.utils.matrix.SparseMatrixD;
+import org.decision_deck.utils.matrix.SparseMatrixDRead;
+import org.decisiondeck.jmcda.exc.InvalidInputException;
+import org.decisiondeck.jmcda.exc.InvalidInvocationException;
+import org.decisiondeck.jmcda.xws.XWSInjectionPlan.InputField;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.common.hash.Funnels;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+import com.google.common.reflect.TypeToken;
+
+/**
+ * <p>
+ * Keeps the transformed values of some inputs as compact binary snapshots, so that a large input file whose content
+ * does not change is parsed once, then loaded from its snapshot by the following runs, possibly in other JVMs. The
+ * supported values are the sets of alternatives, the sets of criteria, and the evaluations of alternatives on criteria
+ * (such as performance tables, including the profiles evaluations), sparse or {@link DenseEvaluations dense}; inputs of
+ * other types are transformed as usual.
+ * </p>
+ * <p>
+ * A snapshot records the size and a hash of the content of the file it was obtained from, and the transformer used. It
+ * is used only if these match the current file and field, and is otherwise replaced by a new one, after the file has
+ * been transformed again, unless the file changed while being transformed. Snapshots are written either beside the
+ * input files, with the suffix {@value #SUFFIX}, or to a given directory, named after the path of their input file. A
+ * snapshot that can't be read or written is logged and ignored: the input is then transformed as if there was no
+ * snapshot.
+ * </p>
+ * <p>
+ * The file of an input is taken to be the file of that name in the input directory, as with the default input
+ * transformer. Inputs read from memory or from archives are never snapshotted. Objects of this class are safe for use
+ * by multiple threads and by multiple JVMs sharing the same files: snapshots are written to temporary files, then
+ * atomically renamed, so that a snapshot is never seen partially written. Where the file system can't rename
+ * atomically, no snapshot is written. A snapshot found corrupt is considered stale.
+ * </p>
+ *
+ * @author Olivier Cailloux
+ *
+ */
+public final class XWSSnapshots {
+	/**
+	 * Thrown when the body of a snapshot is inconsistent, e.g. has a negative count or an index out of bounds, which
+	 * happens if the snapshot is corrupt. The snapshot is then considered stale.
+	 */
+	private static final class CorruptSnapshotException extends IOException {
+		private static final long serialVersionUID = 1L;
+
+		public CorruptSnapshotException(String message) {
+			super(message);
+		}
+	}
+
+	private static enum Kind {
+		ALTERNATIVES, CRITERIA, DENSE_EVALUATIONS, EVALUATIONS
+	}
+
+	private static final int MAGIC = 0x58575353;
+
+	private static final Logger s_logger = LoggerFactory.getLogger(XWSSnapshots.class);
+
+	/**
+	 * The suffix added to the name of an input file to obtain the name of its snapshot, when snapshots are written
+	 * beside the input files.
+	 */
+	public static final String SUFFIX = ".xwss";
+
+	private static final byte VERSION = 1;
+
+	/**
+	 * @return snapshots written beside the input files they are obtained from.
+	 */
+	public static XWSSnapshots besideSources() {
+		return new XWSSnapshots(null);
+	}
+
+	/**
+	 * @param directory
+	 *            not <code>null</code>, must exist, may be shared by any number of input directories.
+	 * @return snapshots written to the given directory.
+	 */
+	public static XWSSnapshots inDirectory(File directory) {
+		Preconditions.checkArgument(directory.isDirectory(), "Not a directory: %s.", directory);
+		return new XWSSnapshots(directory);
+	}
+
+	/**
+	 * @param type
+	 *            not <code>null</code>.
+	 * @return <code>true</code> iff inputs of the given type can be snapshotted.
+	 */
+	public static boolean supports(Type type) {
+		return getKind(type) != null;
+	}
+
+	private static Kind getKind(Type type) {
+		final TypeToken<?> token = TypeToken.of(type);
+		final Class<?> raw = token.getRawType();
+		if (raw.equals(DenseEvaluations.class)) {
+			return Kind.DENSE_EVALUATIONS;
+		}
+		if (raw.equals(Evaluations.class) || raw.equals(EvaluationsRead.class)) {
+			return Kind.EVALUATIONS;
+		}
+		if (raw.equals(SparseMatrixD.class) || raw.equals(SparseMatrixDRead.class)) {
+			final Type[] parameters = SparseMatrixDRead.class.getTypeParameters();
+			final Type rows = token.resolveType(parameters[0]).getType();
+			final Type columns = token.resolveType(parameters[1]).getType();
+			return rows.equals(Alternative.class) && columns.equals(Criterion.class) ? Kind.EVALUATIONS : null;
+		}
+		if (raw.equals(Set.class)) {
+			final Type elements = token.resolveType(Set.class.getTypeParameters()[0]).getType();
+			if (elements.equals(Alternative.class)) {
+				return Kind.ALTERNATIVES;
+			}
+			if (elements.equals(Criterion.class)) {
+				return Kind.CRITERIA;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Reads a count of elements each taking at least the given number of bytes in the snapshot.
+	 *
+	 * @param length
+	 *            the length of the snapshot.
+	 * @throws CorruptSnapshotException
+	 *             if the count is negative or the elements can't fit in the snapshot.
+	 */
+	private static int readCount(DataInputStream input, long length, int elementSize) throws IOException {
+		final int count = input.readInt();
+		if (count < 0 || count > length / elementSize) {
+			throw new CorruptSnapshotException("Invalid count: " + count + ".");
+		}
+		return count;
+	}
+
+	private static DenseEvaluations readDenseEvaluations(DataInputStream input, long length) throws IOException {
+		final List<Alternative> alternatives = Lists.newArrayList();
+		for (int i = readCount(input, length, 2); i > 0; --i) {
+			alternatives.add(new Alternative(input.readUTF()));
+		}
+		final List<Criterion> criteria = Lists.newArrayList();
+		for (int j = readCount(input, length, 2); j > 0; --j) {
+			criteria.add(new Criterion(input.readUTF()));
+		}
+		if (!alternatives.isEmpty() && criteria.size() > length / 8 / alternatives.size()) {
+			throw new CorruptSnapshotException("Too many values.");
+		}
+		if (Sets.newHashSet(alternatives).size() != alternatives.size()
+				|| Sets.newHashSet(criteria).size() != criteria.size()) {
+			throw new CorruptSnapshotException("Duplicate alternatives or criteria.");
+		}
+		final DenseEvaluations evaluations = new DenseEvaluations(alternatives, criteria);
+		final double[] values = evaluations.getValues();
+		for (int v = 0; v < values.length; ++v) {
+			values[v] = input.readDouble();
+		}
+		return evaluations;
+	}
+
+	private static Evaluations readEvaluations(DataInputStream input, long length) throws IOException {
+		final Alternative[] rows = new Alternative[readCount(input, length, 2)];
+		for (int i = 0; i < rows.length; ++i) {
+			rows[i] = new Alternative(input.readUTF());
+		}
+		final Criterion[] columns = new Criterion[readCount(input, length, 2)];
+		for (int j = 0; j < columns.length; ++j) {
+			columns[j] = new Criterion(input.readUTF());
+		}
+		final Evaluations evaluations = EvaluationsUtils.newEvaluationMatrix();
+		for (Alternative row : rows) {
+			final int entries = readCount(input, length, 12);
+			for (int e = 0; e < entries; ++e) {
+				final int column = input.readInt();
+				if (column < 0 || column >= columns.length) {
+					throw new CorruptSnapshotException("Invalid column: " + column + ".");
+				}
+				evaluations.put(row, columns[column], input.readDouble());
+			}
+		}
+		return evaluations;
+	}
+
+	private static void writeDenseEvaluations(DataOutputStream output, DenseEvaluations evaluations)
+			throws IOException {
+		output.writeInt(evaluations.getAlternativeCount());
+		for (Alternative alternative : evaluations.getAlternatives()) {
+			output.writeUTF(alternative.getId());
+		}
+		output.writeInt(evaluations.getCriterionCount());
+		for (Criterion criterion : evaluations.getCriteria()) {
+			output.writeUTF(criterion.getId());
+		}
+		for (double value : evaluations.getValues()) {
+			output.writeDouble(value);
+		}
+	}
+
+	private static void writeEvaluations(DataOutputStream output, SparseMatrixDRead<Alternative, Criterion> evaluations)
+			throws IOException {
+		final ImmutableList<Alternative> rows = ImmutableList.copyOf(evaluations.getRows());
+		final ImmutableList<Criterion> columns = ImmutableList.copyOf(evaluations.getColumns());
+		output.writeInt(rows.size());
+		for (Alternative row : rows) {
+			output.writeUTF(row.getId());
+		}
+		output.writeInt(columns.size());
+		for (Criterion column : columns) {
+			output.writeUTF(column.getId());
+		}
+		final double[] values = new double[columns.size()];
+		final int[] indices = new int[columns.size()];
+		for (Alternative row : rows) {
+			int entries = 0;
+			for (int j = 0; j < columns.size(); ++j) {
+				final Double entry = evaluations.getEntry(row, columns.get(j));
+				if (entry != null) {
+					indices[entries] = j;
+					values[entries] = entry.doubleValue();
+					++entries;
+				}
+			}
+			output.writeInt(entries);
+			for (int e = 0; e < entries; ++e) {
+				output.writeInt(indices[e]);
+				output.writeDouble(values[e]);
+			}
+		}
+	}
+
+	private final File m_directory;
+
+	private final AtomicLong m_hits = new AtomicLong();
+
+	private final AtomicLong m_misses = new AtomicLong();
+
+	private final AtomicLong m_writes = new AtomicLong();
+
+	private XWSSnapshots(File directory) {
+		m_directory = directory;
+	}
+
+	/**
+	 * @return the directory the snapshots are written to, <code>null</code> if they are written beside the input
+	 *         files.
+	 */
+	public File getDirectory() {
+		return m_directory;
+	}
+
+	/**
+	 * @return the number of values loaded from snapshots.
+	 */
+	public long getHitCount() {
+		return m_hits.get();
+	}
+
+	/**
+	 * @return the number of values transformed, or attempted to, because their snapshot was missing, stale or
+	 *         unreadable.
+	 */
+	public long getMissCount() {
+		return m_misses.get();
+	}
+
+	/**
+	 * @param file
+	 *            an input file, not <code>null</code>.
+	 * @return the file the snapshot of the given input file is written to, whether or not it exists.
+	 */
+	public File getSnapshotFile(File file) {
+		if (m_directory == null) {
+			return new File(file.getPath() + SUFFIX);
+		}
+		final HashCode path = Hashing.sha256().hashString(file.getAbsolutePath(), Charsets.UTF_8);
+		return new File(m_directory, file.getName() + "-" + path.toString().substring(0, 16) + SUFFIX);
+	}
+
+	/**
+	 * @return the number of snapshots written.
+	 */
+	public long getWriteCount() {
+		return m_writes.get();
+	}
+
+	@Override
+	public String toString() {
+		return "Snapshots " + (m_directory == null ? "beside sources" : "in " + m_directory) + ", " + m_hits.get()
+				+ " hits, " + m_misses.get() + " misses, " + m_writes.get() + " writes";
+	}
+
+	/**
+	 * Retrieves the value of the given input field, from the snapshot of the given file if it is valid, otherwise from
+	 * the given loader, in which case a new snapshot is written. If the file does not exist, the loader is used
+	 * directly.
+	 *
+	 * @param field
+	 *            not <code>null</code>, of a {@link #supports(Type) supported} type.
+	 * @param file
+	 *            the file the field is read from, not <code>null</code>.
+	 * @param loader
+	 *            transforms the file into the value of the field, not <code>null</code>.
+	 * @return the value, possibly <code>null</code> if the loader returns <code>null</code>.
+	 * @throws InvalidInputException
+	 *             if the loader throws it.
+	 * @throws InvalidInvocationException
+	 *             if the loader throws it, or the file can't be read.
+	 */
+	Object get(InputField field, File file, XWSLazyInput.Loader loader)
+			throws InvalidInputException, InvalidInvocationException {
+		final Kind kind = getKind(field.getValueType());
+		Preconditions.checkArgument(kind != null, "Unsupported type: %s.", field.getValueType());
+		Preconditions.checkNotNull(loader);
+		if (!file.isFile()) {
+			return loader.load();
+		}
+
+		final Hasher hasher = Hashing.sha256().newHasher();
+		final long size;
+		try {
+			size = Files.asByteSource(file).copyTo(Funnels.asOutputStream(hasher));
+		} catch (IOException exc) {
+			throw new InvalidInvocationException("Could not read " + file + ".", exc);
+		}
+		final HashCode hash = hasher.hash();
+		final String transformer = field.getTransformer() == null ? "" : field.getTransformer().getName();
+		final File snapshot = getSnapshotFile(file);
+		if (snapshot.isFile()) {
+			try {
+				final Object value = read(snapshot, kind, size, hash, transformer);
+				if (value != null) {
+					m_hits.incrementAndGet();
+					return value;
+				}
+			} catch (IOException exc) {
+				s_logger.warn("Could not read snapshot " + snapshot + ".", exc);
+			}
+		}
+
+		m_misses.incrementAndGet();
+		final Object value = loader.load();
+		if (value != null) {
+			try {
+				/** The loader read the file anew, which may have changed since hashed. */
+				if (Files.asByteSource(file).hash(Hashing.sha256()).equals(hash)) {
+					write(snapshot, kind, size, hash, transformer, value);
+					m_writes.incrementAndGet();
+				} else {
+					s_logger.info("Not writing snapshot " + snapshot + ": " + file + " changed while transformed.");
+				}
+			} catch (IOException exc) {
+				s_logger.warn("Could not write snapshot " + snapshot + ".", exc);
+			}
+		}
+		return value;
+	}
+
+	/**
+	 * @return the value recorded in the given snapshot, or <code>null</code> if the snapshot does not match the given
+	 *         source file and transformer, or is corrupt.
+	 */
+	private Object read(File snapshot, Kind kind, long size, HashCode hash, String transformer) throws IOException {
+		try {
+			return readChecked(snapshot, kind, size, hash, transformer);
+		} catch (CorruptSnapshotException exc) {
+			s_logger.info("Ignoring corrupt snapshot " + snapshot + ": " + exc.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * @return the value recorded in the given snapshot, or <code>null</code> if the snapshot does not match the given
+	 *         source file and transformer.
+	 * @throws CorruptSnapshotException
+	 *             if the snapshot is corrupt.
+	 */
+	private Object readChecked(File snapshot, Kind kind, long size, HashCode hash, String transformer)
+			throws IOException {
+		final long length = snapshot.length();
+		try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(snapshot)))) {
+			if (input.readInt() != MAGIC || input.readByte() != VERSION) {
+				return null;
+			}
+			if (input.readLong() != size) {
+				return null;
+			}
+			final byte[] recorded = new byte[input.readUnsignedByte()];
+			input.readFully(recorded);
+			if (!HashCode.fromBytes(recorded).equals(hash) || !input.readUTF().equals(transformer)
+					|| input.readUnsignedByte() != kind.ordinal()) {
+				return null;
+			}
+			switch (kind) {
+			case ALTERNATIVES:
+				final Set<Alternative> alternatives = Sets.newLinkedHashSet();
+				for (int i = readCount(input, length, 2); i > 0; --i) {
+					alternatives.add(new Alternative(input.readUTF()));
+				}
+				return alternatives;
+			case CRITERIA:
+				final Set<Criterion> criteria = Sets.newLinkedHashSet();
+				for (int i = readCount(input, length, 2); i > 0; --i) {
+					criteria.add(new Criterion(input.readUTF()));
+				}
+				return criteria;
+			case DENSE_EVALUATIONS:
+				return readDenseEvaluations(input, length);
+			case EVALUATIONS:
+				return readEvaluations(input, length);
+			default:
+				throw new AssertionError();
+			}
+		}
+	}
+
+	private void write(File snapshot, Kind kind, long size, HashCode hash, String transformer, Object value)
+			throws IOException {
+		final File temporary = File.createTempFile(snapshot.getName(), ".tmp",
+				snapshot.getAbsoluteFile().getParentFile());
+		try {
+			try (DataOutputStream output = new DataOutputStream(
+					new BufferedOutputStream(new FileOutputStream(temporary)))) {
+				output.writeInt(MAGIC);
+				output.writeByte(VERSION);
+				output.writeLong(size);
+				final byte[] bytes = hash.asBytes();
+				output.writeByte(bytes.length);
+				output.write(bytes);
+				output.writeUTF(transformer);
+				output.writeByte(kind.ordinal());
+				switch (kind) {
+				case ALTERNATIVES:
+					final Set<?> alternatives = (Set<?>) value;
+					output.writeInt(alternatives.size());
+					for (Object alternative : alternatives) {
+						output.writeUTF(((Alternative) alternative).getId());
+					}
+					break;
+				case CRITERIA:
+					final Set<?> criteria = (Set<?>) value;
+					output.writeInt(criteria.size());
+					for (Object criterion : criteria) {
+						output.writeUTF(((Criterion) criterion).getId());
+					}
+					break;
+				case DENSE_EVALUATIONS:
+					writeDenseEvaluations(output, (DenseEvaluations) value);
+					break;
+				case EVALUATIONS:
+					@SuppressWarnings("unchecked")
+					final SparseMatrixDRead<Alternative, Criterion> evaluations =
+							(SparseMatrixDRead<Alternative, Criterion>) value;
+					writeEvaluations(output, evaluations);
+					break;
+				default:
+					throw new AssertionError();
+				}
+			}
+			java.nio.file.Files.move(temporary.toPath(), snapshot.toPath(), StandardCopyOption.ATOMIC_MOVE,
+					StandardCopyOption.REPLACE_EXISTING);
+		} finally {
+			temporary.delete();
+		}
+	}
+}
@@ -0,0 +1,184 @@
+package org.decisiondeck.jmcda.xws;
+
+import java.beans.ConstructorProperties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongBinaryOperator;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * <p>
+ * A histogram of durations, recorded without locking: each duration is counted in the bucket of its power of two, thus
+ * the percentiles it gives are approximate, within a factor of two, while the count, mean and maximum are exact.
+ * </p>
+ * <p>
+ * Objects of this class are safe for use by multiple threads. The counters are striped, so that threads recording
+ * concurrently do not contend; reading them while durations are being recorded gives values that may be slightly
+ * inconsistent with each other.
+ * </p>
+ *
+ * @author Olivier Cailloux
+ *
+ */
+public final class XWSTimer {
+	/**
+	 * The values of a timer at some point in time, in milliseconds.
+	 *
+	 * @author Olivier Cailloux
+	 *
+	 */
+	public static final class Snapshot {
+		private final long m_count;
+
+		private final double m_maxMillis;
+
+		private final double m_meanMillis;
+
+		private final double m_medianMillis;
+
+		private final double m_percentile99Millis;
+
+		@ConstructorProperties({ "count", "meanMillis", "medianMillis", "percentile99Millis", "maxMillis" })
+		public Snapshot(long count, double meanMillis, double medianMillis, double percentile99Millis,
+				double maxMillis) {
+			m_count = count;
+			m_meanMillis = meanMillis;
+			m_medianMillis = medianMillis;
+			m_percentile99Millis = percentile99Millis;
+			m_maxMillis = maxMillis;
+		}
+
+		public long getCount() {
+			return m_count;
+		}
+
+		public double getMaxMillis() {
+			return m_maxMillis;
+		}
+
+		public double getMeanMillis() {
+			return m_meanMillis;
+		}
+
+		public double getMedianMillis() {
+			return m_medianMillis;
+		}
+
+		public double getPercentile99Millis() {
+			return m_percentile99Millis;
+		}
+
+		@Override
+		public String toString() {
+			return m_count + " times, mean " + m_meanMillis + " ms, median " + m_medianMillis + " ms, 99th percentile "
+					+ m_percentile99Millis + " ms, max " + m_maxMillis + " ms";
+		}
+	}
+
+	private static final LongBinaryOperator MAX = new LongBinaryOperator() {
+		@Override
+		public long applyAsLong(long left, long right) {
+			return Math.max(left, right);
+		}
+	};
+
+	private static double toMillis(long nanos) {
+		return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+	}
+
+	/**
+	 * The bucket i counts the durations d such that 2^(i-1) &le; d &lt; 2^i nanoseconds; the bucket zero counts the
+	 * null durations.
+	 */
+	private final LongAdder[] m_buckets = new LongAdder[Long.SIZE];
+
+	private final LongAdder m_count = new LongAdder();
+
+	private final LongAccumulator m_max = new LongAccumulator(MAX, 0L);
+
+	private final LongAdder m_total = new LongAdder();
+
+	public XWSTimer() {
+		for (int i = 0; i < m_buckets.length; ++i) {
+			m_buckets[i] = new LongAdder();
+		}
+	}
+
+	/**
+	 * @return the number of durations recorded.
+	 */
+	public long getCount() {
+		return m_count.sum();
+	}
+
+	/**
+	 * @return the greatest duration recorded, in nanoseconds, zero if none.
+	 */
+	public long getMaxNanos() {
+		return m_max.get();
+	}
+
+	/**
+	 * @param percentile
+	 *            between zero and one hundred.
+	 * @return an upper bound of the given percentile of the durations recorded, in nanoseconds, at most twice the
+	 *         exact value and at most the greatest duration; zero if none.
+	 */
+	public long getPercentileNanos(double percentile) {
+		Preconditions.checkArgument(percentile >= 0d && percentile <= 100d);
+		final long[] counts = new long[m_buckets.length];
+		long count = 0;
+		for (int i = 0; i < counts.length; ++i) {
+			counts[i] = m_buckets[i].sum();
+			count += counts[i];
+		}
+		final long rank = (long) Math.ceil(count * percentile / 100d);
+		long seen = 0;
+		for (int i = 0; i < counts.length; ++i) {
+			seen += counts[i];
+			if (seen >= rank && seen > 0) {
+				/** For the last bucket, the upper bound overflows to the greatest long. */
+				final long upper = i == 0 ? 0 : (1L << i) - 1;
+				return Math.min(upper, getMaxNanos());
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * @return the values of this timer, not <code>null</code>.
+	 */
+	public Snapshot getSnapshot() {
+		final long count = getCount();
+		final double mean = count == 0 ? 0d : toMillis(getTotalNanos()) / count;
+		return new Snapshot(count, mean, toMillis(getPercentileNanos(50d)), toMillis(getPercentileNanos(99d)),
+				toMillis(getMaxNanos()));
+	}
+
+	/**
+	 * @return the sum of the durations recorded, in nanoseconds.
+	 */
+	public long getTotalNanos() {
+		return m_total.sum();
+	}
+
+	/**
+	 * @param nanos
+	 *            a duration, in nanoseconds; negative values, that may be obtained from {@link System#nanoTime()} on
+	 *            some systems, are recorded as zero.
+	 */
+	public void record(long nanos) {
+		final long duration = Math.max(0, nanos);
+		m_buckets[Long.SIZE - Long.numberOfLeadingZeros(duration)].increment();
+		m_count.increment();
+		m_total.add(duration);
+		m_max.accumulate(duration);
+	}
+
+	@Override
+	public String toString() {
+		return getSnapshot().toString();
+	}
+}
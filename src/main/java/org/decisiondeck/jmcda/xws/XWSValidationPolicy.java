@@ -0,0 +1,213 @@
+package org.decisiondeck.jmcda.xws;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.xmlbeans.XmlOptions;
+import org.decisiondeck.jmcda.persist.xmcda2.generated.XMCDADoc;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * <p>
+ * Decides which output documents are validated against the XMCDA schema when written: all of them, none, the first
+ * ones written for each worker class, a random sample, or all of them but after they are written, on another thread.
+ * </p>
+ * <p>
+ * The schema is compiled once per JVM, by XMLBeans, together with the generated XMCDA classes, and shared by every
+ * validation. A policy may thus be shared by any number of configurations and threads; the counts it keeps (of the
+ * documents written for each worker class, and of the validations) are common to all its users. Asynchronous
+ * validation failures can't be reported to the job, which has typically completed, thus are logged and counted.
+ * </p>
+ *
+ * @author Olivier Cailloux
+ *
+ */
+public final class XWSValidationPolicy {
+	private static enum Mode {
+		ALWAYS, ASYNCHRONOUS, FIRST, NEVER, SAMPLED
+	}
+
+	private static final Logger s_logger = LoggerFactory.getLogger(XWSValidationPolicy.class);
+
+	/**
+	 * @return a policy that validates every document before writing it, failing the write if it is invalid.
+	 */
+	public static XWSValidationPolicy always() {
+		return new XWSValidationPolicy(Mode.ALWAYS, 0, 0d, null);
+	}
+
+	/**
+	 * @param executor
+	 *            not <code>null</code>, runs the validations.
+	 * @return a policy that writes every document without validating it, then validates it using the given executor,
+	 *         logging and counting the failures.
+	 */
+	public static XWSValidationPolicy asynchronous(Executor executor) {
+		return new XWSValidationPolicy(Mode.ASYNCHRONOUS, 0, 0d, Preconditions.checkNotNull(executor));
+	}
+
+	/**
+	 * @param count
+	 *            at least zero.
+	 * @return a policy that validates the documents written for each worker class until the given number of them has
+	 *         been validated, then none.
+	 */
+	public static XWSValidationPolicy firstPerWorker(int count) {
+		Preconditions.checkArgument(count >= 0);
+		return new XWSValidationPolicy(Mode.FIRST, count, 0d, null);
+	}
+
+	/**
+	 * @return a policy that validates no document.
+	 */
+	public static XWSValidationPolicy never() {
+		return new XWSValidationPolicy(Mode.NEVER, 0, 0d, null);
+	}
+
+	/**
+	 * @param rate
+	 *            between zero and one.
+	 * @return a policy that validates each document with the given probability.
+	 */
+	public static XWSValidationPolicy sampled(double rate) {
+		Preconditions.checkArgument(rate >= 0d && rate <= 1d);
+		return new XWSValidationPolicy(Mode.SAMPLED, 0, rate, null);
+	}
+
+	private final int m_count;
+
+	private final Executor m_executor;
+
+	private final AtomicLong m_failures = new AtomicLong();
+
+	private final Mode m_mode;
+
+	private final double m_rate;
+
+	private final AtomicLong m_validations = new AtomicLong();
+
+	private final ConcurrentMap<Class<? extends IXWS>, AtomicInteger> m_written = Maps.newConcurrentMap();
+
+	private XWSValidationPolicy(Mode mode, int count, double rate, Executor executor) {
+		m_mode = mode;
+		m_count = count;
+		m_rate = rate;
+		m_executor = executor;
+	}
+
+	/**
+	 * @return the number of documents found invalid by asynchronous validation.
+	 */
+	public long getFailureCount() {
+		return m_failures.get();
+	}
+
+	/**
+	 * @return the number of documents validated (or submitted for asynchronous validation) under this policy.
+	 */
+	public long getValidationCount() {
+		return m_validations.get();
+	}
+
+	/**
+	 * @return <code>true</code> iff the documents are validated after being written.
+	 */
+	public boolean isAsynchronous() {
+		return m_mode == Mode.ASYNCHRONOUS;
+	}
+
+	@Override
+	public String toString() {
+		switch (m_mode) {
+		case FIRST:
+			return "Validation of the first " + m_count + " documents per worker";
+		case SAMPLED:
+			return "Validation of a sample of " + m_rate + " documents";
+		default:
+			return "Validation " + m_mode.name().toLowerCase(Locale.ROOT);
+		}
+	}
+
+	/**
+	 * Indicates whether the next document written for the given worker class is to be validated, and counts the
+	 * validation if so. Asynchronous policies validate every document, but after writing it, see
+	 * {@link #validateLater(XMCDADoc, String, XWSMetrics)}.
+	 *
+	 * @param workerClass
+	 *            not <code>null</code>.
+	 * @return <code>true</code> iff the document is to be validated before or while being written.
+	 */
+	boolean validatesBeforeWrite(Class<? extends IXWS> workerClass) {
+		Preconditions.checkNotNull(workerClass);
+		final boolean validate;
+		switch (m_mode) {
+		case ALWAYS:
+			validate = true;
+			break;
+		case ASYNCHRONOUS:
+		case NEVER:
+			validate = false;
+			break;
+		case FIRST:
+			AtomicInteger written = m_written.get(workerClass);
+			if (written == null) {
+				m_written.putIfAbsent(workerClass, new AtomicInteger());
+				written = m_written.get(workerClass);
+			}
+			validate = written.get() < m_count && written.incrementAndGet() <= m_count;
+			break;
+		case SAMPLED:
+			validate = ThreadLocalRandom.current().nextDouble() < m_rate;
+			break;
+		default:
+			throw new AssertionError();
+		}
+		if (validate) {
+			m_validations.incrementAndGet();
+		}
+		return validate;
+	}
+
+	/**
+	 * Validates the given document, which has been written to the given destination, using the executor of this
+	 * policy. This policy must be asynchronous.
+	 *
+	 * @param doc
+	 *            not <code>null</code>, must not be modified afterwards.
+	 * @param destination
+	 *            describes where the document has been written to, for reporting; not <code>null</code>.
+	 * @param metrics
+	 *            records the duration of the validation, <code>null</code> for none.
+	 */
+	void validateLater(final XMCDADoc doc, final String destination, final XWSMetrics metrics) {
+		Preconditions.checkState(isAsynchronous());
+		Preconditions.checkNotNull(doc);
+		Preconditions.checkNotNull(destination);
+		m_validations.incrementAndGet();
+		m_executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				final List<Object> errors = Lists.newArrayList();
+				final long start = System.nanoTime();
+				final boolean valid = doc.validate(new XmlOptions().setErrorListener(errors));
+				if (metrics != null) {
+					metrics.getValidationTimer().record(System.nanoTime() - start);
+				}
+				if (!valid) {
+					m_failures.incrementAndGet();
+					s_logger.warn("Invalid document written to {}: {}.", destination, errors);
+				}
+			}
+		});
+	}
+}
@@ -0,0 +1,130 @@
+package org.decisiondeck.jmcda.xws;
+
+import java.io.Closeable;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentMap;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Maps;
+
+/**
+ * <p>
+ * A bounded pool of idle worker instances, keyed by worker class, meant to be shared among the executors of a long
+ * running process, e.g. an {@link XWSServer} or an {@link XWSBatch}. Only workers implementing
+ * {@link IXWSLifecycle} are pooled.
+ * </p>
+ * <p>
+ * An executor given a pool {@link #poll(Class) takes} an idle worker from it, if one is available, instead of
+ * instantiating a new one, and gives it back when {@link XWSExecutor#releaseWorker() released}. This object is safe
+ * for use by multiple threads.
+ * </p>
+ *
+ * @author Olivier Cailloux
+ *
+ */
+public class XWSWorkerPool implements Closeable {
+	private boolean m_closed;
+
+	private final ConcurrentMap<Class<? extends IXWS>, BlockingQueue<IXWS>> m_idle = Maps.newConcurrentMap();
+
+	private final int m_maxIdle;
+
+	/**
+	 * @param maxIdle
+	 *            the maximal number of idle workers kept per worker class, at least one.
+	 */
+	public XWSWorkerPool(int maxIdle) {
+		Preconditions.checkArgument(maxIdle >= 1);
+		m_maxIdle = maxIdle;
+		m_closed = false;
+	}
+
+	/**
+	 * Closes every idle worker. Workers released afterwards are closed instead of being pooled.
+	 */
+	@Override
+	public void close() {
+		synchronized (this) {
+			m_closed = true;
+		}
+		for (BlockingQueue<IXWS> idle : m_idle.values()) {
+			IXWS worker;
+			while ((worker = idle.poll()) != null) {
+				((IXWSLifecycle) worker).close();
+			}
+		}
+	}
+
+	/**
+	 * @return the maximal number of idle workers kept per worker class.
+	 */
+	public int getMaxIdle() {
+		return m_maxIdle;
+	}
+
+	/**
+	 * @param workerClass
+	 *            not <code>null</code>.
+	 * @return the number of idle workers of the given class currently in this pool.
+	 */
+	public int getIdleCount(Class<? extends IXWS> workerClass) {
+		final BlockingQueue<IXWS> idle = m_idle.get(Preconditions.checkNotNull(workerClass));
+		return idle == null ? 0 : idle.size();
+	}
+
+	/**
+	 * Takes an idle worker of the given class out of this pool.
+	 *
+	 * @param workerClass
+	 *            not <code>null</code>.
+	 * @return <code>null</code> if no worker of that class is idle.
+	 */
+	public IXWS poll(Class<? extends IXWS> workerClass) {
+		final BlockingQueue<IXWS> idle = m_idle.get(Preconditions.checkNotNull(workerClass));
+		return idle == null ? null : idle.poll();
+	}
+
+	/**
+	 * Resets the given worker and puts it in this pool, if it implements {@link IXWSLifecycle}, its reset succeeds,
+	 * and the pool has room for it; otherwise, closes it if it implements {@link IXWSLifecycle}. The annotated fields
+	 * of the worker must have been cleared already.
+	 *
+	 * @param worker
+	 *            not <code>null</code>, not used any more by the caller.
+	 * @return <code>true</code> iff the worker has been pooled.
+	 */
+	public boolean release(IXWS worker) {
+		Preconditions.checkNotNull(worker);
+		if (!(worker instanceof IXWSLifecycle)) {
+			return false;
+		}
+		final IXWSLifecycle lifecycle = (IXWSLifecycle) worker;
+		if (!lifecycle.reset()) {
+			lifecycle.close();
+			return false;
+		}
+		final Class<? extends IXWS> workerClass = worker.getClass();
+		BlockingQueue<IXWS> idle = m_idle.get(workerClass);
+		if (idle == null) {
+			final BlockingQueue<IXWS> newIdle = new ArrayBlockingQueue<IXWS>(m_maxIdle);
+			idle = m_idle.putIfAbsent(workerClass, newIdle);
+			if (idle == null) {
+				idle = newIdle;
+			}
+		}
+		final boolean pooled;
+		synchronized (this) {
+			pooled = !m_closed && idle.offer(worker);
+		}
+		if (!pooled) {
+			lifecycle.close();
+		}
+		return pooled;
+	}
+
+	@Override
+	public String toString() {
+		return "Worker pool of " + m_maxIdle + " idle workers per class";
+	}
+}
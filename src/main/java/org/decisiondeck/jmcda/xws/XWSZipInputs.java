@@ -0,0 +1,195 @@
+package org.decisiondeck.jmcda.xws;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.AbstractMap;
+import java.util.Enumeration;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+
+import org.decisiondeck.jmcda.exc.InvalidInputException;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import com.google.common.io.ByteSource;
+
+/**
+ * <p>
+ * The inputs of a job, read from a zip archive instead of a directory: a map from the names of the entries at the root
+ * of the archive to their contents. The contents are read from the archive when asked for, without being unpacked.
+ * Entries in sub-directories are ignored. A name given to several entries at the root is ambiguous: it is mapped to a
+ * source that can't be read, and that the executor reports as an invalid input when the input of that name is read.
+ * </p>
+ * <p>
+ * The archive is opened when first needed, and stays open until this object is {@link #close() closed}; it is opened
+ * again if needed afterwards. Objects of this class are safe for use by multiple threads, and are unmodifiable maps.
+ * </p>
+ *
+ * @author Olivier Cailloux
+ *
+ */
+public final class XWSZipInputs extends AbstractMap<String, ByteSource> implements Closeable {
+	/**
+	 * The source of a name given to several entries.
+	 */
+	static final class DuplicateEntrySource extends ByteSource {
+		private final String m_description;
+
+		public DuplicateEntrySource(String description) {
+			m_description = Preconditions.checkNotNull(description);
+		}
+
+		/**
+		 * @return an exception describing the duplication, not <code>null</code>.
+		 */
+		public InvalidInputException newException() {
+			return new InvalidInputException("Several entries named " + m_description + ".");
+		}
+
+		@Override
+		public InputStream openStream() throws IOException {
+			throw new ZipException("Several entries named " + m_description + ".");
+		}
+
+		@Override
+		public String toString() {
+			return m_description + " (duplicated)";
+		}
+	}
+
+	private final class EntrySource extends ByteSource {
+		private final ZipEntry m_entry;
+
+		public EntrySource(ZipEntry entry) {
+			m_entry = Preconditions.checkNotNull(entry);
+		}
+
+		@Override
+		public InputStream openStream() throws IOException {
+			return getZipFile().getInputStream(m_entry);
+		}
+
+		@Override
+		public Optional<Long> sizeIfKnown() {
+			final long size = m_entry.getSize();
+			return size == -1 ? Optional.<Long> absent() : Optional.of(Long.valueOf(size));
+		}
+
+		@Override
+		public String toString() {
+			return m_file + "!" + m_entry.getName();
+		}
+	}
+
+	/**
+	 * <code>null</code> iff the archive is not open.
+	 */
+	private ImmutableMap<String, ByteSource> m_entries;
+
+	private final File m_file;
+
+	/**
+	 * <code>null</code> iff the archive is not open.
+	 */
+	private ZipFile m_zipFile;
+
+	/**
+	 * @param file
+	 *            the zip archive, not <code>null</code>. Not accessed by this constructor.
+	 */
+	public XWSZipInputs(File file) {
+		m_file = Preconditions.checkNotNull(file);
+		m_zipFile = null;
+		m_entries = null;
+	}
+
+	/**
+	 * Closes the archive, if open. The sources obtained from this object may still be used afterwards, at the cost of
+	 * opening the archive again.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if (m_zipFile != null) {
+			final ZipFile zipFile = m_zipFile;
+			m_zipFile = null;
+			m_entries = null;
+			zipFile.close();
+		}
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return getEntries().containsKey(key);
+	}
+
+	/**
+	 * @throws IllegalStateException
+	 *             if the archive can't be read.
+	 */
+	@Override
+	public Set<Map.Entry<String, ByteSource>> entrySet() {
+		return getEntries().entrySet();
+	}
+
+	/**
+	 * @throws IllegalStateException
+	 *             if the archive can't be read.
+	 */
+	@Override
+	public ByteSource get(Object key) {
+		return getEntries().get(key);
+	}
+
+	/**
+	 * @return the zip archive, not <code>null</code>.
+	 */
+	public File getFile() {
+		return m_file;
+	}
+
+	@Override
+	public String toString() {
+		return "Zip inputs " + m_file;
+	}
+
+	private synchronized ImmutableMap<String, ByteSource> getEntries() {
+		if (m_entries == null) {
+			final ZipFile zipFile;
+			try {
+				zipFile = getZipFile();
+			} catch (IOException exc) {
+				throw new IllegalStateException("Could not read archive " + m_file + ".", exc);
+			}
+			final Map<String, ByteSource> sources = Maps.newLinkedHashMap();
+			final Enumeration<? extends ZipEntry> entries = zipFile.entries();
+			while (entries.hasMoreElements()) {
+				final ZipEntry entry = entries.nextElement();
+				final String name = entry.getName();
+				if (entry.isDirectory() || name.indexOf('/') != -1) {
+					continue;
+				}
+				if (sources.containsKey(name)) {
+					sources.put(name, new DuplicateEntrySource(m_file + "!" + name));
+				} else {
+					sources.put(name, new EntrySource(entry));
+				}
+			}
+			m_entries = ImmutableMap.copyOf(sources);
+		}
+		return m_entries;
+	}
+
+	private synchronized ZipFile getZipFile() throws IOException {
+		if (m_zipFile == null) {
+			m_zipFile = new ZipFile(m_file);
+		}
+		return m_zipFile;
+	}
+}
@@ -0,0 +1,156 @@
+package org.decisiondeck.jmcda.xws;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.Semaphore;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import com.google.common.base.Function;
+import com.google.common.base.Preconditions;
+import com.google.common.io.ByteSink;
+
+/**
+ * <p>
+ * Writes the outputs of a job into a single zip archive instead of a directory, see
+ * {@link XWSConfiguration#newExecution(Class, java.util.Map, Function)}. The sink given for a name writes, as it
+ * receives them, the bytes of the entry of that name at the root of the archive.
+ * </p>
+ * <p>
+ * The archive is created when the first entry is written, and is complete only once this object is
+ * {@link #close() closed}; it is created again, replacing the previous one, if an entry is written afterwards. Objects
+ * of this class are safe for use by multiple threads: entries written concurrently are written one after the other,
+ * the stream of a sink being opened once the stream of the previous one is closed.
+ * </p>
+ *
+ * @author Olivier Cailloux
+ *
+ */
+public final class XWSZipOutputs implements Function<String, ByteSink>, Closeable {
+	private final class EntryStream extends FilterOutputStream {
+		private boolean m_closed;
+
+		public EntryStream(OutputStream out) {
+			super(out);
+			m_closed = false;
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (m_closed) {
+				return;
+			}
+			m_closed = true;
+			try {
+				((ZipOutputStream) out).closeEntry();
+			} finally {
+				m_entry.release();
+			}
+		}
+
+		@Override
+		public void flush() {
+			/** The archive stream is flushed when closed. */
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+		}
+	}
+
+	/**
+	 * Held while an entry is being written.
+	 */
+	private final Semaphore m_entry = new Semaphore(1);
+
+	private final File m_file;
+
+	/**
+	 * <code>null</code> iff the archive is not open.
+	 */
+	private ZipOutputStream m_stream;
+
+	/**
+	 * @param file
+	 *            the zip archive to write, not <code>null</code>. Not accessed by this constructor.
+	 */
+	public XWSZipOutputs(File file) {
+		m_file = Preconditions.checkNotNull(file);
+		m_stream = null;
+	}
+
+	/**
+	 * @param name
+	 *            the file name of an output, not <code>null</code>.
+	 * @return a sink writing the entry of the given name into the archive, not <code>null</code>.
+	 */
+	@Override
+	public ByteSink apply(final String name) {
+		Preconditions.checkNotNull(name);
+		return new ByteSink() {
+			@Override
+			public OutputStream openStream() throws IOException {
+				m_entry.acquireUninterruptibly();
+				try {
+					final ZipOutputStream stream = getStream();
+					stream.putNextEntry(new ZipEntry(name));
+					return new EntryStream(stream);
+				} catch (IOException exc) {
+					m_entry.release();
+					throw exc;
+				} catch (RuntimeException exc) {
+					m_entry.release();
+					throw exc;
+				}
+			}
+
+			@Override
+			public String toString() {
+				return m_file + "!" + name;
+			}
+		};
+	}
+
+	/**
+	 * Completes the archive, after the entry being written, if any, has been closed. If no entry has been written
+	 * since this object has been created or last closed, an empty archive is written.
+	 */
+	@Override
+	public void close() throws IOException {
+		m_entry.acquireUninterruptibly();
+		try {
+			final ZipOutputStream stream = getStream();
+			synchronized (this) {
+				m_stream = null;
+			}
+			stream.close();
+		} finally {
+			m_entry.release();
+		}
+	}
+
+	/**
+	 * @return the zip archive, not <code>null</code>.
+	 */
+	public File getFile() {
+		return m_file;
+	}
+
+	@Override
+	public String toString() {
+		return "Zip outputs " + m_file;
+	}
+
+	private synchronized ZipOutputStream getStream() throws IOException {
+		if (m_stream == null) {
+			m_stream = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(m_file)));
+		}
+		return m_stream;
+	}
+}
@@ -0,0 +1,538 @@
+package org.decisiondeck.jmcda.xws.processor;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.PrimitiveType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.type.WildcardType;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic.Kind;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+/**
+ * <p>
+ * Generates, for every concrete class implementing <code>IXWS</code> that has public fields annotated with the XWS
+ * annotations, an injector class named after the worker with the suffix <code>_Injector</code>, in the same package.
+ * The injector instantiates the worker and reads and writes its fields directly, so that the executor, which finds it
+ * by its name, uses it instead of reflection. The injectors are also registered as services of
+ * <code>IXWSInjector</code>, added to the registrations already present in the output directory.
+ * </p>
+ * <p>
+ * When a worker can't be handled (e.g. it is private, generic, has no accessible no-argument constructor declaring no
+ * exception, or does not pass the executor sanity checks), no injector is generated and a note is emitted; the
+ * executor then falls back to reflection for that worker, with the same behavior as before.
+ * </p>
+ *
+ * @author Olivier Cailloux
+ *
+ */
+public class XWSInjectorProcessor extends AbstractProcessor {
+	/**
+	 * A field that the executor considers, thus, a public field with at least one of the XWS annotations.
+	 */
+	private static class AnnotatedField {
+		private final VariableElement m_element;
+
+		/**
+		 * The class declaring the field.
+		 */
+		private final TypeElement m_owner;
+
+		public AnnotatedField(TypeElement owner, VariableElement element) {
+			m_owner = owner;
+			m_element = element;
+		}
+	}
+
+	private static final String XWS_PACKAGE = "org.decisiondeck.jmcda.xws";
+
+	private static final String EXCEPTIONS = XWS_PACKAGE + ".XWSExceptions";
+
+	private static final String INJECTOR_INTERFACE = XWS_PACKAGE + ".IXWSInjector";
+
+	private static final String INPUT = XWS_PACKAGE + ".XWSInput";
+
+	private static final String INPUT_DIRECTORY = XWS_PACKAGE + ".XWSInputDirectory";
+
+	private static final String OUTPUT = XWS_PACKAGE + ".XWSOutput";
+
+	private static final String OUTPUT_DIRECTORY = XWS_PACKAGE + ".XWSOutputDirectory";
+
+	private static final String SUFFIX = "_Injector";
+
+	private static final String WORKER_INTERFACE = XWS_PACKAGE + ".IXWS";
+
+	private static final ImmutableSet<String> ANNOTATIONS = ImmutableSet.of(EXCEPTIONS, INPUT, INPUT_DIRECTORY, OUTPUT,
+			OUTPUT_DIRECTORY);
+
+	private static String quote(String str) {
+		return "\"" + str.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+	}
+
+	/**
+	 * The binary names of the injectors generated so far, to be registered as services.
+	 */
+	private final Set<String> m_generated = Sets.newLinkedHashSet();
+
+	public XWSInjectorProcessor() {
+		/** Public default constructor (necessary). */
+	}
+
+	@Override
+	public Set<String> getSupportedAnnotationTypes() {
+		return ANNOTATIONS;
+	}
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+		final TypeElement workerInterface = processingEnv.getElementUtils().getTypeElement(WORKER_INTERFACE);
+		if (workerInterface == null) {
+			return false;
+		}
+		if (roundEnv.processingOver()) {
+			writeServices();
+			return false;
+		}
+		final List<TypeElement> types = Lists.newArrayList();
+		for (TypeElement type : ElementFilter.typesIn(roundEnv.getRootElements())) {
+			addTypes(type, types);
+		}
+		for (TypeElement type : types) {
+			if (type.getKind() != ElementKind.CLASS || type.getModifiers().contains(Modifier.ABSTRACT)) {
+				continue;
+			}
+			if (!processingEnv.getTypeUtils().isAssignable(processingEnv.getTypeUtils().erasure(type.asType()),
+					workerInterface.asType())) {
+				continue;
+			}
+			final List<AnnotatedField> fields = getAnnotatedFields(type);
+			if (fields.isEmpty()) {
+				continue;
+			}
+			final String unsupported = getUnsupportedReason(type, fields);
+			if (unsupported != null) {
+				processingEnv.getMessager().printMessage(Kind.NOTE,
+						"No injector generated for " + type.getQualifiedName() + ": " + unsupported
+								+ "; the executor will use reflection.",
+						type);
+				continue;
+			}
+			try {
+				generate(type, fields);
+			} catch (IOException exc) {
+				processingEnv.getMessager().printMessage(Kind.ERROR,
+						"Could not write the injector of " + type.getQualifiedName() + ": " + exc.getMessage(), type);
+			}
+		}
+		return false;
+	}
+
+	private void addTypes(TypeElement type, List<TypeElement> types) {
+		types.add(type);
+		for (TypeElement member : ElementFilter.typesIn(type.getEnclosedElements())) {
+			addTypes(member, types);
+		}
+	}
+
+	/**
+	 * Writes the source of an expression of type <code>IFieldAccessor</code> which reads and writes the given field
+	 * directly. The worker is cast to the class declaring the field, so that the field accessed is the annotated one
+	 * even if a subclass declares a field of the same name, as with reflection.
+	 */
+	private void appendAccessor(StringBuilder out, AnnotatedField field, String indent) {
+		final VariableElement element = field.m_element;
+		final String name = element.getSimpleName().toString();
+		final String owner = field.m_owner.getQualifiedName().toString();
+		final TypeMirror type = element.asType();
+		final String castType = type.getKind().isPrimitive()
+				? processingEnv.getTypeUtils().boxedClass((PrimitiveType) type).getQualifiedName().toString()
+				: type.toString();
+		out.append("new ").append(XWS_PACKAGE).append(".IFieldAccessor() {\n");
+		out.append(indent).append("\t@Override\n");
+		out.append(indent).append("\tpublic Object get(").append(WORKER_INTERFACE).append(" worker) {\n");
+		out.append(indent).append("\t\treturn ((").append(owner).append(") worker).").append(name).append(";\n");
+		out.append(indent).append("\t}\n\n");
+		out.append(indent).append("\t@Override\n");
+		out.append(indent).append("\tpublic void set(").append(WORKER_INTERFACE).append(
+				" worker, Object value) throws org.decisiondeck.jmcda.exc.InvalidInvocationException {\n");
+		if (element.getModifiers().contains(Modifier.FINAL)) {
+			out.append(indent).append(
+					"\t\tthrow new org.decisiondeck.jmcda.exc.InvalidInvocationException(\"Can't set the final field ")
+					.append(name).append(".\");\n");
+		} else {
+			out.append(indent).append("\t\ttry {\n");
+			out.append(indent).append("\t\t\t((").append(owner).append(") worker).").append(name).append(" = (")
+					.append(castType).append(") value;\n");
+			out.append(indent).append("\t\t} catch (ClassCastException | NullPointerException exc) {\n");
+			out.append(indent).append(
+					"\t\t\tthrow new org.decisiondeck.jmcda.exc.InvalidInvocationException(\"Can't set the field ")
+					.append(name).append(".\", exc);\n");
+			out.append(indent).append("\t\t}\n");
+		}
+		out.append(indent).append("\t}\n");
+		out.append(indent).append("}");
+	}
+
+	private void appendClassLiteral(StringBuilder out, TypeMirror type) {
+		out.append(processingEnv.getTypeUtils().erasure(type).toString()).append(".class");
+	}
+
+	private void appendFieldArguments(StringBuilder out, AnnotatedField field, String indent) {
+		final TypeMirror type = field.m_element.asType();
+		out.append(quote(field.m_element.getSimpleName().toString())).append(", ");
+		appendClassLiteral(out, type);
+		out.append(", ");
+		appendGenericType(out, type);
+		out.append(",\n").append(indent).append("\t\t");
+		appendAccessor(out, field, indent + "\t\t");
+	}
+
+	private void appendGenericType(StringBuilder out, TypeMirror type) {
+		if (type.getKind() == TypeKind.DECLARED && !((DeclaredType) type).getTypeArguments().isEmpty()) {
+			out.append("new com.google.common.reflect.TypeToken<").append(type.toString()).append(">() {\n")
+					.append("\t\t\t\t}.getType()");
+		} else {
+			appendClassLiteral(out, type);
+		}
+	}
+
+	private void appendTransformer(StringBuilder out, AnnotationMirror annotation, String annotationName) {
+		final Object transformer = getValue(annotation, "transformer");
+		if (transformer == null) {
+			out.append("null");
+			return;
+		}
+		final TypeMirror transformerType = (TypeMirror) transformer;
+		final String noneName = annotationName + ".None";
+		if (processingEnv.getTypeUtils().erasure(transformerType).toString().equals(noneName)) {
+			out.append("null");
+		} else {
+			appendClassLiteral(out, transformerType);
+		}
+	}
+
+	private void generate(TypeElement type, List<AnnotatedField> fields) throws IOException {
+		final PackageElement pkg = processingEnv.getElementUtils().getPackageOf(type);
+		final String packageName = pkg.isUnnamed() ? "" : pkg.getQualifiedName().toString();
+		final String workerName = type.getQualifiedName().toString();
+		final String flatName = (packageName.isEmpty() ? workerName
+				: workerName.substring(packageName.length() + 1)).replace('.', '_');
+		final String injectorName = flatName + SUFFIX;
+		final String injectorQualifiedName = packageName.isEmpty() ? injectorName : packageName + "." + injectorName;
+		final String binaryName = processingEnv.getElementUtils().getBinaryName(type).toString();
+
+		final StringBuilder out = new StringBuilder();
+		if (!packageName.isEmpty()) {
+			out.append("package ").append(packageName).append(";\n\n");
+		}
+		out.append("/**\n");
+		out.append(" * Injector of {@link ").append(workerName).append("}, generated by ")
+				.append(XWSInjectorProcessor.class.getName()).append(". Do not edit.\n");
+		out.append(" */\n");
+		out.append("@SuppressWarnings({ \"unchecked\", \"rawtypes\" })\n");
+		out.append("public final class ").append(injectorName).append(" implements ").append(INJECTOR_INTERFACE)
+				.append(" {\n");
+
+		out.append("\t@Override\n");
+		out.append("\tpublic Class<? extends ").append(WORKER_INTERFACE).append("> getWorkerClass() {\n");
+		out.append("\t\treturn ").append(workerName).append(".class;\n");
+		out.append("\t}\n\n");
+
+		out.append("\t@Override\n");
+		out.append("\tpublic String getWorkerClassName() {\n");
+		out.append("\t\treturn ").append(quote(binaryName)).append(";\n");
+		out.append("\t}\n\n");
+
+		out.append("\t@Override\n");
+		out.append("\tpublic ").append(XWS_PACKAGE).append(
+				".XWSInjectionPlan newPlan() throws org.decisiondeck.jmcda.exc.InvalidInvocationException {\n");
+		out.append("\t\tfinal java.util.List<").append(XWS_PACKAGE)
+				.append(".XWSInjectionPlan.InjectedField> exceptionFields = new java.util.ArrayList<>();\n");
+		out.append("\t\t").append(XWS_PACKAGE).append(".XWSInjectionPlan.InjectedField inputDirectoryField = null;\n");
+		out.append("\t\t").append(XWS_PACKAGE).append(".XWSInjectionPlan.InjectedField outputDirectoryField = null;\n");
+		out.append("\t\tfinal java.util.List<").append(XWS_PACKAGE)
+				.append(".XWSInjectionPlan.InputField> inputFields = new java.util.ArrayList<>();\n");
+		out.append("\t\tfinal java.util.List<").append(XWS_PACKAGE)
+				.append(".XWSInjectionPlan.OutputField> outputFields = new java.util.ArrayList<>();\n");
+		for (AnnotatedField field : fields) {
+			final VariableElement element = field.m_element;
+			final String fieldName = element.getSimpleName().toString();
+			if (getAnnotation(element, EXCEPTIONS) != null) {
+				out.append("\t\texceptionFields.add(new ").append(XWS_PACKAGE)
+						.append(".XWSInjectionPlan.InjectedField(");
+				appendFieldArguments(out, field, "\t\t");
+				out.append("));\n");
+			}
+			if (getAnnotation(element, INPUT_DIRECTORY) != null) {
+				out.append("\t\tinputDirectoryField = new ").append(XWS_PACKAGE)
+						.append(".XWSInjectionPlan.InjectedField(");
+				appendFieldArguments(out, field, "\t\t");
+				out.append(");\n");
+			}
+			if (getAnnotation(element, OUTPUT_DIRECTORY) != null) {
+				out.append("\t\toutputDirectoryField = new ").append(XWS_PACKAGE)
+						.append(".XWSInjectionPlan.InjectedField(");
+				appendFieldArguments(out, field, "\t\t");
+				out.append(");\n");
+			}
+			final AnnotationMirror input = getAnnotation(element, INPUT);
+			if (input != null) {
+				out.append("\t\tinputFields.add(new ").append(XWS_PACKAGE).append(".XWSInjectionPlan.InputField(");
+				appendFieldArguments(out, field, "\t\t");
+				out.append(",\n\t\t\t\t");
+				out.append(quote(getFileName(input, fieldName))).append(", ");
+				final Object optional = getValue(input, "optional");
+				out.append(optional == null ? "false" : optional.toString()).append(", ");
+				appendTransformer(out, input, INPUT);
+				out.append("));\n");
+			}
+			final AnnotationMirror output = getAnnotation(element, OUTPUT);
+			if (output != null) {
+				out.append("\t\toutputFields.add(new ").append(XWS_PACKAGE).append(".XWSInjectionPlan.OutputField(");
+				appendFieldArguments(out, field, "\t\t");
+				out.append(",\n\t\t\t\t");
+				out.append(quote(getFileName(output, fieldName))).append(", ");
+				appendTransformer(out, output, OUTPUT);
+				out.append("));\n");
+			}
+		}
+		out.append("\t\treturn ").append(XWS_PACKAGE).append(
+				".XWSInjectionPlan.newPlan(getWorkerClass(), exceptionFields, inputDirectoryField, outputDirectoryField,\n");
+		out.append("\t\t\t\tinputFields, outputFields);\n");
+		out.append("\t}\n\n");
+
+		out.append("\t@Override\n");
+		out.append("\tpublic ").append(WORKER_INTERFACE).append(" newWorker() {\n");
+		out.append("\t\treturn new ").append(workerName).append("();\n");
+		out.append("\t}\n");
+		out.append("}\n");
+
+		try (Writer writer = processingEnv.getFiler().createSourceFile(injectorQualifiedName, type).openWriter()) {
+			writer.write(out.toString());
+		}
+		m_generated.add(injectorQualifiedName);
+	}
+
+	private AnnotationMirror getAnnotation(Element element, String annotationName) {
+		for (AnnotationMirror annotation : element.getAnnotationMirrors()) {
+			final TypeElement annotationType = (TypeElement) annotation.getAnnotationType().asElement();
+			if (annotationType.getQualifiedName().contentEquals(annotationName)) {
+				return annotation;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Retrieves the fields the executor would consider, in the order {@link Class#getFields()} gives them in
+	 * practice: the fields declared by the class, then those of its super classes.
+	 */
+	private List<AnnotatedField> getAnnotatedFields(TypeElement type) {
+		final List<AnnotatedField> fields = Lists.newArrayList();
+		TypeElement current = type;
+		while (current != null) {
+			for (VariableElement field : ElementFilter.fieldsIn(current.getEnclosedElements())) {
+				if (!field.getModifiers().contains(Modifier.PUBLIC)) {
+					continue;
+				}
+				boolean annotated = false;
+				for (String annotationName : ANNOTATIONS) {
+					annotated |= getAnnotation(field, annotationName) != null;
+				}
+				if (annotated) {
+					fields.add(new AnnotatedField(current, field));
+				}
+			}
+			final TypeMirror superclass = current.getSuperclass();
+			current = superclass.getKind() == TypeKind.DECLARED
+					? (TypeElement) processingEnv.getTypeUtils().asElement(superclass)
+					: null;
+		}
+		return fields;
+	}
+
+	private String getFileName(AnnotationMirror annotation, String fieldName) {
+		final Object name = getValue(annotation, "name");
+		return name == null || name.toString().isEmpty() ? fieldName + ".xml" : name.toString();
+	}
+
+	/**
+	 * @return <code>null</code> iff an injector can be generated for the given worker.
+	 */
+	private String getUnsupportedReason(TypeElement type, List<AnnotatedField> fields) {
+		if (!type.getTypeParameters().isEmpty()) {
+			return "generic worker";
+		}
+		for (Element enclosing = type; enclosing instanceof TypeElement; enclosing = enclosing
+				.getEnclosingElement()) {
+			final TypeElement enclosingType = (TypeElement) enclosing;
+			if (enclosingType.getModifiers().contains(Modifier.PRIVATE)) {
+				return "private class";
+			}
+			if (enclosingType.getNestingKind() == NestingKind.MEMBER
+					&& !enclosingType.getModifiers().contains(Modifier.STATIC)
+					&& enclosingType.getKind() == ElementKind.CLASS) {
+				return "inner class";
+			}
+			if (enclosingType.getNestingKind() == NestingKind.LOCAL
+					|| enclosingType.getNestingKind() == NestingKind.ANONYMOUS) {
+				return "local class";
+			}
+		}
+		boolean hasConstructor = false;
+		for (ExecutableElement constructor : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+			if (constructor.getParameters().isEmpty() && constructor.getThrownTypes().isEmpty()
+					&& !constructor.getModifiers().contains(Modifier.PRIVATE)) {
+				hasConstructor = true;
+			}
+		}
+		if (!hasConstructor) {
+			return "no accessible no-argument constructor without declared exceptions";
+		}
+		int nbExceptions = 0;
+		int nbInputDirectories = 0;
+		int nbOutputDirectories = 0;
+		for (AnnotatedField field : fields) {
+			final VariableElement element = field.m_element;
+			if (element.getModifiers().contains(Modifier.STATIC)) {
+				return "static field " + element.getSimpleName();
+			}
+			if (!field.m_owner.equals(type)
+					&& !processingEnv.getElementUtils().getPackageOf(field.m_owner)
+							.equals(processingEnv.getElementUtils().getPackageOf(type))
+					&& !field.m_owner.getModifiers().contains(Modifier.PUBLIC)) {
+				return "field " + element.getSimpleName() + " inherited from a non public class";
+			}
+			for (Element enclosing = field.m_owner; enclosing instanceof TypeElement; enclosing = enclosing
+					.getEnclosingElement()) {
+				if (enclosing.getModifiers().contains(Modifier.PRIVATE)) {
+					return "field " + element.getSimpleName() + " inherited from a private class";
+				}
+			}
+			if (hasTypeVariable(element.asType())) {
+				return "field " + element.getSimpleName() + " has a type variable";
+			}
+			nbExceptions += getAnnotation(element, EXCEPTIONS) == null ? 0 : 1;
+			nbInputDirectories += getAnnotation(element, INPUT_DIRECTORY) == null ? 0 : 1;
+			nbOutputDirectories += getAnnotation(element, OUTPUT_DIRECTORY) == null ? 0 : 1;
+		}
+		if (nbExceptions == 0) {
+			return "no exception field";
+		}
+		if (nbInputDirectories >= 2 || nbOutputDirectories >= 2) {
+			return "more than one directory field";
+		}
+		return null;
+	}
+
+	/**
+	 * @return the value explicitly given to the given element of the annotation, or <code>null</code> if the default
+	 *         value applies.
+	 */
+	private Object getValue(AnnotationMirror annotation, String elementName) {
+		for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : annotation.getElementValues()
+				.entrySet()) {
+			if (entry.getKey().getSimpleName().contentEquals(elementName)) {
+				return entry.getValue().getValue();
+			}
+		}
+		return null;
+	}
+
+	private boolean hasTypeVariable(TypeMirror type) {
+		switch (type.getKind()) {
+		case TYPEVAR:
+		case INTERSECTION:
+		case UNION:
+			return true;
+		case ARRAY:
+			return hasTypeVariable(((ArrayType) type).getComponentType());
+		case WILDCARD: {
+			final WildcardType wildcard = (WildcardType) type;
+			return (wildcard.getExtendsBound() != null && hasTypeVariable(wildcard.getExtendsBound()))
+					|| (wildcard.getSuperBound() != null && hasTypeVariable(wildcard.getSuperBound()));
+		}
+		case DECLARED:
+			for (TypeMirror argument : ((DeclaredType) type).getTypeArguments()) {
+				if (hasTypeVariable(argument)) {
+					return true;
+				}
+			}
+			return false;
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * Writes the service registrations of the generated injectors, keeping those the resource already lists, e.g.
+	 * written by a previous compilation of other sources in the same output directory.
+	 */
+	private void writeServices() {
+		if (m_generated.isEmpty()) {
+			return;
+		}
+		final String resourceName = "META-INF/services/" + INJECTOR_INTERFACE;
+		final Set<String> injectors = Sets.newLinkedHashSet();
+		try {
+			final FileObject existing = processingEnv.getFiler().getResource(StandardLocation.CLASS_OUTPUT, "",
+					resourceName);
+			try (BufferedReader reader = new BufferedReader(existing.openReader(true))) {
+				for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+					final int comment = line.indexOf('#');
+					final String injector = (comment == -1 ? line : line.substring(0, comment)).trim();
+					if (!injector.isEmpty()) {
+						injectors.add(injector);
+					}
+				}
+			}
+		} catch (IOException exc) {
+			/** No existing resource. */
+		}
+		injectors.addAll(m_generated);
+		try {
+			final FileObject services = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "",
+					resourceName);
+			try (Writer writer = services.openWriter()) {
+				for (String injector : injectors) {
+					writer.write(injector);
+					writer.write("\n");
+				}
+			}
+		} catch (IOException exc) {
+			processingEnv.getMessager().printMessage(Kind.ERROR,
+					"Could not register the generated injectors: " + exc.getMessage());
+		}
+	}
+}
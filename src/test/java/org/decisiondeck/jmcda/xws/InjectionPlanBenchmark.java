@@ -0,0 +1,49 @@
+package org.decisiondeck.jmcda.xws;
+
+import java.util.concurrent.TimeUnit;
+
+import org.decisiondeck.jmcda.xws.bench.ExecutorBenchmark;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures the annotation scanning of a worker class, which computes its injection plan, compared with the retrieval
+ * of the cached plan, as the executor does after the first run of a worker class. It lives in this package, rather than
+ * with the other benchmarks, to call the uncached scanning, which is not public.
+ *
+ * @author Olivier Cailloux
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InjectionPlanBenchmark {
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(InjectionPlanBenchmark.class.getSimpleName())
+				.addProfiler(GCProfiler.class).build()).run();
+	}
+
+	@Benchmark
+	public XWSInjectionPlan cached() throws Exception {
+		return XWSInjectionPlan.getPlan(ExecutorBenchmark.Worker.class);
+	}
+
+	@Benchmark
+	public XWSInjectionPlan scan() throws Exception {
+		return XWSInjectionPlan.introspect(ExecutorBenchmark.Worker.class, FieldAccessors.methodHandles());
+	}
+}
@@ -1,14 +1,27 @@
 package org.decisiondeck.jmcda.xws;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.io.File;
+import java.lang.ref.WeakReference;
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
-
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.decision_deck.jmcda.structure.Alternative;
 import org.decision_deck.jmcda.structure.Criterion;
 import org.decision_deck.jmcda.utils.FunctionUtils;
 import org.decisiondeck.jmcda.exc.FunctionWithInputCheck;
@@ -18,12 +31,16 @@ import org.decisiondeck.jmcda.persist.xmcda2.XMCDACriteria;
 import org.decisiondeck.jmcda.persist.xmcda2.generated.XAlternatives;
 import org.decisiondeck.jmcda.persist.xmcda2.generated.XCriteria;
 import org.decisiondeck.jmcda.sample_problems.SixRealCars;
+import org.decisiondeck.jmcda.xws.XWSInjectionPlan.InputField;
 import org.junit.Test;
 
 import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
 import com.google.common.io.ByteSource;
+import com.google.common.io.Files;
 import com.google.common.io.Resources;
+import com.google.common.util.concurrent.Uninterruptibles;
 
 public class TestExecutor {
 	public static class ConstantSupplierFactory implements FunctionWithInputCheck<String, ByteSource> {
@@ -66,6 +83,35 @@ public class TestExecutor {
 
 	}
 
+	/**
+	 * Runs the first task late, on its own thread, and rejects the next ones. The tasks are expected to be futures.
+	 */
+	static class RejectingExecutor implements Executor {
+		private Future<?> m_accepted;
+
+		@Override
+		public synchronized void execute(final Runnable command) {
+			if (m_accepted != null) {
+				throw new RejectedExecutionException();
+			}
+			m_accepted = (Future<?>) command;
+			new Thread(new Runnable() {
+				@Override
+				public void run() {
+					Uninterruptibles.sleepUninterruptibly(100, TimeUnit.MILLISECONDS);
+					command.run();
+				}
+			}).start();
+		}
+
+		/**
+		 * @return <code>true</code> iff the accepted task has run to completion, without being cancelled.
+		 */
+		public synchronized boolean isAcceptedCompleted() {
+			return m_accepted.isDone() && !m_accepted.isCancelled();
+		}
+	}
+
 	static class ServiceConstantSource implements IXWS {
 
 		@XWSExceptions
@@ -144,6 +190,13 @@ public class TestExecutor {
 
 	}
 
+	/**
+	 * Hides the annotated field of its super class with a field of the same name, which the executor must not use.
+	 */
+	static class ServiceHiding extends ServiceConstantSource {
+		public ByteSource m_sourceConstantSupplier;
+	}
+
 	static class ServiceInputOutput implements IXWS {
 
 		@XWSExceptions
@@ -180,6 +233,51 @@ public class TestExecutor {
 
 	}
 
+	static class ServiceLazy implements IXWS {
+
+		@XWSExceptions
+		public List<InvalidInputException> m_exceptions;
+
+		public XCriteria m_read;
+
+		@XWSInput(transformer = ConstantSupplierFactoryFromFile.class)
+		public XWSLazyInput<XCriteria> m_sourceCriteria;
+
+		@XWSInput(transformer = ConstantSupplierFactoryFromFile.class)
+		public XWSLazyInput<XCriteria> m_sourceUnused;
+
+		@Override
+		public void execute() throws InvalidInputException {
+			m_read = m_sourceCriteria.get();
+		}
+
+	}
+
+	static class ServiceOutputs implements IXWS {
+
+		@XWSExceptions
+		public List<InvalidInputException> m_exceptions;
+
+		@XWSInput(transformer = ConstantSupplierFactoryFromFile.class)
+		public XCriteria m_sourceCriteria;
+
+		@XWSInput(transformer = ConstantSupplierFactoryFromFile.class)
+		public XCriteria m_sourceCriteriaOther;
+
+		@XWSOutput(name = "criteria.xml")
+		public XCriteria m_targetCriteria;
+
+		@XWSOutput(name = "criteriaOther.xml")
+		public XCriteria m_targetCriteriaOther;
+
+		@Override
+		public void execute() {
+			m_targetCriteria = m_sourceCriteria;
+			m_targetCriteriaOther = m_sourceCriteriaOther;
+		}
+
+	}
+
 	static class ServiceSetCriteria implements IXWS {
 
 		@XWSExceptions
@@ -220,6 +318,60 @@ public class TestExecutor {
 
 	}
 
+	static class ServiceTwoOutputs implements IXWS {
+
+		@XWSExceptions
+		public List<InvalidInputException> m_exceptions;
+
+		@XWSOutput(name = "performanceTable.xml")
+		public DenseEvaluations m_evaluations;
+
+		@XWSOutput(name = "performanceTableOther.xml")
+		public DenseEvaluations m_evaluationsOther;
+
+		@Override
+		public void execute() {
+			m_evaluations = new DenseEvaluations(ImmutableList.of(new Alternative("a1")),
+					ImmutableList.of(new Criterion("g1")));
+			m_evaluationsOther = m_evaluations;
+		}
+
+	}
+
+	/**
+	 * Defines a copy of {@link ServiceConstantSource} in a new class loader and computes its injection plan.
+	 *
+	 * @return a reference to that class loader.
+	 */
+	private static WeakReference<ClassLoader> getPlanInOtherLoader() throws Exception {
+		final String name = ServiceConstantSource.class.getName();
+		final byte[] bytes = Resources.toByteArray(Resources.getResource(name.replace('.', '/') + ".class"));
+		final ClassLoader loader = new ClassLoader(TestExecutor.class.getClassLoader()) {
+			@Override
+			protected synchronized Class<?> loadClass(String className, boolean resolve)
+					throws ClassNotFoundException {
+				if (!className.equals(name)) {
+					return super.loadClass(className, resolve);
+				}
+				final Class<?> loaded = findLoadedClass(className);
+				return loaded == null ? defineClass(className, bytes, 0, bytes.length) : loaded;
+			}
+		};
+		final Class<? extends IXWS> workerClass = loader.loadClass(name).asSubclass(IXWS.class);
+		assertSame(XWSInjectionPlan.getPlan(workerClass, FieldAccessors.reflective()),
+				XWSInjectionPlan.getPlan(workerClass, FieldAccessors.reflective()));
+		return new WeakReference<ClassLoader>(loader);
+	}
+
+	private static InputField getInputField(XWSInjectionPlan plan, String name) {
+		for (InputField field : plan.getInputFields()) {
+			if (field.getName().equals(name)) {
+				return field;
+			}
+		}
+		throw new AssertionError("No input field " + name + ".");
+	}
+
 	@Test
 	public void testInputOutput() throws Exception {
 		final XWSExecutor exec = new XWSExecutor();
@@ -234,6 +386,158 @@ public class TestExecutor {
 		assertTrue(service.isExecuted());
 	}
 
+	@Test
+	public void testInjectionPlan() throws Exception {
+		final XWSInjectionPlan plan = XWSInjectionPlan.getPlan(ServiceConstantSource.class);
+		assertSame(plan, XWSInjectionPlan.getPlan(ServiceConstantSource.class));
+		assertEquals(1, plan.getExceptionFields().size());
+		assertNull(plan.getInputDirectoryField());
+		assertEquals(2, plan.getInputFields().size());
+		final InputField criteriaField = getInputField(plan, "m_sourceCriteria");
+		assertEquals("m_sourceCriteria.xml", criteriaField.getFileName());
+		assertTrue(criteriaField.isOptional());
+		assertEquals(ConstantSupplierFactoryFromFile.class, criteriaField.getTransformer());
+
+		final XWSExecutor exec = new XWSExecutor();
+		exec.setGeneratedInjectorsEnabled(false);
+		exec.setWorker(ServiceConstantSource.class);
+		exec.setWorker();
+		assertSame(plan, exec.getInjectionPlan());
+	}
+
+	@Test
+	public void testConcurrentInputs() throws Exception {
+		final ExecutorService inputsExecutor = Executors.newFixedThreadPool(2);
+		try {
+			final XWSExecutor exec = new XWSExecutor();
+			exec.setInputsExecutor(inputsExecutor);
+			exec.setWorker(ServiceSetCriteria.class);
+			exec.setWorker();
+			final FunctionWithInputCheck<String, File> functionWithInputCheck = FunctionUtils.constant(null);
+			exec.getInputTransformer().setNameToFile(functionWithInputCheck);
+			exec.getInputTransformer().setFileToSource(new ConstantSupplierFactoryFromFile());
+			final ServiceSetCriteria service = (ServiceSetCriteria) exec.getWorker();
+			exec.execute();
+			assertTrue(service.isExecuted());
+			assertTrue(service.getExceptions().isEmpty());
+			assertEquals(SixRealCars.getInstance().getCriteria(), service.getSourceCriteria());
+			assertEquals(ToCriteriaConstant.CRITERIA, service.getSourceCriteriaConstant());
+
+			final XWSExecutor execMissing = new XWSExecutor();
+			execMissing.setInputsExecutor(inputsExecutor);
+			execMissing.setInputDirectory(new File("."));
+			execMissing.setWorker(ServiceConstantSourceWithList.class);
+			execMissing.setWorker();
+			final ServiceConstantSourceWithList serviceMissing = (ServiceConstantSourceWithList) execMissing
+					.getWorker();
+			execMissing.execute();
+			assertFalse(serviceMissing.isExecuted());
+			assertEquals(1, serviceMissing.getExceptions().size());
+		} finally {
+			inputsExecutor.shutdown();
+		}
+	}
+
+	@Test
+	public void testConcurrentOutputs() throws Exception {
+		final File sequentialDir = Files.createTempDir();
+		final XWSExecutor sequential = new XWSExecutor();
+		sequential.setArguments(new String[] { "-i", ".", "-o", sequentialDir.getPath(), "-w",
+				ServiceOutputs.class.getName() });
+		sequential.execute();
+		assertTrue(sequential.getExceptions().isEmpty());
+
+		final ExecutorService outputsExecutor = Executors.newFixedThreadPool(2);
+		try {
+			final File concurrentDir = Files.createTempDir();
+			final XWSExecutor concurrent = new XWSExecutor();
+			concurrent.setOutputsExecutor(outputsExecutor);
+			concurrent.setArguments(new String[] { "-i", ".", "-o", concurrentDir.getPath(), "-w",
+					ServiceOutputs.class.getName() });
+			concurrent.execute();
+			assertTrue(concurrent.getExceptions().isEmpty());
+
+			for (String name : new String[] { "criteria.xml", "criteriaOther.xml" }) {
+				assertTrue(new File(concurrentDir, name).isFile());
+				assertArrayEquals(Files.toByteArray(new File(sequentialDir, name)),
+						Files.toByteArray(new File(concurrentDir, name)));
+			}
+		} finally {
+			outputsExecutor.shutdown();
+		}
+	}
+
+	@Test
+	public void testConcurrentOutputsRejected() throws Exception {
+		final File outputDir = Files.createTempDir();
+		final RejectingExecutor outputsExecutor = new RejectingExecutor();
+		final XWSExecutor exec = new XWSExecutor();
+		exec.setOutputsExecutor(outputsExecutor);
+		exec.setArguments(
+				new String[] { "-i", ".", "-o", outputDir.getPath(), "-w", ServiceTwoOutputs.class.getName() });
+		try {
+			exec.execute();
+			fail();
+		} catch (RejectedExecutionException exc) {
+			/** The write submitted before the rejection has completed. */
+			assertTrue(outputsExecutor.isAcceptedCompleted());
+			assertEquals(1, outputDir.list().length);
+		}
+	}
+
+	@Test
+	public void testConcurrentInputsRejected() throws Exception {
+		final RejectingExecutor inputsExecutor = new RejectingExecutor();
+		final XWSExecutor exec = new XWSExecutor();
+		exec.setInputsExecutor(inputsExecutor);
+		exec.setArguments(new String[] { "-i", ".", "-o", ".", "-w", ServiceConstantSource.class.getName() });
+		try {
+			exec.execute();
+			fail();
+		} catch (RejectedExecutionException exc) {
+			/** The read submitted before the rejection has completed. */
+			assertTrue(inputsExecutor.isAcceptedCompleted());
+			assertFalse(((ServiceConstantSource) exec.getWorker()).isExecuted());
+		}
+	}
+
+	@Test
+	public void testGeneratedInjector() throws Exception {
+		final IXWSInjector injector = XWSInjectors.getInjector(ServiceConstantSource.class.getName());
+		assertNotNull(injector);
+		assertEquals(ServiceConstantSource.class, injector.getWorkerClass());
+		assertSame(injector, XWSInjectors.getInjector(ServiceConstantSource.class));
+		assertEquals(TestExecutor.class.getName() + "_ServiceConstantSource_Injector",
+				XWSInjectors.getInjectorName(ServiceConstantSource.class.getName()));
+		assertNull(XWSInjectors.getInjector(TestExecutor.class.getName()));
+
+		final XWSExecutor exec = new XWSExecutor();
+		exec.setArguments(new String[] { "-i", ".", "-o", ".", "-w", ServiceConstantSource.class.getName() });
+		exec.execute();
+		assertSame(XWSInjectors.getPlan(injector), exec.getInjectionPlan());
+		final ServiceConstantSource service = (ServiceConstantSource) exec.getWorker();
+		assertTrue(service.m_exceptions.isEmpty());
+		assertTrue(service.isExecuted());
+		assertEquals(ConstantSupplierFactory.ASTRING,
+				service.getSourceConstantSupplier().asCharSource(Charsets.UTF_8).read());
+	}
+
+	@Test
+	public void testGeneratedInjectorHiding() throws Exception {
+		final IXWSInjector injector = XWSInjectors.getInjector(ServiceHiding.class);
+		assertNotNull(injector);
+		final XWSInjectionPlan generated = XWSInjectors.getPlan(injector);
+		final XWSInjectionPlan reflective = XWSInjectionPlan.getPlan(ServiceHiding.class, FieldAccessors.reflective());
+		for (XWSInjectionPlan plan : ImmutableList.of(generated, reflective)) {
+			final ServiceHiding service = new ServiceHiding();
+			final ByteSource source = ByteSource.wrap(ConstantSupplierFactory.BYTES);
+			getInputField(plan, "m_sourceConstantSupplier").set(service, source);
+			assertSame(source, service.getSourceConstantSupplier());
+			assertNull(service.m_sourceConstantSupplier);
+			assertSame(source, getInputField(plan, "m_sourceConstantSupplier").get(service));
+		}
+	}
+
 	@Test(expected = InvalidInvocationException.class)
 	public void testMissingWorker() throws Exception {
 		final XWSExecutor exec = new XWSExecutor();
@@ -241,6 +545,16 @@ public class TestExecutor {
 		exec.execute();
 	}
 
+	@Test
+	public void testInjectionPlanUnloading() throws Exception {
+		final WeakReference<ClassLoader> loader = getPlanInOtherLoader();
+		for (int i = 0; i < 50 && loader.get() != null; ++i) {
+			System.gc();
+			Uninterruptibles.sleepUninterruptibly(10, TimeUnit.MILLISECONDS);
+		}
+		assertNull(loader.get());
+	}
+
 	@Test(expected = InvalidInvocationException.class)
 	public void testNonExistingInputDir() throws Exception {
 		final XWSExecutor exec = new XWSExecutor();
@@ -249,6 +563,55 @@ public class TestExecutor {
 		exec.execute();
 	}
 
+	@Test
+	public void testLazyInput() throws Exception {
+		final XWSInjectionPlan plan = XWSInjectionPlan.getPlan(ServiceLazy.class);
+		final InputField criteriaField = getInputField(plan, "m_sourceCriteria");
+		assertTrue(criteriaField.isLazy());
+		assertEquals(XCriteria.class, criteriaField.getValueType());
+
+		final XWSExecutor exec = new XWSExecutor();
+		exec.setWorker(ServiceLazy.class);
+		exec.setWorker();
+		final FunctionWithInputCheck<String, File> functionWithInputCheck = FunctionUtils.constant(null);
+		exec.getInputTransformer().setNameToFile(functionWithInputCheck);
+		exec.getInputTransformer().setFileToSource(new ConstantSupplierFactoryFromFile());
+		final ServiceLazy service = (ServiceLazy) exec.getWorker();
+		exec.execute();
+		assertTrue(service.m_exceptions.isEmpty());
+		assertTrue(service.m_sourceCriteria.isLoaded());
+		assertFalse(service.m_sourceUnused.isLoaded());
+		assertEquals(SixRealCars.getInstance().getCriteria(), new XMCDACriteria().read(service.m_read));
+	}
+
+	@Test
+	public void testLazyInputMissing() throws Exception {
+		final File inputDir = Files.createTempDir();
+		final XWSExecutor exec = new XWSExecutor();
+		exec.setArguments(new String[] { "-i", inputDir.getPath(), "-o", inputDir.getPath(), "-w",
+				ServiceLazy.class.getName() });
+		exec.execute();
+		/** Both required inputs are reported missing, and the worker is not executed. */
+		assertEquals(2, exec.getExceptions().size());
+		final ServiceLazy service = (ServiceLazy) exec.getWorker();
+		assertNull(service.m_read);
+		assertFalse(service.m_sourceCriteria.isLoaded());
+	}
+
+	@Test
+	public void testReflectiveAccessors() throws Exception {
+		final XWSExecutor exec = new XWSExecutor();
+		exec.setGeneratedInjectorsEnabled(false);
+		exec.setFieldAccessorFactory(FieldAccessors.reflective());
+		exec.setArguments(new String[] { "-i", ".", "-o", ".", "-w", ServiceConstantSource.class.getName() });
+		exec.execute();
+		final ServiceConstantSource service = (ServiceConstantSource) exec.getWorker();
+		assertTrue(service.m_exceptions.isEmpty());
+		assertTrue(service.isExecuted());
+		assertEquals(ConstantSupplierFactory.ASTRING,
+				service.getSourceConstantSupplier().asCharSource(Charsets.UTF_8).read());
+	}
+
 	@Test
 	public void testServiceConstantSource() throws Exception {
 		final XWSExecutor exec = new XWSExecutor();
@@ -0,0 +1,64 @@
+package org.decisiondeck.jmcda.xws;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.junit.Test;
+
+import com.google.common.io.ByteSource;
+import com.google.common.io.Files;
+
+public class TestFileToMappedSource {
+	@Test
+	public void testRead() throws Exception {
+		final byte[] content = new byte[10000];
+		for (int i = 0; i < content.length; ++i) {
+			content[i] = (byte) i;
+		}
+		final File file = new File(Files.createTempDir(), "performances.xml");
+		Files.write(content, file);
+
+		final ByteSource mapped = new FileToMappedSource(0).apply(file);
+		assertArrayEquals(content, mapped.read());
+		assertEquals(content.length, mapped.size());
+		final InputStream stream = mapped.openStream();
+		try {
+			assertEquals(content.length, stream.available());
+			assertEquals(0, stream.read());
+			assertEquals(1, stream.read());
+			assertEquals(100, stream.skip(100));
+			assertEquals(102, stream.read());
+		} finally {
+			stream.close();
+		}
+
+		assertArrayEquals(content, new FileToMappedSource().apply(file).read());
+	}
+
+	@Test
+	public void testClosed() throws Exception {
+		final File file = new File(Files.createTempDir(), "performances.xml");
+		Files.write(new byte[] { 1, 2 }, file);
+		final InputStream stream = new FileToMappedSource(0).apply(file).openStream();
+		assertEquals(1, stream.read());
+		stream.close();
+		stream.close();
+		try {
+			stream.read();
+			fail();
+		} catch (IOException exc) {
+			/** Expected. */
+		}
+	}
+
+	@Test(expected = FileNotFoundException.class)
+	public void testMissing() throws Exception {
+		new FileToMappedSource(0).apply(new File(Files.createTempDir(), "missing.xml")).openStream();
+	}
+}
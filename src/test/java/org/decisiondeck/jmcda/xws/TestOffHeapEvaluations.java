@@ -0,0 +1,117 @@
+package org.decisiondeck.jmcda.xws;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.lang.reflect.Type;
+import java.util.List;
+
+import org.decision_deck.jmcda.structure.Alternative;
+import org.decision_deck.jmcda.structure.Criterion;
+import org.decisiondeck.jmcda.exc.FunctionWithInputCheck;
+import org.decisiondeck.jmcda.exc.InvalidInputException;
+import org.decisiondeck.jmcda.exc.InvalidInvocationException;
+import org.decisiondeck.jmcda.xws.transformer.InputTransformer;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import com.google.common.io.ByteSource;
+import com.google.common.io.Files;
+
+public class TestOffHeapEvaluations {
+	public static class OffHeapTransformer extends InputTransformer {
+		@Override
+		public Object get(Type type, Class<? extends FunctionWithInputCheck<Object, Object>> transformer,
+				String name, File directory, boolean optional) throws InvalidInputException, InvalidInvocationException {
+			return new SourceToOffHeapEvaluations().apply(Files.asByteSource(new File(directory, name)));
+		}
+	}
+
+	public static class ServiceOffHeap implements IXWS {
+		@XWSInput(name = "performanceTable.xml")
+		public OffHeapEvaluations m_evaluations;
+
+		@XWSExceptions
+		public List<InvalidInputException> m_exceptions;
+
+		@Override
+		public void execute() {
+			s_read = m_evaluations;
+			s_count = m_evaluations.getValueCount();
+		}
+	}
+
+	private static final String PERFORMANCE_TABLE = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+			+ "<xmcda:XMCDA xmlns:xmcda=\"http://www.decision-deck.org/2009/XMCDA-2.1.0\">\n"
+			+ "<performanceTable>\n" + "<alternativePerformances><alternativeID>a1</alternativeID>\n"
+			+ "<performance><criterionID>g1</criterionID><value><real>1.5</real></value></performance>\n"
+			+ "<performance><criterionID>g2</criterionID><value><integer>3</integer></value></performance>\n"
+			+ "</alternativePerformances>\n" + "<alternativePerformances><alternativeID>a2</alternativeID>\n"
+			+ "<performance><criterionID>g2</criterionID><value><real>-2</real></value></performance>\n"
+			+ "</alternativePerformances>\n" + "</performanceTable>\n" + "</xmcda:XMCDA>\n";
+
+	static long s_count;
+
+	static OffHeapEvaluations s_read;
+
+	@Test
+	public void testClose() throws Exception {
+		final File directory = Files.createTempDir();
+		final OffHeapEvaluations evaluations = new OffHeapEvaluations(ImmutableList.of(new Alternative("a1")),
+				ImmutableList.of(new Criterion("g1"), new Criterion("g2")), directory);
+		assertTrue(Double.isNaN(evaluations.getValue(0, 1)));
+		evaluations.setValue(0, 1, 4d);
+		assertEquals(Double.valueOf(4d), evaluations.getEntry(new Alternative("a1"), new Criterion("g2")));
+		assertEquals(1, directory.listFiles().length);
+		evaluations.close();
+		assertTrue(evaluations.isClosed());
+		assertEquals(0, directory.listFiles().length);
+		evaluations.close();
+		try {
+			evaluations.getValue(0, 1);
+			fail();
+		} catch (IllegalStateException exc) {
+			/** Expected. */
+		}
+	}
+
+	@Test
+	public void testExecution() throws Exception {
+		final XWSInjectionPlan plan = XWSInjectionPlan.getPlan(ServiceOffHeap.class);
+		assertEquals(SourceToOffHeapEvaluations.class, Iterables.getOnlyElement(plan.getInputFields())
+				.getTransformer());
+
+		final File input = Files.createTempDir();
+		Files.write(PERFORMANCE_TABLE, new File(input, "performanceTable.xml"), Charsets.UTF_8);
+		final XWSConfiguration configuration = new XWSConfiguration.Builder()
+				.setInputTransformer(new OffHeapTransformer()).setWriteEnabled(false).build();
+		configuration.newExecution(ServiceOffHeap.class, input, Files.createTempDir()).execute();
+		assertEquals(3, s_count);
+		assertTrue(s_read.isClosed());
+	}
+
+	@Test
+	public void testRead() throws Exception {
+		final OffHeapEvaluations evaluations = new SourceToOffHeapEvaluations()
+				.apply(ByteSource.wrap(PERFORMANCE_TABLE.getBytes(Charsets.UTF_8)));
+		try {
+			assertEquals(ImmutableList.of(new Alternative("a1"), new Alternative("a2")),
+					evaluations.getAlternatives());
+			assertEquals(ImmutableList.of(new Criterion("g1"), new Criterion("g2")), evaluations.getCriteria());
+			assertEquals(3, evaluations.getValueCount());
+			assertEquals(1.5d, evaluations.getValue(0, 0), 0d);
+			assertEquals(3d, evaluations.getValue(0, 1), 0d);
+			assertTrue(Double.isNaN(evaluations.getValue(1, 0)));
+			assertEquals(Double.valueOf(-2d), evaluations.getEntry(new Alternative("a2"), new Criterion("g2")));
+			assertEquals(null, evaluations.getEntry(new Alternative("a3"), new Criterion("g2")));
+			assertFalse(evaluations.isClosed());
+		} finally {
+			evaluations.close();
+		}
+	}
+}
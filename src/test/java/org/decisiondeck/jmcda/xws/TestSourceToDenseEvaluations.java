@@ -0,0 +1,81 @@
+package org.decisiondeck.jmcda.xws;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.List;
+
+import org.decision_deck.jmcda.structure.Alternative;
+import org.decision_deck.jmcda.structure.Criterion;
+import org.decision_deck.jmcda.structure.matrix.Evaluations;
+import org.decisiondeck.jmcda.exc.InvalidInputException;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import com.google.common.io.ByteSource;
+import com.google.common.io.Files;
+
+public class TestSourceToDenseEvaluations {
+	public static class ServiceDense implements IXWS {
+		@XWSExceptions
+		public List<InvalidInputException> m_exceptions;
+
+		@XWSInput(name = "performanceTable.xml")
+		public DenseEvaluations m_evaluations;
+
+		@XWSOutput(name = "performanceTable.xml")
+		public DenseEvaluations m_output;
+
+		@Override
+		public void execute() {
+			m_output = m_evaluations;
+		}
+	}
+
+	private static final String PERFORMANCE_TABLE = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+			+ "<xmcda:XMCDA xmlns:xmcda=\"http://www.decision-deck.org/2009/XMCDA-2.1.0\">\n"
+			+ "<performanceTable>\n" + "<alternativePerformances><alternativeID>a1</alternativeID>\n"
+			+ "<performance><criterionID>g1</criterionID><value><real>1.5</real></value></performance>\n"
+			+ "<performance><criterionID>g2</criterionID><value><integer>3</integer></value></performance>\n"
+			+ "</alternativePerformances>\n" + "<alternativePerformances><alternativeID>a2</alternativeID>\n"
+			+ "<performance><criterionID>g2</criterionID><value><real>-2</real></value></performance>\n"
+			+ "</alternativePerformances>\n" + "</performanceTable>\n" + "</xmcda:XMCDA>\n";
+
+	@Test
+	public void testDefaultTransformer() throws Exception {
+		final XWSInjectionPlan plan = XWSInjectionPlan.getPlan(ServiceDense.class);
+		assertEquals(SourceToDenseEvaluations.class, Iterables.getOnlyElement(plan.getInputFields()).getTransformer());
+		assertTrue(XMCDAStreamWriter.supports(DenseEvaluations.class));
+	}
+
+	@Test
+	public void testRead() throws Exception {
+		final DenseEvaluations evaluations = new SourceToDenseEvaluations()
+				.apply(ByteSource.wrap(PERFORMANCE_TABLE.getBytes(Charsets.UTF_8)));
+		assertEquals(ImmutableList.of(new Alternative("a1"), new Alternative("a2")), evaluations.getAlternatives());
+		assertEquals(ImmutableList.of(new Criterion("g1"), new Criterion("g2")), evaluations.getCriteria());
+		assertEquals(3, evaluations.getValueCount());
+		assertEquals(1.5d, evaluations.getValue(0, 0), 0d);
+		assertEquals(3d, evaluations.getValue(0, 1), 0d);
+		assertTrue(Double.isNaN(evaluations.getValue(1, 0)));
+		assertEquals(Double.valueOf(-2d), evaluations.getEntry(new Alternative("a2"), new Criterion("g2")));
+		assertEquals(null, evaluations.getEntry(new Alternative("a3"), new Criterion("g2")));
+
+		final Evaluations sparse = new SourceToEvaluations()
+				.apply(ByteSource.wrap(PERFORMANCE_TABLE.getBytes(Charsets.UTF_8)));
+		assertEquals(evaluations, DenseEvaluations.copyOf(sparse));
+		assertEquals(sparse.getValueCount(), evaluations.toEvaluations().getValueCount());
+	}
+
+	@Test
+	public void testWrite() throws Exception {
+		final DenseEvaluations evaluations = new SourceToDenseEvaluations()
+				.apply(ByteSource.wrap(PERFORMANCE_TABLE.getBytes(Charsets.UTF_8)));
+		final File file = new File(Files.createTempDir(), "performanceTable.xml");
+		new XMCDAStreamWriter().write(evaluations, DenseEvaluations.class, Files.asByteSink(file));
+		assertEquals(evaluations, new SourceToDenseEvaluations().apply(Files.asByteSource(file)));
+	}
+}
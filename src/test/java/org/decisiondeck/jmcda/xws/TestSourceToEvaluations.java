@@ -0,0 +1,40 @@
+package org.decisiondeck.jmcda.xws;
+
+import static org.junit.Assert.assertEquals;
+
+import org.decision_deck.jmcda.structure.Alternative;
+import org.decision_deck.jmcda.structure.Criterion;
+import org.decision_deck.jmcda.structure.matrix.Evaluations;
+import org.decisiondeck.jmcda.exc.InvalidInputException;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.ByteSource;
+
+public class TestSourceToEvaluations {
+	private static final String PERFORMANCE_TABLE = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+			+ "<xmcda:XMCDA xmlns:xmcda=\"http://www.decision-deck.org/2009/XMCDA-2.1.0\">\n"
+			+ "<criteria><criterion id=\"g1\"/></criteria>\n" + "<performanceTable>\n"
+			+ "<alternativePerformances><alternativeID>a1</alternativeID>\n"
+			+ "<performance><criterionID>g1</criterionID><value><real>1.5</real></value></performance>\n"
+			+ "<performance><criterionID>g2</criterionID><value><integer>3</integer></value></performance>\n"
+			+ "</alternativePerformances>\n" + "<alternativePerformances><alternativeID> a2 </alternativeID>\n"
+			+ "<performance><criterionID>g1</criterionID><value><real>-2</real></value></performance>\n"
+			+ "</alternativePerformances>\n" + "</performanceTable>\n" + "</xmcda:XMCDA>\n";
+
+	@Test
+	public void testRead() throws Exception {
+		final Evaluations evaluations = new SourceToEvaluations()
+				.apply(ByteSource.wrap(PERFORMANCE_TABLE.getBytes(Charsets.UTF_8)));
+		assertEquals(3, evaluations.getValueCount());
+		assertEquals(Double.valueOf(1.5d), evaluations.getEntry(new Alternative("a1"), new Criterion("g1")));
+		assertEquals(Double.valueOf(3d), evaluations.getEntry(new Alternative("a1"), new Criterion("g2")));
+		assertEquals(Double.valueOf(-2d), evaluations.getEntry(new Alternative("a2"), new Criterion("g1")));
+	}
+
+	@Test(expected = InvalidInputException.class)
+	public void testIncomplete() throws Exception {
+		final String incomplete = PERFORMANCE_TABLE.replace("<criterionID>g2</criterionID>", "");
+		new SourceToEvaluations().apply(ByteSource.wrap(incomplete.getBytes(Charsets.UTF_8)));
+	}
+}
@@ -0,0 +1,99 @@
+package org.decisiondeck.jmcda.xws;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.decision_deck.jmcda.structure.Alternative;
+import org.decision_deck.jmcda.structure.Criterion;
+import org.decisiondeck.jmcda.exc.InvalidInputException;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.Files;
+
+public class TestUnchangedFileSink {
+	public static class ServiceConstant implements IXWS {
+		@XWSExceptions
+		public List<InvalidInputException> m_exceptions;
+
+		@XWSOutput(name = "performanceTable.xml")
+		public DenseEvaluations m_output;
+
+		@Override
+		public void execute() {
+			m_output = new DenseEvaluations(ImmutableList.of(new Alternative("a1")),
+					ImmutableList.of(new Criterion("g1")));
+			m_output.setValue(0, 0, s_value);
+		}
+	}
+
+	static double s_value;
+
+	@Test
+	public void testExecution() throws Exception {
+		final File output = Files.createTempDir();
+		final File file = new File(output, "performanceTable.xml");
+		final XWSMetrics metrics = new XWSMetrics();
+		final XWSConfiguration configuration = new XWSConfiguration.Builder().setStreamingOutputsEnabled(true)
+				.setValidationPolicy(XWSValidationPolicy.never())
+				.setSkipUnchangedOutputsEnabled(true).setMetrics(metrics).build();
+		s_value = 1d;
+		XWSExecution execution = configuration.newExecution(ServiceConstant.class, null, output);
+		execution.execute();
+		assertEquals(0, execution.getSkippedOutputCount());
+		assertTrue(file.setLastModified(1000000000000L));
+
+		execution = configuration.newExecution(ServiceConstant.class, null, output);
+		execution.execute();
+		assertEquals(1, execution.getSkippedOutputCount());
+		assertEquals(1, metrics.getOutputsSkipped());
+		assertEquals(1000000000000L, file.lastModified());
+
+		s_value = 2d;
+		execution = configuration.newExecution(ServiceConstant.class, null, output);
+		execution.execute();
+		assertEquals(0, execution.getSkippedOutputCount());
+		assertEquals(1, metrics.getOutputsSkipped());
+		assertTrue(file.lastModified() != 1000000000000L);
+		assertEquals(2d, new SourceToDenseEvaluations().apply(Files.asByteSource(file)).getValue(0, 0), 0d);
+	}
+
+	@Test
+	public void testWrite() throws Exception {
+		final File directory = Files.createTempDir();
+		final File file = new File(directory, "output.xml");
+		final AtomicInteger skipped = new AtomicInteger();
+		final UnchangedFileSink sink = new UnchangedFileSink(file, new Runnable() {
+			@Override
+			public void run() {
+				skipped.incrementAndGet();
+			}
+		});
+		final String content = Strings.repeat("0123456789", 2000);
+
+		sink.write(content.getBytes(Charsets.UTF_8));
+		assertEquals(content, Files.toString(file, Charsets.UTF_8));
+		assertEquals(0, skipped.get());
+
+		sink.write(content.getBytes(Charsets.UTF_8));
+		assertEquals(1, skipped.get());
+
+		final String changed = content.substring(0, 15000) + "x" + content.substring(15001);
+		sink.write(changed.getBytes(Charsets.UTF_8));
+		assertEquals(changed, Files.toString(file, Charsets.UTF_8));
+
+		sink.write(changed.substring(0, 100).getBytes(Charsets.UTF_8));
+		assertEquals(changed.substring(0, 100), Files.toString(file, Charsets.UTF_8));
+
+		sink.write((changed.substring(0, 100) + "y").getBytes(Charsets.UTF_8));
+		assertEquals(changed.substring(0, 100) + "y", Files.toString(file, Charsets.UTF_8));
+		assertEquals(1, skipped.get());
+		assertEquals(1, directory.listFiles().length);
+	}
+}
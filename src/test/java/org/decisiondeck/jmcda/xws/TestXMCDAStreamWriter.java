@@ -0,0 +1,48 @@
+package org.decisiondeck.jmcda.xws;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.decision_deck.jmcda.structure.Alternative;
+import org.decision_deck.jmcda.structure.Criterion;
+import org.decision_deck.jmcda.structure.matrix.Evaluations;
+import org.decision_deck.jmcda.structure.matrix.EvaluationsRead;
+import org.decision_deck.jmcda.structure.matrix.EvaluationsUtils;
+import org.decision_deck.utils.matrix.SparseMatrixD;
+import org.junit.Test;
+
+import com.google.common.io.Files;
+import com.google.common.reflect.TypeToken;
+
+public class TestXMCDAStreamWriter {
+	@Test
+	public void testSupports() throws Exception {
+		assertTrue(XMCDAStreamWriter.supports(EvaluationsRead.class));
+		assertTrue(XMCDAStreamWriter.supports(new TypeToken<SparseMatrixD<Alternative, Alternative>>() {
+			private static final long serialVersionUID = 1L;
+		}.getType()));
+		assertFalse(XMCDAStreamWriter.supports(new TypeToken<SparseMatrixD<Criterion, Criterion>>() {
+			private static final long serialVersionUID = 1L;
+		}.getType()));
+		assertFalse(XMCDAStreamWriter.supports(String.class));
+	}
+
+	@Test
+	public void testWritePerformanceTable() throws Exception {
+		final Evaluations evaluations = EvaluationsUtils.newEvaluationMatrix();
+		evaluations.put(new Alternative("a1"), new Criterion("g1"), 1.5d);
+		evaluations.put(new Alternative("a1"), new Criterion("g2"), -3d);
+		evaluations.put(new Alternative("a<2>"), new Criterion("g1"), 0.25d);
+		final File file = new File(Files.createTempDir(), "performanceTable.xml");
+
+		new XMCDAStreamWriter().write(evaluations, EvaluationsRead.class, Files.asByteSink(file));
+
+		final Evaluations read = new SourceToEvaluations().apply(Files.asByteSource(file));
+		assertEquals(3, read.getValueCount());
+		assertEquals(Double.valueOf(-3d), read.getEntry(new Alternative("a1"), new Criterion("g2")));
+		assertEquals(Double.valueOf(0.25d), read.getEntry(new Alternative("a<2>"), new Criterion("g1")));
+	}
+}
@@ -0,0 +1,74 @@
+package org.decisiondeck.jmcda.xws;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.List;
+
+import org.apache.commons.cli.CommandLine;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.CharSource;
+import com.google.common.io.Files;
+
+public class TestXWSBatch {
+	@Test
+	public void testManifest() throws Exception {
+		final File dir = Files.createTempDir();
+		final File manifest = new File(dir, "manifest.tsv");
+		Files.asCharSink(manifest, Charsets.UTF_8).write("# comment\n.\tout1\n\n" + dir.getAbsolutePath() + "\tout2\n");
+		final List<XWSJob> jobs = XWSBatch.getJobs(manifest, new File("unused"),
+				TestExecutor.ServiceInputOutput.class.getName());
+		assertEquals(2, jobs.size());
+		assertEquals(new File(dir, "."), jobs.get(0).getInputDirectory());
+		assertEquals(new File(dir, "out1"), jobs.get(0).getOutputDirectory());
+		assertEquals(dir.getAbsoluteFile(), jobs.get(1).getInputDirectory());
+	}
+
+	@Test
+	public void testRun() throws Exception {
+		final File inputs = Files.createTempDir();
+		new File(inputs, "b").mkdir();
+		new File(inputs, "a").mkdir();
+		final File outputs = Files.createTempDir();
+		final List<XWSJob> jobs = ImmutableList.<XWSJob> builder()
+				.addAll(XWSBatch.getJobs(inputs, outputs, TestExecutor.ServiceInputOutput.class.getName()))
+				.add(new XWSJob(new File(inputs, "I.NVALID__"), outputs, TestExecutor.ServiceInputOutput.class.getName()))
+				.build();
+		assertEquals(new File(outputs, "a"), jobs.get(0).getOutputDirectory());
+
+		final List<XWSJobResult> results = new XWSBatch(2).run(jobs);
+		assertEquals(3, results.size());
+		assertEquals(XWSJobResult.Status.SUCCESS, results.get(0).getStatus());
+		assertEquals(XWSJobResult.Status.SUCCESS, results.get(1).getStatus());
+		assertEquals(XWSJobResult.Status.FAILED, results.get(2).getStatus());
+		assertEquals(jobs.get(2), results.get(2).getJob());
+
+		final File summary = new File(outputs, XWSBatch.SUMMARY_FILE_NAME);
+		XWSBatch.writeSummary(results, Files.asCharSink(summary, Charsets.UTF_8));
+		final CharSource written = Files.asCharSource(summary, Charsets.UTF_8);
+		assertEquals(4, written.readLines().size());
+		assertEquals(0, written.readLines().get(1).indexOf(XWSJobResult.Status.SUCCESS.name() + "\t"));
+	}
+
+	@Test
+	public void testParseMode() throws Exception {
+		final XWSCommandLineParserExt parser = new XWSCommandLineParserExt();
+		final CommandLine batch = parser.parseMode(new String[] { "--batch=dir", "-o", "out", "-w", "Worker" });
+		assertTrue(batch.hasOption(XWSBatch.BATCH_OPTION));
+		assertEquals("dir", batch.getOptionValue(XWSBatch.BATCH_OPTION));
+		assertFalse(batch.hasOption(XWSServer.SERVE_OPTION));
+
+		final CommandLine serve = parser.parseMode(new String[] { "-k", "token", "--serve", "0" });
+		assertTrue(serve.hasOption(XWSServer.SERVE_OPTION));
+		assertFalse(serve.hasOption(XWSBatch.BATCH_OPTION));
+
+		final CommandLine single = parser.parseMode(new String[] { "-i", "in", "-o", "out", "-w", "Worker" });
+		assertFalse(single.hasOption(XWSServer.SERVE_OPTION));
+		assertFalse(single.hasOption(XWSBatch.BATCH_OPTION));
+	}
+}
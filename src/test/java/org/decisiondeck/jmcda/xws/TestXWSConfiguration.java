@@ -0,0 +1,64 @@
+package org.decisiondeck.jmcda.xws;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+
+public class TestXWSConfiguration {
+	@Test
+	public void testConcurrentExecutions() throws Exception {
+		final XWSConfiguration configuration = new XWSConfiguration.Builder().setWriteEnabled(false).build();
+		final ExecutorService threads = Executors.newFixedThreadPool(4);
+		try {
+			final List<File> inputs = Lists.newArrayList();
+			final List<Future<XWSExecution>> futures = Lists.newArrayList();
+			for (int i = 0; i < 16; ++i) {
+				final File input = Files.createTempDir();
+				inputs.add(input);
+				futures.add(threads.submit(new Callable<XWSExecution>() {
+					@Override
+					public XWSExecution call() throws Exception {
+						final XWSExecution execution = configuration
+								.newExecution(TestExecutor.ServiceInputOutput.class.getName(), input, input);
+						execution.execute();
+						return execution;
+					}
+				}));
+			}
+			for (int i = 0; i < inputs.size(); ++i) {
+				final XWSExecution execution = futures.get(i).get();
+				assertTrue(execution.getExceptions().isEmpty());
+				final TestExecutor.ServiceInputOutput worker = (TestExecutor.ServiceInputOutput) execution.getWorker();
+				assertTrue(worker.isExecuted());
+				assertEquals(inputs.get(i), worker.getInputDirectory());
+				assertEquals(inputs.get(i), worker.getOutputDirectory());
+			}
+			assertNotSame(futures.get(0).get().getWorker(), futures.get(1).get().getWorker());
+		} finally {
+			threads.shutdown();
+		}
+	}
+
+	@Test
+	public void testExecutorConfiguration() throws Exception {
+		final XWSExecutor exec = new XWSExecutor();
+		final XWSConfiguration configuration = exec.getConfiguration();
+		assertEquals(configuration, exec.getConfiguration());
+		assertEquals(exec.getInputTransformer(), configuration.getInputTransformer());
+		exec.setWriteEnabled(false);
+		assertNotSame(configuration, exec.getConfiguration());
+		assertEquals(Boolean.FALSE, Boolean.valueOf(exec.getConfiguration().isWriteEnabled()));
+	}
+}
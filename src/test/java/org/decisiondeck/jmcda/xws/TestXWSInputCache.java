@@ -0,0 +1,111 @@
+package org.decisiondeck.jmcda.xws;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.List;
+
+import org.decisiondeck.jmcda.exc.FunctionWithInputCheck;
+import org.decisiondeck.jmcda.exc.InvalidInputException;
+import org.decisiondeck.jmcda.exc.InvalidInvocationException;
+import org.decisiondeck.jmcda.persist.xmcda2.generated.XCriteria;
+import org.decisiondeck.jmcda.xws.XWSInjectionPlan.InputField;
+import org.decisiondeck.jmcda.xws.transformer.InputTransformer;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Iterables;
+import com.google.common.io.Files;
+
+public class TestXWSInputCache {
+	public static class CountingTransformer extends InputTransformer {
+		private int m_reads;
+
+		@Override
+		public Object get(Type type, Class<? extends FunctionWithInputCheck<Object, Object>> transformer,
+				String name, File directory, boolean optional) throws InvalidInputException, InvalidInvocationException {
+			++m_reads;
+			return new Object();
+		}
+	}
+
+	public static class ServiceCriteria implements IXWS {
+		@XWSInput(name = "criteria.xml")
+		public XCriteria m_criteria;
+
+		@XWSExceptions
+		public List<InvalidInputException> m_exceptions;
+
+		@Override
+		public void execute() {
+			/** Nothing to do. */
+		}
+	}
+
+	@Test
+	public void testCache() throws Exception {
+		final InputField field = Iterables.getOnlyElement(XWSInjectionPlan.getPlan(ServiceCriteria.class)
+				.getInputFields());
+		final File first = newInputDirectory("content");
+		final File same = newInputDirectory("content");
+		final File other = newInputDirectory("other content");
+		final CountingTransformer transformer = new CountingTransformer();
+
+		final XWSInputCache cache = new XWSInputCache(1024);
+		final Object value = cache.get(transformer, field, first);
+		assertSame(value, cache.get(transformer, field, same));
+		assertNotSame(value, cache.get(transformer, field, other));
+		assertEquals(2, transformer.m_reads);
+		assertEquals(1, cache.getHitCount());
+		assertEquals(2, cache.getMissCount());
+		assertEquals(2, cache.getSize());
+
+		final XWSInputCache empty = new XWSInputCache(0);
+		empty.get(transformer, field, first);
+		empty.get(transformer, field, same);
+		assertEquals(4, transformer.m_reads);
+		assertEquals(2, empty.getEvictionCount());
+	}
+
+	@Test
+	public void testChanged() throws Exception {
+		final InputField field = Iterables.getOnlyElement(XWSInjectionPlan.getPlan(ServiceCriteria.class)
+				.getInputFields());
+		final File directory = newInputDirectory("content");
+		final File file = new File(directory, "criteria.xml");
+		final XWSInputCache cache = new XWSInputCache(1024);
+		final Object changed = cache.get(field, directory, new XWSLazyInput.Loader() {
+			@Override
+			public Object load() throws InvalidInvocationException {
+				try {
+					Files.asCharSink(file, Charsets.UTF_8).write("other content");
+				} catch (IOException exc) {
+					throw new InvalidInvocationException(exc);
+				}
+				return "other content";
+			}
+		});
+		assertEquals("other content", changed);
+		assertEquals(0, cache.getSize());
+
+		Files.asCharSink(file, Charsets.UTF_8).write("content");
+		final Object value = cache.get(field, directory, new XWSLazyInput.Loader() {
+			@Override
+			public Object load() {
+				return "content";
+			}
+		});
+		assertEquals("content", value);
+		assertEquals(1, cache.getSize());
+	}
+
+	private File newInputDirectory(String content) throws Exception {
+		final File directory = Files.createTempDir();
+		Files.asCharSink(new File(directory, "criteria.xml"), Charsets.UTF_8).write(content);
+		return directory;
+	}
+}
@@ -0,0 +1,143 @@
+package org.decisiondeck.jmcda.xws;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.decision_deck.jmcda.structure.Alternative;
+import org.decision_deck.jmcda.structure.Criterion;
+import org.decision_deck.jmcda.structure.matrix.Evaluations;
+import org.decision_deck.jmcda.structure.matrix.EvaluationsRead;
+import org.decision_deck.jmcda.structure.matrix.EvaluationsUtils;
+import org.decisiondeck.jmcda.exc.InvalidInputException;
+import org.decisiondeck.jmcda.persist.xmcda2.generated.XCriteria;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.ByteSource;
+
+public class TestXWSMemoryOutputs {
+	public static class ServiceMemory implements IXWS {
+		@XWSInput(name = "criteria.xml", optional = true)
+		public XCriteria m_criteria;
+
+		@XWSExceptions
+		public List<InvalidInputException> m_exceptions;
+
+		@XWSOutput(name = "performanceTable.xml")
+		public EvaluationsRead m_evaluations;
+
+		@Override
+		public void execute() {
+			final Evaluations evaluations = EvaluationsUtils.newEvaluationMatrix();
+			evaluations.put(new Alternative("a1"), new Criterion("g1"), 2d);
+			m_evaluations = evaluations;
+		}
+	}
+
+	public static class ServiceRead implements IXWS {
+		@XWSInput(name = "performanceTable.xml", transformer = SourceToEvaluations.class)
+		public Evaluations m_evaluations;
+
+		@XWSExceptions
+		public List<InvalidInputException> m_exceptions;
+
+		@Override
+		public void execute() {
+			s_read = m_evaluations;
+		}
+	}
+
+	public static class ServiceRequired implements IXWS {
+		@XWSInput(name = "criteria.xml")
+		public XCriteria m_criteria;
+
+		@XWSExceptions
+		public List<InvalidInputException> m_exceptions;
+
+		@Override
+		public void execute() {
+			/** Nothing to do. */
+		}
+	}
+
+	private static final String PERFORMANCE_TABLE = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+			+ "<xmcda:XMCDA xmlns:xmcda=\"http://www.decision-deck.org/2009/XMCDA-2.1.0\">\n"
+			+ "<performanceTable>\n" + "<alternativePerformances><alternativeID>a1</alternativeID>\n"
+			+ "<performance><criterionID>g1</criterionID><value><real>1.5</real></value></performance>\n"
+			+ "</alternativePerformances>\n" + "</performanceTable>\n" + "</xmcda:XMCDA>\n";
+
+	static Evaluations s_read;
+
+	@Test
+	public void testExecution() throws Exception {
+		final XWSConfiguration configuration = new XWSConfiguration.Builder().setStreamingOutputsEnabled(true)
+				.setValidationPolicy(XWSValidationPolicy.never()).build();
+		final XWSMemoryOutputs outputs = new XWSMemoryOutputs();
+		final XWSExecution execution = configuration.newExecution(ServiceMemory.class,
+				Collections.<String, ByteSource> emptyMap(), outputs);
+		execution.execute();
+		assertTrue(execution.getExceptions().isEmpty());
+		assertEquals(Collections.singleton("performanceTable.xml"), outputs.asMap().keySet());
+		final Evaluations read = new SourceToEvaluations().apply(outputs.get("performanceTable.xml"));
+		assertEquals(Double.valueOf(2d), read.getEntry(new Alternative("a1"), new Criterion("g1")));
+	}
+
+	@Test
+	public void testMissingInput() throws Exception {
+		final XWSMemoryOutputs outputs = new XWSMemoryOutputs();
+		final XWSExecution execution = new XWSConfiguration.Builder().build().newExecution(ServiceRequired.class,
+				ImmutableMap.of("alternatives.xml", ByteSource.wrap(new byte[0])), outputs);
+		execution.execute();
+		assertFalse(execution.getExceptions().isEmpty());
+		assertTrue(outputs.asMap().isEmpty());
+	}
+
+	@Test
+	public void testPresentInput() throws Exception {
+		s_read = null;
+		final XWSExecution execution = new XWSConfiguration.Builder().build().newExecution(ServiceRead.class,
+				ImmutableMap.of("performanceTable.xml", ByteSource.wrap(PERFORMANCE_TABLE.getBytes(Charsets.UTF_8))),
+				new XWSMemoryOutputs());
+		execution.execute();
+		assertTrue(execution.getExceptions().isEmpty());
+		assertEquals(1, s_read.getValueCount());
+		assertEquals(Double.valueOf(1.5d), s_read.getEntry(new Alternative("a1"), new Criterion("g1")));
+	}
+
+	@Test
+	public void testStreamingValidated() throws Exception {
+		final XWSMetrics metrics = new XWSMetrics();
+		final XWSValidationPolicy policy = XWSValidationPolicy.firstPerWorker(1);
+		final XWSConfiguration configuration = new XWSConfiguration.Builder().setStreamingOutputsEnabled(true)
+				.setValidationPolicy(policy).setMetrics(metrics).build();
+		for (int i = 0; i < 2; ++i) {
+			final XWSMemoryOutputs outputs = new XWSMemoryOutputs();
+			final XWSExecution execution = configuration.newExecution(ServiceMemory.class,
+					Collections.<String, ByteSource> emptyMap(), outputs);
+			execution.execute();
+			assertTrue(execution.getExceptions().isEmpty());
+			assertEquals(Collections.singleton("performanceTable.xml"), outputs.asMap().keySet());
+		}
+		/** The first output is written through its document to be validated, the second one is streamed. */
+		assertEquals(1, policy.getValidationCount());
+		assertEquals(1, metrics.getValidationTimer().getCount());
+	}
+
+	@Test
+	public void testSinks() throws Exception {
+		final XWSMemoryOutputs outputs = new XWSMemoryOutputs();
+		assertNull(outputs.get("out.xml"));
+		outputs.apply("out.xml").asCharSink(Charsets.UTF_8).write("content");
+		assertEquals("content", outputs.get("out.xml").asCharSource(Charsets.UTF_8).read());
+		outputs.apply("out.xml").asCharSink(Charsets.UTF_8).write("other");
+		assertEquals("other", outputs.asMap().get("out.xml").asCharSource(Charsets.UTF_8).read());
+		outputs.clear();
+		assertTrue(outputs.asMap().isEmpty());
+	}
+}
@@ -0,0 +1,64 @@
+package org.decisiondeck.jmcda.xws;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+
+import org.decisiondeck.jmcda.xws.XWSMetrics.Phase;
+import org.junit.Test;
+
+import com.google.common.io.ByteSource;
+
+public class TestXWSMetrics {
+	@Test
+	public void testJmx() throws Exception {
+		final XWSMetrics metrics = new XWSMetrics();
+		metrics.jobStarted(TestXWSMemoryOutputs.ServiceMemory.class);
+		metrics.addBytesRead(12);
+		metrics.record(TestXWSMemoryOutputs.ServiceMemory.class, Phase.EXECUTE, null, 1000);
+		final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		final ObjectName name = metrics.register(server, "test");
+		try {
+			assertEquals(Long.valueOf(12), server.getAttribute(name, "BytesRead"));
+			final TabularData started = (TabularData) server.getAttribute(name, "JobsStarted");
+			assertEquals(1, started.size());
+			assertEquals(1, ((TabularData) server.getAttribute(name, "Latencies")).size());
+			assertEquals(Long.valueOf(0),
+					((CompositeData) server.getAttribute(name, "ValidationLatency")).get("count"));
+		} finally {
+			server.unregisterMBean(name);
+		}
+	}
+
+	@Test
+	public void testRecording() throws Exception {
+		final XWSMetrics metrics = new XWSMetrics();
+		final XWSConfiguration configuration = new XWSConfiguration.Builder().setStreamingOutputsEnabled(true)
+				.setValidationPolicy(XWSValidationPolicy.never()).setMetrics(metrics).build();
+		configuration.newExecution(TestXWSMemoryOutputs.ServiceMemory.class,
+				Collections.<String, ByteSource> emptyMap(), new XWSMemoryOutputs()).execute();
+		configuration.newExecution(TestXWSMemoryOutputs.ServiceRequired.class,
+				Collections.<String, ByteSource> emptyMap(), new XWSMemoryOutputs()).execute();
+
+		final String memory = TestXWSMemoryOutputs.ServiceMemory.class.getName();
+		final String required = TestXWSMemoryOutputs.ServiceRequired.class.getName();
+		assertEquals(Long.valueOf(1), metrics.getJobsStarted().get(memory));
+		assertEquals(Long.valueOf(1), metrics.getJobsCompleted().get(memory));
+		assertEquals(Long.valueOf(0), metrics.getJobsFailed().get(memory));
+		assertEquals(Long.valueOf(1), metrics.getJobsFailed().get(required));
+		assertEquals(1, metrics.getTimer(TestXWSMemoryOutputs.ServiceMemory.class, Phase.EXECUTE, null).getCount());
+		assertNotNull(metrics.getTimer(TestXWSMemoryOutputs.ServiceMemory.class, Phase.WRITE_OUTPUT,
+				"performanceTable.xml"));
+		assertNotNull(metrics.getTimer(TestXWSMemoryOutputs.ServiceRequired.class, Phase.READ_INPUT, "criteria.xml"));
+		assertTrue(metrics.getLatencies().containsKey(memory + "/SET_WORKER"));
+		assertTrue(metrics.getBytesWritten() > 0);
+	}
+}
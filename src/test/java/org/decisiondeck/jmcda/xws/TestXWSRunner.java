@@ -0,0 +1,126 @@
+package org.decisiondeck.jmcda.xws;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.decisiondeck.jmcda.exc.InvalidInputException;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.google.common.io.ByteSource;
+import com.google.common.io.Files;
+import com.google.common.io.Resources;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+public class TestXWSRunner {
+	public static class ServiceCounting implements IXWS {
+		static final AtomicInteger s_maxRunning = new AtomicInteger();
+
+		static final AtomicInteger s_running = new AtomicInteger();
+
+		@XWSExceptions
+		public List<InvalidInputException> m_exceptions;
+
+		@Override
+		public void execute() {
+			final int running = s_running.incrementAndGet();
+			while (true) {
+				final int max = s_maxRunning.get();
+				if (running <= max || s_maxRunning.compareAndSet(max, running)) {
+					break;
+				}
+			}
+			Uninterruptibles.sleepUninterruptibly(10, TimeUnit.MILLISECONDS);
+			s_running.decrementAndGet();
+		}
+	}
+
+	public static class ServiceIsolated implements IXWS {
+		public static final AtomicInteger s_executions = new AtomicInteger();
+
+		@XWSExceptions
+		public List<InvalidInputException> m_exceptions;
+
+		@Override
+		public void execute() {
+			s_executions.incrementAndGet();
+		}
+	}
+
+	@Test
+	public void testMaxExecutions() throws Exception {
+		final XWSConfiguration configuration = new XWSConfiguration.Builder().setWriteEnabled(false).build();
+		final XWSRunner runner = new XWSRunner(configuration, 2);
+		try {
+			final File input = Files.createTempDir();
+			final List<Future<XWSJobResult>> results = Lists.newArrayList();
+			for (int i = 0; i < 20; ++i) {
+				results.add(runner.submit(ServiceCounting.class, input, input));
+			}
+			for (Future<XWSJobResult> result : results) {
+				assertEquals(XWSJobResult.Status.SUCCESS, result.get().getStatus());
+			}
+			assertTrue(ServiceCounting.s_maxRunning.get() <= 2);
+			assertEquals(2, runner.getAvailableExecutions());
+		} finally {
+			runner.close();
+		}
+	}
+
+	@Test
+	public void testMemory() throws Exception {
+		final XWSRunner runner = new XWSRunner(new XWSConfiguration.Builder().build(), 1);
+		try {
+			final XWSMemoryOutputs outputs = new XWSMemoryOutputs();
+			final XWSJobResult result = runner.submit(TestXWSMemoryOutputs.ServiceMemory.class,
+					Collections.<String, ByteSource> emptyMap(), outputs).get();
+			assertEquals(XWSJobResult.Status.SUCCESS, result.getStatus());
+			assertNull(result.getJob().getInputDirectory());
+			assertEquals(Collections.singleton("performanceTable.xml"), outputs.asMap().keySet());
+		} finally {
+			runner.close();
+		}
+	}
+
+	@Test
+	public void testWorkerClassLoader() throws Exception {
+		/** Defines another class of the same name, which the class loader of this library does not see. */
+		final String name = ServiceIsolated.class.getName();
+		final byte[] bytes = Resources.toByteArray(Resources.getResource(name.replace('.', '/') + ".class"));
+		final ClassLoader loader = new ClassLoader(getClass().getClassLoader()) {
+			@Override
+			protected synchronized Class<?> loadClass(String className, boolean resolve)
+					throws ClassNotFoundException {
+				if (!className.equals(name)) {
+					return super.loadClass(className, resolve);
+				}
+				final Class<?> loaded = findLoadedClass(className);
+				return loaded == null ? defineClass(className, bytes, 0, bytes.length) : loaded;
+			}
+		};
+		final Class<? extends IXWS> isolated = loader.loadClass(name).asSubclass(IXWS.class);
+		assertNotSame(ServiceIsolated.class, isolated);
+
+		final XWSRunner runner = new XWSRunner(new XWSConfiguration.Builder().setWriteEnabled(false).build(), 1);
+		try {
+			final File input = Files.createTempDir();
+			final XWSJobResult result = runner.submit(isolated, input, input).get();
+			assertEquals(XWSJobResult.Status.SUCCESS, result.getStatus());
+			assertSame(isolated, result.getJob().getWorkerClass());
+			assertEquals(1, ((AtomicInteger) isolated.getField("s_executions").get(null)).get());
+			assertEquals(0, ServiceIsolated.s_executions.get());
+		} finally {
+			runner.close();
+		}
+	}
+}
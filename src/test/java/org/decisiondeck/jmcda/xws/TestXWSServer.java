@@ -0,0 +1,150 @@
+package org.decisiondeck.jmcda.xws;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+public class TestXWSServer {
+	private static final String TOKEN = "secret";
+
+	private static void serve(final XWSServer server, ExecutorService serving) {
+		serving.submit(new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				server.serve();
+				return null;
+			}
+		});
+	}
+
+	@Test
+	public void testIdle() throws Exception {
+		final ExecutorService serving = Executors.newSingleThreadExecutor();
+		try (XWSServer server = new XWSServer(0, 1, 1, TOKEN, new File("."), null)) {
+			server.setTokenTimeout(200);
+			server.setIdleTimeout(200);
+			serve(server, serving);
+			/** Holds both connection threads: one never sends its token, the other no job. */
+			try (Socket silent = new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+					Socket idle = new Socket(InetAddress.getLoopbackAddress(), server.getPort())) {
+				silent.setSoTimeout(10000);
+				idle.setSoTimeout(10000);
+				final Writer idleWriter = new OutputStreamWriter(idle.getOutputStream(), Charsets.UTF_8);
+				idleWriter.write(TOKEN + "\n");
+				idleWriter.flush();
+				assertEquals(-1, silent.getInputStream().read());
+				assertEquals(-1, idle.getInputStream().read());
+			}
+			/** Lets the connection threads end their handling once they closed the connections. */
+			Uninterruptibles.sleepUninterruptibly(200, TimeUnit.MILLISECONDS);
+			try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+					BufferedReader reader = new BufferedReader(
+							new InputStreamReader(socket.getInputStream(), Charsets.UTF_8));
+					Writer writer = new OutputStreamWriter(socket.getOutputStream(), Charsets.UTF_8)) {
+				writer.write(TOKEN + "\n.\n.\n" + TestExecutor.ServiceConstantSource.class.getName() + "\n");
+				writer.flush();
+				assertEquals(XWSJobResult.Status.SUCCESS.name(), reader.readLine());
+				assertEquals("", reader.readLine());
+			}
+		} finally {
+			serving.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testLineTooLong() throws Exception {
+		final ExecutorService serving = Executors.newSingleThreadExecutor();
+		try (XWSServer server = new XWSServer(0, 1, 1, TOKEN, new File("."), null)) {
+			serve(server, serving);
+			try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort())) {
+				socket.setSoTimeout(10000);
+				final Writer writer = new OutputStreamWriter(socket.getOutputStream(), Charsets.UTF_8);
+				writer.write(Strings.repeat("x", XWSServer.MAX_LINE_LENGTH + 2));
+				writer.flush();
+				assertEquals(-1, socket.getInputStream().read());
+			}
+		} finally {
+			serving.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testRefused() throws Exception {
+		final ExecutorService serving = Executors.newSingleThreadExecutor();
+		try (XWSServer server = new XWSServer(0, 1, 1, TOKEN, new File("."),
+				ImmutableSet.of(TestExecutor.ServiceConstantSource.class.getName()))) {
+			serve(server, serving);
+			try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+					BufferedReader reader = new BufferedReader(
+							new InputStreamReader(socket.getInputStream(), Charsets.UTF_8));
+					Writer writer = new OutputStreamWriter(socket.getOutputStream(), Charsets.UTF_8)) {
+				writer.write("wrong\n.\n.\n" + TestExecutor.ServiceConstantSource.class.getName() + "\n");
+				writer.flush();
+				assertEquals(XWSJobResult.Status.FAILED.name(), reader.readLine());
+				assertEquals("Wrong token.", reader.readLine());
+				assertEquals("", reader.readLine());
+				assertEquals(null, reader.readLine());
+			}
+			try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+					BufferedReader reader = new BufferedReader(
+							new InputStreamReader(socket.getInputStream(), Charsets.UTF_8));
+					Writer writer = new OutputStreamWriter(socket.getOutputStream(), Charsets.UTF_8)) {
+				writer.write(TOKEN + "\n.\n.\n" + TestExecutor.ServiceConstantSourceWithList.class.getName() + "\n");
+				writer.flush();
+				assertEquals(XWSJobResult.Status.FAILED.name(), reader.readLine());
+				assertEquals("Worker not allowed.", reader.readLine());
+				assertEquals("", reader.readLine());
+
+				writer.write("..\n.\n" + TestExecutor.ServiceConstantSource.class.getName() + "\n");
+				writer.flush();
+				assertEquals(XWSJobResult.Status.FAILED.name(), reader.readLine());
+				reader.readLine();
+				assertEquals("", reader.readLine());
+			}
+		} finally {
+			serving.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testServe() throws Exception {
+		final ExecutorService serving = Executors.newSingleThreadExecutor();
+		try (XWSServer server = new XWSServer(0, 2, 10, TOKEN, new File("."), null)) {
+			serve(server, serving);
+			try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+					BufferedReader reader = new BufferedReader(
+							new InputStreamReader(socket.getInputStream(), Charsets.UTF_8));
+					Writer writer = new OutputStreamWriter(socket.getOutputStream(), Charsets.UTF_8)) {
+				writer.write(TOKEN + "\n.\n.\n" + TestExecutor.ServiceConstantSource.class.getName() + "\n");
+				writer.flush();
+				assertEquals(XWSJobResult.Status.SUCCESS.name(), reader.readLine());
+				assertEquals("", reader.readLine());
+
+				writer.write(".\n.\nI.NVALID__\n");
+				writer.flush();
+				assertEquals(XWSJobResult.Status.FAILED.name(), reader.readLine());
+				reader.readLine();
+				assertEquals("", reader.readLine());
+			}
+		} finally {
+			serving.shutdownNow();
+		}
+	}
+}
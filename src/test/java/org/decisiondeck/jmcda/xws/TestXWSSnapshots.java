@@ -0,0 +1,165 @@
+package org.decisiondeck.jmcda.xws;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Set;
+
+import org.decision_deck.jmcda.structure.Alternative;
+import org.decision_deck.jmcda.structure.Criterion;
+import org.decision_deck.jmcda.structure.matrix.Evaluations;
+import org.decision_deck.jmcda.structure.matrix.EvaluationsRead;
+import org.decision_deck.jmcda.structure.matrix.EvaluationsUtils;
+import org.decisiondeck.jmcda.exc.FunctionWithInputCheck;
+import org.decisiondeck.jmcda.exc.InvalidInputException;
+import org.decisiondeck.jmcda.exc.InvalidInvocationException;
+import org.decisiondeck.jmcda.persist.xmcda2.generated.XCriteria;
+import org.decisiondeck.jmcda.xws.XWSInjectionPlan.InputField;
+import org.decisiondeck.jmcda.xws.transformer.InputTransformer;
+import org.junit.Test;
+
+import com.google.common.collect.Iterables;
+import com.google.common.io.Files;
+import com.google.common.reflect.TypeToken;
+
+public class TestXWSSnapshots {
+	public static class ParsingTransformer extends InputTransformer {
+		private int m_reads;
+
+		@Override
+		public Object get(Type type, Class<? extends FunctionWithInputCheck<Object, Object>> transformer,
+				String name, File directory, boolean optional) throws InvalidInputException, InvalidInvocationException {
+			++m_reads;
+			return new SourceToEvaluations().apply(Files.asByteSource(new File(directory, name)));
+		}
+	}
+
+	public static class ServiceEvaluations implements IXWS {
+		@XWSInput(name = "performanceTable.xml", transformer = SourceToEvaluations.class)
+		public Evaluations m_evaluations;
+
+		@XWSExceptions
+		public List<InvalidInputException> m_exceptions;
+
+		@Override
+		public void execute() {
+			s_read = m_evaluations;
+		}
+	}
+
+	static Evaluations s_read;
+
+	@Test
+	public void testChanged() throws Exception {
+		final Evaluations evaluations = EvaluationsUtils.newEvaluationMatrix();
+		evaluations.put(new Alternative("a1"), new Criterion("g1"), 1.5d);
+		final File file = new File(Files.createTempDir(), "performanceTable.xml");
+		new XMCDAStreamWriter().write(evaluations, EvaluationsRead.class, Files.asByteSink(file));
+
+		final XWSSnapshots snapshots = XWSSnapshots.inDirectory(Files.createTempDir());
+		final InputField field = Iterables.getOnlyElement(XWSInjectionPlan.getPlan(ServiceEvaluations.class)
+				.getInputFields());
+		final Object value = snapshots.get(field, file, new XWSLazyInput.Loader() {
+			@Override
+			public Object load() throws InvalidInputException, InvalidInvocationException {
+				evaluations.put(new Alternative("a1"), new Criterion("g1"), 2d);
+				try {
+					new XMCDAStreamWriter().write(evaluations, EvaluationsRead.class, Files.asByteSink(file));
+				} catch (IOException exc) {
+					throw new InvalidInvocationException(exc);
+				}
+				return new SourceToEvaluations().apply(Files.asByteSource(file));
+			}
+		});
+		assertEquals(Double.valueOf(2d), ((Evaluations) value).getEntry(new Alternative("a1"), new Criterion("g1")));
+		assertEquals(0, snapshots.getWriteCount());
+		assertFalse(snapshots.getSnapshotFile(file).exists());
+	}
+
+	@Test
+	public void testCorrupt() throws Exception {
+		final Evaluations evaluations = EvaluationsUtils.newEvaluationMatrix();
+		evaluations.put(new Alternative("a1"), new Criterion("g1"), 1.5d);
+		final File input = Files.createTempDir();
+		final File file = new File(input, "performanceTable.xml");
+		new XMCDAStreamWriter().write(evaluations, EvaluationsRead.class, Files.asByteSink(file));
+
+		final ParsingTransformer transformer = new ParsingTransformer();
+		final XWSSnapshots snapshots = XWSSnapshots.inDirectory(Files.createTempDir());
+		final XWSConfiguration configuration = new XWSConfiguration.Builder().setInputTransformer(transformer)
+				.setSnapshots(snapshots).setWriteEnabled(false).build();
+		configuration.newExecution(ServiceEvaluations.class, input, Files.createTempDir()).execute();
+		assertEquals(1, snapshots.getWriteCount());
+
+		/** The snapshot ends with the column index and the value of the only entry. */
+		final File snapshot = snapshots.getSnapshotFile(file);
+		final byte[] bytes = Files.toByteArray(snapshot);
+		final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+		assertEquals(0, buffer.getInt(bytes.length - 12));
+		buffer.putInt(bytes.length - 12, Integer.MAX_VALUE);
+		Files.write(bytes, snapshot);
+
+		s_read = null;
+		configuration.newExecution(ServiceEvaluations.class, input, Files.createTempDir()).execute();
+		assertEquals(2, transformer.m_reads);
+		assertEquals(0, snapshots.getHitCount());
+		assertEquals(2, snapshots.getWriteCount());
+		assertEquals(Double.valueOf(1.5d), s_read.getEntry(new Alternative("a1"), new Criterion("g1")));
+	}
+
+	@Test
+	public void testSnapshots() throws Exception {
+		final Evaluations evaluations = EvaluationsUtils.newEvaluationMatrix();
+		evaluations.put(new Alternative("a1"), new Criterion("g1"), 1.5d);
+		evaluations.put(new Alternative("a1"), new Criterion("g2"), -3d);
+		evaluations.put(new Alternative("a2"), new Criterion("g2"), 0.25d);
+		final File input = Files.createTempDir();
+		final File file = new File(input, "performanceTable.xml");
+		new XMCDAStreamWriter().write(evaluations, EvaluationsRead.class, Files.asByteSink(file));
+
+		final ParsingTransformer transformer = new ParsingTransformer();
+		final XWSSnapshots snapshots = XWSSnapshots.inDirectory(Files.createTempDir());
+		final XWSConfiguration configuration = new XWSConfiguration.Builder().setInputTransformer(transformer)
+				.setSnapshots(snapshots).setWriteEnabled(false).build();
+		configuration.newExecution(ServiceEvaluations.class, input, Files.createTempDir()).execute();
+		assertEquals(1, transformer.m_reads);
+		assertEquals(1, snapshots.getWriteCount());
+		assertTrue(snapshots.getSnapshotFile(file).isFile());
+		assertTrue(snapshots.getSnapshotFile(file).length() < file.length());
+
+		configuration.newExecution(ServiceEvaluations.class, input, Files.createTempDir()).execute();
+		assertEquals(1, transformer.m_reads);
+		assertEquals(1, snapshots.getHitCount());
+		assertEquals(3, s_read.getValueCount());
+		assertEquals(Double.valueOf(-3d), s_read.getEntry(new Alternative("a1"), new Criterion("g2")));
+		assertEquals(Double.valueOf(0.25d), s_read.getEntry(new Alternative("a2"), new Criterion("g2")));
+
+		evaluations.put(new Alternative("a2"), new Criterion("g1"), 0d);
+		new XMCDAStreamWriter().write(evaluations, EvaluationsRead.class, Files.asByteSink(file));
+		configuration.newExecution(ServiceEvaluations.class, input, Files.createTempDir()).execute();
+		assertEquals(2, transformer.m_reads);
+		assertEquals(2, snapshots.getMissCount());
+		assertEquals(4, s_read.getValueCount());
+	}
+
+	@Test
+	public void testSupports() throws Exception {
+		assertTrue(XWSSnapshots.supports(Evaluations.class));
+		assertTrue(XWSSnapshots.supports(DenseEvaluations.class));
+		assertTrue(XWSSnapshots.supports(new TypeToken<Set<Alternative>>() {
+			private static final long serialVersionUID = 1L;
+		}.getType()));
+		assertTrue(XWSSnapshots.supports(new TypeToken<Set<Criterion>>() {
+			private static final long serialVersionUID = 1L;
+		}.getType()));
+		assertFalse(XWSSnapshots.supports(XCriteria.class));
+		assertEquals(new File("dir", "performanceTable.xml" + XWSSnapshots.SUFFIX),
+				XWSSnapshots.besideSources().getSnapshotFile(new File("dir", "performanceTable.xml")));
+	}
+}
@@ -0,0 +1,27 @@
+package org.decisiondeck.jmcda.xws;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class TestXWSTimer {
+	@Test
+	public void testPercentiles() throws Exception {
+		final XWSTimer timer = new XWSTimer();
+		assertEquals(0, timer.getPercentileNanos(50d));
+		for (int i = 1; i <= 99; ++i) {
+			timer.record(1000);
+		}
+		timer.record(1000000);
+		assertEquals(100, timer.getCount());
+		assertEquals(1000000, timer.getMaxNanos());
+		assertEquals(99 * 1000 + 1000000, timer.getTotalNanos());
+		final long median = timer.getPercentileNanos(50d);
+		assertTrue(median >= 1000 && median < 2000);
+		assertEquals(median, timer.getPercentileNanos(99d));
+		assertEquals(1000000, timer.getPercentileNanos(100d));
+		timer.record(-5);
+		assertEquals(0, timer.getPercentileNanos(0.5d));
+	}
+}
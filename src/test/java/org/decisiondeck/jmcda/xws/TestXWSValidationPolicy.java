@@ -0,0 +1,38 @@
+package org.decisiondeck.jmcda.xws;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.Executor;
+
+import org.junit.Test;
+
+public class TestXWSValidationPolicy {
+	@Test
+	public void testFirstPerWorker() throws Exception {
+		final XWSValidationPolicy policy = XWSValidationPolicy.firstPerWorker(2);
+		assertTrue(policy.validatesBeforeWrite(TestExecutor.ServiceInputOutput.class));
+		assertTrue(policy.validatesBeforeWrite(TestExecutor.ServiceInputOutput.class));
+		assertFalse(policy.validatesBeforeWrite(TestExecutor.ServiceInputOutput.class));
+		assertTrue(policy.validatesBeforeWrite(TestXWSWorkerPool.ServiceLifecycle.class));
+		assertEquals(3, policy.getValidationCount());
+	}
+
+	@Test
+	public void testPolicies() throws Exception {
+		assertTrue(XWSValidationPolicy.always().validatesBeforeWrite(TestExecutor.ServiceInputOutput.class));
+		assertFalse(XWSValidationPolicy.never().validatesBeforeWrite(TestExecutor.ServiceInputOutput.class));
+		assertFalse(XWSValidationPolicy.sampled(0d).validatesBeforeWrite(TestExecutor.ServiceInputOutput.class));
+		assertTrue(XWSValidationPolicy.sampled(1d).validatesBeforeWrite(TestExecutor.ServiceInputOutput.class));
+		final XWSValidationPolicy asynchronous = XWSValidationPolicy.asynchronous(new Executor() {
+			@Override
+			public void execute(Runnable command) {
+				command.run();
+			}
+		});
+		assertTrue(asynchronous.isAsynchronous());
+		assertFalse(asynchronous.validatesBeforeWrite(TestExecutor.ServiceInputOutput.class));
+		assertEquals(0, asynchronous.getValidationCount());
+	}
+}
@@ -0,0 +1,76 @@
+package org.decisiondeck.jmcda.xws;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.List;
+
+import org.decisiondeck.jmcda.exc.InvalidInputException;
+import org.junit.Test;
+
+public class TestXWSWorkerPool {
+	public static class ServiceLifecycle implements IXWS, IXWSLifecycle {
+		@XWSExceptions
+		public List<InvalidInputException> m_exceptions;
+
+		@XWSInputDirectory
+		public File m_inputDirectory;
+
+		private boolean m_closed;
+
+		private int m_executions;
+
+		private int m_resets;
+
+		@Override
+		public void close() {
+			m_closed = true;
+		}
+
+		@Override
+		public void execute() {
+			++m_executions;
+		}
+
+		@Override
+		public boolean reset() {
+			++m_resets;
+			return true;
+		}
+	}
+
+	@Test
+	public void testReuse() throws Exception {
+		final XWSWorkerPool pool = new XWSWorkerPool(1);
+		final XWSExecutor exec = new XWSExecutor();
+		exec.setWorkerPool(pool);
+		exec.setInputDirectory(new File("."));
+		exec.setWriteEnabled(false);
+		exec.setWorker(ServiceLifecycle.class);
+		exec.execute();
+		final ServiceLifecycle first = (ServiceLifecycle) exec.getWorker();
+		assertEquals(new File("."), first.m_inputDirectory);
+		exec.releaseWorker();
+		assertNull(exec.getWorker());
+		assertNull(first.m_inputDirectory);
+		assertNull(first.m_exceptions);
+		assertEquals(1, first.m_resets);
+		assertEquals(1, pool.getIdleCount(ServiceLifecycle.class));
+
+		exec.execute();
+		assertSame(first, exec.getWorker());
+		assertEquals(2, first.m_executions);
+		assertEquals(0, pool.getIdleCount(ServiceLifecycle.class));
+
+		final ServiceLifecycle other = new ServiceLifecycle();
+		assertTrue(pool.release(other));
+		assertFalse(pool.release(new ServiceLifecycle()));
+		pool.close();
+		assertTrue(other.m_closed);
+		assertFalse(first.m_closed);
+	}
+}
@@ -0,0 +1,147 @@
+package org.decisiondeck.jmcda.xws;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.decision_deck.jmcda.structure.Alternative;
+import org.decision_deck.jmcda.structure.Criterion;
+import org.decision_deck.jmcda.structure.matrix.Evaluations;
+import org.decisiondeck.jmcda.exc.InvalidInputException;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import com.google.common.io.Files;
+
+public class TestXWSZipOutputs {
+	private static final String PERFORMANCE_TABLE = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+			+ "<xmcda:XMCDA xmlns:xmcda=\"http://www.decision-deck.org/2009/XMCDA-2.1.0\">\n"
+			+ "<performanceTable>\n" + "<alternativePerformances><alternativeID>a1</alternativeID>\n"
+			+ "<performance><criterionID>g1</criterionID><value><real>1.5</real></value></performance>\n"
+			+ "</alternativePerformances>\n" + "</performanceTable>\n" + "</xmcda:XMCDA>\n";
+
+	/**
+	 * A name of the same length as <code>performanceTable.xml</code>.
+	 */
+	private static final String RENAMED = "duplicatedTable0.xml";
+
+	/**
+	 * Replaces, in the given archive, the name of the entry {@link #RENAMED} by
+	 * <code>performanceTable.xml</code>, which zip streams refuse to write twice. Both names have the same length,
+	 * thus the offsets in the archive stay valid.
+	 */
+	private static void duplicate(File archive) throws Exception {
+		final byte[] bytes = Files.toByteArray(archive);
+		final byte[] from = RENAMED.getBytes(Charsets.UTF_8);
+		final byte[] to = "performanceTable.xml".getBytes(Charsets.UTF_8);
+		int replaced = 0;
+		for (int i = 0; i + from.length <= bytes.length; ++i) {
+			boolean matches = true;
+			for (int j = 0; j < from.length && matches; ++j) {
+				matches = bytes[i + j] == from[j];
+			}
+			if (matches) {
+				System.arraycopy(to, 0, bytes, i, to.length);
+				++replaced;
+			}
+		}
+		assertEquals(2, replaced);
+		Files.write(bytes, archive);
+	}
+
+	@Test
+	public void testDuplicateEntries() throws Exception {
+		final File in = new File(Files.createTempDir(), "in.zip");
+		final XWSZipOutputs inputs = new XWSZipOutputs(in);
+		inputs.apply("performanceTable.xml").asCharSink(Charsets.UTF_8).write(PERFORMANCE_TABLE);
+		inputs.apply(RENAMED).asCharSink(Charsets.UTF_8).write(PERFORMANCE_TABLE);
+		inputs.close();
+		duplicate(in);
+
+		final XWSExecutor exec = new XWSExecutor();
+		exec.setWorker(TestXWSMemoryOutputs.ServiceRead.class);
+		exec.setInputDirectory(in);
+		exec.setOutputDirectory(new File(in.getParentFile(), "out.zip"));
+		exec.execute();
+		final InvalidInputException exception = Iterables.getOnlyElement(exec.getExceptions());
+		assertTrue(exception.getMessage().contains("performanceTable.xml"));
+	}
+	@Test
+	public void testExecutor() throws Exception {
+		final File directory = Files.createTempDir();
+		final File in = new File(directory, "in.zip");
+		final XWSZipOutputs inputs = new XWSZipOutputs(in);
+		inputs.apply("alternatives.xml").asCharSink(Charsets.UTF_8).write("<unused/>");
+		inputs.close();
+		final File out = new File(directory, "out.zip");
+
+		final XWSExecutor exec = new XWSExecutor();
+		exec.setStreamingOutputsEnabled(true);
+		exec.setValidationPolicy(XWSValidationPolicy.never());
+		exec.setWorker(TestXWSMemoryOutputs.ServiceMemory.class);
+		exec.setInputDirectory(in);
+		exec.setOutputDirectory(out);
+		exec.execute();
+		assertTrue(exec.getExceptions().isEmpty());
+
+		final XWSZipInputs outputs = new XWSZipInputs(out);
+		try {
+			assertEquals(ImmutableSet.of("performanceTable.xml"), outputs.keySet());
+			final Evaluations read = new SourceToEvaluations().apply(outputs.get("performanceTable.xml"));
+			assertEquals(Double.valueOf(2d), read.getEntry(new Alternative("a1"), new Criterion("g1")));
+		} finally {
+			outputs.close();
+		}
+	}
+
+	@Test
+	public void testReadInput() throws Exception {
+		final File directory = Files.createTempDir();
+		final File in = new File(directory, "in.zip");
+		final XWSZipOutputs inputs = new XWSZipOutputs(in);
+		inputs.apply("performanceTable.xml").asCharSink(Charsets.UTF_8).write(PERFORMANCE_TABLE);
+		inputs.apply("nested/performanceTable.xml").asCharSink(Charsets.UTF_8).write("<invalid/>");
+		inputs.close();
+
+		final XWSZipInputs read = new XWSZipInputs(in);
+		try {
+			assertEquals(ImmutableSet.of("performanceTable.xml"), read.keySet());
+		} finally {
+			read.close();
+		}
+
+		TestXWSMemoryOutputs.s_read = null;
+		final XWSExecutor exec = new XWSExecutor();
+		exec.setWorker(TestXWSMemoryOutputs.ServiceRead.class);
+		exec.setInputDirectory(in);
+		exec.setOutputDirectory(new File(directory, "out.zip"));
+		exec.execute();
+		assertTrue(exec.getExceptions().isEmpty());
+		assertFalse(TestXWSMemoryOutputs.s_read == null);
+		assertEquals(Double.valueOf(1.5d),
+				TestXWSMemoryOutputs.s_read.getEntry(new Alternative("a1"), new Criterion("g1")));
+	}
+
+	@Test
+	public void testRoundTrip() throws Exception {
+		final File file = new File(Files.createTempDir(), "outputs.zip");
+		final XWSZipOutputs outputs = new XWSZipOutputs(file);
+		outputs.apply("first.xml").asCharSink(Charsets.UTF_8).write("first content");
+		outputs.apply("second.xml").asCharSink(Charsets.UTF_8).write("second content");
+		outputs.close();
+
+		final XWSZipInputs inputs = new XWSZipInputs(file);
+		try {
+			assertEquals(ImmutableSet.of("first.xml", "second.xml"), inputs.keySet());
+			assertEquals("second content", inputs.get("second.xml").asCharSource(Charsets.UTF_8).read());
+			inputs.close();
+			assertEquals("first content", inputs.get("first.xml").asCharSource(Charsets.UTF_8).read());
+		} finally {
+			inputs.close();
+		}
+	}
+}
@@ -0,0 +1,82 @@
+package org.decisiondeck.jmcda.xws.bench;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.decision_deck.jmcda.structure.matrix.EvaluationsRead;
+import org.decisiondeck.jmcda.exc.InvalidInputException;
+import org.decisiondeck.jmcda.sample_problems.SixRealCars;
+import org.decisiondeck.jmcda.xws.SourceToEvaluations;
+import org.decisiondeck.jmcda.xws.XMCDAStreamWriter;
+
+import com.google.common.io.Files;
+
+/**
+ * The problems the benchmarks run on: the six real cars problem, or a synthetic problem of a given number of
+ * alternatives evaluated on {@value #CRITERIA} criteria, written by the {@link WorkloadGenerator} with a seed equal to
+ * the number of alternatives, thus reproducible.
+ *
+ * @author Olivier Cailloux
+ *
+ */
+final class BenchmarkProblems {
+	/**
+	 * The number of criteria of the synthetic problems.
+	 */
+	static final int CRITERIA = 10;
+
+	/**
+	 * The file name of the performance table, in the input directory of a problem.
+	 */
+	static final String PERFORMANCE_TABLE = "performanceTable.xml";
+
+	/**
+	 * The name of the six real cars problem; the other problem names are numbers of alternatives.
+	 */
+	static final String SIX_REAL_CARS = "sixRealCars";
+
+	/**
+	 * @param problem
+	 *            {@value #SIX_REAL_CARS}, or a number of alternatives.
+	 * @return the evaluations of the given problem.
+	 * @throws IOException
+	 *             if the synthetic problem can't be written.
+	 * @throws InvalidInputException
+	 *             if the synthetic performance table can't be read.
+	 */
+	static EvaluationsRead getEvaluations(String problem) throws IOException, InvalidInputException {
+		if (problem.equals(SIX_REAL_CARS)) {
+			return SixRealCars.getInstance().getEvaluations();
+		}
+		final File directory = newInputDirectory(problem);
+		return new SourceToEvaluations().apply(Files.asByteSource(new File(directory, PERFORMANCE_TABLE)));
+	}
+
+	/**
+	 * @param problem
+	 *            {@value #SIX_REAL_CARS}, or a number of alternatives.
+	 * @return a new temporary directory containing the performance table of the given problem, and, for a synthetic
+	 *         problem, the other files the {@link WorkloadGenerator} writes.
+	 * @throws IOException
+	 *             if a file can't be written.
+	 */
+	static File newInputDirectory(String problem) throws IOException {
+		final File directory = Files.createTempDir();
+		if (problem.equals(SIX_REAL_CARS)) {
+			new XMCDAStreamWriter().write(SixRealCars.getInstance().getEvaluations(), EvaluationsRead.class,
+					Files.asByteSink(new File(directory, PERFORMANCE_TABLE)));
+			return directory;
+		}
+		final int alternatives = Integer.parseInt(problem);
+		final WorkloadGenerator generator = new WorkloadGenerator();
+		generator.setAlternatives(alternatives);
+		generator.setCriteria(CRITERIA);
+		generator.setSeed(alternatives);
+		generator.write(directory);
+		return directory;
+	}
+
+	private BenchmarkProblems() {
+		/** Static methods only. */
+	}
+}
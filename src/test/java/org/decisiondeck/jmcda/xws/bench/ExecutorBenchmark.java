@@ -0,0 +1,100 @@
+package org.decisiondeck.jmcda.xws.bench;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.decision_deck.jmcda.structure.matrix.Evaluations;
+import org.decision_deck.jmcda.structure.matrix.EvaluationsRead;
+import org.decisiondeck.jmcda.exc.InvalidInputException;
+import org.decisiondeck.jmcda.xws.IXWS;
+import org.decisiondeck.jmcda.xws.SourceToEvaluations;
+import org.decisiondeck.jmcda.xws.XWSExceptions;
+import org.decisiondeck.jmcda.xws.XWSExecutor;
+import org.decisiondeck.jmcda.xws.XWSInput;
+import org.decisiondeck.jmcda.xws.XWSOutput;
+import org.decisiondeck.jmcda.xws.XWSValidationPolicy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.google.common.io.Files;
+
+/**
+ * Measures a whole run of {@link XWSExecutor#execute()}, from a new executor to the written outputs, of a worker that
+ * reads a performance table and writes it back, with the output written from its document or streamed.
+ *
+ * @author Olivier Cailloux
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExecutorBenchmark {
+	public static class Worker implements IXWS {
+		@XWSInput(name = BenchmarkProblems.PERFORMANCE_TABLE, transformer = SourceToEvaluations.class)
+		public Evaluations m_evaluations;
+
+		@XWSExceptions
+		public List<InvalidInputException> m_exceptions;
+
+		@XWSOutput(name = BenchmarkProblems.PERFORMANCE_TABLE)
+		public EvaluationsRead m_output;
+
+		@Override
+		public void execute() {
+			m_output = m_evaluations;
+		}
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(ExecutorBenchmark.class.getSimpleName())
+				.addProfiler(GCProfiler.class).build()).run();
+	}
+
+	private File m_inputDirectory;
+
+	private File m_outputDirectory;
+
+	@Param({ BenchmarkProblems.SIX_REAL_CARS, "100", "1000" })
+	public String m_problem;
+
+	@Param({ "false", "true" })
+	public boolean m_streaming;
+
+	@Benchmark
+	public List<InvalidInputException> execute() throws Exception {
+		final XWSExecutor executor = new XWSExecutor();
+		executor.setWorker(Worker.class);
+		executor.setInputDirectory(m_inputDirectory);
+		executor.setOutputDirectory(m_outputDirectory);
+		executor.setStreamingOutputsEnabled(m_streaming);
+		if (m_streaming) {
+			/** Otherwise, the outputs are validated, thus not streamed. */
+			executor.setValidationPolicy(XWSValidationPolicy.never());
+		}
+		executor.execute();
+		return executor.getExceptions();
+	}
+
+	@Setup
+	public void setUp() throws Exception {
+		m_inputDirectory = BenchmarkProblems.newInputDirectory(m_problem);
+		m_outputDirectory = Files.createTempDir();
+	}
+}
@@ -0,0 +1,132 @@
+package org.decisiondeck.jmcda.xws.bench;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.decisiondeck.jmcda.exc.InvalidInputException;
+import org.decisiondeck.jmcda.xws.FieldAccessors;
+import org.decisiondeck.jmcda.xws.IXWS;
+import org.decisiondeck.jmcda.xws.XWSExceptions;
+import org.decisiondeck.jmcda.xws.XWSInjectionPlan;
+import org.decisiondeck.jmcda.xws.XWSInjectionPlan.InjectedField;
+import org.decisiondeck.jmcda.xws.XWSInput;
+import org.decisiondeck.jmcda.xws.XWSOutput;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares the reflective field accessors, which the executor historically used, with the method handles accessors, on
+ * a worker with one input field, one output field and one primitive field.
+ *
+ * @author Olivier Cailloux
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FieldAccessorsBenchmark {
+	public static class Worker implements IXWS {
+		@XWSExceptions
+		public List<InvalidInputException> m_exceptions;
+
+		@XWSInput
+		public String m_input;
+
+		@XWSOutput
+		public String m_output;
+
+		@XWSInput
+		public double m_threshold;
+
+		@Override
+		public void execute() {
+			m_output = m_input;
+		}
+	}
+
+	private static <T extends InjectedField> T getField(List<T> fields, String name) {
+		for (T field : fields) {
+			if (field.getName().equals(name)) {
+				return field;
+			}
+		}
+		throw new IllegalStateException("Field not found: " + name + ".");
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(FieldAccessorsBenchmark.class.getSimpleName()).build()).run();
+	}
+
+	@Param({ "reflective", "methodHandles" })
+	public String m_accessors;
+
+	private InjectedField m_inputField;
+
+	private InjectedField m_outputField;
+
+	private InjectedField m_thresholdField;
+
+	private final Double m_thresholdValue = Double.valueOf(0.5d);
+
+	private final String m_value = "value";
+
+	private final Worker m_worker = new Worker();
+
+	@Benchmark
+	public Object get() throws Exception {
+		return m_outputField.get(m_worker);
+	}
+
+	@Benchmark
+	public void set() throws Exception {
+		m_inputField.set(m_worker, m_value);
+	}
+
+	@Benchmark
+	public void setPrimitive() throws Exception {
+		m_thresholdField.set(m_worker, m_thresholdValue);
+	}
+
+	@Benchmark
+	public void setThenGet(Blackhole blackhole) throws Exception {
+		m_inputField.set(m_worker, m_value);
+		m_thresholdField.set(m_worker, m_thresholdValue);
+		m_worker.execute();
+		blackhole.consume(m_outputField.get(m_worker));
+	}
+
+	@Setup
+	public void setUp() throws Exception {
+		final XWSInjectionPlan plan;
+		switch (m_accessors) {
+		case "reflective":
+			plan = XWSInjectionPlan.getPlan(Worker.class, FieldAccessors.reflective());
+			break;
+		case "methodHandles":
+			plan = XWSInjectionPlan.getPlan(Worker.class, FieldAccessors.methodHandles());
+			break;
+		default:
+			throw new IllegalStateException("Unknown accessors: " + m_accessors + ".");
+		}
+		m_inputField = getField(plan.getInputFields(), "m_input");
+		m_thresholdField = getField(plan.getInputFields(), "m_threshold");
+		m_outputField = getField(plan.getOutputFields(), "m_output");
+		m_worker.m_output = m_value;
+	}
+}
@@ -0,0 +1,86 @@
+package org.decisiondeck.jmcda.xws.bench;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.decision_deck.jmcda.structure.matrix.Evaluations;
+import org.decisiondeck.jmcda.exc.FunctionWithInputCheck;
+import org.decisiondeck.jmcda.persist.xmcda2.generated.XMCDADoc;
+import org.decisiondeck.jmcda.persist.xmcda2.utils.XMCDAReadUtils;
+import org.decisiondeck.jmcda.xws.SourceToEvaluations;
+import org.decisiondeck.jmcda.xws.transformer.InputTransformer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.google.common.io.ByteSource;
+import com.google.common.io.Files;
+
+/**
+ * Measures the transformation of a performance table input: through the input transformer, as the executor does, or
+ * directly, by parsing the document into its XMLBeans tree or by streaming it into evaluations. The direct ones read
+ * the file content from memory.
+ *
+ * @author Olivier Cailloux
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InputTransformationBenchmark {
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(InputTransformationBenchmark.class.getSimpleName())
+				.addProfiler(GCProfiler.class).build()).run();
+	}
+
+	private File m_directory;
+
+	@Param({ BenchmarkProblems.SIX_REAL_CARS, "100", "1000" })
+	public String m_problem;
+
+	private ByteSource m_source;
+
+	private Class<? extends FunctionWithInputCheck<Object, Object>> m_transformer;
+
+	private final InputTransformer m_inputTransformer = new InputTransformer();
+
+	@Benchmark
+	public Object inputTransformer() throws Exception {
+		return m_inputTransformer.get(Evaluations.class, m_transformer, BenchmarkProblems.PERFORMANCE_TABLE,
+				m_directory, false);
+	}
+
+	@Setup
+	public void setUp() throws Exception {
+		m_directory = BenchmarkProblems.newInputDirectory(m_problem);
+		m_source = ByteSource.wrap(Files.toByteArray(new File(m_directory, BenchmarkProblems.PERFORMANCE_TABLE)));
+		@SuppressWarnings("unchecked")
+		final Class<? extends FunctionWithInputCheck<Object, Object>> transformer = (Class<? extends FunctionWithInputCheck<Object, Object>>) (Class<?>) SourceToEvaluations.class;
+		m_transformer = transformer;
+	}
+
+	@Benchmark
+	public Evaluations streaming() throws Exception {
+		return new SourceToEvaluations().apply(m_source);
+	}
+
+	@Benchmark
+	public XMCDADoc xmlBeans() throws Exception {
+		return new XMCDAReadUtils().getXMCDADoc(m_source);
+	}
+}
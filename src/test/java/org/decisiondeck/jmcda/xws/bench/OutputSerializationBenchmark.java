@@ -0,0 +1,90 @@
+package org.decisiondeck.jmcda.xws.bench;
+
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.decision_deck.jmcda.structure.matrix.EvaluationsRead;
+import org.decisiondeck.jmcda.persist.xmcda2.generated.XMCDADoc;
+import org.decisiondeck.jmcda.persist.xmcda2.utils.XMCDAWriteUtils;
+import org.decisiondeck.jmcda.xws.XMCDAStreamWriter;
+import org.decisiondeck.jmcda.xws.transformer.OutputTransformer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.google.common.io.ByteSink;
+import com.google.common.io.ByteStreams;
+
+/**
+ * Measures the serialization of a performance table output, to a sink discarding the bytes: through its XMCDA
+ * document, with and without validation, as the executor does by default, or streamed by {@link XMCDAStreamWriter}.
+ *
+ * @author Olivier Cailloux
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OutputSerializationBenchmark {
+	private static final ByteSink NULL_SINK = new ByteSink() {
+		@Override
+		public OutputStream openStream() {
+			return ByteStreams.nullOutputStream();
+		}
+	};
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(OutputSerializationBenchmark.class.getSimpleName())
+				.addProfiler(GCProfiler.class).build()).run();
+	}
+
+	private EvaluationsRead m_evaluations;
+
+	private final OutputTransformer m_outputTransformer = new OutputTransformer();
+
+	@Param({ BenchmarkProblems.SIX_REAL_CARS, "100", "1000" })
+	public String m_problem;
+
+	@Benchmark
+	public XMCDADoc document() throws Exception {
+		return write(false);
+	}
+
+	@Benchmark
+	public XMCDADoc documentValidated() throws Exception {
+		return write(true);
+	}
+
+	@Setup
+	public void setUp() throws Exception {
+		m_evaluations = BenchmarkProblems.getEvaluations(m_problem);
+	}
+
+	@Benchmark
+	public void streaming() throws Exception {
+		new XMCDAStreamWriter().write(m_evaluations, EvaluationsRead.class, NULL_SINK);
+	}
+
+	private XMCDADoc write(boolean validate) throws Exception {
+		final XMCDADoc doc = m_outputTransformer.getAsDoc(m_evaluations, EvaluationsRead.class);
+		final XMCDAWriteUtils utils = new XMCDAWriteUtils();
+		utils.setValidate(validate);
+		utils.write(doc, NULL_SINK);
+		return doc;
+	}
+}
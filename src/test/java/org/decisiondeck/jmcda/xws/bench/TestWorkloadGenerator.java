@@ -0,0 +1,78 @@
+package org.decisiondeck.jmcda.xws.bench;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.decision_deck.jmcda.structure.Alternative;
+import org.decision_deck.jmcda.structure.Criterion;
+import org.decision_deck.jmcda.structure.matrix.Evaluations;
+import org.decisiondeck.jmcda.persist.xmcda2.generated.XMCDADoc;
+import org.decisiondeck.jmcda.persist.xmcda2.utils.XMCDAReadUtils;
+import org.decisiondeck.jmcda.xws.SourceToEvaluations;
+import org.junit.Test;
+
+import com.google.common.io.Files;
+
+public class TestWorkloadGenerator {
+	@Test
+	public void testDeterministic() throws Exception {
+		final WorkloadGenerator generator = new WorkloadGenerator();
+		generator.setCategories(3);
+		generator.setThresholdsEnabled(true);
+		generator.setConstraintsEnabled(true);
+		generator.setDensity(0.5d);
+		final File first = Files.createTempDir();
+		final File second = Files.createTempDir();
+		generator.write(first);
+		generator.write(second);
+		assertEquals(6, first.list().length);
+		for (String name : first.list()) {
+			assertTrue(name, Files.equal(new File(first, name), new File(second, name)));
+		}
+
+		generator.setSeed(1);
+		generator.write(second);
+		assertFalse(Files.equal(new File(first, "performanceTable.xml"), new File(second, "performanceTable.xml")));
+	}
+
+	@Test
+	public void testPerformanceTable() throws Exception {
+		final WorkloadGenerator generator = new WorkloadGenerator();
+		generator.setAlternatives(200);
+		generator.setCriteria(4);
+		generator.setCategories(3);
+		final File directory = Files.createTempDir();
+		generator.write(directory);
+		final Evaluations dense = new SourceToEvaluations()
+				.apply(Files.asByteSource(new File(directory, "performanceTable.xml")));
+		assertEquals(202, dense.getRows().size());
+		assertEquals(202 * 4, dense.getValueCount());
+		assertEquals(WorkloadGenerator.SCALE, dense.getEntry(new Alternative("b1"), new Criterion("g1")).doubleValue()
+				+ dense.getEntry(new Alternative("b2"), new Criterion("g1")).doubleValue(), 1e-6);
+
+		generator.setDensity(0.25d);
+		generator.write(directory);
+		final Evaluations sparse = new SourceToEvaluations()
+				.apply(Files.asByteSource(new File(directory, "performanceTable.xml")));
+		assertEquals(202, sparse.getRows().size());
+		assertTrue(sparse.getValueCount() < 200 * 2 + 2 * 4);
+	}
+
+	@Test
+	public void testValid() throws Exception {
+		final WorkloadGenerator generator = new WorkloadGenerator();
+		generator.setCategories(4);
+		generator.setThresholdsEnabled(true);
+		generator.setConstraintsEnabled(true);
+		generator.setDensity(0.5d);
+		final File directory = Files.createTempDir();
+		generator.write(directory);
+		for (File file : directory.listFiles()) {
+			final XMCDADoc doc = new XMCDAReadUtils().getXMCDADoc(Files.asByteSource(file));
+			assertTrue(file.getName(), doc.validate());
+		}
+	}
+}
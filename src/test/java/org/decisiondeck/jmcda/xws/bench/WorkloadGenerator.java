@@ -0,0 +1,465 @@
+package org.decisiondeck.jmcda.xws.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.decisiondeck.jmcda.xws.XMCDAStreamWriter;
+
+import com.google.common.base.Preconditions;
+import com.google.common.io.Files;
+
+/**
+ * <p>
+ * Writes synthetic XMCDA 2 input directories of a given size, to test how the executor and the transformers scale:
+ * <code>alternatives.xml</code>, <code>criteria.xml</code> (with indifference, preference and veto thresholds if
+ * enabled) and <code>performanceTable.xml</code>; when categories are asked for, <code>categories.xml</code> and
+ * <code>categoriesProfiles.xml</code>, the profiles separating the categories being evaluated, as in the IRIS problems,
+ * in the same performance table as the alternatives; and when enabled, <code>criteriaLinearConstraints.xml</code>,
+ * constraining the weights of the criteria to sum to one and some of them to be ordered.
+ * </p>
+ * <p>
+ * The documents follow the XMCDA 2 schema. They are written element by element, thus problems of any size can be
+ * generated in constant memory. The content only depends on the parameters, including the seed: generating twice with
+ * the same parameters writes identical files.
+ * </p>
+ *
+ * @author Olivier Cailloux
+ *
+ */
+public class WorkloadGenerator {
+	/**
+	 * The highest evaluation; evaluations range from zero to this value, on every criterion.
+	 */
+	static final double SCALE = 100d;
+
+	/**
+	 * Generates an input directory from the command line:
+	 * <code>&lt;directory&gt; &lt;alternatives&gt; &lt;criteria&gt; &lt;categories&gt; [&lt;density&gt; [&lt;seed&gt;]]</code>,
+	 * with thresholds and linear constraints.
+	 *
+	 * @param args
+	 *            not <code>null</code>.
+	 * @throws IOException
+	 *             if a file can't be written.
+	 */
+	public static void main(String[] args) throws IOException {
+		Preconditions.checkArgument(args.length >= 4 && args.length <= 6,
+				"Usage: <directory> <alternatives> <criteria> <categories> [<density> [<seed>]].");
+		final WorkloadGenerator generator = new WorkloadGenerator();
+		generator.setAlternatives(Integer.parseInt(args[1]));
+		generator.setCriteria(Integer.parseInt(args[2]));
+		generator.setCategories(Integer.parseInt(args[3]));
+		if (args.length >= 5) {
+			generator.setDensity(Double.parseDouble(args[4]));
+		}
+		if (args.length >= 6) {
+			generator.setSeed(Long.parseLong(args[5]));
+		}
+		generator.setThresholdsEnabled(true);
+		generator.setConstraintsEnabled(true);
+		final File directory = new File(args[0]);
+		directory.mkdirs();
+		generator.write(directory);
+	}
+
+	private static void writeElement(XMLStreamWriter writer, String name, String text) throws XMLStreamException {
+		writer.writeStartElement(name);
+		writer.writeCharacters(text);
+		writer.writeEndElement();
+	}
+
+	private static void writeNumber(XMLStreamWriter writer, String name, String type, String number)
+			throws XMLStreamException {
+		writer.writeStartElement(name);
+		writeElement(writer, type, number);
+		writer.writeEndElement();
+	}
+
+	private int m_alternatives;
+
+	private int m_categories;
+
+	private boolean m_constraintsEnabled;
+
+	private int m_criteria;
+
+	private double m_density;
+
+	private long m_seed;
+
+	private boolean m_thresholdsEnabled;
+
+	/**
+	 * Creates a generator of ten alternatives evaluated on five criteria, with a dense performance table, no categories,
+	 * no thresholds and no constraints.
+	 */
+	public WorkloadGenerator() {
+		m_alternatives = 10;
+		m_criteria = 5;
+		m_categories = 0;
+		m_density = 1d;
+		m_thresholdsEnabled = false;
+		m_constraintsEnabled = false;
+		m_seed = 0;
+	}
+
+	public int getAlternatives() {
+		return m_alternatives;
+	}
+
+	public int getCategories() {
+		return m_categories;
+	}
+
+	public int getCriteria() {
+		return m_criteria;
+	}
+
+	/**
+	 * @return the probability for each alternative to be evaluated on each criterion, one for a dense performance
+	 *         table.
+	 */
+	public double getDensity() {
+		return m_density;
+	}
+
+	public long getSeed() {
+		return m_seed;
+	}
+
+	public boolean isConstraintsEnabled() {
+		return m_constraintsEnabled;
+	}
+
+	public boolean isThresholdsEnabled() {
+		return m_thresholdsEnabled;
+	}
+
+	/**
+	 * @param alternatives
+	 *            at least one.
+	 */
+	public void setAlternatives(int alternatives) {
+		Preconditions.checkArgument(alternatives >= 1);
+		m_alternatives = alternatives;
+	}
+
+	/**
+	 * @param categories
+	 *            zero for no categories, otherwise at least two.
+	 */
+	public void setCategories(int categories) {
+		Preconditions.checkArgument(categories == 0 || categories >= 2);
+		m_categories = categories;
+	}
+
+	/**
+	 * @param constraintsEnabled
+	 *            <code>true</code> to write linear constraints on the weights of the criteria.
+	 */
+	public void setConstraintsEnabled(boolean constraintsEnabled) {
+		m_constraintsEnabled = constraintsEnabled;
+	}
+
+	/**
+	 * @param criteria
+	 *            at least one.
+	 */
+	public void setCriteria(int criteria) {
+		Preconditions.checkArgument(criteria >= 1);
+		m_criteria = criteria;
+	}
+
+	/**
+	 * Sets the probability for each alternative to be evaluated on each criterion. Each alternative is evaluated on at
+	 * least one criterion, and the profiles are evaluated on every criterion, whatever the density.
+	 *
+	 * @param density
+	 *            greater than zero and at most one, one for a dense performance table.
+	 */
+	public void setDensity(double density) {
+		Preconditions.checkArgument(density > 0d && density <= 1d);
+		m_density = density;
+	}
+
+	public void setSeed(long seed) {
+		m_seed = seed;
+	}
+
+	/**
+	 * @param thresholdsEnabled
+	 *            <code>true</code> to give indifference, preference and veto thresholds to the criteria.
+	 */
+	public void setThresholdsEnabled(boolean thresholdsEnabled) {
+		m_thresholdsEnabled = thresholdsEnabled;
+	}
+
+	@Override
+	public String toString() {
+		return "Workload of " + m_alternatives + " alternatives, " + m_criteria + " criteria, " + m_categories
+				+ " categories, density " + m_density + ", seed " + m_seed;
+	}
+
+	/**
+	 * Writes the files of the problem to the given directory, replacing any existing file of the same name.
+	 *
+	 * @param directory
+	 *            not <code>null</code>, must exist.
+	 * @throws IOException
+	 *             if a file can't be written.
+	 */
+	public void write(File directory) throws IOException {
+		Preconditions.checkArgument(directory.isDirectory(), "Not a directory: %s.", directory);
+		final Random random = new Random(m_seed);
+		final boolean[] maximized = new boolean[m_criteria];
+		for (int j = 0; j < m_criteria; ++j) {
+			maximized[j] = random.nextBoolean();
+		}
+		try {
+			writeAlternatives(new File(directory, "alternatives.xml"));
+			writeCriteria(new File(directory, "criteria.xml"), maximized, random);
+			writePerformanceTable(new File(directory, "performanceTable.xml"), maximized, random);
+			if (m_categories >= 2) {
+				writeCategories(new File(directory, "categories.xml"));
+				writeCategoriesProfiles(new File(directory, "categoriesProfiles.xml"));
+			}
+			if (m_constraintsEnabled) {
+				writeConstraints(new File(directory, "criteriaLinearConstraints.xml"), random);
+			}
+		} catch (XMLStreamException exc) {
+			throw new IOException(exc);
+		}
+	}
+
+	private void endDocument(XMLStreamWriter writer) throws XMLStreamException {
+		writer.writeEndElement();
+		writer.writeCharacters("\n");
+		writer.writeEndDocument();
+		writer.flush();
+		writer.close();
+	}
+
+	private String getAlternativeId(int i) {
+		return "a" + i;
+	}
+
+	private String getCategoryId(int k) {
+		return "cat" + k;
+	}
+
+	private String getCriterionId(int j) {
+		return "g" + j;
+	}
+
+	private String getProfileId(int k) {
+		return "b" + k;
+	}
+
+	/**
+	 * @return a random value between zero and the given bound, with two decimals.
+	 */
+	private double nextValue(Random random, double bound) {
+		return round(random.nextDouble() * bound);
+	}
+
+	/**
+	 * @return the given value rounded to two decimals, so that the documents stay short.
+	 */
+	private double round(double value) {
+		return Math.round(value * 100d) / 100d;
+	}
+
+	private XMLStreamWriter startDocument(OutputStream stream) throws XMLStreamException {
+		final XMLStreamWriter writer = XMLOutputFactory.newInstance().createXMLStreamWriter(stream, "UTF-8");
+		writer.writeStartDocument("UTF-8", "1.0");
+		writer.writeCharacters("\n");
+		writer.writeStartElement("xmcda", "XMCDA", XMCDAStreamWriter.NAMESPACE);
+		writer.writeNamespace("xmcda", XMCDAStreamWriter.NAMESPACE);
+		writer.writeCharacters("\n");
+		return writer;
+	}
+
+	private void writeAlternatives(File file) throws IOException, XMLStreamException {
+		try (OutputStream stream = Files.asByteSink(file).openBufferedStream()) {
+			final XMLStreamWriter writer = startDocument(stream);
+			writer.writeStartElement("alternatives");
+			writer.writeCharacters("\n");
+			for (int i = 1; i <= m_alternatives; ++i) {
+				writer.writeStartElement("alternative");
+				writer.writeAttribute("id", getAlternativeId(i));
+				writeElement(writer, "active", "true");
+				writer.writeEndElement();
+				writer.writeCharacters("\n");
+			}
+			writer.writeEndElement();
+			endDocument(writer);
+		}
+	}
+
+	private void writeCategories(File file) throws IOException, XMLStreamException {
+		try (OutputStream stream = Files.asByteSink(file).openBufferedStream()) {
+			final XMLStreamWriter writer = startDocument(stream);
+			writer.writeStartElement("categories");
+			writer.writeCharacters("\n");
+			for (int k = 1; k <= m_categories; ++k) {
+				writer.writeStartElement("category");
+				writer.writeAttribute("id", getCategoryId(k));
+				/** The last category is the best one, thus ranked first. */
+				writeNumber(writer, "rank", "integer", String.valueOf(m_categories - k + 1));
+				writer.writeEndElement();
+				writer.writeCharacters("\n");
+			}
+			writer.writeEndElement();
+			endDocument(writer);
+		}
+	}
+
+	private void writeCategoriesProfiles(File file) throws IOException, XMLStreamException {
+		try (OutputStream stream = Files.asByteSink(file).openBufferedStream()) {
+			final XMLStreamWriter writer = startDocument(stream);
+			writer.writeStartElement("categoriesProfiles");
+			writer.writeCharacters("\n");
+			for (int k = 1; k < m_categories; ++k) {
+				writer.writeStartElement("categoryProfile");
+				writeElement(writer, "alternativeID", getProfileId(k));
+				writer.writeStartElement("limits");
+				writer.writeStartElement("lowerCategory");
+				writeElement(writer, "categoryID", getCategoryId(k));
+				writer.writeEndElement();
+				writer.writeStartElement("upperCategory");
+				writeElement(writer, "categoryID", getCategoryId(k + 1));
+				writer.writeEndElement();
+				writer.writeEndElement();
+				writer.writeEndElement();
+				writer.writeCharacters("\n");
+			}
+			writer.writeEndElement();
+			endDocument(writer);
+		}
+	}
+
+	private void writeConstraints(File file, Random random) throws IOException, XMLStreamException {
+		try (OutputStream stream = Files.asByteSink(file).openBufferedStream()) {
+			final XMLStreamWriter writer = startDocument(stream);
+			writer.writeStartElement("criteriaLinearConstraints");
+			writer.writeCharacters("\n");
+			writer.writeStartElement("constraint");
+			writeElement(writer, "name", "sum=1");
+			for (int j = 1; j <= m_criteria; ++j) {
+				writeConstraintElement(writer, j, 1);
+			}
+			writeNumber(writer, "rhs", "real", "1");
+			writeElement(writer, "operator", "eq");
+			writer.writeEndElement();
+			writer.writeCharacters("\n");
+			for (int j = 1; j < m_criteria; ++j) {
+				if (!random.nextBoolean()) {
+					continue;
+				}
+				writer.writeStartElement("constraint");
+				writeElement(writer, "name", getCriterionId(j) + ">=" + getCriterionId(j + 1));
+				writeConstraintElement(writer, j, 1);
+				writeConstraintElement(writer, j + 1, -1);
+				writeNumber(writer, "rhs", "real", "0");
+				writeElement(writer, "operator", "geq");
+				writer.writeEndElement();
+				writer.writeCharacters("\n");
+			}
+			writer.writeEndElement();
+			endDocument(writer);
+		}
+	}
+
+	private void writeConstraintElement(XMLStreamWriter writer, int criterion, int coefficient)
+			throws XMLStreamException {
+		writer.writeStartElement("element");
+		writeElement(writer, "criterionID", getCriterionId(criterion));
+		writeNumber(writer, "coefficient", "real", String.valueOf(coefficient));
+		writer.writeEndElement();
+	}
+
+	private void writeCriteria(File file, boolean[] maximized, Random random) throws IOException, XMLStreamException {
+		try (OutputStream stream = Files.asByteSink(file).openBufferedStream()) {
+			final XMLStreamWriter writer = startDocument(stream);
+			writer.writeStartElement("criteria");
+			writer.writeCharacters("\n");
+			for (int j = 1; j <= m_criteria; ++j) {
+				writer.writeStartElement("criterion");
+				writer.writeAttribute("id", getCriterionId(j));
+				writer.writeStartElement("scale");
+				writer.writeStartElement("quantitative");
+				writeElement(writer, "preferenceDirection", maximized[j - 1] ? "max" : "min");
+				writer.writeEndElement();
+				writer.writeEndElement();
+				if (m_thresholdsEnabled) {
+					final double indifference = nextValue(random, SCALE / 20d);
+					final double preference = round(indifference + nextValue(random, SCALE / 10d));
+					final double veto = round(preference + SCALE / 5d + nextValue(random, SCALE / 10d));
+					writer.writeStartElement("thresholds");
+					writeThreshold(writer, "ind", indifference);
+					writeThreshold(writer, "pref", preference);
+					writeThreshold(writer, "veto", veto);
+					writer.writeEndElement();
+				}
+				writer.writeEndElement();
+				writer.writeCharacters("\n");
+			}
+			writer.writeEndElement();
+			endDocument(writer);
+		}
+	}
+
+	private void writePerformance(XMLStreamWriter writer, int criterion, double value) throws XMLStreamException {
+		writer.writeStartElement("performance");
+		writeElement(writer, "criterionID", getCriterionId(criterion));
+		writeNumber(writer, "value", "real", Double.toString(value));
+		writer.writeEndElement();
+	}
+
+	private void writePerformanceTable(File file, boolean[] maximized, Random random)
+			throws IOException, XMLStreamException {
+		try (OutputStream stream = Files.asByteSink(file).openBufferedStream()) {
+			final XMLStreamWriter writer = startDocument(stream);
+			writer.writeStartElement("performanceTable");
+			writer.writeCharacters("\n");
+			for (int i = 1; i <= m_alternatives; ++i) {
+				writer.writeStartElement("alternativePerformances");
+				writeElement(writer, "alternativeID", getAlternativeId(i));
+				/** Guarantees at least one performance per alternative, as the schema requires. */
+				final int evaluated = random.nextInt(m_criteria) + 1;
+				for (int j = 1; j <= m_criteria; ++j) {
+					if (j == evaluated || m_density == 1d || random.nextDouble() < m_density) {
+						writePerformance(writer, j, nextValue(random, SCALE));
+					}
+				}
+				writer.writeEndElement();
+				writer.writeCharacters("\n");
+			}
+			for (int k = 1; k < m_categories; ++k) {
+				writer.writeStartElement("alternativePerformances");
+				writeElement(writer, "alternativeID", getProfileId(k));
+				final double better = round(SCALE * k / m_categories);
+				for (int j = 1; j <= m_criteria; ++j) {
+					writePerformance(writer, j, maximized[j - 1] ? better : round(SCALE - better));
+				}
+				writer.writeEndElement();
+				writer.writeCharacters("\n");
+			}
+			writer.writeEndElement();
+			endDocument(writer);
+		}
+	}
+
+	private void writeThreshold(XMLStreamWriter writer, String concept, double value) throws XMLStreamException {
+		writer.writeStartElement("threshold");
+		writer.writeAttribute("mcdaConcept", concept);
+		writeNumber(writer, "constant", "real", Double.toString(value));
+		writer.writeEndElement();
+	}
+}